@@ -10,6 +10,9 @@ import com.auth0.client.auth.AuthAPI;
 import com.auth0.client.mgmt.ManagementAPI;
 import com.auth0.exception.Auth0Exception;
 import com.auth0.json.auth.TokenHolder;
+import com.auth0.net.Request;
+
+import uk.org.gtc.api.exception.DependencyUnavailableException;
 
 public class Auth0Mgmt
 {
@@ -28,6 +31,30 @@ public class Auth0Mgmt
         mgmt = new ManagementAPI(configuration.auth0Domain, getAccessToken());
     }
     
+    /**
+     * Make a call to Auth0, through its {@link DependencyGuard}. A call that
+     * is turned away by the guard throws an {@link Auth0Exception} caused by
+     * a {@link DependencyUnavailableException}, like any call that got no
+     * response.
+     *
+     * @param request
+     *            - the request to execute
+     * @return the result of the request
+     * @throws Auth0Exception
+     *             if the request failed or was not made
+     */
+    public static <T> T execute(final Request<T> request) throws Auth0Exception
+    {
+        try
+        {
+            return DependencyGuardFactory.getInstance(DependencyGuardFactory.AUTH0).call(request::execute);
+        }
+        catch (final DependencyUnavailableException due)
+        {
+            throw new Auth0Exception(due.getMessage(), due);
+        }
+    }
+    
     public static Auth0Mgmt getInstance()
     {
         if (instance == null)
@@ -61,7 +88,7 @@ public class Auth0Mgmt
             TokenHolder tokens = null;
             try
             {
-                tokens = auth.requestToken(audience).execute();
+                tokens = execute(auth.requestToken(audience));
             }
             catch (final Auth0Exception e)
             {
@@ -0,0 +1,192 @@
+package uk.org.gtc.api;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+import io.dropwizard.lifecycle.Managed;
+import uk.org.gtc.api.domain.TombstoneDO;
+import uk.org.gtc.api.service.GenericService;
+import uk.org.gtc.api.service.TombstoneService;
+
+/**
+ * Keeps the caches and search indexes of several API instances current by
+ * polling for items that another instance has written or deleted since the
+ * last poll, and passing them to this instance's change listeners.
+ * <p>
+ * Writes are found by {@code lastUpdatedDate} and deletions by tombstone. As
+ * those dates come from the clock of whichever instance made the change, the
+ * watermark each poll reads from is kept at least an overlap behind the start
+ * of the last poll, to catch changes from instances whose clocks run a little
+ * behind, or whose writes took a while to land. Changes read again because
+ * they fall inside that overlap are remembered and not passed on twice; this
+ * instance's own changes are passed on, which only applies them again.
+ */
+public class ChangeFeedPoller implements Managed
+{
+    private final List<GenericService<?>> services;
+    
+    private final TombstoneService tombstoneService;
+    
+    private final long pollSeconds;
+    
+    private final long overlapMillis;
+    
+    /**
+     * Where the next poll of each service's collection reads from.
+     */
+    private final Map<GenericService<?>, Date> watermarks = new ConcurrentHashMap<>();
+    
+    /**
+     * The date of each change at or after the watermark that has already been
+     * passed on, keyed by item.
+     */
+    private final Map<GenericService<?>, Map<String, Date>> applied = new ConcurrentHashMap<>();
+    
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "change-feed"));
+    
+    /**
+     * @param services
+     *            - the services whose listeners to keep current
+     * @param tombstoneService
+     *            - where deletions are recorded
+     * @param pollSeconds
+     *            - how often to poll
+     * @param overlapSeconds
+     *            - how far behind the start of the last poll the next poll
+     *            reads from
+     */
+    public ChangeFeedPoller(final List<GenericService<?>> services, final TombstoneService tombstoneService, final long pollSeconds,
+            final long overlapSeconds)
+    {
+        this.services = services;
+        this.tombstoneService = tombstoneService;
+        this.pollSeconds = pollSeconds;
+        this.overlapMillis = TimeUnit.SECONDS.toMillis(overlapSeconds);
+    }
+    
+    private static Date later(final Date current, final Date candidate)
+    {
+        return !UtilityHelper.isNull(candidate) && candidate.after(current) ? candidate : current;
+    }
+    
+    /**
+     * Note that a change has been passed on.
+     *
+     * @return whether the change had not been passed on before
+     */
+    private static boolean firstTime(final Map<String, Date> seen, final String key, final Date changedDate)
+    {
+        return UtilityHelper.isNull(changedDate) || !changedDate.equals(seen.put(key, changedDate));
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(ChangeFeedPoller.class);
+    }
+    
+    /**
+     * Poll every service, logging rather than throwing any failure so that
+     * later polls still run. The watermark only moves once a poll succeeds,
+     * so changes missed while polls fail are picked up by the next one.
+     */
+    void poll()
+    {
+        for (final GenericService<?> service : services)
+        {
+            try
+            {
+                poll(service);
+            }
+            catch (final RuntimeException e)
+            {
+                logger().warn("Could not poll {} for changes", service.getDbCollection().getName(), e);
+            }
+        }
+    }
+    
+    /**
+     * Pass every item written or deleted since the last poll to a service's
+     * change listeners.
+     *
+     * @param service
+     *            - the service to poll
+     * @return the number of items changed
+     */
+    int poll(final GenericService<?> service)
+    {
+        final Date pollStart = new Date();
+        final Date since = watermarks.computeIfAbsent(service, s -> new Date(pollStart.getTime() - overlapMillis));
+        final Map<String, Date> seen = applied.computeIfAbsent(service, s -> new HashMap<>());
+        final DBCollection collection = service.getDbCollection();
+        Date newest = since;
+        int changed = 0;
+        
+        // Read in full, as listeners such as the search index need the item
+        try (final DBCursor cursor = collection.find(new BasicDBObject("lastUpdatedDate", new BasicDBObject("$gte", since))))
+        {
+            for (final DBObject item : cursor)
+            {
+                final Date lastUpdatedDate = (Date) item.get("lastUpdatedDate");
+                newest = later(newest, lastUpdatedDate);
+                if (firstTime(seen, "saved " + item.get("_id"), lastUpdatedDate))
+                {
+                    service.itemSavedElsewhere(item);
+                    changed++;
+                }
+            }
+        }
+        for (final TombstoneDO tombstone : tombstoneService.findSince(collection.getName(), since))
+        {
+            newest = later(newest, tombstone.getDeletedDate());
+            if (firstTime(seen, "deleted " + tombstone.getItemId(), tombstone.getDeletedDate()))
+            {
+                service.itemDeletedElsewhere(tombstone.getItemId());
+                changed++;
+            }
+        }
+        
+        // Never move past this instance's own clock, in case the clock of the
+        // instance that made a change runs ahead, but otherwise move past the
+        // changes just passed on so they are not all read again next time
+        final Date watermark = later(new Date(pollStart.getTime() - overlapMillis), newest.after(pollStart) ? pollStart : newest);
+        watermarks.put(service, watermark);
+        seen.values().removeIf(changedDate -> changedDate.before(watermark));
+        if (changed > 0)
+        {
+            logger().debug("Applied {} changes to {} made by other instances", changed, collection.getName());
+        }
+        return changed;
+    }
+    
+    @Override
+    public void start() throws Exception
+    {
+        // Nothing is cached yet, so there is nothing older to catch up on
+        final Date since = new Date(System.currentTimeMillis() - overlapMillis);
+        for (final GenericService<?> service : services)
+        {
+            watermarks.put(service, since);
+        }
+        executor.scheduleWithFixedDelay(this::poll, pollSeconds, pollSeconds, TimeUnit.SECONDS);
+    }
+    
+    @Override
+    public void stop() throws Exception
+    {
+        executor.shutdownNow();
+    }
+}
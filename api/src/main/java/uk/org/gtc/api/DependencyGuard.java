@@ -0,0 +1,280 @@
+package uk.org.gtc.api;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import uk.org.gtc.api.exception.DependencyUnavailableException;
+
+/**
+ * Guards the calls made to one third party service, so that when it degrades
+ * the damage stays with the callers that need it.
+ * <ul>
+ * <li>Only a limited number of calls are made at once. A caller waits a short
+ * time for its turn, and is then turned away.</li>
+ * <li>After a number of failures in a row the circuit opens, and every call
+ * is turned away at once rather than waiting on the service to time out.
+ * Once the circuit has been open for a while, a single trial call is let
+ * through: if it succeeds the circuit closes again, otherwise it stays open
+ * for another while.</li>
+ * </ul>
+ * Calls that are turned away throw {@link DependencyUnavailableException},
+ * for the caller to fall back on whatever it can answer without the service.
+ * Time limits on the calls themselves are set on each service's HTTP client.
+ */
+public class DependencyGuard
+{
+    public enum State
+    {
+        CLOSED, OPEN, HALF_OPEN;
+    }
+    
+    /**
+     * A call to the guarded service.
+     *
+     * @param <T>
+     *            the result of the call
+     * @param <E1>
+     *            a checked exception the call may throw
+     * @param <E2>
+     *            another checked exception the call may throw, which Java
+     *            cannot infer, so it must be given when the call throws two
+     */
+    @FunctionalInterface
+    public interface Call<T, E1 extends Exception, E2 extends Exception>
+    {
+        T call() throws E1, E2;
+    }
+    
+    private final String name;
+    
+    private final int maxConcurrentCalls;
+    
+    private final Semaphore permits;
+    
+    private final long waitMillis;
+    
+    private final int failureThreshold;
+    
+    private final long openMillis;
+    
+    private final Predicate<Exception> isFailure;
+    
+    private final LongSupplier clock;
+    
+    private final Meter rejected = new Meter();
+    
+    private final Meter shortCircuited = new Meter();
+    
+    private final Meter failed = new Meter();
+    
+    private State state = State.CLOSED;
+    
+    private int failures = 0;
+    
+    private long openedAt;
+    
+    private boolean trialInProgress = false;
+    
+    /**
+     * @param name
+     *            - the name of the service, for logs and metrics
+     * @param maxConcurrentCalls
+     *            - the most calls to make at once
+     * @param waitMillis
+     *            - how long a call may wait for its turn
+     * @param failureThreshold
+     *            - how many failures in a row open the circuit
+     * @param openSeconds
+     *            - how long the circuit stays open before a trial call
+     * @param isFailure
+     *            - whether an exception thrown by a call means the service is
+     *            failing, rather than that the call was wrong
+     */
+    public DependencyGuard(final String name, final int maxConcurrentCalls, final long waitMillis, final int failureThreshold,
+            final long openSeconds, final Predicate<Exception> isFailure)
+    {
+        this(name, maxConcurrentCalls, waitMillis, failureThreshold, openSeconds, isFailure, System::currentTimeMillis);
+    }
+    
+    DependencyGuard(final String name, final int maxConcurrentCalls, final long waitMillis, final int failureThreshold,
+            final long openSeconds, final Predicate<Exception> isFailure, final LongSupplier clock)
+    {
+        this.name = name;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.permits = new Semaphore(maxConcurrentCalls);
+        this.waitMillis = waitMillis;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = TimeUnit.SECONDS.toMillis(openSeconds);
+        this.isFailure = isFailure;
+        this.clock = clock;
+    }
+    
+    /**
+     * Make a call to the service, unless it is failing or too busy.
+     *
+     * @param call
+     *            - the call to make
+     * @return the result of the call
+     * @throws E1
+     *             if the call failed
+     * @throws E2
+     *             if the call failed
+     * @throws DependencyUnavailableException
+     *             if the call was not made
+     */
+    public <T, E1 extends Exception, E2 extends Exception> T call(final Call<T, E1, E2> call) throws E1, E2
+    {
+        if (!permitCall())
+        {
+            shortCircuited.mark();
+            throw new DependencyUnavailableException(name + " is unavailable");
+        }
+        if (!acquire())
+        {
+            rejected.mark();
+            endTrial();
+            throw new DependencyUnavailableException("Too many calls to " + name + " are waiting");
+        }
+        
+        boolean settled = false;
+        try
+        {
+            final T result = call.call();
+            onSuccess();
+            settled = true;
+            return result;
+        }
+        catch (final Exception e)
+        {
+            if (isFailure.test(e))
+            {
+                onFailure(e);
+            }
+            else
+            {
+                onSuccess();
+            }
+            settled = true;
+            throw e;
+        }
+        finally
+        {
+            permits.release();
+            if (!settled)
+            {
+                // An Error leaves the circuit as it was, but a trial call
+                // must not be left in progress or the circuit never closes
+                endTrial();
+            }
+        }
+    }
+    
+    private boolean acquire()
+    {
+        try
+        {
+            return permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (final InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    private synchronized void endTrial()
+    {
+        trialInProgress = false;
+    }
+    
+    /**
+     * @return the name of the service
+     */
+    public String getName()
+    {
+        return name;
+    }
+    
+    /**
+     * @return the state of the circuit
+     */
+    public synchronized State getState()
+    {
+        return state;
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(DependencyGuard.class);
+    }
+    
+    private synchronized void onFailure(final Exception e)
+    {
+        failed.mark();
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold))
+        {
+            logger().warn("Opening the circuit to {} for {}ms after {} failures, the last being: {}", name, openMillis, failures,
+                    e.toString());
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+            failures = 0;
+            trialInProgress = false;
+        }
+    }
+    
+    private synchronized void onSuccess()
+    {
+        if (state != State.CLOSED)
+        {
+            logger().info("Closing the circuit to {}", name);
+        }
+        state = State.CLOSED;
+        failures = 0;
+        trialInProgress = false;
+    }
+    
+    private synchronized boolean permitCall()
+    {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openMillis)
+        {
+            state = State.HALF_OPEN;
+        }
+        if (state == State.CLOSED)
+        {
+            return true;
+        }
+        if (state == State.HALF_OPEN && !trialInProgress)
+        {
+            trialInProgress = true;
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Register the state of the circuit, the number of calls in progress, and
+     * meters of failed calls and of calls turned away.
+     *
+     * @param registry
+     *            - the registry to add the metrics to
+     */
+    public void registerMetrics(final MetricRegistry registry)
+    {
+        final String prefix = MetricRegistry.name(DependencyGuard.class, name);
+        registry.register(MetricRegistry.name(prefix, "state"), (Gauge<String>) () -> getState().toString());
+        registry.register(MetricRegistry.name(prefix, "active"), (Gauge<Integer>) () -> maxConcurrentCalls - permits.availablePermits());
+        registry.register(MetricRegistry.name(prefix, "failed"), failed);
+        registry.register(MetricRegistry.name(prefix, "rejected"), rejected);
+        registry.register(MetricRegistry.name(prefix, "shortCircuited"), shortCircuited);
+    }
+}
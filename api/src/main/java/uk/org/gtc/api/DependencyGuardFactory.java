@@ -0,0 +1,62 @@
+package uk.org.gtc.api;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.auth0.exception.APIException;
+import com.ecwid.maleorang.MailchimpException;
+
+/**
+ * Holds the {@link DependencyGuard} for each third party service.
+ */
+public class DependencyGuardFactory
+{
+    public static final String AUTH0 = "auth0";
+    
+    public static final String MAILCHIMP = "mailchimp";
+    
+    public static final String SENDGRID = "sendgrid";
+    
+    private static final int TOO_MANY_REQUESTS = 429;
+    
+    private static final Map<String, DependencyGuard> instances = new HashMap<>();
+    
+    public static synchronized void setInstance(final String dependency, final DependencyGuard instance)
+    {
+        instances.put(dependency, instance);
+    }
+    
+    public static synchronized DependencyGuard getInstance(final String dependency)
+    {
+        return instances.computeIfAbsent(dependency, DependencyGuardFactory::create);
+    }
+    
+    private static DependencyGuard create(final String dependency)
+    {
+        final GtcConfiguration configuration = GtcConfiguration.getInstance();
+        switch (dependency)
+        {
+            case AUTH0:
+                // Responses other than errors on Auth0's side mean the call
+                // was wrong, not that Auth0 is failing
+                return new DependencyGuard(AUTH0, configuration.auth0MaxConcurrentCalls, configuration.dependencyWaitMillis,
+                        configuration.circuitFailureThreshold, configuration.circuitOpenSeconds,
+                        e -> !(e instanceof APIException) || isServerError(((APIException) e).getStatusCode()));
+            case MAILCHIMP:
+                // Mailchimp answers an unknown list member with a 404
+                return new DependencyGuard(MAILCHIMP, configuration.mailchimpMaxConcurrentCalls, configuration.dependencyWaitMillis,
+                        configuration.circuitFailureThreshold, configuration.circuitOpenSeconds,
+                        e -> !(e instanceof MailchimpException) || isServerError(((MailchimpException) e).code));
+            case SENDGRID:
+                return new DependencyGuard(SENDGRID, configuration.sendgridMaxConcurrentCalls, configuration.dependencyWaitMillis,
+                        configuration.circuitFailureThreshold, configuration.circuitOpenSeconds, e -> true);
+            default:
+                throw new IllegalArgumentException("No third party service called " + dependency);
+        }
+    }
+    
+    private static boolean isServerError(final int statusCode)
+    {
+        return statusCode >= 500 || statusCode == TOO_MANY_REQUESTS;
+    }
+}
@@ -0,0 +1,233 @@
+package uk.org.gtc.api;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+import io.dropwizard.lifecycle.Managed;
+import uk.org.gtc.api.domain.EmailDeliveryOutcome;
+import uk.org.gtc.api.domain.EmailMessageDO;
+import uk.org.gtc.api.exception.DependencyUnavailableException;
+import uk.org.gtc.api.service.EmailOutboxService;
+
+/**
+ * Sends the emails waiting in the outbox on a background thread, so that no
+ * request or job waits on SendGrid. Each poll claims the messages that are
+ * due and sends those that share a template, subject and content as a single
+ * SendGrid request with a personalization for each recipient. Messages that
+ * SendGrid could not take are tried again after a delay that doubles with
+ * each attempt, up to a limited number of attempts. When SendGrid rejects a
+ * request as bad, it is split until the messages it rejects are found, so
+ * that only those are given up on. When SendGrid refuses to send anything,
+ * as it does when the API key has been revoked, the messages wait in the
+ * outbox without using up their attempts until it is put right.
+ */
+public class EmailDispatcher implements Managed
+{
+    /**
+     * SendGrid takes no more personalizations than this in one request.
+     */
+    static final int MAX_PERSONALIZATIONS = 1000;
+    
+    /**
+     * Long enough to send a poll's worth of messages, after which messages
+     * claimed by an instance that stopped part way are sent by another.
+     */
+    private static final long CLAIM_SECONDS = TimeUnit.MINUTES.toSeconds(5);
+    
+    private final EmailOutboxService outbox;
+    
+    private final EmailService emailService;
+    
+    private final int batchSize;
+    
+    private final int maxAttempts;
+    
+    private final long backoffMillis;
+    
+    private final long pollSeconds;
+    
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "email-outbox"));
+    
+    /**
+     * @param outbox
+     *            - the messages waiting to be sent
+     * @param emailService
+     *            - used to send the messages
+     * @param batchSize
+     *            - the most messages to claim in each poll
+     * @param maxAttempts
+     *            - how many times to try a message before giving up on it
+     * @param backoffSeconds
+     *            - the delay before the first retry, doubling for each retry
+     *            after that
+     * @param pollSeconds
+     *            - how often to look for messages that are due
+     */
+    public EmailDispatcher(final EmailOutboxService outbox, final EmailService emailService, final int batchSize,
+            final int maxAttempts, final long backoffSeconds, final long pollSeconds)
+    {
+        this.outbox = outbox;
+        this.emailService = emailService;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = TimeUnit.SECONDS.toMillis(backoffSeconds);
+        this.pollSeconds = pollSeconds;
+    }
+    
+    private long backoff(final int attempt)
+    {
+        final long backoff = backoffMillis << Math.min(Math.max(attempt - 1, 0), 16);
+        return backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+    
+    /**
+     * Send messages, grouped into as few SendGrid requests as they can be.
+     *
+     * @param messages
+     *            - the messages to send
+     */
+    void dispatch(final List<EmailMessageDO> messages)
+    {
+        final Map<List<Object>, List<EmailMessageDO>> groups = messages.stream()
+                .collect(Collectors.groupingBy(message -> Arrays.asList(message.getTemplate(), message.getSubject(), message.getContent()),
+                        LinkedHashMap::new, Collectors.toList()));
+        for (final List<EmailMessageDO> group : groups.values())
+        {
+            for (final List<EmailMessageDO> request : Lists.partition(group, MAX_PERSONALIZATIONS))
+            {
+                send(request);
+            }
+        }
+    }
+    
+    private static List<String> ids(final List<EmailMessageDO> messages)
+    {
+        return messages.stream().map(EmailMessageDO::getId).collect(Collectors.toList());
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(EmailDispatcher.class);
+    }
+    
+    /**
+     * Send the messages that are due.
+     */
+    void poll()
+    {
+        try
+        {
+            final List<EmailMessageDO> due = outbox.claimDue(batchSize, CLAIM_SECONDS);
+            if (!due.isEmpty())
+            {
+                dispatch(due);
+            }
+        }
+        catch (final RuntimeException e)
+        {
+            // Anything thrown would stop the polls, so try again on the next
+            logger().error("Could not send the emails in the outbox", e);
+        }
+    }
+    
+    /**
+     * Put messages back in the outbox to be tried again later, or give up on
+     * those that have been tried too many times.
+     *
+     * @param messages
+     *            - the messages that could not be sent
+     * @param attempted
+     *            - whether SendGrid was called, rather than the call being
+     *            turned away because SendGrid is known to be failing
+     * @param error
+     *            - why they could not be sent
+     */
+    private void retry(final List<EmailMessageDO> messages, final boolean attempted, final String error)
+    {
+        final long now = System.currentTimeMillis();
+        int failed = 0;
+        for (final EmailMessageDO message : messages)
+        {
+            final int attempts = message.getAttempts() + (attempted ? 1 : 0);
+            if (attempts >= maxAttempts)
+            {
+                outbox.fail(message.getId(), attempts, error);
+                failed++;
+            }
+            else
+            {
+                outbox.retry(message.getId(), attempts, new Date(now + backoff(attempts)), error);
+            }
+        }
+        logger().warn("Could not send {} {} emails, {} to retry: {}", messages.size(), messages.get(0).getTemplate(),
+                messages.size() - failed, error);
+    }
+    
+    private void send(final List<EmailMessageDO> messages)
+    {
+        try
+        {
+            final EmailDeliveryOutcome outcome = emailService.deliver(messages);
+            if (outcome == EmailDeliveryOutcome.SENT)
+            {
+                outbox.sent(ids(messages));
+                logger().info("Sent {} {} emails", messages.size(), messages.get(0).getTemplate());
+            }
+            else if (outcome == EmailDeliveryOutcome.REFUSED)
+            {
+                // Nothing to do with the messages, so splitting them or
+                // giving up on them would not help
+                retry(messages, false, "Refused by SendGrid");
+            }
+            else if (messages.size() > 1)
+            {
+                // SendGrid turns the whole request away for one bad message,
+                // so halve it until the bad messages are on their own
+                final int half = messages.size() / 2;
+                send(messages.subList(0, half));
+                send(messages.subList(half, messages.size()));
+            }
+            else
+            {
+                // Sending the same request again would be turned away again
+                final EmailMessageDO message = messages.get(0);
+                outbox.fail(message.getId(), message.getAttempts() + 1, "Rejected by SendGrid");
+                logger().warn("SendGrid rejected the {} email to {}", message.getTemplate(), message.getTo());
+            }
+        }
+        catch (final IOException ioe)
+        {
+            retry(messages, true, ioe.getMessage());
+        }
+        catch (final DependencyUnavailableException due)
+        {
+            retry(messages, false, due.getMessage());
+        }
+    }
+    
+    @Override
+    public void start() throws Exception
+    {
+        executor.scheduleWithFixedDelay(this::poll, pollSeconds, pollSeconds, TimeUnit.SECONDS);
+    }
+    
+    @Override
+    public void stop() throws Exception
+    {
+        executor.shutdownNow();
+    }
+}
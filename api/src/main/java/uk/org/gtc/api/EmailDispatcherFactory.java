@@ -0,0 +1,24 @@
+package uk.org.gtc.api;
+
+public class EmailDispatcherFactory
+{
+    private static EmailDispatcher instance;
+    
+    public static void setInstance(final EmailDispatcher instance)
+    {
+        EmailDispatcherFactory.instance = instance;
+    }
+    
+    public static EmailDispatcher getInstance()
+    {
+        if (instance == null)
+        {
+            final GtcConfiguration configuration = GtcConfiguration.getInstance();
+            instance = new EmailDispatcher(EmailOutboxServiceFactory.getInstance(), EmailServiceFactory.getInstance(),
+                    configuration.emailBatchSize, configuration.emailMaxAttempts, configuration.emailBackoffSeconds,
+                    configuration.emailPollSeconds);
+        }
+        
+        return instance;
+    }
+}
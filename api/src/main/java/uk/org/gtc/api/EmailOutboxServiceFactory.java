@@ -0,0 +1,30 @@
+package uk.org.gtc.api;
+
+import org.mongojack.JacksonDBCollection;
+
+import com.mongodb.DB;
+
+import uk.org.gtc.api.domain.EmailMessageDO;
+import uk.org.gtc.api.service.EmailOutboxService;
+
+public class EmailOutboxServiceFactory
+{
+    private static EmailOutboxService instance;
+    
+    public static void setInstance(final EmailOutboxService instance)
+    {
+        EmailOutboxServiceFactory.instance = instance;
+    }
+    
+    public static EmailOutboxService getInstance()
+    {
+        if (instance == null)
+        {
+            final DB db = DBFactory.getInstance();
+            instance = new EmailOutboxService(JacksonDBCollection.wrap(db.getCollection("emailOutbox"), EmailMessageDO.class,
+                    String.class));
+        }
+        
+        return instance;
+    }
+}
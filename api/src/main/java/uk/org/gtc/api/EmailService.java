@@ -1,173 +1,259 @@
-package uk.org.gtc.api;
-
-import static j2html.TagCreator.body;
-import static j2html.TagCreator.div;
-import static j2html.TagCreator.each;
-import static j2html.TagCreator.h2;
-import static j2html.TagCreator.strong;
-import static j2html.TagCreator.tbody;
-import static j2html.TagCreator.td;
-import static j2html.TagCreator.tr;
-
-import java.io.IOException;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.sendgrid.Content;
-import com.sendgrid.Email;
-import com.sendgrid.Mail;
-import com.sendgrid.Method;
-import com.sendgrid.Personalization;
-import com.sendgrid.Request;
-import com.sendgrid.Response;
-import com.sendgrid.SendGrid;
-
-import j2html.tags.ContainerTag;
-import uk.org.gtc.api.domain.EmailTemplate;
-import uk.org.gtc.api.domain.ImportDiff;
-import uk.org.gtc.api.domain.MemberDO;
-import uk.org.gtc.api.service.MemberService;
-
-public class EmailService
-{
-    private final SendGrid sendgrid;
-    private final MemberService memberService;
-    private final GtcConfiguration configuration = GtcConfiguration.getInstance();
-    
-    final Email defaultNoReplyAddress = new Email("no-reply@gtc.org.uk", "The GTC");
-    
-    public EmailService(final SendGrid sendgrid, final MemberService memberService)
-    {
-        this.sendgrid = sendgrid;
-        this.memberService = memberService;
-    }
-    
-    private String buildDiffContent(final ImportDiff diff)
-    {
-        return body(
-                div(h2("New members"),
-                        tbody(each(diff.getCreatedSet(),
-                                createdMemberNumber -> generateHtmlForMember(createdMemberNumber)))),
-                div(h2("Updated members"),
-                        tbody(each(diff.getUpdatedSet(),
-                                updatedMemberNumber -> generateHtmlForMember(updatedMemberNumber)))),
-                div(h2("Deleted members"),
-                        tbody(each(diff.getDeletedSet(),
-                                deletedMemberNumber -> generateHtmlForMember(deletedMemberNumber)))))
-                                        .render();
-    }
-    
-    public ContainerTag generateHtmlForMember(final Long memberNumber)
-    {
-        final MemberDO member = memberService.getByMemberNumber(memberNumber);
-        if (member == null)
-        {
-            return tr(td(strong(memberNumber.toString())));
-        }
-        else
-        {
-            return tr(td(strong(memberNumber.toString())), td(member.getEmail()), td(member.getType().toString()),
-                    td(member.getFirstName()), td(member.getLastName()));
-        }
-    }
-    
-    public boolean sendImportNotificationEmail(final ImportDiff diff)
-    {
-        // Setup template and default content
-        final EmailTemplate template = EmailTemplate.OFFICE_MEMBER_UPDATE;
-        final Mail mail = new Mail();
-        mail.setFrom(defaultNoReplyAddress);
-        mail.setTemplateId(template.getSendGridTemplateId());
-        mail.setSubject(template.getDefaultSubject());
-        
-        final Personalization p = new Personalization();
-        p.addTo(new Email(template.getDefaultRecipient()));
-        mail.addPersonalization(p);
-        
-        final Content emailContent = new Content("text/html", buildDiffContent(diff));
-        mail.addContent(emailContent);
-        
-        // Send request to SendGrid
-        final Request request = new Request();
-        request.method = Method.POST;
-        request.endpoint = "mail/send";
-        try
-        {
-            request.body = mail.build();
-            if (configuration.appMode == ApplicationMode.LIVE)
-            {
-                final Response response = sendgrid.api(request);
-                if (response.statusCode == 202)
-                {
-                    return true;
-                }
-                else
-                {
-                    logger().error("API error sending notification email: {}", response.body);
-                    return false;
-                }
-            }
-            else
-            {
-                return true;
-            }
-        }
-        catch (final IOException e)
-        {
-            logger().error("Comms error sending notification email", e);
-            return false;
-        }
-    }
-    
-    public boolean sendAccountLinkedNotification(final MemberDO member)
-    {
-        // Setup template and default content
-        final EmailTemplate template = EmailTemplate.MEMBER_ACCOUNT_LINKED;
-        final Mail mail = new Mail();
-        mail.setFrom(defaultNoReplyAddress);
-        mail.setTemplateId(template.getSendGridTemplateId());
-        
-        final Personalization p = new Personalization();
-        p.addTo(new Email(member.getEmail()));
-        p.addSubstitution("[%firstName%]", member.getFirstName());
-        mail.addPersonalization(p);
-        
-        // Send request to SendGrid
-        final Request request = new Request();
-        request.method = Method.POST;
-        request.endpoint = "mail/send";
-        try
-        {
-            request.body = mail.build();
-            if (configuration.appMode == ApplicationMode.LIVE)
-            {
-                final Response response = sendgrid.api(request);
-                if (response.statusCode == 202)
-                {
-                    return true;
-                }
-                else
-                {
-                    logger().error("API error sending account linking email: {}", response.body);
-                    return false;
-                }
-            }
-            else
-            {
-                return true;
-            }
-        }
-        catch (final IOException e)
-        {
-            logger().error("Comms error sending account linking email", e);
-            return false;
-        }
-    }
-    
-    Logger logger()
-    {
-        return LoggerFactory.getLogger(EmailService.class);
-    }
-    
-}
+package uk.org.gtc.api;
+
+import static j2html.TagCreator.body;
+import static j2html.TagCreator.div;
+import static j2html.TagCreator.each;
+import static j2html.TagCreator.h2;
+import static j2html.TagCreator.strong;
+import static j2html.TagCreator.tbody;
+import static j2html.TagCreator.td;
+import static j2html.TagCreator.tr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.MongoException;
+import com.sendgrid.Content;
+import com.sendgrid.Email;
+import com.sendgrid.Mail;
+import com.sendgrid.Method;
+import com.sendgrid.Personalization;
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+import com.sendgrid.SendGrid;
+
+import j2html.tags.ContainerTag;
+import uk.org.gtc.api.domain.EmailDeliveryOutcome;
+import uk.org.gtc.api.domain.EmailMessageDO;
+import uk.org.gtc.api.domain.EmailTemplate;
+import uk.org.gtc.api.domain.ImportDiff;
+import uk.org.gtc.api.domain.MemberDO;
+import uk.org.gtc.api.exception.DependencyUnavailableException;
+import uk.org.gtc.api.service.EmailOutboxService;
+import uk.org.gtc.api.service.MemberService;
+
+/**
+ * Builds the emails the API sends. Emails are queued in the
+ * {@link EmailOutboxService} rather than sent while the caller waits, and
+ * are sent through SendGrid by the {@link EmailDispatcher}.
+ */
+public class EmailService
+{
+    private static final int BAD_REQUEST = 400;
+    
+    private static final int UNAUTHORIZED = 401;
+    
+    private static final int FORBIDDEN = 403;
+    
+    private static final int TOO_MANY_REQUESTS = 429;
+    
+    private final SendGrid sendgrid;
+    private final DependencyGuard guard;
+    private final MemberService memberService;
+    private final EmailOutboxService outbox;
+    private final GtcConfiguration configuration = GtcConfiguration.getInstance();
+    
+    final Email defaultNoReplyAddress = new Email("no-reply@gtc.org.uk", "The GTC");
+    
+    public EmailService(final SendGrid sendgrid, final DependencyGuard guard, final MemberService memberService,
+            final EmailOutboxService outbox)
+    {
+        this.sendgrid = sendgrid;
+        this.guard = guard;
+        this.memberService = memberService;
+        this.outbox = outbox;
+    }
+    
+    private String buildDiffContent(final ImportDiff diff)
+    {
+        return body(
+                div(h2("New members"),
+                        tbody(each(diff.getCreatedSet(),
+                                createdMemberNumber -> generateHtmlForMember(createdMemberNumber)))),
+                div(h2("Updated members"),
+                        tbody(each(diff.getUpdatedSet(),
+                                updatedMemberNumber -> generateHtmlForMember(updatedMemberNumber)))),
+                div(h2("Deleted members"),
+                        tbody(each(diff.getDeletedSet(),
+                                deletedMemberNumber -> generateHtmlForMember(deletedMemberNumber)))))
+                                        .render();
+    }
+    
+    public ContainerTag generateHtmlForMember(final Long memberNumber)
+    {
+        final MemberDO member = memberService.getByMemberNumber(memberNumber);
+        if (member == null)
+        {
+            return tr(td(strong(memberNumber.toString())));
+        }
+        else
+        {
+            return tr(td(strong(memberNumber.toString())), td(member.getEmail()), td(member.getType().toString()),
+                    td(member.getFirstName()), td(member.getLastName()));
+        }
+    }
+    
+    /**
+     * Queue the email telling the office about the changes an import made.
+     *
+     * @param diff
+     *            - the changes the import made
+     * @return whether the email was queued
+     */
+    public boolean sendImportNotificationEmail(final ImportDiff diff)
+    {
+        final EmailTemplate template = EmailTemplate.OFFICE_MEMBER_UPDATE;
+        final EmailMessageDO message = new EmailMessageDO(template, template.getDefaultRecipient(), Collections.emptyMap());
+        message.setSubject(template.getDefaultSubject());
+        message.setContent(buildDiffContent(diff));
+        try
+        {
+            outbox.enqueue(Collections.singletonList(message));
+            return true;
+        }
+        catch (final MongoException me)
+        {
+            logger().error("Could not queue notification email", me);
+            return false;
+        }
+    }
+    
+    /**
+     * Queue the emails telling members that their account has been linked to
+     * their membership.
+     *
+     * @param members
+     *            - the members whose accounts were linked
+     * @return the number of emails queued
+     */
+    public int sendAccountLinkedNotifications(final List<MemberDO> members)
+    {
+        final List<EmailMessageDO> messages = new ArrayList<>();
+        for (final MemberDO member : members)
+        {
+            messages.add(new EmailMessageDO(EmailTemplate.MEMBER_ACCOUNT_LINKED, member.getEmail(),
+                    Collections.singletonMap("firstName", member.getFirstName())));
+        }
+        try
+        {
+            final List<EmailMessageDO> failed = outbox.enqueue(messages);
+            if (!failed.isEmpty())
+            {
+                logger().error("Could not queue {} account linking emails", failed.size());
+            }
+            return messages.size() - failed.size();
+        }
+        catch (final MongoException me)
+        {
+            logger().error("Could not queue account linking emails", me);
+            return 0;
+        }
+    }
+    
+    /**
+     * Send messages from the outbox as a single SendGrid request, with a
+     * personalization for each message. The messages must share a template,
+     * subject and content, and there may be no more than SendGrid takes in
+     * one request. Outside live mode nothing is sent.
+     *
+     * @param messages
+     *            - the messages to send
+     * @return what SendGrid did with the messages; sending them again will
+     *         not help unless they were {@link EmailDeliveryOutcome#SENT SENT}
+     *         or SendGrid {@link EmailDeliveryOutcome#REFUSED REFUSED} the
+     *         request for reasons of its own
+     * @throws IOException
+     *             if SendGrid could not be reached, failed, was too busy or
+     *             could not make sense of the request, so the messages may be
+     *             sent again later
+     * @throws DependencyUnavailableException
+     *             if SendGrid is known to be failing
+     */
+    public EmailDeliveryOutcome deliver(final List<EmailMessageDO> messages) throws IOException
+    {
+        final EmailMessageDO first = messages.get(0);
+        final Mail mail = new Mail();
+        mail.setFrom(defaultNoReplyAddress);
+        mail.setTemplateId(first.getTemplate().getSendGridTemplateId());
+        if (!UtilityHelper.isNull(first.getSubject()))
+        {
+            mail.setSubject(first.getSubject());
+        }
+        if (!UtilityHelper.isNull(first.getContent()))
+        {
+            mail.addContent(new Content("text/html", first.getContent()));
+        }
+        for (final EmailMessageDO message : messages)
+        {
+            final Personalization p = new Personalization();
+            p.addTo(new Email(message.getTo()));
+            if (!UtilityHelper.isNull(message.getSubstitutions()))
+            {
+                message.getSubstitutions().forEach((key, value) -> p.addSubstitution("[%" + key + "%]", value));
+            }
+            mail.addPersonalization(p);
+        }
+        
+        // Send request to SendGrid
+        final Request request = new Request();
+        request.method = Method.POST;
+        request.endpoint = "mail/send";
+        request.body = mail.build();
+        if (configuration.appMode != ApplicationMode.LIVE)
+        {
+            return EmailDeliveryOutcome.SENT;
+        }
+        
+        final Response response = send(request);
+        if (response.statusCode == 202)
+        {
+            return EmailDeliveryOutcome.SENT;
+        }
+        else if (response.statusCode == BAD_REQUEST)
+        {
+            logger().warn("SendGrid rejected {} {} emails: {}", messages.size(), first.getTemplate(), response.body);
+            return EmailDeliveryOutcome.REJECTED;
+        }
+        else if (response.statusCode == UNAUTHORIZED || response.statusCode == FORBIDDEN)
+        {
+            logger().error("SendGrid refused to send {} emails, check the API key: {}", first.getTemplate(), response.body);
+            return EmailDeliveryOutcome.REFUSED;
+        }
+        else
+        {
+            throw new IOException("SendGrid returned " + response.statusCode + ": " + response.body);
+        }
+    }
+    
+    /**
+     * Send a request to SendGrid through its {@link DependencyGuard}. Errors
+     * on SendGrid's side and rate limiting are thrown, so that they count
+     * against it.
+     */
+    private Response send(final Request request) throws IOException
+    {
+        return guard.call(() -> {
+            final Response response = sendgrid.api(request);
+            if (response.statusCode == TOO_MANY_REQUESTS)
+            {
+                throw new IOException("SendGrid is rate limiting: " + response.body);
+            }
+            if (response.statusCode >= 500)
+            {
+                throw new IOException("SendGrid returned " + response.statusCode + ": " + response.body);
+            }
+            return response;
+        });
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(EmailService.class);
+    }
+    
+}
@@ -1,13 +1,11 @@
 package uk.org.gtc.api;
 
-import org.mongojack.JacksonDBCollection;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.HttpClients;
 
-import com.mongodb.DB;
+import com.sendgrid.Client;
 import com.sendgrid.SendGrid;
 
-import uk.org.gtc.api.domain.MemberDO;
-import uk.org.gtc.api.service.MemberService;
-
 public class EmailServiceFactory
 {
     private static EmailService instance;
@@ -21,11 +19,15 @@ public class EmailServiceFactory
     {
         if (instance == null)
         {
-            final DB db = DBFactory.getInstance();
-            final MemberService memberService = new MemberService(JacksonDBCollection.wrap(db.getCollection("members"), MemberDO.class,
-                    String.class));
-            final SendGrid sendgrid = new SendGrid(GtcConfiguration.getInstance().sendgridApiKey);
-            instance = new EmailService(sendgrid, memberService);
+            final GtcConfiguration configuration = GtcConfiguration.getInstance();
+            final RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(configuration.sendgridTimeoutMillis)
+                    .setSocketTimeout(configuration.sendgridTimeoutMillis).setConnectionRequestTimeout(configuration.sendgridTimeoutMillis)
+                    .build();
+            final SendGrid sendgrid = new SendGrid(configuration.sendgridApiKey,
+                    new Client(HttpClients.custom().setDefaultRequestConfig(requestConfig).build()));
+            // Shares the member cache and membership number counter
+            instance = new EmailService(sendgrid, DependencyGuardFactory.getInstance(DependencyGuardFactory.SENDGRID),
+                    MemberServiceFactory.getInstance(), EmailOutboxServiceFactory.getInstance());
         }
         
         return instance;
@@ -2,6 +2,8 @@ package uk.org.gtc.api;
 
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 
@@ -23,17 +25,18 @@ import de.spinscale.dropwizard.jobs.JobsBundle;
 import io.dropwizard.Application;
 import io.dropwizard.auth.AuthDynamicFeature;
 import io.dropwizard.auth.AuthValueFactoryProvider;
-import io.dropwizard.auth.oauth.OAuthCredentialAuthFilter;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import io.federecio.dropwizard.swagger.SwaggerBundle;
 import io.federecio.dropwizard.swagger.SwaggerBundleConfiguration;
 import uk.org.gtc.api.health.BasicHealthCheck;
+import uk.org.gtc.api.health.DependencyHealthCheck;
 import uk.org.gtc.api.health.MongoHealthCheck;
 import uk.org.gtc.api.health.SendGridHealthCheck;
 import uk.org.gtc.api.jobs.Auth0SyncJob;
 import uk.org.gtc.api.jobs.MailchimpSyncJob;
 import uk.org.gtc.api.resource.ApiResource;
+import uk.org.gtc.api.resource.MailchimpWebhookResource;
 import uk.org.gtc.api.resource.MemberResource;
 import uk.org.gtc.api.resource.UserResource;
 
@@ -73,8 +76,28 @@ public class GtcApplication extends Application<GtcConfiguration>
     public void run(final GtcConfiguration configuration, final Environment environment) throws UnknownHostException, Auth0Exception
     {
         GtcConfiguration.setInstance(configuration);
+        ObjectMapperFactory.setInstance(environment.getObjectMapper());
         final MongoClient mongo = MongoFactory.getInstance();
         environment.lifecycle().manage(new MongoManaged());
+        environment.lifecycle().manage(new IndexManager(Arrays.asList(MemberServiceFactory.getInstance(),
+                ImportJobServiceFactory.getInstance(), TombstoneServiceFactory.getInstance(), MailchimpBatchServiceFactory.getInstance(),
+                SyncFingerprintServiceFactory.getInstance(), JobWatermarkServiceFactory.getInstance(),
+                EmailOutboxServiceFactory.getInstance()), configuration.createIndexes));
+        environment.lifecycle().manage(ImportJobRunnerFactory.getInstance());
+        MailchimpClientManagerFactory.setInstance(new MailchimpClientManager(configuration,
+                DependencyGuardFactory.getInstance(DependencyGuardFactory.MAILCHIMP), environment.metrics()));
+        environment.lifecycle().manage(MailchimpClientManagerFactory.getInstance());
+        IntegrationExecutorFactory.setInstance(new IntegrationExecutor(configuration.integrationThreads, configuration.integrationQueueSize,
+                configuration.integrationTimeoutSeconds, environment.metrics()));
+        environment.lifecycle().manage(IntegrationExecutorFactory.getInstance());
+        environment.lifecycle().manage(MailchimpBatcherFactory.getInstance());
+        environment.lifecycle().manage(EmailDispatcherFactory.getInstance());
+        MemberServiceFactory.getInstance().registerCacheMetrics(environment.metrics());
+        MailchimpStatusCacheFactory.getInstance().registerMetrics(environment.metrics());
+        // Always run, as the member search index must see changes made by
+        // other instances whether or not the member cache is enabled
+        environment.lifecycle().manage(new ChangeFeedPoller(Collections.singletonList(MemberServiceFactory.getInstance()),
+                TombstoneServiceFactory.getInstance(), configuration.changeFeedPollSeconds, configuration.changeFeedOverlapSeconds));
         
         // CORS configuration
         final FilterRegistration.Dynamic corsFilter = environment.servlets().addFilter("CORS", CrossOriginFilter.class);
@@ -107,14 +130,22 @@ public class GtcApplication extends Application<GtcConfiguration>
         environment.healthChecks().register("basic", new BasicHealthCheck());
         environment.healthChecks().register("mongo", new MongoHealthCheck(mongo));
         environment.healthChecks().register("sendgrid", new SendGridHealthCheck(sendgrid));
+        for (final String dependency : Arrays.asList(DependencyGuardFactory.AUTH0, DependencyGuardFactory.MAILCHIMP,
+                DependencyGuardFactory.SENDGRID))
+        {
+            final DependencyGuard guard = DependencyGuardFactory.getInstance(dependency);
+            guard.registerMetrics(environment.metrics());
+            environment.healthChecks().register(dependency + "-circuit", new DependencyHealthCheck(guard));
+        }
         
         // Resource registration
         environment.jersey().register(new ApiResource());
         environment.jersey().register(new MemberResource());
         environment.jersey().register(new UserResource());
+        environment.jersey().register(new MailchimpWebhookResource());
         
         // Authentication
-        final OAuthCredentialAuthFilter.Builder<Auth0User> authFilter = new OAuthCredentialAuthFilter.Builder<>();
+        final JWTAuthFilter.Builder authFilter = new JWTAuthFilter.Builder();
         final GtcAuthenticator gtcAuthenticator = new GtcAuthenticator(logger(), configuration);
         final GtcAuthoriser gtcAuthoriser = new GtcAuthoriser();
         final String tokenPrefix = "Bearer";
@@ -1,10 +1,16 @@
 package uk.org.gtc.api;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,42 +18,83 @@ import org.slf4j.LoggerFactory;
 import com.auth0.Auth0User;
 import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.JWTVerifyException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.mashape.unirest.http.HttpResponse;
 import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
 
 import io.dropwizard.auth.AuthenticationException;
 import io.dropwizard.auth.Authenticator;
 import us.monoid.json.JSONException;
 import us.monoid.json.JSONObject;
 
-public class GtcAuthenticator implements Authenticator<String, Auth0User>
+public class GtcAuthenticator implements Authenticator<JWTCredentials, Auth0User>
 {
+    /**
+     * An authenticated user, along with the time at which the token that
+     * authenticated them stops being valid.
+     */
+    private static class CachedPrincipal
+    {
+        private final Auth0User user;
+        private final long expiresAt;
+        
+        CachedPrincipal(final Auth0User user, final long expiresAt)
+        {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+        
+        boolean isExpired()
+        {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+    
     private final Logger logger;
     
     private final JWTVerifier jwtVerifier;
     
     private final GtcConfiguration configuration;
     
+    private final Cache<String, CachedPrincipal> principals;
+    
     public GtcAuthenticator(final Logger logger, final GtcConfiguration configuration)
     {
         this.logger = logger;
         this.configuration = configuration;
         this.jwtVerifier = new JWTVerifier(configuration.auth0OfficeApiKey, configuration.auth0OfficeApiId);
+        this.principals = CacheBuilder.newBuilder().maximumSize(configuration.authCacheSize)
+                .expireAfterWrite(configuration.authCacheSeconds, TimeUnit.SECONDS).build();
     }
     
     @Override
-    public Optional<Auth0User> authenticate(final String token) throws AuthenticationException
+    public Optional<Auth0User> authenticate(final JWTCredentials credentials) throws AuthenticationException
     {
-        JSONObject userJson = null;
+        final String token = credentials.getToken();
+        // Only a hash of the token is kept, so the cache holds no credentials
+        final String tokenHash = Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+        final CachedPrincipal cached = principals.getIfPresent(tokenHash);
+        if (!UtilityHelper.isNull(cached))
+        {
+            if (!cached.isExpired())
+            {
+                return Optional.of(cached.user);
+            }
+            principals.invalidate(tokenHash);
+        }
+        
+        Map<String, Object> claims = null;
         Auth0User user = null;
         try
         {
-            jwtVerifier.verify(token);
-            userJson = new JSONObject(Unirest.post(configuration.auth0TokenUrl).field("id_token", token).asString().getBody());
-            user = new Auth0User(userJson);
+            // Only verify the token if JWTFilter has not already done so
+            claims = UtilityHelper.isNull(credentials.getClaims()) ? jwtVerifier.verify(token) : credentials.getClaims();
+            user = configuration.auth0UserFromToken ? userFromClaims(claims) : fetchUser(token);
         }
         catch (InvalidKeyException | NoSuchAlgorithmException | IllegalStateException | SignatureException | IOException
-                | JWTVerifyException | UnirestException | JSONException e)
+                | JWTVerifyException | JSONException e)
         {
             throw new AuthenticationException("Could not authenticate", e);
         }
@@ -59,13 +106,72 @@ public class GtcAuthenticator implements Authenticator<String, Auth0User>
         else
         {
             logger.debug("Authenticated " + user.getEmail() + " (" + user.getUserId() + ")");
+            principals.put(tokenHash, new CachedPrincipal(user, expiresAt(claims)));
         }
         
         return Optional.of(user);
     }
     
+    /**
+     * A cached user must not outlive the token that authenticated them.
+     */
+    private long expiresAt(final Map<String, Object> claims)
+    {
+        final long cacheExpiry = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(configuration.authCacheSeconds);
+        final Object exp = claims.get("exp");
+        if (exp instanceof Number)
+        {
+            return Math.min(cacheExpiry, TimeUnit.SECONDS.toMillis(((Number) exp).longValue()));
+        }
+        return cacheExpiry;
+    }
+    
+    /**
+     * Ask Auth0 for the profile of the user holding a token. The call is made
+     * on the non-blocking HTTP client, and the request waits on it only for a
+     * bounded time, so a slow Auth0 cannot hold the request threads.
+     */
+    private GtcUser fetchUser(final String token) throws AuthenticationException, JSONException
+    {
+        final Future<HttpResponse<String>> profile = Unirest.post(configuration.auth0TokenUrl).field("id_token", token).asStringAsync();
+        try
+        {
+            return new GtcUser(new JSONObject(profile.get(configuration.auth0ProfileTimeoutMillis, TimeUnit.MILLISECONDS).getBody()));
+        }
+        catch (final TimeoutException te)
+        {
+            profile.cancel(true);
+            throw new AuthenticationException("Timed out fetching the user profile from Auth0", te);
+        }
+        catch (final ExecutionException ee)
+        {
+            throw new AuthenticationException("Could not fetch the user profile from Auth0", ee.getCause());
+        }
+        catch (final InterruptedException ie)
+        {
+            profile.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationException("Interrupted fetching the user profile from Auth0", ie);
+        }
+    }
+    
     Logger logger()
     {
         return LoggerFactory.getLogger(GtcAuthenticator.class);
     }
+    
+    /**
+     * Build the user from the claims of a verified token, rather than asking
+     * Auth0 for the profile. The token must carry the claims the application
+     * reads, such as email and app_metadata.
+     */
+    private GtcUser userFromClaims(final Map<String, Object> claims) throws IOException, JSONException
+    {
+        final JSONObject userJson = new JSONObject(ObjectMapperFactory.getInstance().writeValueAsString(claims));
+        if (!userJson.has("user_id") && userJson.has("sub"))
+        {
+            userJson.put("user_id", userJson.get("sub"));
+        }
+        return new GtcUser(userJson);
+    }
 }
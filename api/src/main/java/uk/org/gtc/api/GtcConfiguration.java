@@ -55,6 +55,30 @@ public class GtcConfiguration extends Configuration implements JobConfiguration
     @NotEmpty
     public String sendgridApiKey;
     
+    @JsonProperty
+    @Min(1)
+    public int sendgridMaxConcurrentCalls = 4;
+    
+    @JsonProperty
+    @Min(1)
+    public int sendgridTimeoutMillis = 10000;
+    
+    @JsonProperty
+    @Min(1)
+    public int emailBatchSize = 1000;
+    
+    @JsonProperty
+    @Min(1)
+    public int emailMaxAttempts = 5;
+    
+    @JsonProperty
+    @Min(1)
+    public long emailBackoffSeconds = 60;
+    
+    @JsonProperty
+    @Min(1)
+    public long emailPollSeconds = 10;
+    
     @JsonProperty
     @NotEmpty
     public String auth0OfficeApiId;
@@ -83,6 +107,49 @@ public class GtcConfiguration extends Configuration implements JobConfiguration
     @NotEmpty
     public String auth0TokenUrl;
     
+    @JsonProperty
+    public boolean auth0UserFromToken = false;
+    
+    @JsonProperty
+    @Min(0)
+    public long authCacheSize = 10000;
+    
+    @JsonProperty
+    @Min(1)
+    public long authCacheSeconds = 600;
+    
+    @JsonProperty
+    @Min(1)
+    public long auth0ProfileTimeoutMillis = 5000;
+    
+    @JsonProperty
+    @Min(1)
+    public int auth0PageConcurrency = 4;
+    
+    @JsonProperty
+    @Min(1)
+    public int auth0UpdateConcurrency = 4;
+    
+    @JsonProperty
+    @Min(0)
+    public int auth0MaxRetries = 5;
+    
+    @JsonProperty
+    @Min(1)
+    public long auth0BackoffMillis = 1000;
+    
+    @JsonProperty
+    @Min(1)
+    public int auth0MaxConcurrentCalls = 8;
+    
+    @JsonProperty
+    @Min(1)
+    public long jobFullSyncMinutes = 60;
+    
+    @JsonProperty
+    @Min(0)
+    public long jobWatermarkOverlapSeconds = 60;
+    
     @JsonProperty
     @NotEmpty
     public String mailchimpApiKey;
@@ -91,6 +158,122 @@ public class GtcConfiguration extends Configuration implements JobConfiguration
     @NotEmpty
     public String mailchimpListId;
     
+    @JsonProperty
+    @Min(1)
+    @Max(1000)
+    public int mailchimpPageSize = 500;
+    
+    @JsonProperty
+    @Min(0)
+    public int mailchimpLookupMax = 50;
+    
+    @JsonProperty
+    @Min(1)
+    public int mailchimpBatchSize = 500;
+    
+    @JsonProperty
+    @Min(1)
+    public int mailchimpMaxAttempts = 3;
+    
+    @JsonProperty
+    @Min(1)
+    public long mailchimpBatchPollSeconds = 30;
+    
+    @JsonProperty
+    @Min(1)
+    public int mailchimpMaxConnections = 10;
+    
+    @JsonProperty
+    @Min(1)
+    public int mailchimpConnectTimeoutMillis = 5000;
+    
+    @JsonProperty
+    @Min(1)
+    public int mailchimpReadTimeoutMillis = 30000;
+    
+    @JsonProperty
+    @Min(1)
+    public long mailchimpKeepAliveSeconds = 60;
+    
+    @JsonProperty
+    @Min(1)
+    public int mailchimpMaxConcurrentCalls = 10;
+    
+    @JsonProperty
+    @Min(0)
+    public long mailchimpStatusCacheSize = 10000;
+    
+    /**
+     * Webhook calls and subscription changes only update the cache of the
+     * instance that handles them, so this bounds how long other instances
+     * can give an out of date status.
+     */
+    @JsonProperty
+    @Min(1)
+    public long mailchimpStatusCacheSeconds = 300;
+    
+    /**
+     * Passed by Mailchimp in the query string of webhook calls. Webhook calls
+     * are refused while it is not set.
+     */
+    @JsonProperty
+    public String mailchimpWebhookSecret;
+    
+    @JsonProperty
+    @Min(1)
+    public int importBatchSize = 500;
+    
+    @JsonProperty
+    @Min(1)
+    public long importLeaseSeconds = 60;
+    
+    @JsonProperty
+    public boolean createIndexes = true;
+    
+    @JsonProperty
+    @Min(1)
+    public int integrationThreads = 16;
+    
+    @JsonProperty
+    @Min(1)
+    public int integrationQueueSize = 100;
+    
+    @JsonProperty
+    @Min(1)
+    public long integrationTimeoutSeconds = 30;
+    
+    @JsonProperty
+    @Min(0)
+    public long dependencyWaitMillis = 500;
+    
+    @JsonProperty
+    @Min(1)
+    public int circuitFailureThreshold = 5;
+    
+    @JsonProperty
+    @Min(1)
+    public long circuitOpenSeconds = 30;
+    
+    @JsonProperty
+    @Min(0)
+    public long memberCacheSize = 1000;
+    
+    @JsonProperty
+    @Min(1)
+    public long memberCacheSeconds = 60;
+    
+    @JsonProperty
+    @Min(1)
+    public long changeFeedPollSeconds = 5;
+    
+    @JsonProperty
+    @Min(0)
+    public long changeFeedOverlapSeconds = 10;
+    
+    @JsonProperty
+    @Min(1)
+    public int memberNumberBlockSize = 1;
+    
     @JsonProperty("swagger")
     public SwaggerBundleConfiguration swaggerBundleConfiguration;
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+package uk.org.gtc.api;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.auth0.Auth0User;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+
+import uk.org.gtc.api.domain.ApplicationRole;
+import uk.org.gtc.api.domain.UserAppMetadata;
+import us.monoid.json.JSONObject;
+
+/**
+ * An {@link Auth0User} whose roles are read from its app metadata once, when
+ * it is authenticated, rather than on every authorisation check.
+ */
+public class GtcUser extends Auth0User
+{
+    private final Set<ApplicationRole> roles;
+    
+    public GtcUser(final JSONObject json)
+    {
+        super(json);
+        this.roles = Collections.unmodifiableSet(parseRoles(json.optJSONObject("app_metadata")));
+    }
+    
+    /**
+     * @return the user's roles
+     */
+    public Set<ApplicationRole> getRoles()
+    {
+        return roles;
+    }
+    
+    /**
+     * @param role
+     *            - the role to check
+     * @return true if the user has the role, or is an administrator
+     */
+    public boolean hasRole(final ApplicationRole role)
+    {
+        return roles.contains(role) || roles.contains(ApplicationRole.ADMIN);
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(GtcUser.class);
+    }
+    
+    /**
+     * Read the roles out of a user's app metadata.
+     *
+     * @param appMetadata
+     *            - the app metadata, which may be null
+     * @return the user's roles
+     */
+    private Set<ApplicationRole> parseRoles(final JSONObject appMetadata)
+    {
+        final EnumSet<ApplicationRole> roles = EnumSet.noneOf(ApplicationRole.class);
+        if (UtilityHelper.isNull(appMetadata))
+        {
+            return roles;
+        }
+        try
+        {
+            // As strict as a plain ObjectMapper, so that metadata which is not
+            // as expected grants no roles
+            final UserAppMetadata uam = ObjectMapperFactory.getInstance().readerFor(UserAppMetadata.class)
+                    .with(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES).readValue(appMetadata.toString());
+            if (!UtilityHelper.isNull(uam.getRoles()))
+            {
+                roles.addAll(uam.getRoles());
+            }
+        }
+        catch (final IOException ioe)
+        {
+            logger().debug("Couldn't read user's app metadata", ioe);
+        }
+        return roles;
+    }
+}
@@ -0,0 +1,216 @@
+package uk.org.gtc.api;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.dropwizard.lifecycle.Managed;
+import uk.org.gtc.api.domain.CsvMember;
+import uk.org.gtc.api.domain.ImportDiff;
+import uk.org.gtc.api.domain.ImportJobDO;
+import uk.org.gtc.api.service.ImportJobService;
+import uk.org.gtc.api.service.MemberImporter;
+import uk.org.gtc.api.service.MemberService;
+
+/**
+ * Runs membership imports one at a time on a background thread, so that an
+ * upload only has to parse the file before returning. Progress is written to
+ * the job in the database after every batch, where it can be polled.
+ * <p>
+ * The rows of an import are only held in memory, so a job cannot be picked
+ * up by another instance. Each job is owned by the instance it was uploaded
+ * to, which renews a lease on it while it is unfinished. Once an instance
+ * stops, the lease on its jobs runs out and any instance marks them as
+ * failed. An instance whose job was marked as failed stops working on it.
+ */
+public class ImportJobRunner implements Managed
+{
+    /**
+     * Thrown to stop an import whose job is no longer held by this instance.
+     */
+    private static class JobLostException extends RuntimeException
+    {
+        private static final long serialVersionUID = 2968440318163702753L;
+        
+        JobLostException(final String id)
+        {
+            super("Import job " + id + " is no longer held by this instance");
+        }
+    }
+    
+    private final ImportJobService importJobService;
+    
+    private final MemberService memberService;
+    
+    private final EmailService emailService;
+    
+    private final int batchSize;
+    
+    private final long leaseMillis;
+    
+    /**
+     * Identifies this instance as the owner of the jobs it runs.
+     */
+    private final String owner = UUID.randomUUID().toString();
+    
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "member-import"));
+    
+    private final ScheduledExecutorService leases = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "member-import-leases"));
+    
+    /**
+     * @param importJobService
+     *            - where jobs are stored
+     * @param memberService
+     *            - where members are imported to
+     * @param emailService
+     *            - used to tell the office about the changes an import made
+     * @param batchSize
+     *            - the most members written in one request
+     * @param leaseSeconds
+     *            - how long a job is held without its lease being renewed
+     */
+    public ImportJobRunner(final ImportJobService importJobService, final MemberService memberService, final EmailService emailService,
+            final int batchSize, final long leaseSeconds)
+    {
+        this.importJobService = importJobService;
+        this.memberService = memberService;
+        this.emailService = emailService;
+        this.batchSize = batchSize;
+        this.leaseMillis = TimeUnit.SECONDS.toMillis(leaseSeconds);
+    }
+    
+    private Date leaseExpiresDate()
+    {
+        return new Date(System.currentTimeMillis() + leaseMillis);
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(ImportJobRunner.class);
+    }
+    
+    /**
+     * Renew the leases on this instance's jobs, and fail the jobs of
+     * instances that have stopped.
+     */
+    void maintainLeases()
+    {
+        try
+        {
+            importJobService.renewLeases(owner, leaseExpiresDate());
+            final int abandoned = importJobService.failAbandonedJobs();
+            if (abandoned > 0)
+            {
+                logger().warn("Marked {} abandoned import jobs as failed", abandoned);
+            }
+        }
+        catch (final RuntimeException e)
+        {
+            // Anything thrown would stop the renewals, so try again next time
+            logger().error("Could not renew import job leases", e);
+        }
+    }
+    
+    private void progress(final String id, final int rowsProcessed, final ImportDiff diffs)
+    {
+        if (!importJobService.progress(id, owner, rowsProcessed, diffs, leaseExpiresDate()))
+        {
+            throw new JobLostException(id);
+        }
+    }
+    
+    void run(final ImportJobDO job, final List<CsvMember> csvMembers)
+    {
+        final String id = job.getId();
+        logger().info("Starting import job {} of {} rows", id, csvMembers.size());
+        try
+        {
+            final ImportDiff diffs = new ImportDiff();
+            diffs.setCreatedSet(new HashSet<>());
+            diffs.setUpdatedSet(new HashSet<>());
+            diffs.setDeletedSet(new HashSet<>());
+            diffs.setErrorSet(new HashSet<>());
+            diffs.setImportedSet(new HashSet<>());
+            diffs.setExistingSet(new HashSet<>());
+            progress(id, 0, diffs);
+            
+            final MemberImporter importer = new MemberImporter(memberService, batchSize);
+            importer.importMembers(csvMembers, diffs, rowsProcessed -> progress(id, rowsProcessed, diffs));
+            if (job.getOverwrite())
+            {
+                importer.deleteMissingMembers(diffs);
+            }
+            if (!importJobService.complete(id, owner, diffs))
+            {
+                throw new JobLostException(id);
+            }
+            logger().info("Finished import job {}", id);
+            
+            if (!diffs.resultedInChange())
+            {
+                logger().info("Skipping import notification email as no changes detected");
+            }
+            else if (!emailService.sendImportNotificationEmail(diffs))
+            {
+                logger().warn("Not successful sending update email. Continuing...");
+            }
+        }
+        catch (final JobLostException jle)
+        {
+            logger().warn("{}, so it was stopped", jle.getMessage());
+        }
+        catch (final RuntimeException e)
+        {
+            logger().error("Import job {} failed", id, e);
+            importJobService.fail(id, owner, e.getMessage());
+        }
+    }
+    
+    @Override
+    public void start() throws Exception
+    {
+        // Renewed several times per lease, so that one slow renewal does not
+        // let a lease run out
+        final long renewMillis = Math.max(1, leaseMillis / 3);
+        leases.scheduleWithFixedDelay(this::maintainLeases, 0, renewMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    public void stop() throws Exception
+    {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS))
+        {
+            logger().warn("Import still running at shutdown");
+            executor.shutdownNow();
+        }
+        leases.shutdownNow();
+    }
+    
+    /**
+     * Queue an import to run in the background.
+     *
+     * @param csvMembers
+     *            - the parsed rows of the import
+     * @param overwrite
+     *            - whether members missing from the import should be deleted
+     * @return the queued job
+     */
+    public ImportJobDO submit(final List<CsvMember> csvMembers, final Boolean overwrite)
+    {
+        final ImportJobDO newJob = new ImportJobDO(Boolean.TRUE.equals(overwrite), csvMembers.size());
+        newJob.setOwner(owner);
+        newJob.setLeaseExpiresDate(leaseExpiresDate());
+        final ImportJobDO job = importJobService.create(newJob);
+        executor.execute(() -> run(job, csvMembers));
+        return job;
+    }
+}
@@ -0,0 +1,23 @@
+package uk.org.gtc.api;
+
+public class ImportJobRunnerFactory
+{
+    private static ImportJobRunner instance;
+    
+    public static void setInstance(final ImportJobRunner instance)
+    {
+        ImportJobRunnerFactory.instance = instance;
+    }
+    
+    public static ImportJobRunner getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new ImportJobRunner(ImportJobServiceFactory.getInstance(), MemberServiceFactory.getInstance(),
+                    EmailServiceFactory.getInstance(), GtcConfiguration.getInstance().importBatchSize,
+                    GtcConfiguration.getInstance().importLeaseSeconds);
+        }
+        
+        return instance;
+    }
+}
@@ -0,0 +1,30 @@
+package uk.org.gtc.api;
+
+import org.mongojack.JacksonDBCollection;
+
+import com.mongodb.DB;
+
+import uk.org.gtc.api.domain.ImportJobDO;
+import uk.org.gtc.api.service.ImportJobService;
+
+public class ImportJobServiceFactory
+{
+    private static ImportJobService instance;
+    
+    public static void setInstance(final ImportJobService instance)
+    {
+        ImportJobServiceFactory.instance = instance;
+    }
+    
+    public static ImportJobService getInstance()
+    {
+        if (instance == null)
+        {
+            final DB db = DBFactory.getInstance();
+            instance = new ImportJobService(JacksonDBCollection.wrap(db.getCollection("importJobs"), ImportJobDO.class,
+                    String.class));
+        }
+        
+        return instance;
+    }
+}
@@ -0,0 +1,176 @@
+package uk.org.gtc.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.AggregationOptions;
+import com.mongodb.BasicDBObject;
+import com.mongodb.Cursor;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+import io.dropwizard.lifecycle.Managed;
+import uk.org.gtc.api.service.GenericService;
+import uk.org.gtc.api.service.IndexDefinition;
+
+/**
+ * Makes sure every index declared by a service exists before the application
+ * starts taking requests, and reports indexes that are missing, undeclared or
+ * have never been used.
+ * <p>
+ * An index that cannot be built, for example a unique index over data that
+ * already holds duplicates, is logged and does not stop the application from
+ * starting. So is an existing index over the same keys as a declared one but
+ * with different options, such as a plain index where a unique one is
+ * declared.
+ */
+public class IndexManager implements Managed
+{
+    private static final String ID_INDEX = "_id_";
+    
+    private final List<GenericService<?>> services;
+    
+    private final boolean createIndexes;
+    
+    /**
+     * @param services
+     *            - the services whose indexes to manage
+     * @param createIndexes
+     *            - whether to build missing indexes, rather than only report
+     *            them
+     */
+    public IndexManager(final List<GenericService<?>> services, final boolean createIndexes)
+    {
+        this.services = services;
+        this.createIndexes = createIndexes;
+    }
+    
+    /**
+     * Build any of a service's declared indexes that do not yet exist.
+     *
+     * @param service
+     *            - the service to build indexes for
+     * @return the declared indexes that are still missing
+     */
+    List<IndexDefinition> ensureIndexes(final GenericService<?> service)
+    {
+        final DBCollection collection = service.getDbCollection();
+        final List<DBObject> existing = collection.getIndexInfo();
+        final List<IndexDefinition> missing = new ArrayList<>();
+        for (final IndexDefinition index : service.getIndexDefinitions())
+        {
+            final List<DBObject> sameKeys = existing.stream().filter(info -> index.hasKeys((DBObject) info.get("key")))
+                    .collect(Collectors.toList());
+            if (sameKeys.stream().anyMatch(index::hasOptions))
+            {
+                continue;
+            }
+            if (!sameKeys.isEmpty())
+            {
+                // The server will not build a second index over the same keys
+                // that differs only in whether it is unique, so this needs a
+                // person to drop the existing index first
+                logger().warn("Index {} on {} exists as {} with different options to {}, so needs rebuilding", index,
+                        collection.getName(), sameKeys.get(0).get("name"), index.getOptions());
+                missing.add(index);
+                continue;
+            }
+            if (!createIndexes)
+            {
+                logger().warn("Index {} on {} is missing", index, collection.getName());
+                missing.add(index);
+                continue;
+            }
+            try
+            {
+                final long start = System.currentTimeMillis();
+                collection.createIndex(index.getKeys(), index.getOptions());
+                logger().info("Created index {} on {} in {}ms", index, collection.getName(), System.currentTimeMillis() - start);
+            }
+            catch (final MongoException me)
+            {
+                logger().error("Could not create index {} on {}: {}", index, collection.getName(), me.getMessage());
+                missing.add(index);
+            }
+        }
+        
+        for (final DBObject info : existing)
+        {
+            final String name = (String) info.get("name");
+            if (!ID_INDEX.equals(name)
+                    && service.getIndexDefinitions().stream().noneMatch(index -> index.hasKeys((DBObject) info.get("key"))))
+            {
+                logger().warn("Index {} on {} is not declared by {}, so may no longer be needed", name, collection.getName(),
+                        service.getClass().getSimpleName());
+            }
+        }
+        return missing;
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(IndexManager.class);
+    }
+    
+    /**
+     * Report the indexes on a collection that have not served a query since
+     * the server started. The counts are kept per server, so this is only a
+     * hint on a replica set.
+     *
+     * @param collection
+     *            - the collection to check
+     * @return the names of the unused indexes
+     */
+    List<String> reportUnusedIndexes(final DBCollection collection)
+    {
+        final List<String> unused = new ArrayList<>();
+        try (final Cursor stats = collection.aggregate(Collections.singletonList(new BasicDBObject("$indexStats", new BasicDBObject())),
+                AggregationOptions.builder().build()))
+        {
+            while (stats.hasNext())
+            {
+                final DBObject stat = stats.next();
+                final DBObject accesses = (DBObject) stat.get("accesses");
+                final String name = (String) stat.get("name");
+                if (!ID_INDEX.equals(name) && !UtilityHelper.isNull(accesses) && ((Number) accesses.get("ops")).longValue() == 0)
+                {
+                    logger().info("Index {} on {} has not been used since {}", name, collection.getName(), accesses.get("since"));
+                    unused.add(name);
+                }
+            }
+        }
+        catch (final MongoException me)
+        {
+            // Older servers, and users without the indexStats privilege
+            logger().debug("Could not read index usage for {}: {}", collection.getName(), me.getMessage());
+        }
+        return unused;
+    }
+    
+    @Override
+    public void start() throws Exception
+    {
+        for (final GenericService<?> service : services)
+        {
+            final List<IndexDefinition> missing = ensureIndexes(service);
+            if (!missing.isEmpty())
+            {
+                logger().warn("{} queries on {} will scan the collection until these indexes exist: {}", missing.size(),
+                        service.getDbCollection().getName(), missing);
+            }
+            reportUnusedIndexes(service.getDbCollection());
+        }
+    }
+    
+    @Override
+    public void stop() throws Exception
+    {
+        // nothing to release
+    }
+}
@@ -0,0 +1,124 @@
+package uk.org.gtc.api;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Makes calls to third parties, such as Mailchimp, on a small pool of its own
+ * threads, so that requests waiting on a slow third party suspend rather than
+ * hold on to a Jetty worker thread. The pool and its queue are bounded: once
+ * both are full, further requests are turned away at once with a 503 rather
+ * than queueing without limit, and a request that is not answered in time is
+ * ended with a 503 too.
+ */
+public class IntegrationExecutor implements Managed
+{
+    private final ThreadPoolExecutor executor;
+    
+    private final long timeoutSeconds;
+    
+    private final Meter rejected;
+    
+    /**
+     * @param threads
+     *            - the most calls to make at once
+     * @param queueSize
+     *            - the most calls to hold while all the threads are busy
+     * @param timeoutSeconds
+     *            - how long a suspended request may wait for its call
+     * @param metrics
+     *            - where to publish the state of the pool
+     */
+    public IntegrationExecutor(final int threads, final int queueSize, final long timeoutSeconds, final MetricRegistry metrics)
+    {
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
+                r -> new Thread(r, "integration-" + count.incrementAndGet()));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timeoutSeconds = timeoutSeconds;
+        
+        final String name = MetricRegistry.name(IntegrationExecutor.class);
+        this.rejected = metrics.meter(MetricRegistry.name(name, "rejected"));
+        metrics.register(MetricRegistry.name(name, "active"), (Gauge<Integer>) executor::getActiveCount);
+        metrics.register(MetricRegistry.name(name, "queued"), (Gauge<Integer>) () -> executor.getQueue().size());
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(IntegrationExecutor.class);
+    }
+    
+    /**
+     * Make a call on the integration threads, and resume a suspended request
+     * with its result. Anything the call throws is passed to the request, to
+     * be mapped to a response as if the resource method had thrown it.
+     *
+     * @param response
+     *            - the suspended request
+     * @param call
+     *            - the call whose result is the response entity
+     */
+    public void resume(final AsyncResponse response, final Callable<?> call)
+    {
+        response.setTimeoutHandler(r -> r.resume(unavailable("Timed out waiting for a third party service")));
+        response.setTimeout(timeoutSeconds, TimeUnit.SECONDS);
+        try
+        {
+            executor.execute(() -> {
+                try
+                {
+                    response.resume(call.call());
+                }
+                catch (final Exception e)
+                {
+                    response.resume(e);
+                }
+            });
+        }
+        catch (final RejectedExecutionException ree)
+        {
+            rejected.mark();
+            logger().warn("Too many calls to third party services waiting, turning a request away");
+            response.resume(unavailable("Too many requests are waiting on third party services"));
+        }
+    }
+    
+    @Override
+    public void start() throws Exception
+    {
+        // Threads are started as they are needed
+    }
+    
+    @Override
+    public void stop() throws Exception
+    {
+        executor.shutdown();
+        if (!executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS))
+        {
+            logger().warn("Calls to third party services still running at shutdown");
+            executor.shutdownNow();
+        }
+    }
+    
+    private static WebApplicationException unavailable(final String message)
+    {
+        return new WebApplicationException(message, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+}
@@ -0,0 +1,25 @@
+package uk.org.gtc.api;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class IntegrationExecutorFactory
+{
+    private static IntegrationExecutor instance;
+    
+    public static void setInstance(final IntegrationExecutor instance)
+    {
+        IntegrationExecutorFactory.instance = instance;
+    }
+    
+    public static IntegrationExecutor getInstance()
+    {
+        if (instance == null)
+        {
+            final GtcConfiguration configuration = GtcConfiguration.getInstance();
+            instance = new IntegrationExecutor(configuration.integrationThreads, configuration.integrationQueueSize,
+                    configuration.integrationTimeoutSeconds, new MetricRegistry());
+        }
+        
+        return instance;
+    }
+}
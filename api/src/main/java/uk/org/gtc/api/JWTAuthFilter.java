@@ -0,0 +1,59 @@
+package uk.org.gtc.api;
+
+import java.io.IOException;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.SecurityContext;
+
+import com.auth0.Auth0User;
+
+import io.dropwizard.auth.AuthFilter;
+import io.dropwizard.auth.oauth.OAuthCredentialAuthFilter;
+
+/**
+ * Reads the bearer token like {@link OAuthCredentialAuthFilter}, but also
+ * passes on the claims {@link JWTFilter} decoded when it verified the token,
+ * so that the token is only verified once per request.
+ */
+@Priority(Priorities.AUTHENTICATION)
+public class JWTAuthFilter extends AuthFilter<JWTCredentials, Auth0User>
+{
+    public static class Builder extends AuthFilterBuilder<JWTCredentials, Auth0User, JWTAuthFilter>
+    {
+        @Override
+        protected JWTAuthFilter newInstance()
+        {
+            return new JWTAuthFilter();
+        }
+    }
+    
+    private JWTAuthFilter()
+    {
+        // Use the builder
+    }
+    
+    @Override
+    public void filter(final ContainerRequestContext requestContext) throws IOException
+    {
+        String token = JWTFilter.getBearerToken(requestContext.getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+        if (UtilityHelper.isNull(token))
+        {
+            token = requestContext.getUriInfo().getQueryParameters().getFirst(OAuthCredentialAuthFilter.OAUTH_ACCESS_TOKEN_PARAM);
+        }
+        
+        // Reuse the claims if JWTFilter verified this same token
+        JWTCredentials credentials = (JWTCredentials) requestContext.getProperty(JWTFilter.CREDENTIALS_ATTRIBUTE);
+        if (UtilityHelper.isNull(credentials) || !credentials.getToken().equals(token))
+        {
+            credentials = UtilityHelper.isNull(token) ? null : new JWTCredentials(token, null);
+        }
+        if (!authenticate(requestContext, credentials, SecurityContext.BASIC_AUTH))
+        {
+            throw new WebApplicationException(unauthorizedHandler.buildResponse(prefix, realm));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package uk.org.gtc.api;
+
+import java.util.Map;
+
+/**
+ * A bearer token, along with its claims if {@link JWTFilter} has already
+ * verified it for this request.
+ */
+public class JWTCredentials
+{
+    private final String token;
+    
+    private final Map<String, Object> claims;
+    
+    public JWTCredentials(final String token, final Map<String, Object> claims)
+    {
+        this.token = token;
+        this.claims = claims;
+    }
+    
+    /**
+     * @return the verified claims, or null if the token has not been verified
+     */
+    public Map<String, Object> getClaims()
+    {
+        return claims;
+    }
+    
+    /**
+     * @return the token
+     */
+    public String getToken()
+    {
+        return token;
+    }
+}
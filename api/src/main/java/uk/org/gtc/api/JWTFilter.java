@@ -1,6 +1,7 @@
 package uk.org.gtc.api;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import javax.servlet.Filter;
@@ -21,6 +22,38 @@ import io.dropwizard.auth.AuthenticationException;
 @WebFilter(filterName = "jwt-filter")
 public class JWTFilter implements Filter
 {
+    /**
+     * Request attribute holding the {@link JWTCredentials} verified by this
+     * filter, so that {@link JWTAuthFilter} does not verify them again.
+     */
+    public static final String CREDENTIALS_ATTRIBUTE = JWTFilter.class.getName() + ".credentials";
+    
+    private static final Pattern BEARER = Pattern.compile("^Bearer$", Pattern.CASE_INSENSITIVE);
+    
+    /**
+     * Read the token from an authorization header.
+     *
+     * @param authorizationHeader
+     *            - the header, in the format 'Bearer [token]'
+     * @return the token, or null if the header is missing or not a bearer
+     *         token
+     */
+    public static String getBearerToken(final String authorizationHeader)
+    {
+        if (authorizationHeader == null)
+        {
+            return null;
+        }
+        
+        final String[] parts = authorizationHeader.split(" ");
+        if (parts.length != 2)
+        {
+            return null;
+        }
+        
+        return BEARER.matcher(parts[0]).matches() ? parts[1] : null;
+    }
+    
     private JWTVerifier jwtVerifier;
     
     private final GtcConfiguration configuration;
@@ -58,19 +91,23 @@ public class JWTFilter implements Filter
         catch (final AuthenticationException ae)
         {
             resp.sendError(Status.UNAUTHORIZED.getStatusCode(), ae.getMessage());
+            return;
         }
         
         // Valid token has been found, now carry out verification
+        final Map<String, Object> claims;
         try
         {
-            jwtVerifier.verify(token);
+            claims = jwtVerifier.verify(token);
         }
         catch (final Exception e)
         {
             resp.sendError(Status.UNAUTHORIZED.getStatusCode(),
                     "Token verification failed (" + e.getClass().getSimpleName() + "): " + e.getMessage());
+            return;
         }
         
+        req.setAttribute(CREDENTIALS_ATTRIBUTE, new JWTCredentials(token, claims));
         chain.doFilter(request, response);
     }
     
@@ -82,18 +119,12 @@ public class JWTFilter implements Filter
             throw new AuthenticationException("Unauthorized: No Authorization header was found");
         }
         
-        final String[] parts = authorizationHeader.split(" ");
-        if (parts.length != 2)
+        final String token = getBearerToken(authorizationHeader);
+        if (token == null)
         {
             throw new AuthenticationException("Unauthorized: Format is Authorization: Bearer [token]");
         }
-        
-        final String scheme = parts[0];
-        final String credentials = parts[1];
-        
-        final Pattern pattern = Pattern.compile("^Bearer$", Pattern.CASE_INSENSITIVE);
-        
-        return pattern.matcher(scheme).matches() ? credentials : null;
+        return token;
     }
     
     @Override
@@ -102,4 +133,4 @@ public class JWTFilter implements Filter
         jwtVerifier = new JWTVerifier(configuration.auth0OfficeApiKey, configuration.auth0OfficeApiId);
     }
     
-}
\ No newline at end of file
+}
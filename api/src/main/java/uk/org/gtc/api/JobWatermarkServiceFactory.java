@@ -0,0 +1,30 @@
+package uk.org.gtc.api;
+
+import org.mongojack.JacksonDBCollection;
+
+import com.mongodb.DB;
+
+import uk.org.gtc.api.domain.JobWatermarkDO;
+import uk.org.gtc.api.service.JobWatermarkService;
+
+public class JobWatermarkServiceFactory
+{
+    private static JobWatermarkService instance;
+    
+    public static void setInstance(final JobWatermarkService instance)
+    {
+        JobWatermarkServiceFactory.instance = instance;
+    }
+    
+    public static JobWatermarkService getInstance()
+    {
+        if (instance == null)
+        {
+            final DB db = DBFactory.getInstance();
+            instance = new JobWatermarkService(JacksonDBCollection.wrap(db.getCollection("jobWatermarks"), JobWatermarkDO.class,
+                    String.class));
+        }
+        
+        return instance;
+    }
+}
@@ -0,0 +1,127 @@
+package uk.org.gtc.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads the responses to a finished Mailchimp batch. Mailchimp publishes
+ * them as a gzipped tar of JSON files, each holding an array of
+ * <code>{"status_code", "operation_id", "response"}</code> objects.
+ */
+public class MailchimpBatchResults
+{
+    /**
+     * The response to one operation.
+     */
+    public static class Result
+    {
+        private final int statusCode;
+        
+        private final String response;
+        
+        Result(final int statusCode, final String response)
+        {
+            this.statusCode = statusCode;
+            this.response = response;
+        }
+        
+        /**
+         * @return the body Mailchimp responded with
+         */
+        public String getResponse()
+        {
+            return response;
+        }
+        
+        /**
+         * @return the HTTP status Mailchimp responded with
+         */
+        public int getStatusCode()
+        {
+            return statusCode;
+        }
+    }
+    
+    private static final int TAR_BLOCK = 512;
+    
+    private MailchimpBatchResults()
+    {
+    }
+    
+    private static String field(final byte[] header, final int offset, final int length)
+    {
+        int end = offset;
+        while (end < offset + length && header[end] != 0)
+        {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.US_ASCII).trim();
+    }
+    
+    /**
+     * Read the responses to a batch.
+     *
+     * @param gzippedTar
+     *            - the response body archive, as published by Mailchimp
+     * @param mapper
+     *            - reads the JSON files in the archive
+     * @return each response, by operation ID
+     * @throws IOException
+     *             if the archive could not be read
+     */
+    public static Map<String, Result> read(final InputStream gzippedTar, final ObjectMapper mapper) throws IOException
+    {
+        final Map<String, Result> results = new HashMap<>();
+        final DataInputStream tar = new DataInputStream(new GZIPInputStream(gzippedTar));
+        final byte[] header = new byte[TAR_BLOCK];
+        while (true)
+        {
+            try
+            {
+                tar.readFully(header);
+            }
+            catch (final EOFException e)
+            {
+                break;
+            }
+            final String name = field(header, 0, 100);
+            if (name.isEmpty())
+            {
+                // Two empty blocks end the archive
+                break;
+            }
+            final String size = field(header, 124, 12);
+            final int length = size.isEmpty() ? 0 : Integer.parseInt(size, 8);
+            final byte[] content = new byte[length];
+            tar.readFully(content);
+            tar.skipBytes((TAR_BLOCK - length % TAR_BLOCK) % TAR_BLOCK);
+            
+            // Regular files only; directories hold nothing
+            final byte type = header[156];
+            if ((type == '0' || type == 0) && name.endsWith(".json"))
+            {
+                final List<Map<String, Object>> responses = mapper.readValue(new ByteArrayInputStream(content),
+                        new TypeReference<List<Map<String, Object>>>()
+                        {
+                        });
+                for (final Map<String, Object> response : responses)
+                {
+                    results.put((String) response.get("operation_id"),
+                            new Result(((Number) response.get("status_code")).intValue(), (String) response.get("response")));
+                }
+            }
+        }
+        return results;
+    }
+}
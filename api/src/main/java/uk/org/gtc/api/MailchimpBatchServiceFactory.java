@@ -0,0 +1,30 @@
+package uk.org.gtc.api;
+
+import org.mongojack.JacksonDBCollection;
+
+import com.mongodb.DB;
+
+import uk.org.gtc.api.domain.MailchimpBatchDO;
+import uk.org.gtc.api.service.MailchimpBatchService;
+
+public class MailchimpBatchServiceFactory
+{
+    private static MailchimpBatchService instance;
+    
+    public static void setInstance(final MailchimpBatchService instance)
+    {
+        MailchimpBatchServiceFactory.instance = instance;
+    }
+    
+    public static MailchimpBatchService getInstance()
+    {
+        if (instance == null)
+        {
+            final DB db = DBFactory.getInstance();
+            instance = new MailchimpBatchService(JacksonDBCollection.wrap(db.getCollection("mailchimpBatches"), MailchimpBatchDO.class,
+                    String.class));
+        }
+        
+        return instance;
+    }
+}
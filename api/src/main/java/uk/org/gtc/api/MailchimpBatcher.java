@@ -0,0 +1,278 @@
+package uk.org.gtc.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ecwid.maleorang.MailchimpException;
+import com.ecwid.maleorang.MailchimpMethod;
+import com.ecwid.maleorang.MailchimpObject;
+import com.ecwid.maleorang.method.v3_0.batches.BatchStatus;
+import com.ecwid.maleorang.method.v3_0.batches.GetBatchStatusMethod;
+import com.ecwid.maleorang.method.v3_0.batches.StartBatchMethod;
+import com.ecwid.maleorang.method.v3_0.lists.members.EditMemberMethod;
+
+import io.dropwizard.lifecycle.Managed;
+import uk.org.gtc.api.domain.MailchimpBatchDO;
+import uk.org.gtc.api.domain.MailchimpOperation;
+import uk.org.gtc.api.exception.DependencyUnavailableException;
+import uk.org.gtc.api.service.MailchimpBatchService;
+import uk.org.gtc.api.service.SyncFingerprintService;
+
+/**
+ * Sends list member updates to Mailchimp as batches, so that thousands of
+ * updates take a handful of requests. Each batch is stored when it is
+ * submitted and polled on a background thread until Mailchimp has finished
+ * it, at which point the outcome of every operation is stored with it.
+ * Operations that failed for a reason that may not happen again are sent in
+ * a new batch, up to a limited number of attempts.
+ */
+public class MailchimpBatcher implements Managed
+{
+    private static final String FINISHED = "finished";
+    
+    private static final int TOO_MANY_REQUESTS = 429;
+    
+    private static final int RESULTS_TIMEOUT_MILLIS = 30000;
+    
+    /**
+     * Long enough to read the results of a batch and store its outcome,
+     * after which a batch claimed by an instance that stopped part way is
+     * finished by another.
+     */
+    private static final long CLAIM_SECONDS = TimeUnit.MINUTES.toSeconds(5);
+    
+    private final MailchimpBatchService batchService;
+    
+    private final SyncFingerprintService fingerprintService;
+    
+    private final MailchimpExecutor mailchimp;
+    
+    private final String listId;
+    
+    private final int batchSize;
+    
+    private final int maxAttempts;
+    
+    private final long pollSeconds;
+    
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "mailchimp-batches"));
+    
+    public MailchimpBatcher(final MailchimpBatchService batchService, final SyncFingerprintService fingerprintService,
+            final MailchimpExecutor mailchimp, final String listId, final int batchSize, final int maxAttempts, final long pollSeconds)
+    {
+        this.batchService = batchService;
+        this.fingerprintService = fingerprintService;
+        this.mailchimp = mailchimp;
+        this.listId = listId;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = maxAttempts;
+        this.pollSeconds = pollSeconds;
+    }
+    
+    /**
+     * Store the outcome of a finished batch, and resubmit the operations that
+     * are worth trying again. Only the instance that claims the batch does
+     * so, so that the retries are only sent once.
+     */
+    void finish(final MailchimpBatchDO batch, final BatchStatus status) throws IOException
+    {
+        final String claim = batchService.claim(batch.getId(), CLAIM_SECONDS);
+        if (UtilityHelper.isNull(claim))
+        {
+            logger().debug("Mailchimp batch {} is being finished by another instance", batch.getBatchId());
+            return;
+        }
+        
+        final int errored = status.errored_operations == null ? 0 : status.errored_operations;
+        final Map<String, MailchimpBatchResults.Result> results = errored == 0 ? Collections.emptyMap() : readResults(status);
+        final List<MailchimpOperation> retries = new ArrayList<>();
+        final Map<String, String> synced = new HashMap<>();
+        int failed = 0;
+        for (final MailchimpOperation operation : batch.getOperations())
+        {
+            if (errored == 0)
+            {
+                operation.setStatusCode(200);
+                synced(operation, synced);
+                continue;
+            }
+            final MailchimpBatchResults.Result result = results.get(operation.getEmail());
+            if (result == null)
+            {
+                operation.setError("No response from Mailchimp");
+            }
+            else
+            {
+                operation.setStatusCode(result.getStatusCode());
+                if (result.getStatusCode() < 400)
+                {
+                    synced(operation, synced);
+                    continue;
+                }
+                operation.setError(result.getResponse());
+            }
+            failed++;
+            if (isRetryable(operation) && operation.getAttempt() < maxAttempts)
+            {
+                final MailchimpOperation retry = new MailchimpOperation(operation.getMemberId(), operation.getFingerprint(),
+                        operation.getEmail(), operation.getMergeFields());
+                retry.setAttempt(operation.getAttempt() + 1);
+                retries.add(retry);
+            }
+        }
+        if (!batchService.complete(batch.getId(), claim, batch.getOperations(), failed))
+        {
+            logger().warn("Mailchimp batch {} was claimed by another instance before it was finished", batch.getBatchId());
+            return;
+        }
+        fingerprintService.record(SyncFingerprintService.MAILCHIMP, synced);
+        logger().info("Mailchimp batch {} finished with {} of {} operations failed, {} to retry", batch.getBatchId(), failed,
+                batch.getOperations().size(), retries.size());
+        if (!retries.isEmpty())
+        {
+            submit(retries);
+        }
+    }
+    
+    private boolean isRetryable(final MailchimpOperation operation)
+    {
+        final Integer statusCode = operation.getStatusCode();
+        return statusCode == null || statusCode == TOO_MANY_REQUESTS || statusCode >= 500;
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(MailchimpBatcher.class);
+    }
+    
+    /**
+     * Check every open batch with Mailchimp.
+     */
+    void poll()
+    {
+        for (final MailchimpBatchDO batch : batchService.getOpen())
+        {
+            try
+            {
+                final BatchStatus status = mailchimp.execute(new GetBatchStatusMethod(batch.getBatchId()));
+                if (FINISHED.equals(status.status))
+                {
+                    finish(batch, status);
+                }
+                else
+                {
+                    batchService.progress(batch.getId(), status.finished_operations == null ? 0 : status.finished_operations,
+                            status.errored_operations == null ? 0 : status.errored_operations);
+                }
+            }
+            catch (final IOException | MailchimpException | RuntimeException e)
+            {
+                // Try again on the next poll
+                logger().error("Could not check Mailchimp batch {}", batch.getBatchId(), e);
+            }
+        }
+    }
+    
+    private Map<String, MailchimpBatchResults.Result> readResults(final BatchStatus status) throws IOException
+    {
+        if (UtilityHelper.isNull(status.response_body_url))
+        {
+            return Collections.emptyMap();
+        }
+        final URLConnection connection = new URL(status.response_body_url).openConnection();
+        connection.setConnectTimeout(RESULTS_TIMEOUT_MILLIS);
+        connection.setReadTimeout(RESULTS_TIMEOUT_MILLIS);
+        try (final InputStream in = connection.getInputStream())
+        {
+            return MailchimpBatchResults.read(in, ObjectMapperFactory.getInstance());
+        }
+    }
+    
+    @Override
+    public void start() throws Exception
+    {
+        executor.scheduleWithFixedDelay(this::poll, pollSeconds, pollSeconds, TimeUnit.SECONDS);
+    }
+    
+    @Override
+    public void stop() throws Exception
+    {
+        executor.shutdownNow();
+    }
+    
+    private void synced(final MailchimpOperation operation, final Map<String, String> synced)
+    {
+        if (!UtilityHelper.isNull(operation.getMemberId()) && !UtilityHelper.isNull(operation.getFingerprint()))
+        {
+            synced.put(operation.getMemberId(), operation.getFingerprint());
+        }
+    }
+    
+    /**
+     * Submit list member updates to Mailchimp, in as many batches as needed.
+     * Updates for members that are still waiting in an open batch are
+     * skipped, as they would otherwise be sent again before the first has
+     * been applied.
+     *
+     * @param operations
+     *            - the updates to send
+     * @return the batches that were submitted
+     */
+    public List<MailchimpBatchDO> submit(final List<MailchimpOperation> operations)
+    {
+        final Set<String> pending = batchService.getPendingEmails();
+        final List<MailchimpOperation> toSend = operations.stream().filter(o -> !pending.contains(o.getEmail()))
+                .collect(Collectors.toList());
+        if (toSend.size() < operations.size())
+        {
+            logger().info("Skipping {} Mailchimp updates still waiting in open batches", operations.size() - toSend.size());
+        }
+        
+        final List<MailchimpBatchDO> batches = new ArrayList<>();
+        for (int from = 0; from < toSend.size(); from += batchSize)
+        {
+            final List<MailchimpOperation> chunk = new ArrayList<>(toSend.subList(from, Math.min(from + batchSize, toSend.size())));
+            final List<MailchimpMethod<?>> methods = new ArrayList<>();
+            for (final MailchimpOperation operation : chunk)
+            {
+                final EditMemberMethod method = new EditMemberMethod.Update(listId, operation.getEmail());
+                method.merge_fields = new MailchimpObject();
+                method.merge_fields.mapping.putAll(operation.getMergeFields());
+                methods.add(method);
+            }
+            final StartBatchMethod startBatch = new StartBatchMethod(methods);
+            for (int i = 0; i < chunk.size(); i++)
+            {
+                startBatch.operations.get(i).operation_id = chunk.get(i).getEmail();
+            }
+            
+            try
+            {
+                final BatchStatus status = mailchimp.execute(startBatch);
+                batches.add(batchService.create(new MailchimpBatchDO(status.id, chunk)));
+                logger().info("Submitted Mailchimp batch {} with {} operations", status.id, chunk.size());
+            }
+            catch (final IOException | MailchimpException | DependencyUnavailableException e)
+            {
+                // Not stored, so the next sync will find the same differences
+                logger().error("Could not submit a Mailchimp batch of {} operations", chunk.size(), e);
+            }
+        }
+        return batches;
+    }
+}
@@ -0,0 +1,24 @@
+package uk.org.gtc.api;
+
+public class MailchimpBatcherFactory
+{
+    private static MailchimpBatcher instance;
+    
+    public static void setInstance(final MailchimpBatcher instance)
+    {
+        MailchimpBatcherFactory.instance = instance;
+    }
+    
+    public static MailchimpBatcher getInstance()
+    {
+        if (instance == null)
+        {
+            final GtcConfiguration configuration = GtcConfiguration.getInstance();
+            instance = new MailchimpBatcher(MailchimpBatchServiceFactory.getInstance(), SyncFingerprintServiceFactory.getInstance(),
+                    MailchimpClientManagerFactory.getInstance(), configuration.mailchimpListId,
+                    configuration.mailchimpBatchSize, configuration.mailchimpMaxAttempts, configuration.mailchimpBatchPollSeconds);
+        }
+        
+        return instance;
+    }
+}
@@ -0,0 +1,135 @@
+package uk.org.gtc.api;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.ecwid.maleorang.MailchimpClient;
+import com.ecwid.maleorang.MailchimpException;
+import com.ecwid.maleorang.MailchimpMethod;
+import com.ecwid.maleorang.MailchimpObject;
+import com.ecwid.maleorang.connector.Connector;
+import com.ecwid.maleorang.connector.HttpClientConnector;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * The one Mailchimp client shared by the whole application. Its connections
+ * are pooled and kept alive between calls, so that most calls reuse a warm
+ * connection rather than paying for a new connection and TLS handshake. The
+ * client is closed when the application stops.
+ * <p>
+ * Every call is timed by method, and the state of the pool is published as
+ * gauges. Calls are made through the Mailchimp {@link DependencyGuard}.
+ */
+public class MailchimpClientManager implements MailchimpExecutor, Managed
+{
+    private final MailchimpClient client;
+    
+    private final DependencyGuard guard;
+    
+    private final MetricRegistry metrics;
+    
+    private final Meter errors;
+    
+    /**
+     * @param configuration
+     *            - the API key, and the pool size and timeouts to use
+     * @param guard
+     *            - limits the calls made to Mailchimp
+     * @param metrics
+     *            - where to publish call timings and the pool state
+     */
+    public MailchimpClientManager(final GtcConfiguration configuration, final DependencyGuard guard, final MetricRegistry metrics)
+    {
+        this(configuration.mailchimpApiKey, connector(configuration, metrics), guard, metrics);
+    }
+    
+    MailchimpClientManager(final String apiKey, final Connector connector, final DependencyGuard guard, final MetricRegistry metrics)
+    {
+        this.client = new MailchimpClient(apiKey, connector)
+        {
+            // The connector constructor is only open to subclasses
+        };
+        this.guard = guard;
+        this.metrics = metrics;
+        this.errors = metrics.meter(MetricRegistry.name(MailchimpClientManager.class, "errors"));
+    }
+    
+    private static Connector connector(final GtcConfiguration configuration, final MetricRegistry metrics)
+    {
+        final PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager(configuration.mailchimpKeepAliveSeconds,
+                TimeUnit.SECONDS);
+        pool.setMaxTotal(configuration.mailchimpMaxConnections);
+        // Every call goes to the same data centre, so one route can use the
+        // whole pool
+        pool.setDefaultMaxPerRoute(configuration.mailchimpMaxConnections);
+        
+        final RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(configuration.mailchimpConnectTimeoutMillis)
+                .setSocketTimeout(configuration.mailchimpReadTimeoutMillis)
+                .setConnectionRequestTimeout(configuration.mailchimpConnectTimeoutMillis).build();
+        
+        final long keepAliveMillis = TimeUnit.SECONDS.toMillis(configuration.mailchimpKeepAliveSeconds);
+        final HttpClientBuilder builder = HttpClientBuilder.create().setConnectionManager(pool).setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    // Keep a connection for as long as Mailchimp allows, but no
+                    // longer than the pool would
+                    final long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0 ? Math.min(keepAlive, keepAliveMillis) : keepAliveMillis;
+                }).evictExpiredConnections().evictIdleConnections(configuration.mailchimpKeepAliveSeconds, TimeUnit.SECONDS);
+        
+        final String name = MetricRegistry.name(MailchimpClientManager.class, "connections");
+        metrics.register(MetricRegistry.name(name, "leased"), (Gauge<Integer>) () -> pool.getTotalStats().getLeased());
+        metrics.register(MetricRegistry.name(name, "available"), (Gauge<Integer>) () -> pool.getTotalStats().getAvailable());
+        metrics.register(MetricRegistry.name(name, "pending"), (Gauge<Integer>) () -> pool.getTotalStats().getPending());
+        return new HttpClientConnector(builder);
+    }
+    
+    @Override
+    public <R extends MailchimpObject> R execute(final MailchimpMethod<R> method) throws IOException, MailchimpException
+    {
+        final Timer.Context timer = metrics.timer(MetricRegistry.name(MailchimpClientManager.class, method.getClass().getSimpleName()))
+                .time();
+        try
+        {
+            return guard.<R, IOException, MailchimpException> call(() -> client.execute(method));
+        }
+        catch (final IOException | MailchimpException | RuntimeException e)
+        {
+            errors.mark();
+            throw e;
+        }
+        finally
+        {
+            timer.stop();
+        }
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(MailchimpClientManager.class);
+    }
+    
+    @Override
+    public void start() throws Exception
+    {
+        // Connections are opened as they are first needed
+    }
+    
+    @Override
+    public void stop() throws Exception
+    {
+        logger().info("Closing the Mailchimp client");
+        client.close();
+    }
+}
@@ -0,0 +1,24 @@
+package uk.org.gtc.api;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class MailchimpClientManagerFactory
+{
+    private static MailchimpClientManager instance;
+    
+    public static void setInstance(final MailchimpClientManager instance)
+    {
+        MailchimpClientManagerFactory.instance = instance;
+    }
+    
+    public static MailchimpClientManager getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new MailchimpClientManager(GtcConfiguration.getInstance(),
+                    DependencyGuardFactory.getInstance(DependencyGuardFactory.MAILCHIMP), new MetricRegistry());
+        }
+        
+        return instance;
+    }
+}
@@ -0,0 +1,17 @@
+package uk.org.gtc.api;
+
+import java.io.IOException;
+
+import com.ecwid.maleorang.MailchimpException;
+import com.ecwid.maleorang.MailchimpMethod;
+import com.ecwid.maleorang.MailchimpObject;
+
+/**
+ * Executes Mailchimp API methods.
+ * 
+ * @see MailchimpClientManager
+ */
+public interface MailchimpExecutor
+{
+    <R extends MailchimpObject> R execute(MailchimpMethod<R> method) throws IOException, MailchimpException;
+}
@@ -0,0 +1,25 @@
+package uk.org.gtc.api;
+
+import uk.org.gtc.api.service.MailchimpStatusCache;
+
+public class MailchimpStatusCacheFactory
+{
+    private static MailchimpStatusCache instance;
+    
+    public static void setInstance(final MailchimpStatusCache instance)
+    {
+        MailchimpStatusCacheFactory.instance = instance;
+    }
+    
+    public static MailchimpStatusCache getInstance()
+    {
+        if (instance == null)
+        {
+            final GtcConfiguration configuration = GtcConfiguration.getInstance();
+            instance = new MailchimpStatusCache(MailchimpClientManagerFactory.getInstance(), configuration.mailchimpListId,
+                    configuration.mailchimpStatusCacheSize, configuration.mailchimpStatusCacheSeconds);
+        }
+        
+        return instance;
+    }
+}
@@ -9,6 +9,8 @@ import uk.org.gtc.api.service.MemberService;
 
 public class MemberServiceFactory
 {
+    public static final String MEMBERS = "members";
+    
     private static MemberService instance;
     
     public static void setInstance(final MemberService instance)
@@ -21,8 +23,15 @@ public class MemberServiceFactory
         if (instance == null)
         {
             final DB db = DBFactory.getInstance();
-            instance = new MemberService(JacksonDBCollection.wrap(db.getCollection("members"), MemberDO.class,
-                    String.class));
+            final GtcConfiguration configuration = GtcConfiguration.getInstance();
+            instance = new MemberService(JacksonDBCollection.wrap(db.getCollection(MEMBERS), MemberDO.class, String.class),
+                    configuration.memberNumberBlockSize);
+            // Recorded whether or not this instance caches, as others may
+            instance.addChangeListener(TombstoneServiceFactory.getInstance().recorderFor(MEMBERS));
+            if (configuration.memberCacheSize > 0)
+            {
+                instance.enableCache(configuration.memberCacheSize, configuration.memberCacheSeconds);
+            }
         }
         
         return instance;
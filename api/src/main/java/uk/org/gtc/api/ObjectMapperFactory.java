@@ -0,0 +1,24 @@
+package uk.org.gtc.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.dropwizard.jackson.Jackson;
+
+public class ObjectMapperFactory
+{
+    private static ObjectMapper instance;
+    
+    public static void setInstance(final ObjectMapper instance)
+    {
+        ObjectMapperFactory.instance = instance;
+    }
+    
+    public static ObjectMapper getInstance()
+    {
+        if (instance == null)
+        {
+            instance = Jackson.newObjectMapper();
+        }
+        return instance;
+    }
+}
@@ -0,0 +1,30 @@
+package uk.org.gtc.api;
+
+import org.mongojack.JacksonDBCollection;
+
+import com.mongodb.DB;
+
+import uk.org.gtc.api.domain.SyncFingerprintDO;
+import uk.org.gtc.api.service.SyncFingerprintService;
+
+public class SyncFingerprintServiceFactory
+{
+    private static SyncFingerprintService instance;
+    
+    public static void setInstance(final SyncFingerprintService instance)
+    {
+        SyncFingerprintServiceFactory.instance = instance;
+    }
+    
+    public static SyncFingerprintService getInstance()
+    {
+        if (instance == null)
+        {
+            final DB db = DBFactory.getInstance();
+            instance = new SyncFingerprintService(JacksonDBCollection.wrap(db.getCollection("syncFingerprints"), SyncFingerprintDO.class,
+                    String.class));
+        }
+        
+        return instance;
+    }
+}
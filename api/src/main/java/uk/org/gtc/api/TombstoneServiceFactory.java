@@ -0,0 +1,30 @@
+package uk.org.gtc.api;
+
+import org.mongojack.JacksonDBCollection;
+
+import com.mongodb.DB;
+
+import uk.org.gtc.api.domain.TombstoneDO;
+import uk.org.gtc.api.service.TombstoneService;
+
+public class TombstoneServiceFactory
+{
+    private static TombstoneService instance;
+    
+    public static void setInstance(final TombstoneService instance)
+    {
+        TombstoneServiceFactory.instance = instance;
+    }
+    
+    public static TombstoneService getInstance()
+    {
+        if (instance == null)
+        {
+            final DB db = DBFactory.getInstance();
+            instance = new TombstoneService(JacksonDBCollection.wrap(db.getCollection("tombstones"), TombstoneDO.class,
+                    String.class));
+        }
+        
+        return instance;
+    }
+}
@@ -0,0 +1,22 @@
+package uk.org.gtc.api.domain;
+
+/**
+ * What SendGrid did with a request to send emails.
+ */
+public enum EmailDeliveryOutcome
+{
+    /**
+     * Taken to be sent.
+     */
+    SENT,
+    /**
+     * Turned away because of something in one or more of the messages, so
+     * the rest may be sent without them.
+     */
+    REJECTED,
+    /**
+     * Turned away whatever the messages, for example because the API key has
+     * been revoked, so none of them can be sent until that is put right.
+     */
+    REFUSED;
+}
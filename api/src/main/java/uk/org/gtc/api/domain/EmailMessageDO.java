@@ -0,0 +1,227 @@
+package uk.org.gtc.api.domain;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * An email waiting in the outbox to be sent through SendGrid, or that has
+ * been. Messages are sent by a background dispatcher, which sends the waiting
+ * messages for each template together, and tries a message again later when
+ * SendGrid could not take it.
+ */
+public class EmailMessageDO extends BaseDomainObject
+{
+    private EmailTemplate template;
+    private String to;
+    private String subject;
+    private String content;
+    private Map<String, String> substitutions;
+    private EmailStatus status;
+    private Integer attempts;
+    private Date nextAttemptDate;
+    private String claim;
+    private String lastError;
+    private Date sentDate;
+    
+    public EmailMessageDO()
+    {
+        // Jackson mapping
+    }
+    
+    public EmailMessageDO(final EmailTemplate template, final String to, final Map<String, String> substitutions)
+    {
+        setTemplate(template);
+        setTo(to);
+        setSubstitutions(substitutions);
+        setStatus(EmailStatus.PENDING);
+        setAttempts(0);
+        setNextAttemptDate(new Date());
+    }
+    
+    /**
+     * @return the attempts
+     */
+    public Integer getAttempts()
+    {
+        return attempts;
+    }
+    
+    /**
+     * @return the claim
+     */
+    public String getClaim()
+    {
+        return claim;
+    }
+    
+    /**
+     * @return the content
+     */
+    public String getContent()
+    {
+        return content;
+    }
+    
+    /**
+     * @return the lastError
+     */
+    public String getLastError()
+    {
+        return lastError;
+    }
+    
+    /**
+     * @return the nextAttemptDate
+     */
+    public Date getNextAttemptDate()
+    {
+        return nextAttemptDate;
+    }
+    
+    /**
+     * @return the sentDate
+     */
+    public Date getSentDate()
+    {
+        return sentDate;
+    }
+    
+    /**
+     * @return the status
+     */
+    public EmailStatus getStatus()
+    {
+        return status;
+    }
+    
+    /**
+     * @return the subject
+     */
+    public String getSubject()
+    {
+        return subject;
+    }
+    
+    /**
+     * @return the substitutions
+     */
+    public Map<String, String> getSubstitutions()
+    {
+        return substitutions;
+    }
+    
+    /**
+     * @return the template
+     */
+    public EmailTemplate getTemplate()
+    {
+        return template;
+    }
+    
+    /**
+     * @return the to
+     */
+    public String getTo()
+    {
+        return to;
+    }
+    
+    /**
+     * @param attempts
+     *            the attempts to set
+     */
+    public void setAttempts(final Integer attempts)
+    {
+        this.attempts = attempts;
+    }
+    
+    /**
+     * @param claim
+     *            the claim to set
+     */
+    public void setClaim(final String claim)
+    {
+        this.claim = claim;
+    }
+    
+    /**
+     * @param content
+     *            the content to set
+     */
+    public void setContent(final String content)
+    {
+        this.content = content;
+    }
+    
+    /**
+     * @param lastError
+     *            the lastError to set
+     */
+    public void setLastError(final String lastError)
+    {
+        this.lastError = lastError;
+    }
+    
+    /**
+     * @param nextAttemptDate
+     *            the nextAttemptDate to set
+     */
+    public void setNextAttemptDate(final Date nextAttemptDate)
+    {
+        this.nextAttemptDate = nextAttemptDate;
+    }
+    
+    /**
+     * @param sentDate
+     *            the sentDate to set
+     */
+    public void setSentDate(final Date sentDate)
+    {
+        this.sentDate = sentDate;
+    }
+    
+    /**
+     * @param status
+     *            the status to set
+     */
+    public void setStatus(final EmailStatus status)
+    {
+        this.status = status;
+    }
+    
+    /**
+     * @param subject
+     *            the subject to set
+     */
+    public void setSubject(final String subject)
+    {
+        this.subject = subject;
+    }
+    
+    /**
+     * @param substitutions
+     *            the substitutions to set
+     */
+    public void setSubstitutions(final Map<String, String> substitutions)
+    {
+        this.substitutions = substitutions;
+    }
+    
+    /**
+     * @param template
+     *            the template to set
+     */
+    public void setTemplate(final EmailTemplate template)
+    {
+        this.template = template;
+    }
+    
+    /**
+     * @param to
+     *            the to to set
+     */
+    public void setTo(final String to)
+    {
+        this.to = to;
+    }
+}
@@ -0,0 +1,6 @@
+package uk.org.gtc.api.domain;
+
+public enum EmailStatus
+{
+    PENDING, SENT, FAILED;
+}
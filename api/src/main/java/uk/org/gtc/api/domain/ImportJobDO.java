@@ -0,0 +1,263 @@
+package uk.org.gtc.api.domain;
+
+import java.util.Date;
+
+/**
+ * A membership import running in the background. The counts are updated as
+ * each batch of rows is written, and the full {@link ImportDiff} is stored
+ * once the import has finished.
+ * <p>
+ * A job is owned by the API instance running it, which holds a lease on the
+ * job that it renews while the job is unfinished. A job whose lease has run
+ * out was abandoned by an instance that stopped.
+ */
+public class ImportJobDO extends BaseDomainObject
+{
+    private ImportJobStatus status;
+    private Boolean overwrite;
+    private Integer totalRows;
+    private Integer rowsProcessed;
+    private Integer createdCount;
+    private Integer updatedCount;
+    private Integer deletedCount;
+    private Integer errorCount;
+    private ImportDiff diff;
+    private String message;
+    private Date completedDate;
+    private String owner;
+    private Date leaseExpiresDate;
+    
+    public ImportJobDO()
+    {
+        // Jackson mapping
+    }
+    
+    public ImportJobDO(final Boolean overwrite, final Integer totalRows)
+    {
+        setStatus(ImportJobStatus.QUEUED);
+        setOverwrite(overwrite);
+        setTotalRows(totalRows);
+        setRowsProcessed(0);
+    }
+    
+    /**
+     * @return the completedDate
+     */
+    public Date getCompletedDate()
+    {
+        return completedDate;
+    }
+    
+    /**
+     * @return the createdCount
+     */
+    public Integer getCreatedCount()
+    {
+        return createdCount;
+    }
+    
+    /**
+     * @return the deletedCount
+     */
+    public Integer getDeletedCount()
+    {
+        return deletedCount;
+    }
+    
+    /**
+     * @return the diff
+     */
+    public ImportDiff getDiff()
+    {
+        return diff;
+    }
+    
+    /**
+     * @return the errorCount
+     */
+    public Integer getErrorCount()
+    {
+        return errorCount;
+    }
+    
+    /**
+     * @return the leaseExpiresDate
+     */
+    public Date getLeaseExpiresDate()
+    {
+        return leaseExpiresDate;
+    }
+    
+    /**
+     * @return the message
+     */
+    public String getMessage()
+    {
+        return message;
+    }
+    
+    /**
+     * @return the overwrite
+     */
+    public Boolean getOverwrite()
+    {
+        return overwrite;
+    }
+    
+    /**
+     * @return the owner
+     */
+    public String getOwner()
+    {
+        return owner;
+    }
+    
+    /**
+     * @return the rowsProcessed
+     */
+    public Integer getRowsProcessed()
+    {
+        return rowsProcessed;
+    }
+    
+    /**
+     * @return the status
+     */
+    public ImportJobStatus getStatus()
+    {
+        return status;
+    }
+    
+    /**
+     * @return the totalRows
+     */
+    public Integer getTotalRows()
+    {
+        return totalRows;
+    }
+    
+    /**
+     * @return the updatedCount
+     */
+    public Integer getUpdatedCount()
+    {
+        return updatedCount;
+    }
+    
+    /**
+     * @param completedDate
+     *            the completedDate to set
+     */
+    public void setCompletedDate(final Date completedDate)
+    {
+        this.completedDate = completedDate;
+    }
+    
+    /**
+     * @param createdCount
+     *            the createdCount to set
+     */
+    public void setCreatedCount(final Integer createdCount)
+    {
+        this.createdCount = createdCount;
+    }
+    
+    /**
+     * @param deletedCount
+     *            the deletedCount to set
+     */
+    public void setDeletedCount(final Integer deletedCount)
+    {
+        this.deletedCount = deletedCount;
+    }
+    
+    /**
+     * @param diff
+     *            the diff to set
+     */
+    public void setDiff(final ImportDiff diff)
+    {
+        this.diff = diff;
+    }
+    
+    /**
+     * @param errorCount
+     *            the errorCount to set
+     */
+    public void setErrorCount(final Integer errorCount)
+    {
+        this.errorCount = errorCount;
+    }
+    
+    /**
+     * @param leaseExpiresDate
+     *            the leaseExpiresDate to set
+     */
+    public void setLeaseExpiresDate(final Date leaseExpiresDate)
+    {
+        this.leaseExpiresDate = leaseExpiresDate;
+    }
+    
+    /**
+     * @param message
+     *            the message to set
+     */
+    public void setMessage(final String message)
+    {
+        this.message = message;
+    }
+    
+    /**
+     * @param overwrite
+     *            the overwrite to set
+     */
+    public void setOverwrite(final Boolean overwrite)
+    {
+        this.overwrite = overwrite;
+    }
+    
+    /**
+     * @param owner
+     *            the owner to set
+     */
+    public void setOwner(final String owner)
+    {
+        this.owner = owner;
+    }
+    
+    /**
+     * @param rowsProcessed
+     *            the rowsProcessed to set
+     */
+    public void setRowsProcessed(final Integer rowsProcessed)
+    {
+        this.rowsProcessed = rowsProcessed;
+    }
+    
+    /**
+     * @param status
+     *            the status to set
+     */
+    public void setStatus(final ImportJobStatus status)
+    {
+        this.status = status;
+    }
+    
+    /**
+     * @param totalRows
+     *            the totalRows to set
+     */
+    public void setTotalRows(final Integer totalRows)
+    {
+        this.totalRows = totalRows;
+    }
+    
+    /**
+     * @param updatedCount
+     *            the updatedCount to set
+     */
+    public void setUpdatedCount(final Integer updatedCount)
+    {
+        this.updatedCount = updatedCount;
+    }
+}
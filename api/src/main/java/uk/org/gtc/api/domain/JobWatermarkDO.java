@@ -0,0 +1,70 @@
+package uk.org.gtc.api.domain;
+
+import java.util.Date;
+
+/**
+ * How far an incremental job has got: the newest lastUpdatedDate it has
+ * processed, and when it last reconciled everything.
+ */
+public class JobWatermarkDO extends BaseDomainObject
+{
+    private String jobName;
+    private Date watermark;
+    private Date lastFullRunDate;
+    
+    public JobWatermarkDO()
+    {
+        // Jackson mapping
+    }
+    
+    /**
+     * @return the jobName
+     */
+    public String getJobName()
+    {
+        return jobName;
+    }
+    
+    /**
+     * @return the lastFullRunDate
+     */
+    public Date getLastFullRunDate()
+    {
+        return lastFullRunDate;
+    }
+    
+    /**
+     * @return the watermark
+     */
+    public Date getWatermark()
+    {
+        return watermark;
+    }
+    
+    /**
+     * @param jobName
+     *            the jobName to set
+     */
+    public void setJobName(final String jobName)
+    {
+        this.jobName = jobName;
+    }
+    
+    /**
+     * @param lastFullRunDate
+     *            the lastFullRunDate to set
+     */
+    public void setLastFullRunDate(final Date lastFullRunDate)
+    {
+        this.lastFullRunDate = lastFullRunDate;
+    }
+    
+    /**
+     * @param watermark
+     *            the watermark to set
+     */
+    public void setWatermark(final Date watermark)
+    {
+        this.watermark = watermark;
+    }
+}
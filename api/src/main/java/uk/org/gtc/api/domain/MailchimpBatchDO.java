@@ -0,0 +1,192 @@
+package uk.org.gtc.api.domain;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A batch of list member updates submitted to Mailchimp. Mailchimp applies
+ * the batch in the background; the counts are updated each time its status
+ * is polled, and the outcome of each operation is stored once it has
+ * finished. Every instance polls, so the instance that stores the outcome
+ * first claims the batch, which it holds until the claim expires.
+ */
+public class MailchimpBatchDO extends BaseDomainObject
+{
+    private String batchId;
+    private MailchimpBatchStatus status;
+    private List<MailchimpOperation> operations;
+    private Integer finishedOperations;
+    private Integer erroredOperations;
+    private Date submittedDate;
+    private Date completedDate;
+    private String claim;
+    private Date claimExpiresDate;
+    
+    public MailchimpBatchDO()
+    {
+        // Jackson mapping
+    }
+    
+    public MailchimpBatchDO(final String batchId, final List<MailchimpOperation> operations)
+    {
+        setBatchId(batchId);
+        setStatus(MailchimpBatchStatus.SUBMITTED);
+        setOperations(operations);
+        setFinishedOperations(0);
+        setErroredOperations(0);
+        setSubmittedDate(new Date());
+    }
+    
+    /**
+     * @return the batchId
+     */
+    public String getBatchId()
+    {
+        return batchId;
+    }
+    
+    /**
+     * @return the claim
+     */
+    public String getClaim()
+    {
+        return claim;
+    }
+    
+    /**
+     * @return the claimExpiresDate
+     */
+    public Date getClaimExpiresDate()
+    {
+        return claimExpiresDate;
+    }
+    
+    /**
+     * @return the completedDate
+     */
+    public Date getCompletedDate()
+    {
+        return completedDate;
+    }
+    
+    /**
+     * @return the erroredOperations
+     */
+    public Integer getErroredOperations()
+    {
+        return erroredOperations;
+    }
+    
+    /**
+     * @return the finishedOperations
+     */
+    public Integer getFinishedOperations()
+    {
+        return finishedOperations;
+    }
+    
+    /**
+     * @return the operations
+     */
+    public List<MailchimpOperation> getOperations()
+    {
+        return operations;
+    }
+    
+    /**
+     * @return the status
+     */
+    public MailchimpBatchStatus getStatus()
+    {
+        return status;
+    }
+    
+    /**
+     * @return the submittedDate
+     */
+    public Date getSubmittedDate()
+    {
+        return submittedDate;
+    }
+    
+    /**
+     * @param batchId
+     *            the batchId to set
+     */
+    public void setBatchId(final String batchId)
+    {
+        this.batchId = batchId;
+    }
+    
+    /**
+     * @param claim
+     *            the claim to set
+     */
+    public void setClaim(final String claim)
+    {
+        this.claim = claim;
+    }
+    
+    /**
+     * @param claimExpiresDate
+     *            the claimExpiresDate to set
+     */
+    public void setClaimExpiresDate(final Date claimExpiresDate)
+    {
+        this.claimExpiresDate = claimExpiresDate;
+    }
+    
+    /**
+     * @param completedDate
+     *            the completedDate to set
+     */
+    public void setCompletedDate(final Date completedDate)
+    {
+        this.completedDate = completedDate;
+    }
+    
+    /**
+     * @param erroredOperations
+     *            the erroredOperations to set
+     */
+    public void setErroredOperations(final Integer erroredOperations)
+    {
+        this.erroredOperations = erroredOperations;
+    }
+    
+    /**
+     * @param finishedOperations
+     *            the finishedOperations to set
+     */
+    public void setFinishedOperations(final Integer finishedOperations)
+    {
+        this.finishedOperations = finishedOperations;
+    }
+    
+    /**
+     * @param operations
+     *            the operations to set
+     */
+    public void setOperations(final List<MailchimpOperation> operations)
+    {
+        this.operations = operations;
+    }
+    
+    /**
+     * @param status
+     *            the status to set
+     */
+    public void setStatus(final MailchimpBatchStatus status)
+    {
+        this.status = status;
+    }
+    
+    /**
+     * @param submittedDate
+     *            the submittedDate to set
+     */
+    public void setSubmittedDate(final Date submittedDate)
+    {
+        this.submittedDate = submittedDate;
+    }
+}
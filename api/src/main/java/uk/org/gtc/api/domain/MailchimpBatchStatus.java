@@ -0,0 +1,6 @@
+package uk.org.gtc.api.domain;
+
+public enum MailchimpBatchStatus
+{
+    SUBMITTED, FINISHING, FINISHED;
+}
@@ -0,0 +1,159 @@
+package uk.org.gtc.api.domain;
+
+import java.util.Map;
+
+/**
+ * One list member update inside a Mailchimp batch. Enough is stored to send
+ * the update again if Mailchimp could not apply it.
+ */
+public class MailchimpOperation
+{
+    private String memberId;
+    private String fingerprint;
+    private String email;
+    private Map<String, Object> mergeFields;
+    private Integer attempt;
+    private Integer statusCode;
+    private String error;
+    
+    public MailchimpOperation()
+    {
+        // Jackson mapping
+    }
+    
+    public MailchimpOperation(final String memberId, final String fingerprint, final String email, final Map<String, Object> mergeFields)
+    {
+        setMemberId(memberId);
+        setFingerprint(fingerprint);
+        setEmail(email);
+        setMergeFields(mergeFields);
+        setAttempt(1);
+    }
+    
+    /**
+     * @return the attempt
+     */
+    public Integer getAttempt()
+    {
+        return attempt;
+    }
+    
+    /**
+     * @return the email
+     */
+    public String getEmail()
+    {
+        return email;
+    }
+    
+    /**
+     * @return the error
+     */
+    public String getError()
+    {
+        return error;
+    }
+    
+    /**
+     * @return the fingerprint of the member's synced fields, recorded once
+     *         the update has been applied
+     */
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+    
+    /**
+     * @return the memberId
+     */
+    public String getMemberId()
+    {
+        return memberId;
+    }
+    
+    /**
+     * @return the mergeFields
+     */
+    public Map<String, Object> getMergeFields()
+    {
+        return mergeFields;
+    }
+    
+    /**
+     * @return the statusCode
+     */
+    public Integer getStatusCode()
+    {
+        return statusCode;
+    }
+    
+    /**
+     * @param attempt
+     *            the attempt to set
+     */
+    public void setAttempt(final Integer attempt)
+    {
+        this.attempt = attempt;
+    }
+    
+    /**
+     * @param email
+     *            the email to set
+     */
+    public void setEmail(final String email)
+    {
+        this.email = email;
+    }
+    
+    /**
+     * @param error
+     *            the error to set
+     */
+    public void setError(final String error)
+    {
+        this.error = error;
+    }
+    
+    /**
+     * @param fingerprint
+     *            the fingerprint to set
+     */
+    public void setFingerprint(final String fingerprint)
+    {
+        this.fingerprint = fingerprint;
+    }
+    
+    /**
+     * @param memberId
+     *            the memberId to set
+     */
+    public void setMemberId(final String memberId)
+    {
+        this.memberId = memberId;
+    }
+    
+    /**
+     * @param mergeFields
+     *            the mergeFields to set
+     */
+    public void setMergeFields(final Map<String, Object> mergeFields)
+    {
+        this.mergeFields = mergeFields;
+    }
+    
+    /**
+     * @param statusCode
+     *            the statusCode to set
+     */
+    public void setStatusCode(final Integer statusCode)
+    {
+        this.statusCode = statusCode;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "MailchimpOperation [email=" + email + ", mergeFields=" + mergeFields + ", attempt=" + attempt + ", statusCode=" + statusCode
+                + "]";
+    }
+}
@@ -0,0 +1,80 @@
+package uk.org.gtc.api.domain;
+
+import java.util.List;
+
+/**
+ * A single page of results from a keyset-paginated query.
+ *
+ * @param <T>
+ *            the type of item in the page
+ */
+public class ResultPage<T>
+{
+    private List<T> items;
+    private Integer limit;
+    private String next;
+    
+    public ResultPage()
+    {
+        // Jackson mapping
+    }
+    
+    public ResultPage(final List<T> items, final Integer limit, final String next)
+    {
+        setItems(items);
+        setLimit(limit);
+        setNext(next);
+    }
+    
+    /**
+     * @return the items
+     */
+    public List<T> getItems()
+    {
+        return items;
+    }
+    
+    /**
+     * @return the maximum number of items requested for this page
+     */
+    public Integer getLimit()
+    {
+        return limit;
+    }
+    
+    /**
+     * @return the token to pass as 'after' to fetch the next page, or null if
+     *         this is the last page
+     */
+    public String getNext()
+    {
+        return next;
+    }
+    
+    /**
+     * @param items
+     *            the items to set
+     */
+    public void setItems(final List<T> items)
+    {
+        this.items = items;
+    }
+    
+    /**
+     * @param limit
+     *            the limit to set
+     */
+    public void setLimit(final Integer limit)
+    {
+        this.limit = limit;
+    }
+    
+    /**
+     * @param next
+     *            the next to set
+     */
+    public void setNext(final String next)
+    {
+        this.next = next;
+    }
+}
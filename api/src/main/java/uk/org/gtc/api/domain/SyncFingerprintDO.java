@@ -0,0 +1,88 @@
+package uk.org.gtc.api.domain;
+
+import java.util.Date;
+
+/**
+ * A hash of the fields of one item that were last synced to another system,
+ * so that items whose fields have not changed since can be skipped.
+ */
+public class SyncFingerprintDO extends BaseDomainObject
+{
+    private String target;
+    private String key;
+    private String fingerprint;
+    private Date syncedDate;
+    
+    public SyncFingerprintDO()
+    {
+        // Jackson mapping
+    }
+    
+    /**
+     * @return the fingerprint
+     */
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+    
+    /**
+     * @return the key
+     */
+    public String getKey()
+    {
+        return key;
+    }
+    
+    /**
+     * @return the syncedDate
+     */
+    public Date getSyncedDate()
+    {
+        return syncedDate;
+    }
+    
+    /**
+     * @return the target
+     */
+    public String getTarget()
+    {
+        return target;
+    }
+    
+    /**
+     * @param fingerprint
+     *            the fingerprint to set
+     */
+    public void setFingerprint(final String fingerprint)
+    {
+        this.fingerprint = fingerprint;
+    }
+    
+    /**
+     * @param key
+     *            the key to set
+     */
+    public void setKey(final String key)
+    {
+        this.key = key;
+    }
+    
+    /**
+     * @param syncedDate
+     *            the syncedDate to set
+     */
+    public void setSyncedDate(final Date syncedDate)
+    {
+        this.syncedDate = syncedDate;
+    }
+    
+    /**
+     * @param target
+     *            the target to set
+     */
+    public void setTarget(final String target)
+    {
+        this.target = target;
+    }
+}
@@ -0,0 +1,78 @@
+package uk.org.gtc.api.domain;
+
+import java.util.Date;
+
+/**
+ * A record that an item was deleted, so that other API instances can drop it
+ * from their caches. Tombstones expire once every instance has had time to
+ * see them.
+ */
+public class TombstoneDO extends BaseDomainObject
+{
+    private String collectionName;
+    private String itemId;
+    private Date deletedDate;
+    
+    public TombstoneDO()
+    {
+        // Jackson mapping
+    }
+    
+    public TombstoneDO(final String collectionName, final String itemId)
+    {
+        setCollectionName(collectionName);
+        setItemId(itemId);
+        setDeletedDate(new Date());
+    }
+    
+    /**
+     * @return the collectionName
+     */
+    public String getCollectionName()
+    {
+        return collectionName;
+    }
+    
+    /**
+     * @return the deletedDate
+     */
+    public Date getDeletedDate()
+    {
+        return deletedDate;
+    }
+    
+    /**
+     * @return the itemId
+     */
+    public String getItemId()
+    {
+        return itemId;
+    }
+    
+    /**
+     * @param collectionName
+     *            the collectionName to set
+     */
+    public void setCollectionName(final String collectionName)
+    {
+        this.collectionName = collectionName;
+    }
+    
+    /**
+     * @param deletedDate
+     *            the deletedDate to set
+     */
+    public void setDeletedDate(final Date deletedDate)
+    {
+        this.deletedDate = deletedDate;
+    }
+    
+    /**
+     * @param itemId
+     *            the itemId to set
+     */
+    public void setItemId(final String itemId)
+    {
+        this.itemId = itemId;
+    }
+}
@@ -0,0 +1,27 @@
+package uk.org.gtc.api.exception;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+/**
+ * This exception is thrown instead of calling a third party service that is
+ * failing, or that already has as many calls waiting on it as it is allowed.
+ */
+public class DependencyUnavailableException extends WebApplicationException
+{
+    private static final long serialVersionUID = 4630198263711095318L;
+
+    /**
+     * Create a HTTP 503 exception.
+     *
+     * @param message
+     *            the String that is the exception message of the 503 response.
+     */
+    public DependencyUnavailableException(final String message)
+    {
+        super(message, Response.status(Status.SERVICE_UNAVAILABLE).entity(new JSONExceptionMessageContainer(message))
+                .type(MediaType.APPLICATION_JSON).build());
+    }
+}
@@ -0,0 +1,30 @@
+package uk.org.gtc.api.health;
+
+import com.codahale.metrics.health.HealthCheck;
+
+import uk.org.gtc.api.DependencyGuard;
+
+public class DependencyHealthCheck extends HealthCheck
+{
+    private final DependencyGuard guard;
+
+    public DependencyHealthCheck(final DependencyGuard guard)
+    {
+        this.guard = guard;
+    }
+
+    @Override
+    protected Result check() throws Exception
+    {
+        final DependencyGuard.State state = guard.getState();
+        if (state == DependencyGuard.State.CLOSED)
+        {
+            return Result.healthy();
+        }
+        else
+        {
+            return Result.unhealthy("The circuit to " + guard.getName() + " is " + state);
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package uk.org.gtc.api.jobs;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.auth0.exception.APIException;
+import com.auth0.exception.Auth0Exception;
+
+/**
+ * Backoff shared by every thread making Auth0 management API calls for a
+ * job run. When any call is rate limited, every thread pauses until the same
+ * time, so that retries do not keep the limit exhausted.
+ * <p>
+ * The Auth0 SDK does not expose the rate limit response headers, so the pause
+ * is an exponential backoff from the first rate limited call.
+ */
+public class Auth0Backoff
+{
+    private static final int TOO_MANY_REQUESTS = 429;
+    
+    private final long initialBackoffMillis;
+    
+    /**
+     * No call is made before this time.
+     */
+    private final AtomicLong resumeAt = new AtomicLong();
+    
+    /**
+     * @param initialBackoffMillis
+     *            - the delay before the first retry, doubling for each retry
+     *            after that
+     */
+    public Auth0Backoff(final long initialBackoffMillis)
+    {
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+    
+    static boolean isRateLimited(final Auth0Exception e)
+    {
+        return e instanceof APIException && ((APIException) e).getStatusCode() == TOO_MANY_REQUESTS;
+    }
+    
+    /**
+     * Wait until any pause from a rate limited call has passed.
+     *
+     * @throws Auth0Exception
+     *             if interrupted while waiting
+     */
+    public void await() throws Auth0Exception
+    {
+        long wait;
+        while ((wait = resumeAt.get() - System.currentTimeMillis()) > 0)
+        {
+            sleep(wait);
+        }
+    }
+    
+    /**
+     * @param attempt
+     *            - the number of retries already made, from zero
+     * @return the delay before the next retry, jittered so that threads do
+     *         not all retry at the same moment
+     */
+    public long delay(final int attempt)
+    {
+        final long backoff = initialBackoffMillis << Math.min(attempt, 16);
+        return backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+    
+    /**
+     * Pause every thread after a rate limited call.
+     *
+     * @param attempt
+     *            - the number of retries already made for the call
+     * @return the length of the pause
+     */
+    public long pauseAll(final int attempt)
+    {
+        final long delay = delay(attempt);
+        resumeAt.accumulateAndGet(System.currentTimeMillis() + delay, Math::max);
+        return delay;
+    }
+    
+    /**
+     * Sleep the current thread.
+     *
+     * @param millis
+     *            - how long to sleep
+     * @throws Auth0Exception
+     *             if interrupted
+     */
+    public void sleep(final long millis) throws Auth0Exception
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new Auth0Exception("Interrupted while backing off from Auth0", e);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package uk.org.gtc.api.jobs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.auth0.json.mgmt.users.User;
+
+import uk.org.gtc.api.UtilityHelper;
+import uk.org.gtc.api.domain.ApplicationRole;
+import uk.org.gtc.api.domain.MemberDO;
+import uk.org.gtc.api.service.SyncFingerprintService;
+
+/**
+ * Works out which Auth0 users need their membership number or roles changed,
+ * by joining every Auth0 user against every member in memory.
+ * <p>
+ * Users with a verified email are linked to the member holding that email,
+ * gaining the member's number and the MEMBER role. Users whose number no
+ * longer belongs to any member then lose it, along with the MEMBER role.
+ */
+public class Auth0Reconciler
+{
+    static final String MEMBERSHIP_NUMBER_KEY = "membershipNumber";
+    
+    static final String ROLES_KEY = "roles";
+    
+    private static final String MEMBER_ROLE = ApplicationRole.MEMBER.toString();
+    
+    private static Map<String, Object> appMetadata(final User user)
+    {
+        if (UtilityHelper.isNull(user.getAppMetadata()))
+        {
+            user.setAppMetadata(new HashMap<>());
+        }
+        return user.getAppMetadata();
+    }
+    
+    /**
+     * @return a fingerprint of the member fields that decide which Auth0 user
+     *         is linked and what it is given
+     */
+    static String fingerprint(final MemberDO member)
+    {
+        return SyncFingerprintService.fingerprint(member.getEmail(), member.getMembershipNumber());
+    }
+    
+    /**
+     * @return a fingerprint of the user fields that reconciliation reads or
+     *         changes
+     */
+    static String fingerprint(final User user)
+    {
+        final Map<String, Object> appMetadata = appMetadata(user);
+        return SyncFingerprintService.fingerprint(user.getEmail(), user.isEmailVerified(), roles(appMetadata),
+                membershipNumber(appMetadata));
+    }
+    
+    /**
+     * @return the membership number in a user's app metadata, if any
+     */
+    static Long membershipNumber(final User user)
+    {
+        return membershipNumber(appMetadata(user));
+    }
+    
+    private static Long membershipNumber(final Map<String, Object> appMetadata)
+    {
+        final Object number = appMetadata.get(MEMBERSHIP_NUMBER_KEY);
+        return number instanceof Number ? ((Number) number).longValue() : null;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static List<String> roles(final Map<String, Object> appMetadata)
+    {
+        final Object roles = appMetadata.get(ROLES_KEY);
+        return roles instanceof List ? new ArrayList<>((List<String>) roles) : new ArrayList<>();
+    }
+    
+    /**
+     * Link a user to the member with the same email, if they are not already.
+     */
+    private void link(final MemberDO member, final User user, final Map<String, Auth0UserUpdate> updates)
+    {
+        final Map<String, Object> appMetadata = appMetadata(user);
+        final Map<String, Object> changes = new HashMap<>();
+        
+        final Long membershipNumber = membershipNumber(appMetadata);
+        if (UtilityHelper.isNull(membershipNumber) || !membershipNumber.equals(member.getMembershipNumber()))
+        {
+            logger().debug("{} has {} in app metadata, {} on system", user.getEmail(), membershipNumber, member.getMembershipNumber());
+            changes.put(MEMBERSHIP_NUMBER_KEY, member.getMembershipNumber());
+        }
+        
+        final List<String> roles = roles(appMetadata);
+        if (!roles.contains(MEMBER_ROLE))
+        {
+            logger().debug("User {} doesn't have MEMBER role", user.getEmail());
+            roles.add(MEMBER_ROLE);
+            changes.put(ROLES_KEY, roles);
+        }
+        
+        if (!changes.isEmpty())
+        {
+            appMetadata.putAll(changes);
+            final Auth0UserUpdate update = updateFor(user, updates);
+            // The whole app metadata is sent when linking
+            update.getAppMetadata().putAll(appMetadata);
+            update.setLinkedMember(member);
+        }
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(Auth0Reconciler.class);
+    }
+    
+    /**
+     * Find every change needed to bring the Auth0 users in line with the
+     * members. The app metadata of the given users is updated in place.
+     *
+     * @param members
+     *            - every member, needing at least their email, first name and
+     *            membership number
+     * @param users
+     *            - every Auth0 user
+     * @return the updates to make, at most one per user
+     */
+    public List<Auth0UserUpdate> reconcile(final Collection<MemberDO> members, final Collection<User> users)
+    {
+        // Only users with a verified email are linked, otherwise they could
+        // be handed control of another member's details by spoofing the email
+        final Map<String, List<User>> usersByEmail = new HashMap<>();
+        for (final User user : users)
+        {
+            if (Boolean.TRUE.equals(user.isEmailVerified()) && !UtilityHelper.isNullOrEmpty(user.getEmail()))
+            {
+                usersByEmail.computeIfAbsent(user.getEmail(), e -> new ArrayList<>()).add(user);
+            }
+        }
+        
+        final Set<Long> membershipNumbers = new HashSet<>();
+        final Map<String, Auth0UserUpdate> updates = new LinkedHashMap<>();
+        for (final MemberDO member : members)
+        {
+            if (!UtilityHelper.isNull(member.getMembershipNumber()))
+            {
+                membershipNumbers.add(member.getMembershipNumber());
+            }
+            
+            final List<User> matches = UtilityHelper.isNullOrEmpty(member.getEmail()) ? null : usersByEmail.get(member.getEmail());
+            if (UtilityHelper.isNull(matches))
+            {
+                continue;
+            }
+            else if (matches.size() > 1)
+            {
+                logger().error("Multiple users found with the email {} on Auth0", member.getEmail());
+                continue;
+            }
+            link(member, matches.get(0), updates);
+        }
+        
+        for (final User user : users)
+        {
+            final Long membershipNumber = membershipNumber(appMetadata(user));
+            if (UtilityHelper.isNull(membershipNumber) || !membershipNumbers.contains(membershipNumber))
+            {
+                unlink(user, membershipNumber, updates);
+            }
+        }
+        
+        return new ArrayList<>(updates.values());
+    }
+    
+    /**
+     * Remove the membership number and MEMBER role from a user whose number
+     * does not belong to any member.
+     */
+    private void unlink(final User user, final Long membershipNumber, final Map<String, Auth0UserUpdate> updates)
+    {
+        final Map<String, Object> appMetadata = appMetadata(user);
+        final Map<String, Object> changes = new HashMap<>();
+        if (!UtilityHelper.isNull(membershipNumber))
+        {
+            logger().debug("User {} has membership number", user.getEmail());
+            changes.put(MEMBERSHIP_NUMBER_KEY, null);
+        }
+        
+        final List<String> roles = roles(appMetadata);
+        if (roles.contains(MEMBER_ROLE))
+        {
+            logger().debug("User {} has MEMBER role", user.getEmail());
+            roles.remove(MEMBER_ROLE);
+            changes.put(ROLES_KEY, roles);
+        }
+        
+        if (!changes.isEmpty())
+        {
+            appMetadata.putAll(changes);
+            updateFor(user, updates).getAppMetadata().putAll(changes);
+        }
+    }
+    
+    private Auth0UserUpdate updateFor(final User user, final Map<String, Auth0UserUpdate> updates)
+    {
+        return updates.computeIfAbsent(user.getId(), id -> new Auth0UserUpdate(id, user.getEmail()));
+    }
+}
@@ -1,13 +1,14 @@
 package uk.org.gtc.api.jobs;
 
-import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
-import org.quartz.JobExecutionContext;
-import org.quartz.JobExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,8 +16,8 @@ import com.auth0.client.mgmt.filter.UserFilter;
 import com.auth0.exception.Auth0Exception;
 import com.auth0.json.mgmt.users.User;
 import com.auth0.json.mgmt.users.UsersPage;
+import com.mongodb.BasicDBObject;
 
-import de.spinscale.dropwizard.jobs.Job;
 import de.spinscale.dropwizard.jobs.annotations.DelayStart;
 import de.spinscale.dropwizard.jobs.annotations.Every;
 import uk.org.gtc.api.ApplicationMode;
@@ -25,244 +26,259 @@ import uk.org.gtc.api.EmailService;
 import uk.org.gtc.api.EmailServiceFactory;
 import uk.org.gtc.api.GtcConfiguration;
 import uk.org.gtc.api.MemberServiceFactory;
-import uk.org.gtc.api.domain.ApplicationRole;
+import uk.org.gtc.api.SyncFingerprintServiceFactory;
+import uk.org.gtc.api.UtilityHelper;
 import uk.org.gtc.api.domain.MemberDO;
-import uk.org.gtc.api.service.MemberService;
+import uk.org.gtc.api.service.SyncFingerprintService;
 
 @Every("1min")
 @DelayStart("30s")
-public class Auth0SyncJob extends Job
+public class Auth0SyncJob extends IncrementalJob
 {
+    private static final int USER_PAGE_SIZE = 50;
     
     /**
-     * Sync metadata (first/last names, membership numbers) with Auth0.
+     * The member fields that reconciliation and the account linked email
+     * need.
      */
-    @Override
-    public void doJob(final JobExecutionContext context) throws JobExecutionException
+    private static final BasicDBObject SYNC_FIELDS = new BasicDBObject("email", 1).append("firstName", 1)
+            .append("membershipNumber", 1);
+    
+    /**
+     * The fingerprint of every Auth0 user as last reconciled, held between
+     * runs so that incremental runs do not read them all from the database.
+     */
+    private Map<String, String> knownUsers;
+    
+    /**
+     * Reconcile the given members and users, and send the updates.
+     *
+     * @return the IDs of the users whose update was not applied
+     */
+    private Set<String> apply(final GtcConfiguration configuration, final Collection<MemberDO> members, final Collection<User> users)
     {
-        final GtcConfiguration configuration = GtcConfiguration.getInstance();
-        final MemberService memberService = MemberServiceFactory.getInstance();
         final EmailService emailService = EmailServiceFactory.getInstance();
-        Auth0Mgmt.getInstance();
-        final String emailField = "email.raw";
-        final String membershipNumberKey = "membershipNumber";
-        
-        Integer updateCount = 0;
-        final List<MemberDO> members = memberService.getAll();
-        for (final MemberDO member : members)
+        final List<Auth0UserUpdate> updates = new Auth0Reconciler().reconcile(members, users);
+        final Auth0UpdateDispatcher.Summary summary = new Auth0UpdateDispatcher(update -> updateUser(configuration, update),
+                configuration.auth0UpdateConcurrency, configuration.auth0MaxRetries, new Auth0Backoff(configuration.auth0BackoffMillis))
+                        .dispatch(updates);
+        final List<MemberDO> linked = new ArrayList<>();
+        for (final Auth0UserUpdate update : summary.getSucceeded())
         {
-            List<User> usersByEmail = new ArrayList<>();
-            try
-            {
-                usersByEmail = getAuth0UsersByField(emailField, member.getEmail());
-            }
-            catch (UnsupportedEncodingException | Auth0Exception e)
-            {
-                logger().error("Error getting Auth0 users by email address", e);
-            }
-            
-            // No match found for any information we hold.
-            if (usersByEmail.isEmpty())
-            {
-                // No-op currently
-                // Skip to next member
-                break;
-            }
-            else if (usersByEmail.size() > 1)
+            if (!UtilityHelper.isNull(update.getLinkedMember()))
             {
-                logger().error("Multiple users found with the email {} on Auth0", member.getEmail());
-                // Skip updating these accounts
-                break;
-            }
-            
-            // Update membership numbers & roles when matched by email
-            for (final User user : usersByEmail)
-            {
-                Boolean updated = false;
-                final User newUser = new User(configuration.auth0UserConnection);
-                final String rolesKey = "roles";
-                final Map<String, Object> appMetadata = user.getAppMetadata();
-                final Map<String, Object> newAppMetadata = new HashMap<>();
-                
-                Long membershipNumberAppMetadata = null;
-                if (appMetadata.containsKey(membershipNumberKey))
-                {
-                    final Integer mdKey = (Integer) appMetadata.get(membershipNumberKey);
-                    membershipNumberAppMetadata = mdKey.longValue();
-                }
-                
-                // Update membership number
-                if (membershipNumberAppMetadata == null || !membershipNumberAppMetadata.equals(member.getMembershipNumber()))
-                {
-                    logger().debug("{} has {} in app metadata, {} on system", user.getEmail(), membershipNumberAppMetadata,
-                            member.getMembershipNumber());
-                    logger().debug("User {} doesn't have membership number", user.getEmail());
-                    newAppMetadata.put(membershipNumberKey, member.getMembershipNumber());
-                    updated = true;
-                }
-                
-                // Update relevant roles for the member
-                @SuppressWarnings("unchecked")
-                final List<String> roles = (List<String>) appMetadata.getOrDefault(rolesKey, new ArrayList<>());
-                logger().debug("Found {} as roles", roles);
-                if (!roles.contains(ApplicationRole.MEMBER.toString()))
-                {
-                    logger().debug("User {} doesn't have MEMBER role", user.getEmail());
-                    roles.add(ApplicationRole.MEMBER.toString());
-                    newAppMetadata.put(rolesKey, roles);
-                    updated = true;
-                }
-                
-                // Update user object with roles and/or membership number
-                if (updated)
-                {
-                    appMetadata.putAll(newAppMetadata);
-                    newUser.setAppMetadata(appMetadata);
-                    // Update Auth0 with new user object
-                    logger().debug("Updating user {} with {}", user.getEmail(), newAppMetadata);
-                    updateCount++;
-                    try
-                    {
-                        if (configuration.appMode == ApplicationMode.LIVE)
-                        {
-                            Auth0Mgmt.mgmt.users().update(user.getId(), newUser).execute();
-                        }
-                        else
-                        {
-                            logger().debug("Would update user {} with {}", user.getId(), newUser);
-                        }
-                    }
-                    catch (final Auth0Exception a0e)
-                    {
-                        logger().error("Could not update user " + user.getId(), a0e);
-                        break;
-                    }
-                    emailService.sendAccountLinkedNotification(member);
-                }
+                linked.add(update.getLinkedMember());
             }
         }
-        
-        List<User> users = new ArrayList<>();
-        try
+        if (!linked.isEmpty())
         {
-            users = getAllAuth0Users();
+            emailService.sendAccountLinkedNotifications(linked);
         }
-        catch (final Auth0Exception e)
+        logger().info("Reconciled {} Auth0 users with {} members, {} updates: {}", users.size(), members.size(), updates.size(), summary);
+        if (!summary.getFailedUserIds().isEmpty())
         {
-            logger().error("Error getting all Auth0 users", e);
+            logger().warn("Could not update Auth0 users {}", summary.getFailedUserIds());
         }
         
+        if (configuration.appMode == ApplicationMode.LIVE)
+        {
+            return new HashSet<>(summary.getFailedUserIds());
+        }
+        return updates.stream().map(Auth0UserUpdate::getUserId).collect(Collectors.toSet());
+    }
+    
+    private Map<String, String> fingerprints(final Collection<User> users)
+    {
+        final Map<String, String> fingerprints = new HashMap<>();
         for (final User user : users)
         {
-            Integer membershipNumberAppMetadata = null;
-            final Map<String, Object> appMetadata = user.getAppMetadata();
-            if (appMetadata.containsKey(membershipNumberKey))
-            {
-                membershipNumberAppMetadata = (Integer) appMetadata.get(membershipNumberKey);
-            }
-            List<MemberDO> memberResults = new ArrayList<>();
-            if (membershipNumberAppMetadata != null)
-            {
-                memberResults = memberService.findByMemberNumber(membershipNumberAppMetadata.longValue());
-            }
-            if (memberResults.isEmpty())
-            {
-                // Update user account to remove membership number
-                Boolean updated = false;
-                final User newUser = new User(configuration.auth0UserConnection);
-                final String rolesKey = "roles";
-                final Map<String, Object> newAppMetadata = new HashMap<>();
-                
-                // Remove membership number
-                if (membershipNumberAppMetadata != null)
-                {
-                    logger().debug("User {} has membership number", user.getEmail());
-                    newAppMetadata.put(membershipNumberKey, null);
-                    updated = true;
-                }
-                
-                // Update relevant roles for the member
-                @SuppressWarnings("unchecked")
-                final List<String> roles = (List<String>) appMetadata.getOrDefault(rolesKey, new ArrayList<>());
-                logger().debug("Found {} as roles", roles);
-                if (roles.contains(ApplicationRole.MEMBER.toString()))
-                {
-                    logger().debug("User {} has MEMBER role", user.getEmail());
-                    roles.remove(ApplicationRole.MEMBER.toString());
-                    newAppMetadata.put(rolesKey, roles);
-                    updated = true;
-                }
-                
-                // Update user object with roles and/or membership number
-                if (updated)
-                {
-                    newUser.setAppMetadata(newAppMetadata);
-                    // Update Auth0 with new user object
-                    logger().debug("Updating user {} with {}", user.getEmail(), newAppMetadata);
-                    updateCount++;
-                    try
-                    {
-                        if (configuration.appMode == ApplicationMode.LIVE)
-                        {
-                            Auth0Mgmt.mgmt.users().update(user.getId(), newUser).execute();
-                        }
-                        else
-                        {
-                            logger().debug("Would update user {} with {}", user.getId(), newUser);
-                        }
-                    }
-                    catch (final Auth0Exception e)
-                    {
-                        logger().error("Could not update user", e);
-                    }
-                }
-            }
+            fingerprints.put(user.getId(), Auth0Reconciler.fingerprint(user));
+        }
+        return fingerprints;
+    }
+    
+    /**
+     * Reconcile every member with every user, unless neither has changed
+     * since the last run.
+     */
+    private void fullSync(final GtcConfiguration configuration, final List<MemberDO> members, final List<User> users)
+    {
+        final SyncFingerprintService fingerprintService = SyncFingerprintServiceFactory.getInstance();
+        final Map<String, String> syncedMembers = fingerprintService.getFingerprints(SyncFingerprintService.AUTH0_MEMBERS);
+        final Map<String, String> syncedUsers = fingerprintService.getFingerprints(SyncFingerprintService.AUTH0_USERS);
+        final Map<String, String> memberFingerprints = new HashMap<>();
+        for (final MemberDO member : members)
+        {
+            memberFingerprints.put(member.getId(), Auth0Reconciler.fingerprint(member));
         }
+        if (memberFingerprints.equals(syncedMembers) && fingerprints(users).equals(syncedUsers))
+        {
+            logger().debug("No members or Auth0 users changed since the last sync");
+            knownUsers = syncedUsers;
+            return;
+        }
+        
+        final Set<String> unapplied = apply(configuration, members, users);
+        
+        // Users are synced as reconciled, which updated them in place, apart
+        // from those whose update was not applied; they are forgotten, so the
+        // next run reconciles again
+        final Map<String, String> userFingerprints = fingerprints(users);
+        userFingerprints.keySet().removeAll(unapplied);
+        fingerprintService.replace(SyncFingerprintService.AUTH0_USERS, syncedUsers, userFingerprints);
+        fingerprintService.replace(SyncFingerprintService.AUTH0_MEMBERS, syncedMembers, memberFingerprints);
+        knownUsers = userFingerprints;
     }
     
-    private List<User> getAllAuth0Users() throws Auth0Exception
+    private List<User> getAllAuth0Users(final GtcConfiguration configuration) throws Auth0Exception
     {
-        List<User> users = new ArrayList<>();
-        users = getNextUserPage(users, 0);
-        return users;
+        return new Auth0UserPager(this::getUserPage, USER_PAGE_SIZE, configuration.auth0PageConcurrency, configuration.auth0MaxRetries,
+                new Auth0Backoff(configuration.auth0BackoffMillis)).fetchAll();
     }
     
-    private List<User> getNextUserPage(final List<User> users, final Integer pageNumber) throws Auth0Exception
+    private UsersPage getUserPage(final int pageNumber, final int pageSize) throws Auth0Exception
     {
         final UserFilter filter = new UserFilter();
         filter.withSort("email:1");
         filter.withTotals(true);
-        filter.withPage(pageNumber, 50);
-        final UsersPage page = Auth0Mgmt.mgmt.users().list(filter).execute();
-        users.addAll(page.getItems());
-        if (page.getTotal() > users.size())
+        filter.withPage(pageNumber, pageSize);
+        return Auth0Mgmt.execute(Auth0Mgmt.mgmt.users().list(filter));
+    }
+    
+    /**
+     * Reconcile just the members written since the last run and the users
+     * that changed since, along with every other member and user sharing an
+     * email address or membership number with them. Deleted members, and
+     * members whose email and number both changed, are left for the next full
+     * run.
+     */
+    private void incrementalSync(final GtcConfiguration configuration, final List<MemberDO> writtenMembers, final List<User> users)
+    {
+        final SyncFingerprintService fingerprintService = SyncFingerprintServiceFactory.getInstance();
+        if (UtilityHelper.isNull(knownUsers))
+        {
+            knownUsers = fingerprintService.getFingerprints(SyncFingerprintService.AUTH0_USERS);
+        }
+        
+        final Map<String, String> syncedMembers = fingerprintService.getFingerprints(SyncFingerprintService.AUTH0_MEMBERS,
+                writtenMembers.stream().map(MemberDO::getId).collect(Collectors.toList()));
+        final Map<String, String> memberFingerprints = new HashMap<>();
+        final Set<String> emails = new HashSet<>();
+        final Map<String, MemberDO> members = new HashMap<>();
+        for (final MemberDO member : writtenMembers)
+        {
+            final String fingerprint = Auth0Reconciler.fingerprint(member);
+            if (!fingerprint.equals(syncedMembers.get(member.getId())))
+            {
+                memberFingerprints.put(member.getId(), fingerprint);
+                members.put(member.getId(), member);
+                if (!UtilityHelper.isNull(member.getEmail()))
+                {
+                    emails.add(member.getEmail());
+                }
+            }
+        }
+        final Set<String> changedUsers = new HashSet<>();
+        for (final User user : users)
+        {
+            if (!Auth0Reconciler.fingerprint(user).equals(knownUsers.get(user.getId())))
+            {
+                changedUsers.add(user.getId());
+                if (!UtilityHelper.isNull(user.getEmail()))
+                {
+                    emails.add(user.getEmail());
+                }
+            }
+        }
+        if (members.isEmpty() && changedUsers.isEmpty())
+        {
+            logger().debug("No members or Auth0 users changed since the last sync");
+            return;
+        }
+        
+        final List<User> affectedUsers = users.stream().filter(u -> changedUsers.contains(u.getId()) || emails.contains(u.getEmail()))
+                .collect(Collectors.toList());
+        // Every member a reconciled user could be linked to, or whose number
+        // it holds, so that it is not wrongly unlinked
+        final Set<String> affectedEmails = new HashSet<>();
+        final Set<Long> affectedNumbers = new HashSet<>();
+        for (final User user : affectedUsers)
+        {
+            if (!UtilityHelper.isNull(user.getEmail()))
+            {
+                affectedEmails.add(user.getEmail());
+            }
+            final Long membershipNumber = Auth0Reconciler.membershipNumber(user);
+            if (!UtilityHelper.isNull(membershipNumber))
+            {
+                affectedNumbers.add(membershipNumber);
+            }
+        }
+        for (final MemberDO member : MemberServiceFactory.getInstance().getByEmailOrMemberNumber(affectedEmails, affectedNumbers,
+                SYNC_FIELDS))
         {
-            getNextUserPage(users, pageNumber + 1);
+            members.putIfAbsent(member.getId(), member);
         }
-        return users;
+        
+        final Set<String> unapplied = apply(configuration, members.values(), affectedUsers);
+        final Map<String, String> userFingerprints = fingerprints(affectedUsers);
+        userFingerprints.keySet().removeAll(unapplied);
+        fingerprintService.update(SyncFingerprintService.AUTH0_USERS, knownUsers, userFingerprints);
+        fingerprintService.remove(SyncFingerprintService.AUTH0_USERS, unapplied);
+        fingerprintService.update(SyncFingerprintService.AUTH0_MEMBERS, syncedMembers, memberFingerprints);
+        knownUsers.putAll(userFingerprints);
+        knownUsers.keySet().removeAll(unapplied);
     }
     
-    private List<User> getAuth0UsersByField(final String field, final String value) throws UnsupportedEncodingException, Auth0Exception
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(Auth0SyncJob.class);
+    }
+    
+    /**
+     * Sync metadata (membership numbers, roles) with Auth0. Every Auth0 user
+     * is fetched once and joined against the members in memory, so the
+     * number of Auth0 calls grows with the number of pages of users rather
+     * than the number of members. Reconciliation is skipped when no member or
+     * user has changed since the last run.
+     */
+    @Override
+    protected boolean sync(final GtcConfiguration configuration, final Run run)
     {
-        // Only search for users with a verified email, otherwise
-        // they could be handed control of another member's details
-        // by spoofing the email
-        final String query = new StringBuilder().append("email_verified : true AND ")
-                .append(field + " ")
-                .append(": ")
-                .append(value + " ")
-                .toString()
-                .trim();
-        final UserFilter filter = new UserFilter();
-        filter.withQuery(query);
         Auth0Mgmt.getInstance();
-        final List<User> users = Auth0Mgmt.mgmt.users().list(filter).execute().getItems();
-        logger().debug("Querying with {} matched {} users", query, users.size());
-        return users;
+        final List<User> users;
+        try
+        {
+            users = getAllAuth0Users(configuration);
+        }
+        catch (final Auth0Exception e)
+        {
+            logger().error("Error getting all Auth0 users", e);
+            return false;
+        }
+        
+        final List<MemberDO> members = run.getMembers(MemberServiceFactory.getInstance(), SYNC_FIELDS);
+        if (run.isFull())
+        {
+            fullSync(configuration, members, users);
+        }
+        else
+        {
+            incrementalSync(configuration, members, users);
+        }
+        return true;
     }
     
-    Logger logger()
+    private void updateUser(final GtcConfiguration configuration, final Auth0UserUpdate update) throws Auth0Exception
     {
-        return LoggerFactory.getLogger(Auth0SyncJob.class);
+        if (configuration.appMode == ApplicationMode.LIVE)
+        {
+            logger().debug("Updating user {}", update);
+            Auth0Mgmt.execute(Auth0Mgmt.mgmt.users().update(update.getUserId(), update.toUser(configuration.auth0UserConnection)));
+        }
+        else
+        {
+            logger().debug("Would update user {}", update);
+        }
     }
 }
@@ -0,0 +1,223 @@
+package uk.org.gtc.api.jobs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.auth0.exception.APIException;
+import com.auth0.exception.Auth0Exception;
+
+import uk.org.gtc.api.exception.DependencyUnavailableException;
+
+/**
+ * Applies a run's Auth0 user updates with a fixed number of threads. Each
+ * update is retried on its own, so one user failing does not hold up or fail
+ * the others, and the outcome of the run is reported as a {@link Summary}.
+ * <p>
+ * Rate limited updates pause every thread, as for {@link Auth0UserPager}.
+ * Server errors and network failures back off just the update that failed.
+ * Other client errors are not retried, as they would fail the same way
+ * again.
+ */
+public class Auth0UpdateDispatcher
+{
+    /**
+     * Sends one update to Auth0.
+     */
+    @FunctionalInterface
+    public interface UpdateSender
+    {
+        void send(Auth0UserUpdate update) throws Auth0Exception;
+    }
+    
+    /**
+     * The outcome of one run of updates.
+     */
+    public static class Summary
+    {
+        private final List<Auth0UserUpdate> succeeded = Collections.synchronizedList(new ArrayList<>());
+        
+        private final List<String> failedUserIds = Collections.synchronizedList(new ArrayList<>());
+        
+        private final AtomicInteger retries = new AtomicInteger();
+        
+        private long elapsedMillis;
+        
+        /**
+         * @return how long the run took
+         */
+        public long getElapsedMillis()
+        {
+            return elapsedMillis;
+        }
+        
+        /**
+         * @return the IDs of the users that could not be updated
+         */
+        public List<String> getFailedUserIds()
+        {
+            return failedUserIds;
+        }
+        
+        /**
+         * @return the number of retries made across every update
+         */
+        public int getRetries()
+        {
+            return retries.get();
+        }
+        
+        /**
+         * @return the updates that were applied
+         */
+        public List<Auth0UserUpdate> getSucceeded()
+        {
+            return succeeded;
+        }
+        
+        @Override
+        public String toString()
+        {
+            return succeeded.size() + " succeeded, " + failedUserIds.size() + " failed, " + retries + " retries in " + elapsedMillis
+                    + "ms";
+        }
+    }
+    
+    private final UpdateSender sender;
+    
+    private final int concurrency;
+    
+    private final int maxRetries;
+    
+    private final Auth0Backoff backoff;
+    
+    /**
+     * @param sender
+     *            - sends one update to Auth0
+     * @param concurrency
+     *            - the most updates to send at once
+     * @param maxRetries
+     *            - how many times to retry each update
+     * @param backoff
+     *            - how long to wait before retrying
+     */
+    public Auth0UpdateDispatcher(final UpdateSender sender, final int concurrency, final int maxRetries, final Auth0Backoff backoff)
+    {
+        this.sender = sender;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+    }
+    
+    /**
+     * Send every update, waiting until each has succeeded or run out of
+     * retries.
+     *
+     * @param updates
+     *            - the updates to send
+     * @return the outcome of the run
+     */
+    public Summary dispatch(final List<Auth0UserUpdate> updates)
+    {
+        final long start = System.currentTimeMillis();
+        final Summary summary = new Summary();
+        if (!updates.isEmpty())
+        {
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, updates.size()),
+                    r -> new Thread(r, "auth0-updater"));
+            try
+            {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (final Auth0UserUpdate update : updates)
+                {
+                    futures.add(executor.submit(() -> send(update, summary)));
+                }
+                for (final Future<?> future : futures)
+                {
+                    future.get();
+                }
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                logger().warn("Interrupted while updating Auth0 users");
+            }
+            catch (final ExecutionException e)
+            {
+                logger().error("Unexpected error updating Auth0 users", e.getCause());
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
+        summary.elapsedMillis = System.currentTimeMillis() - start;
+        return summary;
+    }
+    
+    private boolean isRetryable(final Auth0Exception e)
+    {
+        // Not an APIException means no response was received, unless the
+        // call was turned away because Auth0 is failing or overloaded
+        if (e.getCause() instanceof DependencyUnavailableException)
+        {
+            return false;
+        }
+        return !(e instanceof APIException) || Auth0Backoff.isRateLimited(e) || ((APIException) e).getStatusCode() >= 500;
+    }
+    
+    private void send(final Auth0UserUpdate update, final Summary summary)
+    {
+        for (int attempt = 0;; attempt++)
+        {
+            try
+            {
+                backoff.await();
+                sender.send(update);
+                summary.succeeded.add(update);
+                return;
+            }
+            catch (final Auth0Exception e)
+            {
+                if (Thread.currentThread().isInterrupted() || !isRetryable(e) || attempt >= maxRetries)
+                {
+                    logger().error("Could not update user " + update.getUserId(), e);
+                    summary.failedUserIds.add(update.getUserId());
+                    return;
+                }
+                summary.retries.incrementAndGet();
+                try
+                {
+                    if (Auth0Backoff.isRateLimited(e))
+                    {
+                        logger().warn("Auth0 rate limited user {}, pausing for {}ms", update.getUserId(), backoff.pauseAll(attempt));
+                    }
+                    else
+                    {
+                        final long delay = backoff.delay(attempt);
+                        logger().warn("Could not update user {}, retrying in {}ms: {}", update.getUserId(), delay, e.getMessage());
+                        backoff.sleep(delay);
+                    }
+                }
+                catch (final Auth0Exception interrupted)
+                {
+                    summary.failedUserIds.add(update.getUserId());
+                    return;
+                }
+            }
+        }
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(Auth0UpdateDispatcher.class);
+    }
+}
@@ -0,0 +1,171 @@
+package uk.org.gtc.api.jobs;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.auth0.exception.Auth0Exception;
+import com.auth0.json.mgmt.users.User;
+import com.auth0.json.mgmt.users.UsersPage;
+
+import uk.org.gtc.api.UtilityHelper;
+
+/**
+ * Fetches every Auth0 user. The first page gives the total number of users,
+ * after which the remaining pages are fetched in parallel by a fixed number
+ * of threads, so the time taken is bounded by the number of threads rather
+ * than the number of pages.
+ * <p>
+ * When Auth0 rate limits a request, every thread pauses before trying again,
+ * backing off further each time the same page is limited.
+ */
+public class Auth0UserPager
+{
+    /**
+     * Fetches one page of users.
+     */
+    @FunctionalInterface
+    public interface PageFetcher
+    {
+        UsersPage fetch(int page, int pageSize) throws Auth0Exception;
+    }
+    
+    private final PageFetcher fetcher;
+    
+    private final int pageSize;
+    
+    private final int concurrency;
+    
+    private final int maxRetries;
+    
+    private final Auth0Backoff backoff;
+    
+    /**
+     * @param fetcher
+     *            - fetches one page of users
+     * @param pageSize
+     *            - the number of users per page
+     * @param concurrency
+     *            - the most pages to fetch at once
+     * @param maxRetries
+     *            - how many times to retry a rate limited page
+     * @param backoff
+     *            - how long to pause after a rate limited request
+     */
+    public Auth0UserPager(final PageFetcher fetcher, final int pageSize, final int concurrency, final int maxRetries,
+            final Auth0Backoff backoff)
+    {
+        this.fetcher = fetcher;
+        this.pageSize = pageSize;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+    }
+    
+    private void addAll(final Map<String, User> users, final UsersPage page)
+    {
+        for (final User user : page.getItems())
+        {
+            users.putIfAbsent(user.getId(), user);
+        }
+    }
+    
+    /**
+     * Fetch every user.
+     *
+     * @return every user, in page order. Users that moved between pages while
+     *         they were being fetched are only returned once.
+     * @throws Auth0Exception
+     *             if any page could not be fetched
+     */
+    public List<User> fetchAll() throws Auth0Exception
+    {
+        final long start = System.currentTimeMillis();
+        final UsersPage first = fetchPage(0);
+        final Map<String, User> users = new LinkedHashMap<>();
+        addAll(users, first);
+        if (UtilityHelper.isNull(first.getTotal()))
+        {
+            // Without a total, fall back to reading until a short page
+            UsersPage page = first;
+            for (int pageNumber = 1; page.getItems().size() == pageSize; pageNumber++)
+            {
+                page = fetchPage(pageNumber);
+                addAll(users, page);
+            }
+            return new ArrayList<>(users.values());
+        }
+        
+        final int pages = (first.getTotal() + pageSize - 1) / pageSize;
+        if (pages > 1)
+        {
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, pages - 1),
+                    r -> new Thread(r, "auth0-pager"));
+            try
+            {
+                final List<Future<UsersPage>> futures = new ArrayList<>();
+                for (int pageNumber = 1; pageNumber < pages; pageNumber++)
+                {
+                    final int page = pageNumber;
+                    futures.add(executor.submit(() -> fetchPage(page)));
+                }
+                for (final Future<UsersPage> future : futures)
+                {
+                    addAll(users, future.get());
+                }
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new Auth0Exception("Interrupted while fetching Auth0 users", e);
+            }
+            catch (final ExecutionException e)
+            {
+                if (e.getCause() instanceof Auth0Exception)
+                {
+                    throw (Auth0Exception) e.getCause();
+                }
+                throw new Auth0Exception("Could not fetch Auth0 users", e.getCause());
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
+        logger().debug("Fetched {} Auth0 users in {} pages in {}ms", users.size(), pages, System.currentTimeMillis() - start);
+        return new ArrayList<>(users.values());
+    }
+    
+    private UsersPage fetchPage(final int page) throws Auth0Exception
+    {
+        for (int attempt = 0;; attempt++)
+        {
+            backoff.await();
+            try
+            {
+                return fetcher.fetch(page, pageSize);
+            }
+            catch (final Auth0Exception e)
+            {
+                if (!Auth0Backoff.isRateLimited(e) || attempt >= maxRetries)
+                {
+                    throw e;
+                }
+                logger().warn("Auth0 rate limited page {}, pausing for {}ms", page, backoff.pauseAll(attempt));
+            }
+        }
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(Auth0UserPager.class);
+    }
+}
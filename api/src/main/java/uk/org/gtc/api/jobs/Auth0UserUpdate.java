@@ -0,0 +1,92 @@
+package uk.org.gtc.api.jobs;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.auth0.json.mgmt.users.User;
+
+import uk.org.gtc.api.domain.MemberDO;
+
+/**
+ * A change to the app metadata of one Auth0 user, found by the
+ * {@link Auth0Reconciler}.
+ */
+public class Auth0UserUpdate
+{
+    private final String userId;
+    
+    private final String email;
+    
+    private final Map<String, Object> appMetadata = new HashMap<>();
+    
+    private MemberDO linkedMember;
+    
+    public Auth0UserUpdate(final String userId, final String email)
+    {
+        this.userId = userId;
+        this.email = email;
+    }
+    
+    /**
+     * @return the app metadata to send; Auth0 merges it into the user's
+     *         existing app metadata, removing any key set to null
+     */
+    public Map<String, Object> getAppMetadata()
+    {
+        return appMetadata;
+    }
+    
+    /**
+     * @return the email
+     */
+    public String getEmail()
+    {
+        return email;
+    }
+    
+    /**
+     * @return the member that the user has just been linked to, who should be
+     *         told once the update has been made, or null
+     */
+    public MemberDO getLinkedMember()
+    {
+        return linkedMember;
+    }
+    
+    /**
+     * @return the userId
+     */
+    public String getUserId()
+    {
+        return userId;
+    }
+    
+    /**
+     * @param linkedMember
+     *            the linkedMember to set
+     */
+    public void setLinkedMember(final MemberDO linkedMember)
+    {
+        this.linkedMember = linkedMember;
+    }
+    
+    /**
+     * Build the user object to send to the Auth0 management API.
+     *
+     * @param connection
+     *            - the Auth0 connection the user belongs to
+     * @return the user holding only the changed app metadata
+     */
+    public User toUser(final String connection)
+    {
+        final User user = new User(connection);
+        user.setAppMetadata(appMetadata);
+        return user;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return userId + " (" + email + "): " + appMetadata;
+    }
+}
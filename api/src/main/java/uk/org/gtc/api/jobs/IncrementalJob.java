@@ -0,0 +1,152 @@
+package uk.org.gtc.api.jobs;
+
+import java.util.Date;
+import java.util.List;
+
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+import de.spinscale.dropwizard.jobs.Job;
+import uk.org.gtc.api.GtcConfiguration;
+import uk.org.gtc.api.JobWatermarkServiceFactory;
+import uk.org.gtc.api.UtilityHelper;
+import uk.org.gtc.api.domain.JobWatermarkDO;
+import uk.org.gtc.api.domain.MemberDO;
+import uk.org.gtc.api.service.JobWatermarkService;
+import uk.org.gtc.api.service.MemberService;
+
+/**
+ * A sync job that only processes the members written since its last
+ * successful run. After each run that processed something, the watermark is
+ * moved on to the newest lastUpdatedDate seen or to the overlap before the
+ * run started, whichever is later, so writes stamped by an instance whose
+ * clock is behind are still picked up while members already processed are
+ * not read again run after run. When nothing has changed, a run costs a
+ * single indexed query that returns nothing and writes nothing.
+ * <p>
+ * Every so often, and on the first run, the job instead processes every
+ * member, to catch anything the incremental runs cannot see such as
+ * deletions or changes made directly in the other system.
+ */
+@DisallowConcurrentExecution
+public abstract class IncrementalJob extends Job
+{
+    /**
+     * One run of the job.
+     */
+    public static class Run
+    {
+        private final Date since;
+        
+        private Date newest;
+        
+        Run(final Date since)
+        {
+            this.since = since;
+        }
+        
+        /**
+         * Read the members this run should process, tracking the newest
+         * lastUpdatedDate seen.
+         *
+         * @param memberService
+         *            - the members
+         * @param projection
+         *            - the member fields needed
+         * @return every member on a full run, otherwise those written since
+         *         the last run
+         */
+        public List<MemberDO> getMembers(final MemberService memberService, final DBObject projection)
+        {
+            final DBObject fields = new BasicDBObject(projection.toMap()).append("lastUpdatedDate", 1);
+            final List<MemberDO> members = isFull() ? memberService.getAllProjected(fields)
+                    : memberService.getUpdatedSince(since, fields);
+            for (final MemberDO member : members)
+            {
+                newest = later(newest, member.getLastUpdatedDate());
+            }
+            return members;
+        }
+        
+        /**
+         * @return the earliest lastUpdatedDate this run reads, or null on a
+         *         full run
+         */
+        public Date getSince()
+        {
+            return since;
+        }
+        
+        /**
+         * @return whether this run processes every member
+         */
+        public boolean isFull()
+        {
+            return UtilityHelper.isNull(since);
+        }
+    }
+    
+    private static Date later(final Date first, final Date second)
+    {
+        if (UtilityHelper.isNull(first))
+        {
+            return second;
+        }
+        return UtilityHelper.isNull(second) || first.after(second) ? first : second;
+    }
+    
+    @Override
+    public void doJob(final JobExecutionContext context) throws JobExecutionException
+    {
+        final GtcConfiguration configuration = GtcConfiguration.getInstance();
+        final JobWatermarkService watermarkService = JobWatermarkServiceFactory.getInstance();
+        final String jobName = getClass().getSimpleName();
+        final JobWatermarkDO state = watermarkService.getByJobName(jobName);
+        final Date start = new Date();
+        
+        final boolean full = UtilityHelper.isNull(state) || UtilityHelper.isNull(state.getWatermark())
+                || UtilityHelper.isNull(state.getLastFullRunDate())
+                || start.getTime() - state.getLastFullRunDate().getTime() >= configuration.jobFullSyncMinutes * 60000;
+        final Run run = new Run(full ? null : state.getWatermark());
+        logger().debug("Running {} {}", jobName, full ? "in full" : "since " + run.getSince());
+        if (!sync(configuration, run))
+        {
+            // Not advanced, so the next run covers the same members again
+            return;
+        }
+        
+        final Date previous = UtilityHelper.isNull(state) ? null : state.getWatermark();
+        final Date watermark = later(previous,
+                later(run.newest, new Date(start.getTime() - configuration.jobWatermarkOverlapSeconds * 1000)));
+        if (!full && (UtilityHelper.isNull(run.newest) || watermark.equals(previous)))
+        {
+            // Nothing new was seen, so the next run can read from the same
+            // place without this one writing anything
+            return;
+        }
+        watermarkService.advance(jobName, watermark, full ? start : state.getLastFullRunDate());
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(IncrementalJob.class);
+    }
+    
+    /**
+     * Process the members for one run.
+     *
+     * @param configuration
+     *            - the application configuration
+     * @param run
+     *            - reads the members to process
+     * @return whether the run succeeded; if not, the next run reads the same
+     *         members again
+     */
+    protected abstract boolean sync(GtcConfiguration configuration, Run run);
+}
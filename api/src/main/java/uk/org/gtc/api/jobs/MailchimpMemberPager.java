@@ -0,0 +1,83 @@
+package uk.org.gtc.api.jobs;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ecwid.maleorang.MailchimpException;
+import com.ecwid.maleorang.method.v3_0.lists.members.GetMembersMethod;
+import com.ecwid.maleorang.method.v3_0.lists.members.MemberInfo;
+
+/**
+ * Reads every member of a Mailchimp list by offset and count, handing each
+ * page to the caller as it arrives, so only one page is held in memory at a
+ * time however large the list is.
+ */
+public class MailchimpMemberPager
+{
+    /**
+     * Fetches one page of list members.
+     */
+    @FunctionalInterface
+    public interface PageFetcher
+    {
+        GetMembersMethod.Response fetch(int offset, int count) throws IOException, MailchimpException;
+    }
+    
+    private final PageFetcher fetcher;
+    
+    private final int pageSize;
+    
+    /**
+     * @param fetcher
+     *            - fetches one page of list members
+     * @param pageSize
+     *            - the number of members per page
+     */
+    public MailchimpMemberPager(final PageFetcher fetcher, final int pageSize)
+    {
+        this.fetcher = fetcher;
+        this.pageSize = Math.max(1, pageSize);
+    }
+    
+    /**
+     * Read every member of the list.
+     *
+     * @param consumer
+     *            - given each member, in list order
+     * @return the number of members read
+     * @throws IOException
+     *             if a page could not be fetched
+     * @throws MailchimpException
+     *             if Mailchimp rejected a page request
+     */
+    public int forEach(final Consumer<MemberInfo> consumer) throws IOException, MailchimpException
+    {
+        int offset = 0;
+        int pages = 0;
+        while (true)
+        {
+            final GetMembersMethod.Response page = fetcher.fetch(offset, pageSize);
+            pages++;
+            final List<MemberInfo> members = page.members == null ? Collections.emptyList() : page.members;
+            members.forEach(consumer);
+            offset += members.size();
+            // A short page is the last, even if members were removed while
+            // paging so the total is no longer reached
+            if (members.size() < pageSize || (page.total_items != null && offset >= page.total_items))
+            {
+                logger().debug("Read {} Mailchimp members in {} pages", offset, pages);
+                return offset;
+            }
+        }
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(MailchimpMemberPager.class);
+    }
+}
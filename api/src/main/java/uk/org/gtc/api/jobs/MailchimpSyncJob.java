@@ -3,128 +3,256 @@ package uk.org.gtc.api.jobs;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.stream.Collectors;
 
-import org.quartz.JobExecutionContext;
-import org.quartz.JobExecutionException;
+import javax.servlet.http.HttpServletResponse;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.ecwid.maleorang.MailchimpClient;
 import com.ecwid.maleorang.MailchimpException;
 import com.ecwid.maleorang.MailchimpObject;
-import com.ecwid.maleorang.method.v3_0.lists.members.EditMemberMethod;
+import com.ecwid.maleorang.method.v3_0.lists.members.GetMemberMethod;
 import com.ecwid.maleorang.method.v3_0.lists.members.GetMembersMethod;
 import com.ecwid.maleorang.method.v3_0.lists.members.MemberInfo;
+import com.mongodb.BasicDBObject;
 
-import de.spinscale.dropwizard.jobs.Job;
 import de.spinscale.dropwizard.jobs.annotations.DelayStart;
 import de.spinscale.dropwizard.jobs.annotations.Every;
 import uk.org.gtc.api.ApplicationMode;
 import uk.org.gtc.api.GtcConfiguration;
+import uk.org.gtc.api.MailchimpBatcherFactory;
+import uk.org.gtc.api.MailchimpClientManagerFactory;
 import uk.org.gtc.api.MemberServiceFactory;
+import uk.org.gtc.api.SyncFingerprintServiceFactory;
+import uk.org.gtc.api.UtilityHelper;
+import uk.org.gtc.api.domain.MailchimpOperation;
 import uk.org.gtc.api.domain.MemberDO;
+import uk.org.gtc.api.exception.DependencyUnavailableException;
 import uk.org.gtc.api.service.MemberService;
+import uk.org.gtc.api.service.SyncFingerprintService;
 
 @Every("1min")
 @DelayStart("30s")
-public class MailchimpSyncJob extends Job
+public class MailchimpSyncJob extends IncrementalJob
 {
+    /**
+     * The member fields that are synced to Mailchimp.
+     */
+    private static final BasicDBObject SYNC_FIELDS = new BasicDBObject("email", 1).append("firstName", 1).append("lastName", 1)
+            .append("type", 1).append("membershipNumber", 1);
+    
     /**
      * Sync metadata (first/last names) with Mailchimp.
      * In the future, this method should use membership numbers, not just email
      * addresses which could be changed by users on Mailchimp. On the latter
      * case, a webhook could be implemented to listen to the 'subscribe' and
      * 'upemail' events from Mailchimp to trigger actions internally
+     * <p>
+     * Incremental runs only look at members written since the last run, and
+     * of those only at members whose synced fields have changed. When there
+     * are only a few of those, each is looked up in Mailchimp on its own
+     * rather than reading the whole list. Full runs compare every member with
+     * Mailchimp, to undo changes made there.
      */
     @Override
-    public void doJob(final JobExecutionContext context) throws JobExecutionException
+    protected boolean sync(final GtcConfiguration configuration, final Run run)
     {
-        final GtcConfiguration configuration = GtcConfiguration.getInstance();
         final MemberService memberService = MemberServiceFactory.getInstance();
-        final List<MemberInfo> mailchimpMembers = new ArrayList<>();
-        final List<MemberDO> allMembers = memberService.getAll();
-        // Extract email addresses from membership database
-        final Set<String> emailList = allMembers.stream().map(MemberDO::getEmail).collect(Collectors.toSet());
-        
-        // Get list of members from Mailchimp
-        final GetMembersMethod getMailchimpMembers = new GetMembersMethod(configuration.mailchimpListId);
-        // TODO: Pagination.
-        // 2000 is the max size of this list on the current plan
-        getMailchimpMembers.count = 2000;
-        getMailchimpMembers.fields = "members.email_address,members.merge_fields";
+        final SyncFingerprintService fingerprintService = SyncFingerprintServiceFactory.getInstance();
+        final List<MemberDO> members = run.getMembers(memberService, SYNC_FIELDS);
+        if (members.isEmpty())
+        {
+            logger().debug("No members changed since the last Mailchimp sync");
+            return true;
+        }
+        final Map<String, String> synced = run.isFull() ? fingerprintService.getFingerprints(SyncFingerprintService.MAILCHIMP)
+                : fingerprintService.getFingerprints(SyncFingerprintService.MAILCHIMP,
+                        members.stream().map(MemberDO::getId).collect(Collectors.toList()));
         
-        try (final MailchimpClient client = new MailchimpClient(configuration.mailchimpApiKey))
+        // Index the members to compare by email address (only update members
+        // we know about)
+        final Map<String, String> fingerprints = new HashMap<>();
+        final Map<String, MemberDO> membersByEmail = new HashMap<>();
+        for (final MemberDO member : members)
         {
-            mailchimpMembers.addAll(client.execute(getMailchimpMembers).members);
+            if (!UtilityHelper.isNull(member.getEmail()))
+            {
+                final String fingerprint = fingerprint(member);
+                fingerprints.put(member.getId(), fingerprint);
+                if (run.isFull() || !fingerprint.equals(synced.get(member.getId())))
+                {
+                    membersByEmail.putIfAbsent(member.getEmail(), member);
+                }
+            }
         }
-        catch (final IOException | MailchimpException e)
+        if (membersByEmail.isEmpty())
         {
-            logger().error("Couldn't communicate with Mailchimp during scheduled job run", e);
+            logger().debug("No synced fields changed since the last Mailchimp sync");
+            return true;
         }
         
-        // Intersect email list with those from Mailchimp
-        // (only update members we know about)
-        emailList.retainAll(mailchimpMembers.stream().map(m -> m.email_address).collect(Collectors.toSet()));
-        final List<MemberDO> intersectedMembers = allMembers.stream().filter(m -> emailList.contains(m.getEmail()))
-                .collect(Collectors.toList());
-        
-        final List<EditMemberMethod> batchMethods = new ArrayList<>();
-        for (final MemberDO member : intersectedMembers)
+        // Keyed by email, so a member read twice as the list shifts is only
+        // updated once
+        final Map<String, MailchimpOperation> operations = new LinkedHashMap<>();
+        try
         {
-            final Map<String, Object> mappingFields = new HashMap<>();
-            mappingFields.put("FNAME", member.getFirstName());
-            mappingFields.put("LNAME", member.getLastName());
-            mappingFields.put("TYPE", member.getType().toString());
-            mappingFields.put("MEMNUM", member.getMembershipNumber());
-            
-            final MemberInfo memberInfo = new MemberInfo();
-            memberInfo.email_address = member.getEmail();
-            memberInfo.merge_fields = new MailchimpObject();
-            memberInfo.merge_fields.mapping.putAll(mappingFields);
-            
-            if (!mailchimpMembers.contains(memberInfo))
+            if (!run.isFull() && membersByEmail.size() <= configuration.mailchimpLookupMax)
             {
-                final EditMemberMethod method = new EditMemberMethod.Update(configuration.mailchimpListId, member.getEmail());
-                method.merge_fields = new MailchimpObject();
-                method.merge_fields.mapping.putAll(mappingFields);
-                if (logger().isDebugEnabled())
+                for (final MemberDO member : membersByEmail.values())
                 {
-                    logger().debug("Updating {}", method.toString());
+                    final MemberInfo mailchimpMember = getMailchimpMember(configuration, member.getEmail());
+                    if (!UtilityHelper.isNull(mailchimpMember))
+                    {
+                        addOperation(operations, member, fingerprints.get(member.getId()), mailchimpMember);
+                    }
                 }
-                batchMethods.add(method);
+            }
+            else
+            {
+                // Diff each page of Mailchimp members as it arrives
+                new MailchimpMemberPager((offset, count) -> getMailchimpMembers(configuration, offset, count),
+                        configuration.mailchimpPageSize).forEach(mailchimpMember -> {
+                            final MemberDO member = membersByEmail.get(mailchimpMember.email_address);
+                            if (!UtilityHelper.isNull(member))
+                            {
+                                addOperation(operations, member, fingerprints.get(member.getId()), mailchimpMember);
+                            }
+                        });
             }
         }
+        catch (final IOException | MailchimpException | DependencyUnavailableException e)
+        {
+            logger().error("Couldn't communicate with Mailchimp during scheduled job run", e);
+            return false;
+        }
+        
+        // Members that already match, or are not on the list, are synced now;
+        // those being updated are once Mailchimp has applied the update
+        for (final MailchimpOperation operation : operations.values())
+        {
+            fingerprints.remove(operation.getMemberId());
+            if (synced.containsKey(operation.getMemberId()))
+            {
+                fingerprints.put(operation.getMemberId(), synced.get(operation.getMemberId()));
+            }
+        }
+        if (run.isFull())
+        {
+            fingerprintService.replace(SyncFingerprintService.MAILCHIMP, synced, fingerprints);
+        }
+        else
+        {
+            fingerprintService.update(SyncFingerprintService.MAILCHIMP, synced, fingerprints);
+        }
         
         logger().info("Executing scheduled job MailchimpSyncJob");
-        if (batchMethods.size() > 0)
+        if (operations.size() > 0)
         {
-            try (final MailchimpClient client = new MailchimpClient(configuration.mailchimpApiKey))
+            logger().info("Sending batch update to Mailchimp with {} operations inside", operations.size());
+            if (configuration.appMode == ApplicationMode.LIVE)
             {
-                logger().info("Sending batch update to Mailchimp with {} operations inside", batchMethods.size());
-                if (configuration.appMode == ApplicationMode.LIVE)
-                {
-                    // client.execute(new StartBatchMethod(batchMethods));
-                    // TODO: Remove once confirmed OK
-                    logger().warn("Would execute batch job for Mailchimp");
-                }
-                else
-                {
-                    logger().debug(batchMethods.toString());
-                }
+                MailchimpBatcherFactory.getInstance().submit(new ArrayList<>(operations.values()));
             }
-            catch (final IOException e)
+            else
             {
-                logger().error("Couldn't communicate with Mailchimp during scheduled job run", e);
+                logger().debug(operations.values().toString());
             }
         }
+        return true;
+    }
+    
+    private void addOperation(final Map<String, MailchimpOperation> operations, final MemberDO member, final String fingerprint,
+            final MemberInfo mailchimpMember)
+    {
+        final MailchimpOperation operation = diff(member, fingerprint, mailchimpMember);
+        if (!UtilityHelper.isNull(operation))
+        {
+            operations.put(member.getEmail(), operation);
+        }
+    }
+    
+    /**
+     * @return the update to bring the Mailchimp member in line with the
+     *         member, or null if they already match
+     */
+    private MailchimpOperation diff(final MemberDO member, final String fingerprint, final MemberInfo mailchimpMember)
+    {
+        final Map<String, Object> mappingFields = mergeFields(member);
+        
+        final MemberInfo memberInfo = new MemberInfo();
+        memberInfo.email_address = member.getEmail();
+        memberInfo.merge_fields = new MailchimpObject();
+        memberInfo.merge_fields.mapping.putAll(mappingFields);
+        
+        if (memberInfo.equals(mailchimpMember))
+        {
+            return null;
+        }
+        final MailchimpOperation operation = new MailchimpOperation(member.getId(), fingerprint, member.getEmail(), mappingFields);
+        if (logger().isDebugEnabled())
+        {
+            logger().debug("Updating {}", operation.toString());
+        }
+        return operation;
+    }
+    
+    private String fingerprint(final MemberDO member)
+    {
+        final Map<String, Object> mergeFields = mergeFields(member);
+        return SyncFingerprintService.fingerprint(member.getEmail(), mergeFields.get("FNAME"), mergeFields.get("LNAME"),
+                mergeFields.get("TYPE"), mergeFields.get("MEMNUM"));
+    }
+    
+    /**
+     * Look up one member by the subscriber hash of their email address.
+     *
+     * @return the Mailchimp member, or null if the address is not on the list
+     */
+    private MemberInfo getMailchimpMember(final GtcConfiguration configuration, final String email)
+            throws IOException, MailchimpException
+    {
+        final GetMemberMethod getMailchimpMember = new GetMemberMethod(configuration.mailchimpListId, email);
+        getMailchimpMember.fields = "email_address,merge_fields";
+        try
+        {
+            return MailchimpClientManagerFactory.getInstance().execute(getMailchimpMember);
+        }
+        catch (final MailchimpException me)
+        {
+            if (me.code != HttpServletResponse.SC_NOT_FOUND)
+            {
+                throw me;
+            }
+            return null;
+        }
+    }
+    
+    private GetMembersMethod.Response getMailchimpMembers(final GtcConfiguration configuration, final int offset, final int count)
+            throws IOException, MailchimpException
+    {
+        final GetMembersMethod getMailchimpMembers = new GetMembersMethod(configuration.mailchimpListId);
+        getMailchimpMembers.offset = offset;
+        getMailchimpMembers.count = count;
+        getMailchimpMembers.fields = "total_items,members.email_address,members.merge_fields";
+        return MailchimpClientManagerFactory.getInstance().execute(getMailchimpMembers);
     }
     
     Logger logger()
     {
         return LoggerFactory.getLogger(MailchimpSyncJob.class);
     }
+    
+    private Map<String, Object> mergeFields(final MemberDO member)
+    {
+        final Map<String, Object> mappingFields = new HashMap<>();
+        mappingFields.put("FNAME", member.getFirstName());
+        mappingFields.put("LNAME", member.getLastName());
+        mappingFields.put("TYPE", UtilityHelper.isNull(member.getType()) ? null : member.getType().toString());
+        mappingFields.put("MEMNUM", member.getMembershipNumber());
+        return mappingFields;
+    }
 }
@@ -0,0 +1,93 @@
+package uk.org.gtc.api.resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.mongojack.DBCursor;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Writes the items of a {@link DBCursor} to the response as they are read
+ * from the database, rather than collecting them into a list first. Output is
+ * either a single JSON array or newline-delimited JSON (one item per line).
+ *
+ * @param <T>
+ *            the type of item being written
+ */
+public class CursorStreamingOutput<T> implements StreamingOutput
+{
+    public static final String NDJSON = "ndjson";
+    
+    public static final MediaType NDJSON_TYPE = new MediaType("application", "x-ndjson");
+    
+    private static final int BATCH_SIZE = 500;
+    
+    private static final int FLUSH_INTERVAL = 100;
+    
+    private final DBCursor<T> cursor;
+    private final ObjectMapper mapper;
+    private final ObjectWriter writer;
+    private final Boolean newlineDelimited;
+    
+    public CursorStreamingOutput(final DBCursor<T> cursor, final ObjectMapper mapper, final Boolean newlineDelimited)
+    {
+        this.cursor = cursor.batchSize(BATCH_SIZE);
+        this.mapper = mapper;
+        // Flushing is done in blocks below rather than after every item
+        this.writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.newlineDelimited = newlineDelimited;
+    }
+    
+    public MediaType getMediaType()
+    {
+        return newlineDelimited ? NDJSON_TYPE : MediaType.APPLICATION_JSON_TYPE;
+    }
+    
+    @Override
+    public void write(final OutputStream output) throws IOException
+    {
+        try (final JsonGenerator generator = mapper.getFactory().createGenerator(output))
+        {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (newlineDelimited)
+            {
+                generator.setRootValueSeparator(new SerializedString("\n"));
+            }
+            else
+            {
+                generator.writeStartArray();
+            }
+            
+            int written = 0;
+            while (cursor.hasNext())
+            {
+                writer.writeValue(generator, cursor.next());
+                if (++written % FLUSH_INTERVAL == 0)
+                {
+                    generator.flush();
+                }
+            }
+            
+            if (newlineDelimited)
+            {
+                generator.writeRaw('\n');
+            }
+            else
+            {
+                generator.writeEndArray();
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.org.gtc.api.domain.BaseDomainObject;
+import uk.org.gtc.api.domain.ResultPage;
 import uk.org.gtc.api.service.GenericService;
 
 public class GenericResource<T extends BaseDomainObject>
@@ -46,6 +47,11 @@ public class GenericResource<T extends BaseDomainObject>
         return genericService.getById(id);
     }
 
+    protected ResultPage<T> getPage(final String after, final Integer limit)
+    {
+        return genericService.getPage(null, after, limit);
+    }
+
     Logger logger()
     {
         return LoggerFactory.getLogger(GenericResource.class);
@@ -0,0 +1,165 @@
+package uk.org.gtc.api.resource;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.FormParam;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.annotation.Timed;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import uk.org.gtc.api.GtcConfiguration;
+import uk.org.gtc.api.MailchimpStatusCacheFactory;
+import uk.org.gtc.api.UtilityHelper;
+import uk.org.gtc.api.domain.MailchimpInfo;
+import uk.org.gtc.api.domain.MailchimpStatus;
+import uk.org.gtc.api.service.MailchimpStatusCache;
+
+/**
+ * Receives the webhook Mailchimp calls when a list member subscribes,
+ * unsubscribes, is cleaned, or changes their email address or profile, and
+ * applies the change to the {@link MailchimpStatusCache}.
+ * <p>
+ * Mailchimp does not sign its webhook calls, so the webhook URL registered
+ * with Mailchimp carries a shared secret in its query string.
+ */
+@SuppressWarnings("rawtypes")
+@Path("mailchimp/webhook")
+@Api("mailchimp")
+public class MailchimpWebhookResource extends GenericResource
+{
+    private final GtcConfiguration configuration;
+    
+    private final MailchimpStatusCache statusCache;
+    
+    public MailchimpWebhookResource()
+    {
+        this(GtcConfiguration.getInstance(), MailchimpStatusCacheFactory.getInstance());
+    }
+    
+    MailchimpWebhookResource(final GtcConfiguration configuration, final MailchimpStatusCache statusCache)
+    {
+        super();
+        this.configuration = configuration;
+        this.statusCache = statusCache;
+    }
+    
+    private void checkSecret(final String secret)
+    {
+        // Compared in constant time, so the secret cannot be guessed a
+        // character at a time
+        if (UtilityHelper.isNull(configuration.mailchimpWebhookSecret) || UtilityHelper.isNull(secret)
+                || !MessageDigest.isEqual(configuration.mailchimpWebhookSecret.getBytes(StandardCharsets.UTF_8),
+                        secret.getBytes(StandardCharsets.UTF_8)))
+        {
+            throw new WebApplicationException(HttpServletResponse.SC_FORBIDDEN);
+        }
+    }
+    
+    private Date firedAt(final String firedAt)
+    {
+        if (!UtilityHelper.isNull(firedAt))
+        {
+            // Mailchimp sends the time in GMT
+            final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try
+            {
+                return format.parse(firedAt);
+            }
+            catch (final ParseException pe)
+            {
+                logger().warn("Could not read the time of a Mailchimp webhook call: {}", firedAt);
+            }
+        }
+        return new Date();
+    }
+    
+    /**
+     * @return the value of a field the event needs
+     * @throws WebApplicationException
+     *             if Mailchimp did not send the field
+     */
+    private String required(final String type, final String field, final String value)
+    {
+        if (UtilityHelper.isNull(value) || value.isEmpty())
+        {
+            logger().warn("Mailchimp {} event has no {}", type, field);
+            throw new WebApplicationException(HttpServletResponse.SC_BAD_REQUEST);
+        }
+        return value;
+    }
+    
+    @Override
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(MailchimpWebhookResource.class);
+    }
+    
+    @POST
+    @Timed
+    @ApiOperation("Apply a change to a list member made on Mailchimp")
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    public Response receive(final @QueryParam("secret") String secret, final @FormParam("type") String type,
+            final @FormParam("fired_at") String firedAt, final @FormParam("data[list_id]") String listId,
+            final @FormParam("data[email]") String email, final @FormParam("data[reason]") String reason,
+            final @FormParam("data[old_email]") String oldEmail, final @FormParam("data[new_email]") String newEmail)
+    {
+        checkSecret(secret);
+        if (!configuration.mailchimpListId.equals(listId))
+        {
+            logger().debug("Ignoring Mailchimp {} event for list {}", type, listId);
+            return Response.ok().build();
+        }
+        
+        final Date changed = firedAt(firedAt);
+        switch (UtilityHelper.isNull(type) ? "" : type)
+        {
+            case "subscribe":
+                statusCache.put(required(type, "data[email]", email), new MailchimpInfo(changed, null, MailchimpStatus.SUBSCRIBED));
+                break;
+            case "unsubscribe":
+                statusCache.put(required(type, "data[email]", email), new MailchimpInfo(changed, reason, MailchimpStatus.UNSUBSCRIBED));
+                break;
+            case "cleaned":
+                statusCache.put(required(type, "data[email]", email), new MailchimpInfo(changed, null, MailchimpStatus.CLEANED));
+                break;
+            case "upemail":
+                statusCache.move(required(type, "data[old_email]", oldEmail), required(type, "data[new_email]", newEmail), changed);
+                break;
+            case "profile":
+                statusCache.touch(required(type, "data[email]", email), changed);
+                break;
+            default:
+                logger().debug("Ignoring Mailchimp {} event", type);
+                return Response.ok().build();
+        }
+        logger().info("Applied Mailchimp {} event", type);
+        return Response.ok().build();
+    }
+    
+    @GET
+    @ApiOperation("Answer the check Mailchimp makes before it registers the webhook")
+    public Response validate(final @QueryParam("secret") String secret)
+    {
+        checkSecret(secret);
+        return Response.ok().build();
+    }
+}
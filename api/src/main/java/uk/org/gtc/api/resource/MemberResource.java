@@ -3,13 +3,13 @@ package uk.org.gtc.api.resource;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Array;
+import java.net.URI;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.annotation.security.PermitAll;
 import javax.annotation.security.RolesAllowed;
@@ -23,7 +23,10 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -31,6 +34,8 @@ import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.SecurityContext;
 
 import org.glassfish.jersey.media.multipart.FormDataParam;
+import org.mongojack.DBCursor;
+import org.mongojack.DBSort;
 import org.quartz.JobKey;
 import org.quartz.SchedulerException;
 import org.quartz.impl.StdSchedulerFactory;
@@ -39,15 +44,11 @@ import org.slf4j.LoggerFactory;
 
 import com.auth0.Auth0User;
 import com.codahale.metrics.annotation.Timed;
-import com.ecwid.maleorang.MailchimpClient;
 import com.ecwid.maleorang.MailchimpException;
 import com.ecwid.maleorang.MailchimpObject;
-import com.ecwid.maleorang.method.v3_0.batches.BatchStatus;
 import com.ecwid.maleorang.method.v3_0.batches.GetBatchStatusMethod;
 import com.ecwid.maleorang.method.v3_0.batches.GetBatchesStatusMethod;
 import com.ecwid.maleorang.method.v3_0.lists.members.EditMemberMethod;
-import com.ecwid.maleorang.method.v3_0.lists.members.GetMemberMethod;
-import com.ecwid.maleorang.method.v3_0.lists.members.MemberInfo;
 import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
@@ -56,23 +57,32 @@ import com.mongodb.MongoException;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
-import uk.org.gtc.api.EmailService;
-import uk.org.gtc.api.EmailServiceFactory;
 import uk.org.gtc.api.GtcConfiguration;
+import uk.org.gtc.api.ImportJobRunnerFactory;
+import uk.org.gtc.api.ImportJobServiceFactory;
+import uk.org.gtc.api.IntegrationExecutorFactory;
+import uk.org.gtc.api.MailchimpBatchServiceFactory;
+import uk.org.gtc.api.MailchimpClientManagerFactory;
+import uk.org.gtc.api.MailchimpStatusCacheFactory;
 import uk.org.gtc.api.MemberServiceFactory;
+import uk.org.gtc.api.ObjectMapperFactory;
 import uk.org.gtc.api.UtilityHelper;
 import uk.org.gtc.api.domain.CsvMember;
-import uk.org.gtc.api.domain.ImportDiff;
+import uk.org.gtc.api.domain.ImportJobDO;
 import uk.org.gtc.api.domain.LocationType;
+import uk.org.gtc.api.domain.MailchimpBatchDO;
 import uk.org.gtc.api.domain.MailchimpInfo;
 import uk.org.gtc.api.domain.MailchimpStatus;
 import uk.org.gtc.api.domain.MemberDO;
 import uk.org.gtc.api.domain.MemberStatus;
 import uk.org.gtc.api.domain.MemberType;
+import uk.org.gtc.api.domain.ResultPage;
 import uk.org.gtc.api.domain.Salutation;
+import uk.org.gtc.api.exception.DependencyUnavailableException;
 import uk.org.gtc.api.exception.MemberImportException;
 import uk.org.gtc.api.exception.MemberNotFoundException;
 import uk.org.gtc.api.jobs.MailchimpSyncJob;
+import uk.org.gtc.api.service.MailchimpStatusCache;
 import uk.org.gtc.api.service.MemberService;
 import us.monoid.json.JSONException;
 
@@ -83,14 +93,12 @@ public class MemberResource extends GenericResource<MemberDO>
 {
     private final GtcConfiguration configuration;
     private final MemberService memberService;
-    private final EmailService emailService;
     
     public MemberResource()
     {
         super(MemberServiceFactory.getInstance());
         this.configuration = GtcConfiguration.getInstance();
         this.memberService = MemberServiceFactory.getInstance();
-        this.emailService = EmailServiceFactory.getInstance();
     }
     
     @POST
@@ -193,55 +201,41 @@ public class MemberResource extends GenericResource<MemberDO>
     public List<MemberDO> findMember(final @PathParam("query") String query)
     {
         logger().debug("Finding member using {}", query);
-        final List<MemberDO> results = new ArrayList<>();
-        final List<MemberDO> members = memberService.getAll();
-        for (final MemberDO member : members)
-        {
-            if (member.getFirstName().toLowerCase().contains(query.toLowerCase()))
-            {
-                if (!results.contains(member))
-                {
-                    results.add(member);
-                }
-                continue;
-            }
-            if (member.getLastName().toLowerCase().contains(query.toLowerCase()))
-            {
-                if (!results.contains(member))
-                {
-                    results.add(member);
-                }
-                continue;
-            }
-            if (member.getMembershipNumber().toString().toLowerCase().contains(query.toLowerCase()))
-            {
-                if (!results.contains(member))
-                {
-                    results.add(member);
-                }
-                continue;
-            }
-            if (member.getFirstName().toLowerCase().concat(" ").concat(member.getLastName().toLowerCase()).contains(query.toLowerCase()))
-            {
-                if (!results.contains(member))
-                {
-                    results.add(member);
-                }
-            }
-        }
-        return results;
+        return memberService.search(query);
     }
     
-    @Override
+    /**
+     * Streams every member straight from the database cursor, so memory use
+     * does not grow with the size of the collection.
+     *
+     * @param format
+     *            - 'ndjson' for one member per line, otherwise a JSON array
+     * @return a streamed response
+     */
     @GET
     @Timed
     @Path("all")
+    @Produces({ MediaType.APPLICATION_JSON, "application/x-ndjson" })
     @ApiOperation(value = "Return a list of all members", response = MemberDO.class, responseContainer = "List")
     @RolesAllowed("MEMBERSHIP_READ")
-    public List<MemberDO> getAll()
+    public Response streamAll(final @QueryParam("format") String format)
     {
         logger().debug("Fetching all members");
-        return super.getAll();
+        final DBCursor<MemberDO> cursor = memberService.getAllSorted(DBSort.asc("_id"));
+        final CursorStreamingOutput<MemberDO> output = new CursorStreamingOutput<>(cursor, ObjectMapperFactory.getInstance(),
+                CursorStreamingOutput.NDJSON.equalsIgnoreCase(format));
+        return Response.ok(output, output.getMediaType()).build();
+    }
+    
+    @GET
+    @Timed
+    @Path("all/page")
+    @ApiOperation(value = "Return a page of members; pass 'next' as 'after' to continue", response = ResultPage.class)
+    @RolesAllowed("MEMBERSHIP_READ")
+    public ResultPage<MemberDO> getAllPage(final @QueryParam("after") String after, final @QueryParam("limit") Integer limit)
+    {
+        logger().debug("Fetching page of members after {}", after);
+        return super.getPage(after, limit);
     }
     
     @GET
@@ -266,6 +260,18 @@ public class MemberResource extends GenericResource<MemberDO>
         return memberService.getByStatus(status);
     }
     
+    @GET
+    @Timed
+    @Path("status/{status}/page")
+    @ApiOperation(value = "Return a page of members in a status, ordered by ID", response = ResultPage.class)
+    @RolesAllowed("MEMBERSHIP_READ")
+    public ResultPage<MemberDO> getByStatusPage(final @PathParam("status") MemberStatus status, final @QueryParam("after") String after,
+            final @QueryParam("limit") Integer limit)
+    {
+        logger().debug("Fetching page of " + status + " members after " + after);
+        return memberService.getPageByStatus(after, limit, status);
+    }
+    
     /**
      * @param context
      * @return
@@ -286,6 +292,16 @@ public class MemberResource extends GenericResource<MemberDO>
         return membershipNumber;
     }
     
+    @GET
+    @Timed
+    @Path("import/{jobId}")
+    @ApiOperation(value = "Report the progress of a membership import", response = ImportJobDO.class)
+    @RolesAllowed("MEMBERSHIP_MANAGE")
+    public ImportJobDO getImportJob(final @PathParam("jobId") String jobId)
+    {
+        return ImportJobServiceFactory.getInstance().getById(jobId);
+    }
+    
     @GET
     @Timed
     @Path("locationTypes")
@@ -296,28 +312,44 @@ public class MemberResource extends GenericResource<MemberDO>
         return LocationType.values();
     }
     
+    @GET
+    @Timed
+    @Path("mailchimp/batches/{id}")
+    @ApiOperation(value = "Return a batch of updates submitted to Mailchimp, with the outcome of each", response = MailchimpBatchDO.class)
+    @RolesAllowed("MEMBERSHIP_MANAGE")
+    public MailchimpBatchDO getMailchimpBatch(final @PathParam("id") String id)
+    {
+        return MailchimpBatchServiceFactory.getInstance().getById(id);
+    }
+    
+    @GET
+    @Timed
+    @Path("mailchimp/batches")
+    @ApiOperation(value = "Return the most recent batches of updates submitted to Mailchimp", response = MailchimpBatchDO.class,
+            responseContainer = "List")
+    @RolesAllowed("MEMBERSHIP_MANAGE")
+    public List<MailchimpBatchDO> getMailchimpBatches(final @QueryParam("limit") Integer limit)
+    {
+        return MailchimpBatchServiceFactory.getInstance().getRecent(limit);
+    }
+    
     @GET
     @Path("mailchimp/getBatches")
     @RolesAllowed("MEMBERSHIP_MANAGE")
-    public List<BatchStatus> getMailchimpBatchStatus() throws IOException, MailchimpException
+    public void getMailchimpBatchStatus(final @Suspended AsyncResponse response)
     {
         final GetBatchesStatusMethod method = new GetBatchesStatusMethod();
-        try (final MailchimpClient client = new MailchimpClient(configuration.mailchimpApiKey))
-        {
-            return client.execute(method).batches;
-        }
+        IntegrationExecutorFactory.getInstance().resume(response,
+                () -> MailchimpClientManagerFactory.getInstance().execute(method).batches);
     }
     
     @GET
     @Path("mailchimp/getBatchStatus/{id}")
     @RolesAllowed("MEMBERSHIP_MANAGE")
-    public BatchStatus getMailchimpBatchStatus(final @PathParam("id") String batchId) throws IOException, MailchimpException
+    public void getMailchimpBatchStatus(final @PathParam("id") String batchId, final @Suspended AsyncResponse response)
     {
         final GetBatchStatusMethod method = new GetBatchStatusMethod(batchId);
-        try (final MailchimpClient client = new MailchimpClient(configuration.mailchimpApiKey))
-        {
-            return client.execute(method);
-        }
+        IntegrationExecutorFactory.getInstance().resume(response, () -> MailchimpClientManagerFactory.getInstance().execute(method));
     }
     
     @GET
@@ -365,38 +397,20 @@ public class MemberResource extends GenericResource<MemberDO>
     @GET
     @Path("{id}/mailchimp/status")
     @RolesAllowed("MEMBERSHIP_MANAGE")
-    public MailchimpInfo getMemberMailchimpStatus(final @PathParam("id") String id)
-            throws IOException
+    public void getMemberMailchimpStatus(final @PathParam("id") String id, final @Suspended AsyncResponse response)
     {
         final MemberDO member = memberService.getById(id);
         
-        final MailchimpClient client = new MailchimpClient(configuration.mailchimpApiKey);
-        try
-        {
-            final GetMemberMethod method = new GetMemberMethod(configuration.mailchimpListId, member.getEmail());
-            method.fields = "status,unsubscribe_reason,last_changed";
-            final MemberInfo mailchimpMember = client.execute(method);
-            final MailchimpStatus status = MailchimpStatus.valueOf(mailchimpMember.status.toUpperCase());
-            final String unsubscribeReason = (String) mailchimpMember.mapping.getOrDefault("unsubscribe_reason", null);
-            final Date lastChanged = mailchimpMember.last_changed;
-            
-            return new MailchimpInfo(lastChanged, unsubscribeReason, status);
-        }
-        catch (final MailchimpException me)
-        {
-            if (me.code == HttpServletResponse.SC_NOT_FOUND)
+        resumeWithMailchimpStatus(response, member, () -> {
+            try
             {
-                return new MailchimpInfo(null, null, MailchimpStatus.NOT_SUBSCRIBED);
+                return MailchimpStatusCacheFactory.getInstance().get(member.getEmail());
             }
-            else
+            catch (final MailchimpException | DependencyUnavailableException e)
             {
                 return new MailchimpInfo(null, null, MailchimpStatus.UNKNOWN);
             }
-        }
-        finally
-        {
-            client.close();
-        }
+        });
     }
     
     @GET
@@ -412,28 +426,21 @@ public class MemberResource extends GenericResource<MemberDO>
     @GET
     @Path("me/mailchimp/status")
     @PermitAll
-    public MailchimpInfo getMyMailchimpStatus(final @Context SecurityContext context)
-            throws IOException, MailchimpException
+    public void getMyMailchimpStatus(final @Context SecurityContext context, final @Suspended AsyncResponse response)
     {
         final Long membershipNumber = getCurrentUserMembershipNumber(context);
         final MemberDO member = memberService.getByMemberNumber(membershipNumber);
         
-        final MailchimpClient client = new MailchimpClient(configuration.mailchimpApiKey);
-        try
-        {
-            final GetMemberMethod method = new GetMemberMethod(configuration.mailchimpListId, member.getEmail());
-            method.fields = "status,unsubscribe_reason,last_changed";
-            final MemberInfo mailchimpMember = client.execute(method);
-            final MailchimpStatus status = MailchimpStatus.valueOf(mailchimpMember.status.toUpperCase());
-            final String unsubscribeReason = (String) mailchimpMember.mapping.getOrDefault("unsubscribe_reason", null);
-            final Date lastChanged = mailchimpMember.last_changed;
-            
-            return new MailchimpInfo(lastChanged, unsubscribeReason, status);
-        }
-        finally
-        {
-            client.close();
-        }
+        resumeWithMailchimpStatus(response, member, () -> {
+            try
+            {
+                return MailchimpStatusCacheFactory.getInstance().get(member.getEmail());
+            }
+            catch (final DependencyUnavailableException due)
+            {
+                return new MailchimpInfo(null, null, MailchimpStatus.UNKNOWN);
+            }
+        });
     }
     
     @GET
@@ -454,7 +461,7 @@ public class MemberResource extends GenericResource<MemberDO>
     @PermitAll
     public Long getNextMembershipNumber()
     {
-        return memberService.getNextMemberNumber();
+        return memberService.peekNextMemberNumber();
     }
     
     @GET
@@ -467,23 +474,6 @@ public class MemberResource extends GenericResource<MemberDO>
         return Salutation.values();
     }
     
-    /**
-     * Gets a {@link Set} of member numbers.
-     *
-     * @return a {@link Set} of member numbers;
-     */
-    private Collection<? extends Long> getSetOfMemberNumbers()
-    {
-        final Set<Long> memberNumbers = new HashSet<>();
-        // Get set of existing membership numbers
-        final List<MemberDO> members = memberService.getAll();
-        for (final MemberDO member : members)
-        {
-            memberNumbers.add(member.getMembershipNumber());
-        }
-        return memberNumbers;
-    }
-    
     @GET
     @Timed
     @Path("statusTypes")
@@ -494,112 +484,15 @@ public class MemberResource extends GenericResource<MemberDO>
         return MemberStatus.values();
     }
     
-    /**
-     * Create or update a member from an import.
-     *
-     * @param csvMember
-     * @param diffs
-     * @return an updated list of diffs
-     */
-    public ImportDiff importCreateUpdateMember(final CsvMember csvMember, final ImportDiff diffs)
-    {
-        // Add to overall import set
-        final Set<Long> importedSet = diffs.getImportedSet();
-        final Set<Long> updatedSet = diffs.getUpdatedSet();
-        final Set<Long> createdSet = diffs.getCreatedSet();
-        
-        importedSet.add(csvMember.getMembershipNumber());
-        final MemberDO existingMember = memberService.getByMemberNumber(csvMember.getMembershipNumber());
-        
-        // Member exists
-        if (existingMember != null)
-        {
-            final MemberDO originalMember = memberService.getByMemberNumber(csvMember.getMembershipNumber());
-            if (csvMember.isDifferentToMember(originalMember))
-            {
-                final MemberDO updatedMember = originalMember.updateFromCsvMember(csvMember);
-                memberService.update(existingMember, updatedMember);
-                updatedSet.add(csvMember.getMembershipNumber());
-            }
-        }
-        // Member does not exist
-        else
-        {
-            memberService.create(new MemberDO(csvMember.getType(), csvMember.getStatus(), csvMember.getMembershipNumber(),
-                    csvMember.getSalutation(), csvMember.getFirstName(), csvMember.getLastName(), csvMember.getEmail(), null, null, null,
-                    null, null, null, null, null));
-            createdSet.add(csvMember.getMembershipNumber());
-        }
-        
-        diffs.setCreatedSet(createdSet);
-        diffs.setUpdatedSet(updatedSet);
-        diffs.setImportedSet(importedSet);
-        
-        return diffs;
-    }
-    
-    /**
-     * Get the existing list of members in the database, and remove all that
-     * exist in the imported document. From here, we have the intersection of
-     * members that have a record in this system, but not in the import, and
-     * should therefore be deleted.
-     *
-     * @param diffs
-     * @return an updated list of diffs
-     */
-    public ImportDiff importDeleteMember(final ImportDiff diffs)
-    {
-        final Set<Long> existingSet = diffs.getExistingSet();
-        final Set<Long> importedSet = diffs.getImportedSet();
-        final Set<Long> deletedSet = diffs.getDeletedSet();
-        final Set<Long> errorSet = diffs.getErrorSet();
-        existingSet.removeAll(importedSet);
-        
-        for (final Long memberNumber : existingSet)
-        {
-            String errorMessage = null;
-            final List<MemberDO> memberList = memberService.findByMemberNumber(memberNumber);
-            if (memberList.size() == 1)
-            {
-                final Boolean deleteStatus = memberService.delete(memberList.get(0));
-                if (deleteStatus)
-                {
-                    deletedSet.add(memberNumber);
-                    continue;
-                }
-                else
-                {
-                    errorMessage = memberNumber + " was not deleted due to an unknown error";
-                }
-            }
-            else if (memberList.size() > 1)
-            {
-                errorMessage = memberNumber + " was not deleted as there is more than one existing member with that number.";
-            }
-            else if (memberList.isEmpty())
-            {
-                errorMessage = memberNumber + " could not be deleted, as a record did not exist.";
-            }
-            errorSet.add(memberNumber);
-            logger().error(errorMessage);
-        }
-        
-        diffs.setDeletedSet(deletedSet);
-        diffs.setErrorSet(errorSet);
-        diffs.setImportedSet(importedSet);
-        diffs.setExistingSet(existingSet);
-        
-        return diffs;
-    }
-    
     @POST
     @Timed
     @Path("upload")
-    @ApiOperation("Administrator can upload new membership information from a CSV file")
+    @ApiOperation(value = "Administrator can upload new membership information from a CSV file, which is imported in the background",
+            response = ImportJobDO.class)
     @RolesAllowed("MEMBERSHIP_MANAGE")
     @Consumes(MediaType.MULTIPART_FORM_DATA)
     @Produces({ MediaType.APPLICATION_JSON })
-    public ImportDiff importMembersFromCsv(@FormDataParam("file") final InputStream csv,
+    public Response importMembersFromCsv(@FormDataParam("file") final InputStream csv,
             @FormDataParam("overwrite") final Boolean overwrite)
     {
         final CsvMapper mapper = new CsvMapper();
@@ -615,30 +508,14 @@ public class MemberResource extends GenericResource<MemberDO>
             throw new MemberImportException("Couldn't process the file that was provided. Please confirm it matches the spec.");
         }
         
-        final Set<Long> createdSet = new HashSet<>();
-        final Set<Long> updatedSet = new HashSet<>();
-        final Set<Long> deletedSet = new HashSet<>();
-        final Set<Long> errorSet = new HashSet<>();
-        final Set<Long> importedSet = new HashSet<>();
-        final Set<Long> existingSet = new HashSet<>();
-        
-        existingSet.addAll(getSetOfMemberNumbers());
-        
-        final ImportDiff diffs = new ImportDiff();
-        diffs.setCreatedSet(createdSet);
-        diffs.setUpdatedSet(updatedSet);
-        diffs.setDeletedSet(deletedSet);
-        diffs.setErrorSet(errorSet);
-        diffs.setImportedSet(importedSet);
-        diffs.setExistingSet(existingSet);
-        
-        // Process members to create/update
+        // Read the whole file before writing anything, so that a malformed
+        // row cannot leave the import half applied
+        final List<CsvMember> csvMembers = new ArrayList<>();
         while (it.hasNext())
         {
-            CsvMember csvMember = null;
             try
             {
-                csvMember = it.next();
+                csvMembers.add(it.next());
             }
             catch (final RuntimeJsonMappingException e)
             {
@@ -646,21 +523,10 @@ public class MemberResource extends GenericResource<MemberDO>
                 throw new MemberImportException(
                         "Couldn't process the file that was provided. Please confirm it matches the spec. " + e.getCause().getMessage());
             }
-            importCreateUpdateMember(csvMember, diffs);
-        }
-        
-        if (overwrite)
-        {
-            importDeleteMember(diffs);
-        }
-        
-        final Boolean success = sendUpdateEmail(diffs);
-        if (!success)
-        {
-            logger().warn("Not successful sending update email. Continuing...");
         }
         
-        return diffs;
+        final ImportJobDO job = ImportJobRunnerFactory.getInstance().submit(csvMembers, overwrite);
+        return Response.accepted(job).location(URI.create("member/import/" + job.getId())).build();
     }
     
     @Override
@@ -669,79 +535,68 @@ public class MemberResource extends GenericResource<MemberDO>
         return LoggerFactory.getLogger(MemberResource.class);
     }
     
-    private Boolean sendUpdateEmail(final ImportDiff diffs)
+    /**
+     * Answer with the cached Mailchimp status of a member straight away, and
+     * only wait on Mailchimp when it is not cached.
+     */
+    private void resumeWithMailchimpStatus(final AsyncResponse response, final MemberDO member, final Callable<MailchimpInfo> lookup)
     {
-        if (diffs.resultedInChange())
+        final MailchimpInfo cached = MailchimpStatusCacheFactory.getInstance().getIfPresent(member.getEmail());
+        if (UtilityHelper.isNull(cached))
         {
-            return emailService.sendImportNotificationEmail(diffs);
+            IntegrationExecutorFactory.getInstance().resume(response, lookup);
         }
         else
         {
-            logger().info("Skipping import notification email as no changes detected");
-            return true;
+            response.resume(cached);
         }
     }
     
     @GET
     @Path("{id}/mailchimp/subscribe")
     @RolesAllowed("MEMBERSHIP_MANAGE")
-    public MailchimpInfo subscribeMemberToMailchimp(final @PathParam("id") String id)
-            throws IOException, MailchimpException
+    public void subscribeMemberToMailchimp(final @PathParam("id") String id, final @Suspended AsyncResponse response)
     {
         final MemberDO member = memberService.getById(id);
         
-        final MailchimpClient client = new MailchimpClient(configuration.mailchimpApiKey);
-        try
-        {
-            final EditMemberMethod method = new EditMemberMethod.CreateOrUpdate(configuration.mailchimpListId, member.getEmail());
-            method.status = "subscribed";
-            method.merge_fields = new MailchimpObject();
-            method.merge_fields.mapping.put("FNAME", member.getFirstName());
-            method.merge_fields.mapping.put("LNAME", member.getLastName());
-            /*
-             * Disabled until Mailchimp list has been updated:
-             * method.merge_fields.mapping.put("TYPE", member.getType());
-             * method.merge_fields.mapping.put("MEMNUM",
-             * member.getMembershipNumber());
-             */
-            final MemberInfo mailchimpMember = client.execute(method);
-            final MailchimpStatus status = MailchimpStatus.valueOf(mailchimpMember.status.toUpperCase());
-            final String unsubscribeReason = (String) mailchimpMember.mapping.getOrDefault("unsubscribe_reason", null);
-            final Date lastChanged = mailchimpMember.last_changed;
-            
-            return new MailchimpInfo(lastChanged, unsubscribeReason, status);
-        }
-        finally
-        {
-            client.close();
-        }
+        final EditMemberMethod method = new EditMemberMethod.CreateOrUpdate(configuration.mailchimpListId, member.getEmail());
+        method.status = "subscribed";
+        method.merge_fields = new MailchimpObject();
+        method.merge_fields.mapping.put("FNAME", member.getFirstName());
+        method.merge_fields.mapping.put("LNAME", member.getLastName());
+        /*
+         * Disabled until Mailchimp list has been updated:
+         * method.merge_fields.mapping.put("TYPE", member.getType());
+         * method.merge_fields.mapping.put("MEMNUM",
+         * member.getMembershipNumber());
+         */
+        IntegrationExecutorFactory.getInstance().resume(response, () -> {
+            final MailchimpInfo info = MailchimpStatusCache.fromMemberInfo(MailchimpClientManagerFactory.getInstance().execute(method));
+            MailchimpStatusCacheFactory.getInstance().put(member.getEmail(), info);
+            return info;
+        });
     }
     
     @GET
     @Path("me/mailchimp/subscribe")
     @PermitAll
-    public MailchimpInfo subscribeMeToMailchimp(final @Context SecurityContext context)
-            throws IOException, MailchimpException
+    public void subscribeMeToMailchimp(final @Context SecurityContext context, final @Suspended AsyncResponse response)
     {
         final Long membershipNumber = getCurrentUserMembershipNumber(context);
         final MemberDO member = memberService.getByMemberNumber(membershipNumber);
         
-        try (final MailchimpClient client = new MailchimpClient(configuration.mailchimpApiKey))
-        {
-            final EditMemberMethod method = new EditMemberMethod.Update(configuration.mailchimpListId, member.getEmail());
-            method.status = "subscribed";
-            method.merge_fields = new MailchimpObject();
-            method.merge_fields.mapping.put("FNAME", member.getFirstName());
-            method.merge_fields.mapping.put("LNAME", member.getLastName());
-            method.merge_fields.mapping.put("TYPE", member.getType());
-            method.merge_fields.mapping.put("MEMNUM", member.getMembershipNumber());
-            final MemberInfo mailchimpMember = client.execute(method);
-            final MailchimpStatus status = MailchimpStatus.valueOf(mailchimpMember.status.toUpperCase());
-            final String unsubscribeReason = (String) mailchimpMember.mapping.getOrDefault("unsubscribe_reason", null);
-            final Date lastChanged = mailchimpMember.last_changed;
-            
-            return new MailchimpInfo(lastChanged, unsubscribeReason, status);
-        }
+        final EditMemberMethod method = new EditMemberMethod.Update(configuration.mailchimpListId, member.getEmail());
+        method.status = "subscribed";
+        method.merge_fields = new MailchimpObject();
+        method.merge_fields.mapping.put("FNAME", member.getFirstName());
+        method.merge_fields.mapping.put("LNAME", member.getLastName());
+        method.merge_fields.mapping.put("TYPE", member.getType());
+        method.merge_fields.mapping.put("MEMNUM", member.getMembershipNumber());
+        IntegrationExecutorFactory.getInstance().resume(response, () -> {
+            final MailchimpInfo info = MailchimpStatusCache.fromMemberInfo(MailchimpClientManagerFactory.getInstance().execute(method));
+            MailchimpStatusCacheFactory.getInstance().put(member.getEmail(), info);
+            return info;
+        });
     }
     
     /**
@@ -0,0 +1,163 @@
+package uk.org.gtc.api.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.mongojack.DBQuery;
+import org.mongojack.DBSort;
+import org.mongojack.DBUpdate;
+import org.mongojack.JacksonDBCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.BasicDBObject;
+
+import uk.org.gtc.api.domain.EmailMessageDO;
+import uk.org.gtc.api.domain.EmailStatus;
+
+/**
+ * The outbox of emails waiting to be sent. Messages are claimed by the
+ * dispatcher before they are sent, by moving their next attempt into the
+ * future, so that instances polling at the same time do not send the same
+ * message twice, and a message claimed by an instance that stopped before it
+ * was sent is picked up again once the claim runs out.
+ */
+public class EmailOutboxService extends GenericService<EmailMessageDO>
+{
+    /**
+     * Sent messages are kept for a while, to answer what was sent to whom.
+     * Failed messages are kept until they are dealt with.
+     */
+    private static final long SENT_SECONDS = TimeUnit.DAYS.toSeconds(30);
+    
+    private static final List<IndexDefinition> INDEXES = Arrays.asList(
+            new IndexDefinition("status_nextAttemptDate", "status", "nextAttemptDate"), new IndexDefinition("claim", "claim"),
+            IndexDefinition.expiring("sentDate_ttl", "sentDate", SENT_SECONDS));
+    
+    private static final int ENQUEUE_BATCH_SIZE = 500;
+    
+    public EmailOutboxService(final JacksonDBCollection<EmailMessageDO, String> messages)
+    {
+        super(messages);
+    }
+    
+    /**
+     * Claim the messages that are due to be sent.
+     *
+     * @param limit
+     *            - the most messages to claim
+     * @param claimSeconds
+     *            - how long the messages are held before another poll may
+     *            claim them again
+     * @return the claimed messages, oldest first
+     */
+    public List<EmailMessageDO> claimDue(final int limit, final long claimSeconds)
+    {
+        final Date now = new Date();
+        final List<String> ids = new ArrayList<>();
+        for (final EmailMessageDO message : collection.find(due(now), new BasicDBObject("_id", 1)).sort(DBSort.asc("nextAttemptDate"))
+                .limit(limit))
+        {
+            ids.add(message.getId());
+        }
+        if (ids.isEmpty())
+        {
+            return new ArrayList<>();
+        }
+        
+        // Only the messages still due when the update lands are claimed, so
+        // a message another instance claimed in the meantime is left alone
+        final String claim = UUID.randomUUID().toString();
+        final Date claimedUntil = new Date(now.getTime() + TimeUnit.SECONDS.toMillis(claimSeconds));
+        collection.update(due(now).in("_id", ids), DBUpdate.set("claim", claim).set("nextAttemptDate", claimedUntil), false, true);
+        return collection.find(DBQuery.is("claim", claim)).sort(DBSort.asc("createdDate")).toArray();
+    }
+    
+    private static DBQuery.Query due(final Date now)
+    {
+        return DBQuery.is("status", EmailStatus.PENDING).lessThanEquals("nextAttemptDate", now);
+    }
+    
+    /**
+     * Add messages to the outbox, to be sent straight away.
+     *
+     * @param messages
+     *            - the messages to send
+     * @return the messages that could not be added
+     */
+    public List<EmailMessageDO> enqueue(final List<EmailMessageDO> messages)
+    {
+        final Date now = new Date();
+        for (final EmailMessageDO message : messages)
+        {
+            message.setStatus(EmailStatus.PENDING);
+            message.setAttempts(0);
+            message.setNextAttemptDate(now);
+        }
+        return bulkSave(messages, ENQUEUE_BATCH_SIZE);
+    }
+    
+    /**
+     * Give up on a message.
+     *
+     * @param id
+     *            - the ID of the message
+     * @param attempts
+     *            - the number of times it was tried
+     * @param error
+     *            - why it could not be sent
+     */
+    public void fail(final String id, final int attempts, final String error)
+    {
+        collection.updateById(id, DBUpdate.set("status", EmailStatus.FAILED).set("attempts", attempts).set("lastError", error)
+                .unset("claim").set("lastUpdatedDate", new Date()));
+    }
+    
+    @Override
+    public List<IndexDefinition> getIndexDefinitions()
+    {
+        return INDEXES;
+    }
+    
+    @Override
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(EmailOutboxService.class);
+    }
+    
+    /**
+     * Put a message back in the outbox, to be tried again later.
+     *
+     * @param id
+     *            - the ID of the message
+     * @param attempts
+     *            - the number of times it was tried
+     * @param nextAttemptDate
+     *            - when to try it again
+     * @param error
+     *            - why it could not be sent
+     */
+    public void retry(final String id, final int attempts, final Date nextAttemptDate, final String error)
+    {
+        collection.updateById(id, DBUpdate.set("attempts", attempts).set("nextAttemptDate", nextAttemptDate).set("lastError", error)
+                .unset("claim").set("lastUpdatedDate", new Date()));
+    }
+    
+    /**
+     * Record that messages were taken by SendGrid.
+     *
+     * @param ids
+     *            - the IDs of the messages
+     */
+    public void sent(final Collection<String> ids)
+    {
+        final Date now = new Date();
+        collection.update(DBQuery.in("_id", ids), DBUpdate.set("status", EmailStatus.SENT).inc("attempts").set("sentDate", now)
+                .unset("claim").set("lastUpdatedDate", now), false, true);
+    }
+}
@@ -1,7 +1,12 @@
 package uk.org.gtc.api.service;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Pattern;
 
 import javax.servlet.http.HttpServletResponse;
@@ -11,35 +16,160 @@ import org.bson.types.ObjectId;
 import org.mongojack.DBCursor;
 import org.mongojack.DBQuery;
 import org.mongojack.DBQuery.Query;
+import org.mongojack.DBSort;
 import org.mongojack.JacksonDBCollection;
 import org.mongojack.WriteResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 
 import uk.org.gtc.api.UtilityHelper;
 import uk.org.gtc.api.domain.BaseDomainObject;
+import uk.org.gtc.api.domain.ResultPage;
 
 public abstract class GenericService<T extends BaseDomainObject>
 {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    
+    public static final int MAX_PAGE_SIZE = 500;
+    
     protected final JacksonDBCollection<T, String> collection;
     
+    private final List<ItemChangeListener<T>> listeners = new CopyOnWriteArrayList<>();
+    
+    private ItemCache<T> cache;
+    
     public GenericService(final JacksonDBCollection<T, String> collection)
     {
         this.collection = collection;
     }
     
+    /**
+     * Register a listener to be told about every item written or removed
+     * through this service.
+     *
+     * @param listener
+     *            - the listener to register
+     */
+    public void addChangeListener(final ItemChangeListener<T> listener)
+    {
+        listeners.add(listener);
+    }
+    
+    /**
+     * Insert new items and replace existing ones using unordered bulk writes,
+     * so that a large set of changes costs one round trip per batch rather
+     * than several per item. Items without an ID are inserted, all others
+     * replace the stored item with the same ID.
+     *
+     * @param items
+     *            - the items to write
+     * @param batchSize
+     *            - the maximum number of writes sent in a single bulk request
+     * @return the items that could not be written
+     */
+    public List<T> bulkSave(final List<T> items, final int batchSize)
+    {
+        final List<T> failed = new ArrayList<>();
+        for (int start = 0; start < items.size(); start += batchSize)
+        {
+            final List<T> batch = items.subList(start, Math.min(start + batchSize, items.size()));
+            final BulkWriteOperation bulk = collection.getDbCollection().initializeUnorderedBulkOperation();
+            final Date now = new Date();
+            for (final T item : batch)
+            {
+                if (UtilityHelper.isNull(item.getCreatedDate()))
+                {
+                    item.setCreatedDate(now);
+                }
+                item.setLastUpdatedDate(now);
+                if (UtilityHelper.isNull(item.getId()))
+                {
+                    // Assign the ID up front so that listeners can be told
+                    // about the new item without reading it back
+                    item.setId(new ObjectId().toString());
+                    bulk.insert(collection.convertToDbObject(item));
+                }
+                else
+                {
+                    bulk.find(new BasicDBObject("_id", new ObjectId(item.getId()))).replaceOne(collection.convertToDbObject(item));
+                }
+            }
+            
+            final Set<Integer> failedIndexes = new HashSet<>();
+            try
+            {
+                bulk.execute();
+            }
+            catch (final BulkWriteException bwe)
+            {
+                // Unordered, so every write without an error was applied
+                for (final BulkWriteError error : bwe.getWriteErrors())
+                {
+                    logger().error("Bulk write of {} failed: {}", batch.get(error.getIndex()).getId(), error.getMessage());
+                    failedIndexes.add(error.getIndex());
+                }
+            }
+            for (int i = 0; i < batch.size(); i++)
+            {
+                if (failedIndexes.contains(i))
+                {
+                    failed.add(batch.get(i));
+                }
+                else
+                {
+                    notifySaved(batch.get(i));
+                }
+            }
+        }
+        return failed;
+    }
+    
     public T create(final T item)
     {
+        final Date now = new Date();
+        if (UtilityHelper.isNull(item.getCreatedDate()))
+        {
+            item.setCreatedDate(now);
+        }
+        item.setLastUpdatedDate(now);
         final WriteResult<T, String> result = collection.insert(item);
-        return result.getSavedObject();
+        final T savedItem = result.getSavedObject();
+        notifySaved(savedItem);
+        return savedItem;
     }
     
     public Boolean delete(final T item)
     {
-        return collection.removeById(item.getId()).getWriteResult().wasAcknowledged();
+        final Boolean deleted = collection.removeById(item.getId()).getWriteResult().wasAcknowledged();
+        if (deleted)
+        {
+            notifyDeleted(item.getId());
+        }
+        return deleted;
+    }
+    
+    /**
+     * Cache items read by ID, so that repeated reads of the same item do not
+     * go to the database. Writes through this service invalidate the cached
+     * item; writes made elsewhere are seen once the item expires.
+     *
+     * @param maximumSize
+     *            - the most items to hold
+     * @param expireAfterSeconds
+     *            - how long an item is held after it was read
+     */
+    public void enableCache(final long maximumSize, final long expireAfterSeconds)
+    {
+        cache = new ItemCache<>(maximumSize, expireAfterSeconds);
+        addChangeListener(cache);
     }
     
     public List<T> getAll()
@@ -61,11 +191,54 @@ public abstract class GenericService<T extends BaseDomainObject>
         return collection.find(new BasicDBObject(), projection).sort(sort).limit(limit).toArray();
     }
     
+    /**
+     * Find every item, reading only some of their fields
+     *
+     * @param projection
+     *            - what to return out of the retrieved objects
+     * @return a lightweight list of every T
+     */
+    public List<T> getAllProjected(final DBObject projection)
+    {
+        return collection.find(new BasicDBObject(), projection).toArray();
+    }
+    
     public DBCursor<T> getAllSorted(final DBObject sort)
     {
         return collection.find().sort(sort);
     }
     
+    /**
+     * Read an item through the cache, which must be enabled.
+     *
+     * @param id
+     *            - a valid ID
+     * @return a copy of the item, or null if it does not exist
+     */
+    protected T getCachedById(final String id)
+    {
+        DBObject document = cache.get(id);
+        if (UtilityHelper.isNull(document))
+        {
+            final long generation = cache.getGeneration();
+            document = collection.getDbCollection().findOne(new BasicDBObject("_id", new ObjectId(id)));
+            if (UtilityHelper.isNull(document))
+            {
+                return null;
+            }
+            cache.put(id, document, generation);
+        }
+        return collection.convertFromDbObject(document);
+    }
+    
+    /**
+     * @return the underlying collection, for maintenance such as index builds
+     */
+    public DBCollection getDbCollection()
+    {
+        return collection.getDbCollection();
+    }
+    
     public T getById(final String id) throws WebApplicationException
     {
         if (!ObjectId.isValid(id))
@@ -73,7 +246,7 @@ public abstract class GenericService<T extends BaseDomainObject>
             throw new WebApplicationException(HttpServletResponse.SC_BAD_REQUEST);
         }
         
-        final T item = collection.findOneById(id);
+        final T item = isCacheEnabled() ? getCachedById(id) : collection.findOneById(id);
         
         if (item == null)
         {
@@ -82,6 +255,17 @@ public abstract class GenericService<T extends BaseDomainObject>
         return item;
     }
     
+    /**
+     * The indexes this service's queries rely on. Subclasses that query on
+     * anything other than the ID should declare an index for each query.
+     *
+     * @return the indexes to ensure at startup
+     */
+    public List<IndexDefinition> getIndexDefinitions()
+    {
+        return Collections.emptyList();
+    }
+    
     /**
      * Find a list of sorted, lightweight items
      *
@@ -104,11 +288,132 @@ public abstract class GenericService<T extends BaseDomainObject>
         }
     }
     
+    /**
+     * Fetch a page of items ordered by ID. Rather than skipping over earlier
+     * results, each page starts after the last ID of the previous one, so the
+     * cost of a page does not grow with how far through the collection it is.
+     *
+     * @param query
+     *            - filter to apply, or null for all items
+     * @param after
+     *            - the 'next' token of the previous page, or null for the first
+     *            page
+     * @param limit
+     *            - the maximum number of items to return
+     * @return a page of items, with a token for the following page if there
+     *         are more results
+     */
+    public ResultPage<T> getPage(final Query query, final String after, final Integer limit)
+    {
+        final int pageSize = UtilityHelper.isNull(limit) ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Query pageQuery = UtilityHelper.isNull(query) ? DBQuery.empty() : query;
+        if (!UtilityHelper.isNullOrEmpty(after))
+        {
+            if (!ObjectId.isValid(after))
+            {
+                throw new WebApplicationException(HttpServletResponse.SC_BAD_REQUEST);
+            }
+            // Combined rather than added to the caller's query, which may be
+            // used again for the next page
+            pageQuery = UtilityHelper.isNull(query) ? DBQuery.greaterThan("_id", after)
+                    : DBQuery.and(query, DBQuery.greaterThan("_id", after));
+        }
+        
+        // Fetch one extra item to find out whether there is another page
+        final List<T> items = collection.find(pageQuery).sort(DBSort.asc("_id")).limit(pageSize + 1).toArray();
+        String next = null;
+        if (items.size() > pageSize)
+        {
+            items.remove(pageSize);
+            next = items.get(pageSize - 1).getId();
+        }
+        return new ResultPage<>(items, pageSize, next);
+    }
+    
+    /**
+     * Find the items written since a given time, reading only some of their
+     * fields. Answered from the lastUpdatedDate index where one is declared.
+     *
+     * @param since
+     *            - the earliest lastUpdatedDate to return
+     * @param projection
+     *            - what to return out of the retrieved objects
+     * @return every item written at or after the given time
+     */
+    public List<T> getUpdatedSince(final Date since, final DBObject projection)
+    {
+        return collection.find(DBQuery.greaterThanEquals("lastUpdatedDate", since), projection).toArray();
+    }
+    
     Logger logger()
     {
         return LoggerFactory.getLogger(GenericService.class);
     }
     
+    /**
+     * Tell the cache and other listeners, such as a search index, about an
+     * item deleted by another API instance.
+     *
+     * @param id
+     *            - the ID of the item
+     */
+    public void itemDeletedElsewhere(final String id)
+    {
+        notifyDeleted(id);
+    }
+    
+    /**
+     * Tell the cache and other listeners, such as a search index, about an
+     * item written by another API instance.
+     *
+     * @param document
+     *            - the item as it now is in the database
+     */
+    public void itemSavedElsewhere(final DBObject document)
+    {
+        notifySaved(collection.convertFromDbObject(document));
+    }
+    
+    protected boolean isCacheEnabled()
+    {
+        return !UtilityHelper.isNull(cache);
+    }
+    
+    protected void notifyDeleted(final String id)
+    {
+        for (final ItemChangeListener<T> listener : listeners)
+        {
+            listener.itemDeleted(id);
+        }
+    }
+    
+    protected void notifySaved(final T item)
+    {
+        if (UtilityHelper.isNull(item))
+        {
+            return;
+        }
+        for (final ItemChangeListener<T> listener : listeners)
+        {
+            listener.itemSaved(item);
+        }
+    }
+    
+    /**
+     * Register gauges for the cache hits, misses and size, if the cache is
+     * enabled.
+     *
+     * @param registry
+     *            - the registry to add the gauges to
+     */
+    public void registerCacheMetrics(final MetricRegistry registry)
+    {
+        if (isCacheEnabled())
+        {
+            cache.registerMetrics(registry, MetricRegistry.name(getClass(), "cache"));
+        }
+    }
+    
     public List<T> query(final Query query)
     {
         return collection.find(query).toArray();
@@ -148,6 +453,8 @@ public abstract class GenericService<T extends BaseDomainObject>
         }
         newItem.setLastUpdatedDate(new Date());
         collection.updateById(newItem.getId(), newItem);
-        return collection.findOneById(newItem.getId());
+        final T updatedItem = collection.findOneById(newItem.getId());
+        notifySaved(updatedItem);
+        return updatedItem;
     }
 }
@@ -0,0 +1,143 @@
+package uk.org.gtc.api.service;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.mongojack.DBQuery;
+import org.mongojack.DBUpdate;
+import org.mongojack.JacksonDBCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.org.gtc.api.domain.ImportDiff;
+import uk.org.gtc.api.domain.ImportJobDO;
+import uk.org.gtc.api.domain.ImportJobStatus;
+
+public class ImportJobService extends GenericService<ImportJobDO>
+{
+    private static final List<IndexDefinition> INDEXES = Collections.singletonList(new IndexDefinition("status", "status"));
+    
+    public ImportJobService(final JacksonDBCollection<ImportJobDO, String> importJobs)
+    {
+        super(importJobs);
+    }
+    
+    private DBUpdate.Builder counts(final ImportDiff diffs)
+    {
+        return DBUpdate.set("createdCount", diffs.getCreatedSet().size()).set("updatedCount", diffs.getUpdatedSet().size())
+                .set("deletedCount", diffs.getDeletedSet().size()).set("errorCount", diffs.getErrorSet().size())
+                .set("lastUpdatedDate", new Date());
+    }
+    
+    /**
+     * Mark a job as finished, storing its full diff, unless the job is no
+     * longer held by the given owner.
+     *
+     * @param id
+     *            - the ID of the job
+     * @param owner
+     *            - the instance running the job
+     * @param diffs
+     *            - the outcome of the import
+     * @return whether the job was updated
+     */
+    public boolean complete(final String id, final String owner, final ImportDiff diffs)
+    {
+        return collection.update(owned(id, owner), counts(diffs).set("status", ImportJobStatus.COMPLETE).set("diff", diffs)
+                .set("completedDate", new Date()).unset("leaseExpiresDate"), false, false).getN() > 0;
+    }
+    
+    /**
+     * Mark a job as failed, unless the job is no longer held by the given
+     * owner.
+     *
+     * @param id
+     *            - the ID of the job
+     * @param owner
+     *            - the instance running the job
+     * @param message
+     *            - why the job failed
+     * @return whether the job was updated
+     */
+    public boolean fail(final String id, final String owner, final String message)
+    {
+        return collection.update(owned(id, owner), DBUpdate.set("status", ImportJobStatus.FAILED).set("message", message)
+                .set("completedDate", new Date()).unset("leaseExpiresDate"), false, false).getN() > 0;
+    }
+    
+    /**
+     * Fail every unfinished job whose owner has stopped renewing its lease,
+     * as nothing will ever finish them. Jobs held by running instances are
+     * left alone.
+     *
+     * @return the number of jobs marked as failed
+     */
+    public int failAbandonedJobs()
+    {
+        return collection.updateMulti(
+                unfinished().or(DBQuery.lessThan("leaseExpiresDate", new Date()), DBQuery.notExists("leaseExpiresDate")),
+                DBUpdate.set("status", ImportJobStatus.FAILED).set("message", "Abandoned by an instance that stopped")
+                        .set("completedDate", new Date()).unset("leaseExpiresDate"))
+                .getN();
+    }
+    
+    @Override
+    public List<IndexDefinition> getIndexDefinitions()
+    {
+        return INDEXES;
+    }
+    
+    @Override
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(ImportJobService.class);
+    }
+    
+    private static DBQuery.Query owned(final String id, final String owner)
+    {
+        return unfinished().is("_id", id).is("owner", owner);
+    }
+    
+    /**
+     * Record how far through the import a job has got, and renew the lease
+     * on it, unless the job is no longer held by the given owner.
+     *
+     * @param id
+     *            - the ID of the job
+     * @param owner
+     *            - the instance running the job
+     * @param rowsProcessed
+     *            - the number of rows processed so far
+     * @param diffs
+     *            - the outcome of the import so far
+     * @param leaseExpiresDate
+     *            - when the lease on the job runs out
+     * @return whether the job was updated
+     */
+    public boolean progress(final String id, final String owner, final int rowsProcessed, final ImportDiff diffs,
+            final Date leaseExpiresDate)
+    {
+        return collection.update(owned(id, owner), counts(diffs).set("status", ImportJobStatus.RUNNING).set("rowsProcessed", rowsProcessed)
+                .set("leaseExpiresDate", leaseExpiresDate), false, false).getN() > 0;
+    }
+    
+    /**
+     * Renew the lease on every unfinished job held by an owner.
+     *
+     * @param owner
+     *            - the instance running the jobs
+     * @param leaseExpiresDate
+     *            - when the leases run out
+     * @return the number of jobs renewed
+     */
+    public int renewLeases(final String owner, final Date leaseExpiresDate)
+    {
+        return collection.updateMulti(unfinished().is("owner", owner), DBUpdate.set("leaseExpiresDate", leaseExpiresDate)).getN();
+    }
+    
+    private static DBQuery.Query unfinished()
+    {
+        return DBQuery.in("status", ImportJobStatus.QUEUED, ImportJobStatus.RUNNING);
+    }
+}
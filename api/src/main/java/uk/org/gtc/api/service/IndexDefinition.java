@@ -0,0 +1,219 @@
+package uk.org.gtc.api.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+import uk.org.gtc.api.UtilityHelper;
+
+/**
+ * An index that a service relies on for its queries, created at startup by
+ * the {@link uk.org.gtc.api.IndexManager}.
+ */
+public class IndexDefinition
+{
+    private final String name;
+    
+    private final DBObject keys;
+    
+    private final boolean unique;
+    
+    private final DBObject partialFilter;
+    
+    private final Long expireAfterSeconds;
+    
+    /**
+     * An ascending index over the given fields, in order.
+     *
+     * @param name
+     *            - the name of the index
+     * @param fields
+     *            - the fields to index
+     */
+    public IndexDefinition(final String name, final String... fields)
+    {
+        this(name, ascending(fields), false, null);
+    }
+    
+    /**
+     * @param name
+     *            - the name of the index
+     * @param keys
+     *            - the index key document
+     * @param unique
+     *            - whether the index rejects duplicate keys
+     * @param partialFilter
+     *            - if not null, only documents matching this filter are
+     *            indexed
+     */
+    public IndexDefinition(final String name, final DBObject keys, final boolean unique, final DBObject partialFilter)
+    {
+        this(name, keys, unique, partialFilter, null);
+    }
+    
+    private IndexDefinition(final String name, final DBObject keys, final boolean unique, final DBObject partialFilter,
+            final Long expireAfterSeconds)
+    {
+        this.name = name;
+        this.keys = keys;
+        this.unique = unique;
+        this.partialFilter = partialFilter;
+        this.expireAfterSeconds = expireAfterSeconds;
+    }
+    
+    private static DBObject ascending(final String... fields)
+    {
+        final BasicDBObject keys = new BasicDBObject();
+        for (final String field : fields)
+        {
+            keys.append(field, 1);
+        }
+        return keys;
+    }
+    
+    /**
+     * An index over a date field that the server uses to delete each document
+     * once the date is older than the given age.
+     *
+     * @param name
+     *            - the name of the index
+     * @param field
+     *            - the date field
+     * @param expireAfterSeconds
+     *            - how long to keep each document
+     * @return the index definition
+     */
+    public static IndexDefinition expiring(final String name, final String field, final long expireAfterSeconds)
+    {
+        return new IndexDefinition(name, ascending(field), false, null, expireAfterSeconds);
+    }
+    
+    /**
+     * @return the index key document
+     */
+    public DBObject getKeys()
+    {
+        return keys;
+    }
+    
+    /**
+     * @return the name of the index
+     */
+    public String getName()
+    {
+        return name;
+    }
+    
+    /**
+     * @return the options to create the index with
+     */
+    public DBObject getOptions()
+    {
+        // Built in the background so that startup does not lock the database
+        final BasicDBObject options = new BasicDBObject("name", name).append("background", true);
+        if (unique)
+        {
+            options.append("unique", true);
+        }
+        if (!UtilityHelper.isNull(partialFilter))
+        {
+            options.append("partialFilterExpression", partialFilter);
+        }
+        if (!UtilityHelper.isNull(expireAfterSeconds))
+        {
+            options.append("expireAfterSeconds", expireAfterSeconds);
+        }
+        return options;
+    }
+    
+    /**
+     * Whether an existing index has the same keys as this one, whatever its
+     * name. The server may return key directions as doubles, so only their
+     * sign is compared.
+     *
+     * @param existingKeys
+     *            - the key document of an existing index
+     * @return true if the keys match, in the same order
+     */
+    public boolean hasKeys(final DBObject existingKeys)
+    {
+        final List<String> fields = new ArrayList<>(keys.keySet());
+        if (UtilityHelper.isNull(existingKeys) || !fields.equals(new ArrayList<>(existingKeys.keySet())))
+        {
+            return false;
+        }
+        for (final String field : fields)
+        {
+            final Object expected = keys.get(field);
+            final Object actual = existingKeys.get(field);
+            if (expected instanceof Number && actual instanceof Number)
+            {
+                if (Math.signum(((Number) expected).doubleValue()) != Math.signum(((Number) actual).doubleValue()))
+                {
+                    return false;
+                }
+            }
+            else if (!expected.equals(actual))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Whether an existing index with the same keys behaves as this one: it
+     * is unique if and only if this one is, and indexes the same documents.
+     *
+     * @param existing
+     *            - the description of an existing index, as returned by the
+     *            server
+     * @return true if the options match
+     */
+    public boolean hasOptions(final DBObject existing)
+    {
+        return unique == Boolean.TRUE.equals(existing.get("unique"))
+                && sameValue(partialFilter, existing.get("partialFilterExpression"))
+                && sameValue(expireAfterSeconds, existing.get("expireAfterSeconds"));
+    }
+    
+    /**
+     * @return whether the index rejects duplicate keys
+     */
+    public boolean isUnique()
+    {
+        return unique;
+    }
+    
+    /**
+     * Compare values read back from the server, which may return numbers as
+     * a different type than they were given in.
+     */
+    private static boolean sameValue(final Object expected, final Object actual)
+    {
+        if (expected instanceof Number && actual instanceof Number)
+        {
+            return ((Number) expected).doubleValue() == ((Number) actual).doubleValue();
+        }
+        if (expected instanceof DBObject && actual instanceof DBObject)
+        {
+            final DBObject expectedObject = (DBObject) expected;
+            final DBObject actualObject = (DBObject) actual;
+            if (!expectedObject.keySet().equals(actualObject.keySet()))
+            {
+                return false;
+            }
+            return expectedObject.keySet().stream().allMatch(key -> sameValue(expectedObject.get(key), actualObject.get(key)));
+        }
+        return Objects.equals(expected, actual);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return name + " " + keys;
+    }
+}
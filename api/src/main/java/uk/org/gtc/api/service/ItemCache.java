@@ -0,0 +1,152 @@
+package uk.org.gtc.api.service;
+
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mongodb.DBObject;
+
+import uk.org.gtc.api.domain.BaseDomainObject;
+
+/**
+ * A bounded cache of items by ID, for a {@link GenericService} to read
+ * through. Items are held as the documents read from the database, so every
+ * read decodes a fresh copy and callers are free to change what they get.
+ * <p>
+ * Any write through the service removes the item, and entries expire after a
+ * fixed time so that writes made elsewhere are picked up eventually.
+ *
+ * @param <T>
+ *            the type of item being cached
+ */
+public class ItemCache<T extends BaseDomainObject> implements ItemChangeListener<T>
+{
+    private final Cache<String, DBObject> items;
+    
+    /**
+     * Bumped on every invalidation, so that a read which raced with a write
+     * does not put the old document back.
+     */
+    private long generation = 0;
+    
+    /**
+     * @param maximumSize
+     *            - the most items to hold
+     * @param expireAfterSeconds
+     *            - how long an item is held after it was read
+     */
+    public ItemCache(final long maximumSize, final long expireAfterSeconds)
+    {
+        this.items = CacheBuilder.newBuilder().maximumSize(maximumSize).expireAfterWrite(expireAfterSeconds, TimeUnit.SECONDS)
+                .recordStats().build();
+    }
+    
+    /**
+     * Register gauges for the hits, misses, hit rate, evictions and size of a
+     * cache.
+     *
+     * @param registry
+     *            - the registry to add the gauges to
+     * @param name
+     *            - the prefix for the gauge names
+     * @param cache
+     *            - the cache to report on
+     */
+    static void registerMetrics(final MetricRegistry registry, final String name, final Cache<?, ?> cache)
+    {
+        registry.register(MetricRegistry.name(name, "hits"), (Gauge<Long>) () -> cache.stats().hitCount());
+        registry.register(MetricRegistry.name(name, "misses"), (Gauge<Long>) () -> cache.stats().missCount());
+        registry.register(MetricRegistry.name(name, "hitRate"), (Gauge<Double>) () -> cache.stats().hitRate());
+        registry.register(MetricRegistry.name(name, "evictions"), (Gauge<Long>) () -> cache.stats().evictionCount());
+        registry.register(MetricRegistry.name(name, "size"), (Gauge<Long>) cache::size);
+    }
+    
+    /**
+     * @param id
+     *            - the ID of the item
+     * @return the cached document, or null if it is not cached
+     */
+    public DBObject get(final String id)
+    {
+        return items.getIfPresent(id);
+    }
+    
+    /**
+     * @return the current generation, to pass to {@link #put} once the item
+     *         has been read
+     */
+    public synchronized long getGeneration()
+    {
+        return generation;
+    }
+    
+    /**
+     * Remove an item, so the next read goes to the database.
+     *
+     * @param id
+     *            - the ID of the item
+     */
+    public synchronized void invalidate(final String id)
+    {
+        generation++;
+        items.invalidate(id);
+    }
+    
+    /**
+     * Remove every item.
+     */
+    public synchronized void invalidateAll()
+    {
+        generation++;
+        items.invalidateAll();
+    }
+    
+    @Override
+    public void itemDeleted(final String id)
+    {
+        invalidate(id);
+    }
+    
+    @Override
+    public void itemSaved(final T item)
+    {
+        invalidate(item.getId());
+    }
+    
+    /**
+     * Cache a document read from the database, unless something was
+     * invalidated since the read started.
+     *
+     * @param id
+     *            - the ID of the item
+     * @param document
+     *            - the item as read from the database
+     * @param readGeneration
+     *            - the generation from before the read
+     * @return whether the document was cached
+     */
+    public synchronized boolean put(final String id, final DBObject document, final long readGeneration)
+    {
+        if (readGeneration != generation)
+        {
+            return false;
+        }
+        items.put(id, document);
+        return true;
+    }
+    
+    /**
+     * Register gauges for this cache.
+     *
+     * @param registry
+     *            - the registry to add the gauges to
+     * @param name
+     *            - the prefix for the gauge names
+     */
+    public void registerMetrics(final MetricRegistry registry, final String name)
+    {
+        registerMetrics(registry, name, items);
+    }
+}
@@ -0,0 +1,30 @@
+package uk.org.gtc.api.service;
+
+import uk.org.gtc.api.domain.BaseDomainObject;
+
+/**
+ * Receives notifications when items held by a {@link GenericService} are
+ * written or removed, so that derived in-memory structures can be kept
+ * current.
+ *
+ * @param <T>
+ *            the type of item being listened to
+ */
+public interface ItemChangeListener<T extends BaseDomainObject>
+{
+    /**
+     * Called after an item has been removed.
+     *
+     * @param id
+     *            - the ID of the removed item
+     */
+    void itemDeleted(String id);
+    
+    /**
+     * Called after an item has been created or updated.
+     *
+     * @param item
+     *            - the item as it now exists in the database
+     */
+    void itemSaved(T item);
+}
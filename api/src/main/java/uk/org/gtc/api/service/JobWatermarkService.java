@@ -0,0 +1,64 @@
+package uk.org.gtc.api.service;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.mongojack.DBQuery;
+import org.mongojack.DBUpdate;
+import org.mongojack.JacksonDBCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.BasicDBObject;
+
+import uk.org.gtc.api.domain.JobWatermarkDO;
+
+public class JobWatermarkService extends GenericService<JobWatermarkDO>
+{
+    private static final List<IndexDefinition> INDEXES = Collections
+            .singletonList(new IndexDefinition("jobName_unique", new BasicDBObject("jobName", 1), true, null));
+    
+    public JobWatermarkService(final JacksonDBCollection<JobWatermarkDO, String> watermarks)
+    {
+        super(watermarks);
+    }
+    
+    /**
+     * Record how far a job has got.
+     *
+     * @param jobName
+     *            - the name of the job
+     * @param watermark
+     *            - the newest lastUpdatedDate the job has processed
+     * @param lastFullRunDate
+     *            - when the job last reconciled everything
+     */
+    public void advance(final String jobName, final Date watermark, final Date lastFullRunDate)
+    {
+        collection.update(DBQuery.is("jobName", jobName), DBUpdate.set("watermark", watermark).set("lastFullRunDate", lastFullRunDate)
+                .set("lastUpdatedDate", new Date()), true, false);
+    }
+    
+    /**
+     * @param jobName
+     *            - the name of the job
+     * @return how far the job has got, or null if it has never run
+     */
+    public JobWatermarkDO getByJobName(final String jobName)
+    {
+        return collection.findOne(DBQuery.is("jobName", jobName));
+    }
+    
+    @Override
+    public List<IndexDefinition> getIndexDefinitions()
+    {
+        return INDEXES;
+    }
+    
+    @Override
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(JobWatermarkService.class);
+    }
+}
@@ -0,0 +1,157 @@
+package uk.org.gtc.api.service;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.mongojack.DBQuery;
+import org.mongojack.DBSort;
+import org.mongojack.DBUpdate;
+import org.mongojack.JacksonDBCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.BasicDBObject;
+
+import uk.org.gtc.api.UtilityHelper;
+import uk.org.gtc.api.domain.MailchimpBatchDO;
+import uk.org.gtc.api.domain.MailchimpBatchStatus;
+import uk.org.gtc.api.domain.MailchimpOperation;
+
+public class MailchimpBatchService extends GenericService<MailchimpBatchDO>
+{
+    private static final List<IndexDefinition> INDEXES = Arrays.asList(new IndexDefinition("status", "status"),
+            new IndexDefinition("submittedDate", "submittedDate"));
+    
+    private static final int DEFAULT_RECENT = 20;
+    
+    private static final int MAX_RECENT = 100;
+    
+    public MailchimpBatchService(final JacksonDBCollection<MailchimpBatchDO, String> batches)
+    {
+        super(batches);
+    }
+    
+    /**
+     * Claim a batch that Mailchimp has finished, so that only one instance
+     * stores its outcome. A batch can be claimed if it has not been, or if
+     * the instance that claimed it did not finish it in time.
+     *
+     * @param id
+     *            - the ID of the batch
+     * @param claimSeconds
+     *            - how long the claim is held
+     * @return the claim, to pass to
+     *         {@link #complete(String, String, List, int)}, or null if
+     *         another instance holds the batch or has finished it
+     */
+    public String claim(final String id, final long claimSeconds)
+    {
+        final Date now = new Date();
+        final String claim = UUID.randomUUID().toString();
+        final int claimed = collection.update(DBQuery.is("_id", id).or(DBQuery.is("status", MailchimpBatchStatus.SUBMITTED), expired(now)),
+                DBUpdate.set("status", MailchimpBatchStatus.FINISHING).set("claim", claim)
+                        .set("claimExpiresDate", new Date(now.getTime() + TimeUnit.SECONDS.toMillis(claimSeconds))),
+                false, false).getN();
+        return claimed > 0 ? claim : null;
+    }
+    
+    /**
+     * Mark a claimed batch as finished, storing the outcome of each
+     * operation, unless the claim has since been taken over.
+     *
+     * @param id
+     *            - the ID of the batch
+     * @param claim
+     *            - the claim on the batch
+     * @param operations
+     *            - the operations, with their status codes filled in
+     * @param erroredOperations
+     *            - the number of operations that failed
+     * @return whether the batch was marked as finished
+     */
+    public boolean complete(final String id, final String claim, final List<MailchimpOperation> operations, final int erroredOperations)
+    {
+        return collection.update(DBQuery.is("_id", id).is("status", MailchimpBatchStatus.FINISHING).is("claim", claim),
+                DBUpdate.set("status", MailchimpBatchStatus.FINISHED).set("operations", operations)
+                        .set("finishedOperations", operations.size()).set("erroredOperations", erroredOperations)
+                        .set("completedDate", new Date()).set("lastUpdatedDate", new Date()).unset("claimExpiresDate"),
+                false, false).getN() > 0;
+    }
+    
+    private static DBQuery.Query expired(final Date now)
+    {
+        return DBQuery.is("status", MailchimpBatchStatus.FINISHING).lessThan("claimExpiresDate", now);
+    }
+    
+    @Override
+    public List<IndexDefinition> getIndexDefinitions()
+    {
+        return INDEXES;
+    }
+    
+    /**
+     * @return every batch that Mailchimp has not finished yet, or whose
+     *         claim ran out before its outcome was stored
+     */
+    public List<MailchimpBatchDO> getOpen()
+    {
+        return collection.find(DBQuery.or(DBQuery.is("status", MailchimpBatchStatus.SUBMITTED), expired(new Date()))).toArray();
+    }
+    
+    /**
+     * @return the email addresses with an update in a batch whose outcome has
+     *         not been stored yet, which should not be sent again until it
+     *         has
+     */
+    public Set<String> getPendingEmails()
+    {
+        final Set<String> emails = new HashSet<>();
+        final DBQuery.Query pending = DBQuery.in("status", MailchimpBatchStatus.SUBMITTED, MailchimpBatchStatus.FINISHING);
+        for (final MailchimpBatchDO batch : collection.find(pending, new BasicDBObject("operations.email", 1)))
+        {
+            for (final MailchimpOperation operation : batch.getOperations())
+            {
+                emails.add(operation.getEmail());
+            }
+        }
+        return emails;
+    }
+    
+    /**
+     * @param limit
+     *            - the most batches to return, or null for the default
+     * @return the most recently submitted batches, newest first
+     */
+    public List<MailchimpBatchDO> getRecent(final Integer limit)
+    {
+        final int count = UtilityHelper.isNull(limit) ? DEFAULT_RECENT : Math.max(1, Math.min(limit, MAX_RECENT));
+        return collection.find().sort(DBSort.desc("submittedDate")).limit(count).toArray();
+    }
+    
+    @Override
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(MailchimpBatchService.class);
+    }
+    
+    /**
+     * Record how far Mailchimp has got through a batch.
+     *
+     * @param id
+     *            - the ID of the batch
+     * @param finishedOperations
+     *            - the number of operations Mailchimp has applied
+     * @param erroredOperations
+     *            - the number of those that failed
+     */
+    public void progress(final String id, final int finishedOperations, final int erroredOperations)
+    {
+        collection.updateById(id, DBUpdate.set("finishedOperations", finishedOperations).set("erroredOperations", erroredOperations)
+                .set("lastUpdatedDate", new Date()));
+    }
+}
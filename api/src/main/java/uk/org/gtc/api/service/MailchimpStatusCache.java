@@ -0,0 +1,219 @@
+package uk.org.gtc.api.service;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.MetricRegistry;
+import com.ecwid.maleorang.MailchimpException;
+import com.ecwid.maleorang.method.v3_0.lists.members.GetMemberMethod;
+import com.ecwid.maleorang.method.v3_0.lists.members.MemberInfo;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import uk.org.gtc.api.MailchimpExecutor;
+import uk.org.gtc.api.UtilityHelper;
+import uk.org.gtc.api.domain.MailchimpInfo;
+import uk.org.gtc.api.domain.MailchimpStatus;
+
+/**
+ * The Mailchimp subscription status of each email address, read through from
+ * Mailchimp and held for a fixed time. Mailchimp tells us of changes made on
+ * its side through a webhook, which updates the entries in place, so the
+ * time an entry is held only bounds how stale it can get if a webhook call is
+ * missed or lands on another instance.
+ * <p>
+ * Entries are keyed by lower case email address, as Mailchimp does not
+ * distinguish addresses by case.
+ */
+public class MailchimpStatusCache
+{
+    private static final String STATUS_FIELDS = "status,unsubscribe_reason,last_changed";
+    
+    private final Cache<String, MailchimpInfo> statuses;
+    
+    private final MailchimpExecutor mailchimp;
+    
+    private final String listId;
+    
+    /**
+     * @param mailchimp
+     *            - used to read statuses that are not cached
+     * @param listId
+     *            - the Mailchimp list the statuses are for
+     * @param maximumSize
+     *            - the most email addresses to hold
+     * @param expireAfterSeconds
+     *            - how long a status is held after it was last written
+     */
+    public MailchimpStatusCache(final MailchimpExecutor mailchimp, final String listId, final long maximumSize,
+            final long expireAfterSeconds)
+    {
+        this.mailchimp = mailchimp;
+        this.listId = listId;
+        this.statuses = CacheBuilder.newBuilder().maximumSize(maximumSize).expireAfterWrite(expireAfterSeconds, TimeUnit.SECONDS)
+                .recordStats().build();
+    }
+    
+    /**
+     * Convert a Mailchimp list member to the status we hold for it.
+     *
+     * @param mailchimpMember
+     *            - the list member, including its status
+     * @return the status of the list member
+     */
+    public static MailchimpInfo fromMemberInfo(final MemberInfo mailchimpMember)
+    {
+        final MailchimpStatus status = MailchimpStatus.valueOf(mailchimpMember.status.toUpperCase(Locale.ROOT));
+        final String unsubscribeReason = (String) mailchimpMember.mapping.getOrDefault("unsubscribe_reason", null);
+        return new MailchimpInfo(mailchimpMember.last_changed, unsubscribeReason, status);
+    }
+    
+    /**
+     * Find the status of an email address, from Mailchimp if it is not
+     * cached. An address that is not on the list is held as
+     * {@link MailchimpStatus#NOT_SUBSCRIBED}.
+     *
+     * @param email
+     *            - the email address
+     * @return the Mailchimp status of the address
+     * @throws IOException
+     *             if Mailchimp could not be reached
+     * @throws MailchimpException
+     *             if Mailchimp could not give the status
+     */
+    public MailchimpInfo get(final String email) throws IOException, MailchimpException
+    {
+        final String key = key(email);
+        final MailchimpInfo cached = statuses.getIfPresent(key);
+        if (!UtilityHelper.isNull(cached))
+        {
+            return cached;
+        }
+        
+        MailchimpInfo info;
+        try
+        {
+            final GetMemberMethod method = new GetMemberMethod(listId, email);
+            method.fields = STATUS_FIELDS;
+            info = fromMemberInfo(mailchimp.execute(method));
+        }
+        catch (final MailchimpException me)
+        {
+            if (me.code != HttpServletResponse.SC_NOT_FOUND)
+            {
+                throw me;
+            }
+            info = new MailchimpInfo(null, null, MailchimpStatus.NOT_SUBSCRIBED);
+        }
+        
+        // A webhook update that arrived while Mailchimp was being read is
+        // newer than what was read, so it is kept
+        final MailchimpInfo raced = statuses.asMap().putIfAbsent(key, info);
+        return UtilityHelper.isNull(raced) ? info : raced;
+    }
+    
+    /**
+     * @param email
+     *            - the email address
+     * @return the cached status of the address, or null if it is not cached
+     */
+    public MailchimpInfo getIfPresent(final String email)
+    {
+        return statuses.getIfPresent(key(email));
+    }
+    
+    /**
+     * Forget the status of an email address, so that it is read from
+     * Mailchimp next time.
+     *
+     * @param email
+     *            - the email address
+     */
+    public void invalidate(final String email)
+    {
+        statuses.invalidate(key(email));
+    }
+    
+    private static String key(final String email)
+    {
+        return email.toLowerCase(Locale.ROOT);
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(MailchimpStatusCache.class);
+    }
+    
+    /**
+     * Move the status of an email address that was changed on Mailchimp to
+     * the new address.
+     *
+     * @param oldEmail
+     *            - the address before the change
+     * @param newEmail
+     *            - the address after the change
+     * @param changed
+     *            - when the address was changed
+     */
+    public void move(final String oldEmail, final String newEmail, final Date changed)
+    {
+        final MailchimpInfo info = statuses.asMap().remove(key(oldEmail));
+        if (UtilityHelper.isNull(info))
+        {
+            // Nothing is known of the old address, so neither is the status
+            // of the new one
+            invalidate(newEmail);
+        }
+        else
+        {
+            put(newEmail, new MailchimpInfo(changed, info.getUnsubscribeReason(), info.getStatus()));
+        }
+    }
+    
+    /**
+     * Hold the status of an email address, replacing any status held for it.
+     *
+     * @param email
+     *            - the email address
+     * @param info
+     *            - its Mailchimp status
+     */
+    public void put(final String email, final MailchimpInfo info)
+    {
+        statuses.put(key(email), info);
+    }
+    
+    /**
+     * Register gauges for the hits, misses, hit rate, evictions and size of
+     * the cache.
+     *
+     * @param registry
+     *            - the registry to add the gauges to
+     */
+    public void registerMetrics(final MetricRegistry registry)
+    {
+        ItemCache.registerMetrics(registry, MetricRegistry.name(MailchimpStatusCache.class), statuses);
+    }
+    
+    /**
+     * Record that the profile of an email address was changed on Mailchimp.
+     * Its status is unchanged, so it is only updated if it is held.
+     *
+     * @param email
+     *            - the email address
+     * @param changed
+     *            - when the profile was changed
+     */
+    public void touch(final String email, final Date changed)
+    {
+        statuses.asMap().computeIfPresent(key(email),
+                (key, info) -> new MailchimpInfo(changed, info.getUnsubscribeReason(), info.getStatus()));
+    }
+}
@@ -0,0 +1,199 @@
+package uk.org.gtc.api.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import uk.org.gtc.api.ObjectMapperFactory;
+import uk.org.gtc.api.UtilityHelper;
+import uk.org.gtc.api.domain.CsvMember;
+import uk.org.gtc.api.domain.ImportDiff;
+import uk.org.gtc.api.domain.MemberDO;
+
+/**
+ * Applies the creates and updates from a membership CSV import.
+ * <p>
+ * Rather than looking each row up on its own, every existing member is
+ * fetched in one query and the rows are compared against them in memory.
+ * Only the members that actually changed are then written back, using
+ * unordered bulk writes of at most {@code batchSize} members at a time.
+ */
+public class MemberImporter
+{
+    private final MemberService memberService;
+    
+    private final int batchSize;
+    
+    /**
+     * @param memberService
+     *            - the service to read and write members through
+     * @param batchSize
+     *            - the maximum number of members written per bulk request
+     */
+    public MemberImporter(final MemberService memberService, final int batchSize)
+    {
+        this.memberService = memberService;
+        this.batchSize = batchSize;
+    }
+    
+    /**
+     * Delete every member that exists in the database but is missing from the
+     * import. Numbers that could not be deleted, because no member or more
+     * than one member holds them, or the delete failed, go in the error set.
+     *
+     * @param diffs
+     *            - the diff of an import that has already been applied
+     * @return the updated diff
+     */
+    public ImportDiff deleteMissingMembers(final ImportDiff diffs)
+    {
+        final Set<Long> existingSet = diffs.getExistingSet();
+        existingSet.removeAll(diffs.getImportedSet());
+        
+        final Set<Long> deleted = memberService.deleteByMemberNumbers(existingSet, batchSize);
+        diffs.getDeletedSet().addAll(deleted);
+        for (final Long memberNumber : existingSet)
+        {
+            if (!deleted.contains(memberNumber))
+            {
+                diffs.getErrorSet().add(memberNumber);
+            }
+        }
+        
+        return diffs;
+    }
+    
+    private static MemberDO copyOf(final MemberDO member)
+    {
+        // Through a tree, as converting straight to the same type returns the
+        // member itself
+        final ObjectMapper mapper = ObjectMapperFactory.getInstance();
+        return mapper.convertValue(mapper.valueToTree(member), MemberDO.class);
+    }
+    
+    private void importBatch(final List<CsvMember> csvMembers, final Map<Long, List<MemberDO>> existingMembers, final ImportDiff diffs)
+    {
+        // Keyed by membership number so repeated rows collapse into one write
+        final Map<Long, MemberDO> changedMembers = new LinkedHashMap<>();
+        final List<MemberDO> unnumberedMembers = new ArrayList<>();
+        
+        for (final CsvMember csvMember : csvMembers)
+        {
+            final Long memberNumber = csvMember.getMembershipNumber();
+            diffs.getImportedSet().add(memberNumber);
+            
+            final MemberDO pendingMember = changedMembers.get(memberNumber);
+            final List<MemberDO> matches = existingMembers.get(memberNumber);
+            if (!UtilityHelper.isNull(pendingMember))
+            {
+                pendingMember.updateFromCsvMember(csvMember);
+            }
+            else if (UtilityHelper.isNull(matches) || UtilityHelper.isNull(memberNumber))
+            {
+                final MemberDO newMember = new MemberDO(csvMember.getType(), csvMember.getStatus(), memberNumber,
+                        csvMember.getSalutation(), csvMember.getFirstName(), csvMember.getLastName(), csvMember.getEmail(), null, null,
+                        null, null, null, null, null, null);
+                if (UtilityHelper.isNull(memberNumber))
+                {
+                    unnumberedMembers.add(newMember);
+                }
+                else
+                {
+                    changedMembers.put(memberNumber, newMember);
+                }
+                diffs.getCreatedSet().add(memberNumber);
+            }
+            else if (matches.size() > 1)
+            {
+                logger().error("{} was not imported as there is more than one existing member with that number.", memberNumber);
+                diffs.getErrorSet().add(memberNumber);
+            }
+            else if (csvMember.isDifferentToMember(matches.get(0)))
+            {
+                // Changed on a copy so a failed write leaves the prefetched
+                // member as it still is in the database
+                changedMembers.put(memberNumber, copyOf(matches.get(0)).updateFromCsvMember(csvMember));
+                diffs.getUpdatedSet().add(memberNumber);
+            }
+        }
+        
+        final List<MemberDO> toSave = new ArrayList<>(changedMembers.values());
+        toSave.addAll(unnumberedMembers);
+        final List<MemberDO> failed = memberService.bulkSave(toSave, batchSize);
+        for (final MemberDO member : failed)
+        {
+            changedMembers.remove(member.getMembershipNumber());
+            diffs.getCreatedSet().remove(member.getMembershipNumber());
+            diffs.getUpdatedSet().remove(member.getMembershipNumber());
+            diffs.getErrorSet().add(member.getMembershipNumber());
+        }
+        
+        // Later batches may repeat a number created or updated in this one
+        for (final MemberDO member : changedMembers.values())
+        {
+            existingMembers.put(member.getMembershipNumber(), Collections.singletonList(member));
+        }
+    }
+    
+    /**
+     * Create or update the members in an import, recording the outcome for
+     * each membership number in the diff.
+     *
+     * @param csvMembers
+     *            - the rows of the import
+     * @param diffs
+     *            - the diff to record the outcome in
+     * @return the updated diff
+     * @see #importMembers(List, ImportDiff, IntConsumer)
+     */
+    public ImportDiff importMembers(final List<CsvMember> csvMembers, final ImportDiff diffs)
+    {
+        return importMembers(csvMembers, diffs, rowsProcessed -> {
+        });
+    }
+    
+    /**
+     * Create or update the members in an import, recording the outcome for
+     * each membership number in the diff. The existing set is filled with
+     * every membership number already in the database.
+     *
+     * @param csvMembers
+     *            - the rows of the import
+     * @param diffs
+     *            - the diff to record the outcome in
+     * @param progress
+     *            - told the number of rows processed after each batch
+     * @return the updated diff
+     */
+    public ImportDiff importMembers(final List<CsvMember> csvMembers, final ImportDiff diffs, final IntConsumer progress)
+    {
+        final long start = System.currentTimeMillis();
+        final Map<Long, List<MemberDO>> existingMembers = memberService.getAllByMemberNumber();
+        diffs.getExistingSet().addAll(existingMembers.keySet());
+        
+        for (int from = 0; from < csvMembers.size(); from += batchSize)
+        {
+            final int to = Math.min(from + batchSize, csvMembers.size());
+            importBatch(csvMembers.subList(from, to), existingMembers, diffs);
+            progress.accept(to);
+        }
+        logger().info("Imported {} rows ({} created, {} updated, {} errors) in {}ms", csvMembers.size(), diffs.getCreatedSet().size(),
+                diffs.getUpdatedSet().size(), diffs.getErrorSet().size(), System.currentTimeMillis() - start);
+        
+        return diffs;
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(MemberImporter.class);
+    }
+}
@@ -0,0 +1,354 @@
+package uk.org.gtc.api.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.org.gtc.api.UtilityHelper;
+import uk.org.gtc.api.domain.MemberDO;
+
+/**
+ * An in-memory n-gram index over member names and membership numbers.
+ * <p>
+ * Every searchable field (first name, last name, full name and membership
+ * number) is lower-cased and broken into all of its substrings of up to
+ * {@value #GRAM_LENGTH} characters. A query is answered by intersecting the
+ * posting sets of its grams and then confirming each candidate with a plain
+ * substring check, so results match the old linear scan exactly.
+ * <p>
+ * The index is loaded lazily from the database on first use and is then kept
+ * current by listening to writes made through {@link MemberService}.
+ */
+public class MemberSearchIndex implements ItemChangeListener<MemberDO>
+{
+    private static class IndexedMember
+    {
+        private final MemberDO member;
+        private final List<String> fields;
+        
+        IndexedMember(final MemberDO member, final List<String> fields)
+        {
+            this.member = member;
+            this.fields = fields;
+        }
+        
+        boolean matches(final String query)
+        {
+            for (final String field : fields)
+            {
+                if (field.contains(query))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+    
+    static final int GRAM_LENGTH = 3;
+    
+    private static final Comparator<MemberDO> RESULT_ORDER = Comparator.comparing(MemberDO::getMembershipNumber,
+            Comparator.nullsLast(Comparator.naturalOrder()));
+    
+    private final Supplier<? extends Collection<MemberDO>> loader;
+    
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private final Map<String, IndexedMember> members = new HashMap<>();
+    
+    private final Map<String, Set<String>> postings = new HashMap<>();
+    
+    private boolean built = false;
+    
+    /**
+     * @param loader
+     *            - supplies the full set of members when the index is (re)built
+     */
+    public MemberSearchIndex(final Supplier<? extends Collection<MemberDO>> loader)
+    {
+        this.loader = loader;
+    }
+    
+    private void add(final MemberDO member)
+    {
+        final List<String> fields = searchableFields(member);
+        members.put(member.getId(), new IndexedMember(member, fields));
+        for (final String field : fields)
+        {
+            for (final String gram : grams(field))
+            {
+                postings.computeIfAbsent(gram, g -> new HashSet<>()).add(member.getId());
+            }
+        }
+    }
+    
+    private Set<String> candidates(final String query)
+    {
+        final List<Set<String>> postingSets = new ArrayList<>();
+        for (final String gram : queryGrams(query))
+        {
+            final Set<String> ids = postings.get(gram);
+            if (ids == null)
+            {
+                return Collections.emptySet();
+            }
+            postingSets.add(ids);
+        }
+        
+        // Intersect starting from the smallest posting set
+        postingSets.sort(Comparator.comparingInt(Set::size));
+        final Set<String> candidates = new HashSet<>(postingSets.get(0));
+        for (int i = 1; i < postingSets.size() && !candidates.isEmpty(); i++)
+        {
+            candidates.retainAll(postingSets.get(i));
+        }
+        return candidates;
+    }
+    
+    private void ensureBuilt()
+    {
+        lock.readLock().lock();
+        try
+        {
+            if (built)
+            {
+                return;
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+        
+        lock.writeLock().lock();
+        try
+        {
+            // Loaded while holding the write lock so that no change
+            // notification can be applied underneath the snapshot
+            if (!built)
+            {
+                final long start = System.currentTimeMillis();
+                members.clear();
+                postings.clear();
+                for (final MemberDO member : loader.get())
+                {
+                    if (!UtilityHelper.isNull(member.getId()))
+                    {
+                        add(member);
+                    }
+                }
+                built = true;
+                logger().info("Indexed {} members ({} grams) in {}ms", members.size(), postings.size(),
+                        System.currentTimeMillis() - start);
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Split text into every substring of one to {@value #GRAM_LENGTH}
+     * characters.
+     *
+     * @param text
+     *            - lower-cased text to split
+     * @return the set of grams in the text
+     */
+    static Set<String> grams(final String text)
+    {
+        final Set<String> grams = new HashSet<>();
+        for (int length = 1; length <= GRAM_LENGTH; length++)
+        {
+            for (int i = 0; i + length <= text.length(); i++)
+            {
+                grams.add(text.substring(i, i + length));
+            }
+        }
+        return grams;
+    }
+    
+    /**
+     * Drop the current contents so that the next search reloads the index from
+     * the database.
+     */
+    public void invalidate()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            built = false;
+            members.clear();
+            postings.clear();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void itemDeleted(final String id)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if (built)
+            {
+                remove(id);
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void itemSaved(final MemberDO member)
+    {
+        if (UtilityHelper.isNull(member.getId()))
+        {
+            return;
+        }
+        lock.writeLock().lock();
+        try
+        {
+            if (built)
+            {
+                remove(member.getId());
+                add(member);
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(MemberSearchIndex.class);
+    }
+    
+    /**
+     * Grams used to look up candidates for a query. Short queries are a gram
+     * in their own right; longer ones are covered by their trigrams.
+     */
+    private Set<String> queryGrams(final String query)
+    {
+        if (query.length() <= GRAM_LENGTH)
+        {
+            return Collections.singleton(query);
+        }
+        final Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); i++)
+        {
+            grams.add(query.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+    
+    private void remove(final String id)
+    {
+        final IndexedMember existing = members.remove(id);
+        if (existing == null)
+        {
+            return;
+        }
+        for (final String field : existing.fields)
+        {
+            for (final String gram : grams(field))
+            {
+                final Set<String> ids = postings.get(gram);
+                if (ids != null)
+                {
+                    ids.remove(id);
+                    if (ids.isEmpty())
+                    {
+                        postings.remove(gram);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Find all members whose first name, last name, full name or membership
+     * number contains the query, ignoring case.
+     *
+     * @param query
+     *            - the text to search for
+     * @return matching members, ordered by membership number
+     */
+    public List<MemberDO> search(final String query)
+    {
+        ensureBuilt();
+        final String normalisedQuery = query.toLowerCase(Locale.ENGLISH);
+        
+        lock.readLock().lock();
+        try
+        {
+            final List<MemberDO> results = new ArrayList<>();
+            if (normalisedQuery.isEmpty())
+            {
+                members.values().forEach(m -> results.add(m.member));
+            }
+            else
+            {
+                for (final String id : candidates(normalisedQuery))
+                {
+                    final IndexedMember indexedMember = members.get(id);
+                    if (indexedMember != null && indexedMember.matches(normalisedQuery))
+                    {
+                        results.add(indexedMember.member);
+                    }
+                }
+            }
+            results.sort(RESULT_ORDER);
+            return results;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private List<String> searchableFields(final MemberDO member)
+    {
+        final List<String> fields = new ArrayList<>();
+        final String firstName = member.getFirstName();
+        final String lastName = member.getLastName();
+        if (!UtilityHelper.isNull(firstName))
+        {
+            fields.add(firstName.toLowerCase(Locale.ENGLISH));
+        }
+        if (!UtilityHelper.isNull(lastName))
+        {
+            fields.add(lastName.toLowerCase(Locale.ENGLISH));
+        }
+        if (!UtilityHelper.isNull(firstName) && !UtilityHelper.isNull(lastName))
+        {
+            fields.add(firstName.toLowerCase(Locale.ENGLISH).concat(" ").concat(lastName.toLowerCase(Locale.ENGLISH)));
+        }
+        if (!UtilityHelper.isNull(member.getMembershipNumber()))
+        {
+            fields.add(member.getMembershipNumber().toString());
+        }
+        return fields;
+    }
+}
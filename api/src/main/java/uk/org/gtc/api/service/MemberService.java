@@ -1,7 +1,14 @@
 package uk.org.gtc.api.service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.WebApplicationException;
@@ -12,18 +19,169 @@ import org.mongojack.JacksonDBCollection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.DuplicateKeyException;
 import com.mongodb.MongoException;
 
 import uk.org.gtc.api.UtilityHelper;
 import uk.org.gtc.api.domain.MemberDO;
 import uk.org.gtc.api.domain.MemberStatus;
+import uk.org.gtc.api.domain.ResultPage;
 import uk.org.gtc.api.exception.MemberNotFoundException;
 
 public class MemberService extends GenericService<MemberDO>
 {
+    /**
+     * Only members with a number are held to a unique number, as many members
+     * may be stored without one.
+     */
+    private static final IndexDefinition MEMBERSHIP_NUMBER_INDEX = new IndexDefinition("membershipNumber_unique",
+            new BasicDBObject("membershipNumber", 1), true,
+            new BasicDBObject("membershipNumber", new BasicDBObject("$gte", 0)));
+    
+    /**
+     * Includes lastUpdatedDate for the change feed that keeps the caches of
+     * other instances current.
+     */
+    private static final List<IndexDefinition> INDEXES = Arrays.asList(MEMBERSHIP_NUMBER_INDEX,
+            new IndexDefinition("email", "email"), new IndexDefinition("status", "status"),
+            new IndexDefinition("lastName_firstName", "lastName", "firstName"),
+            new IndexDefinition("lastUpdatedDate", "lastUpdatedDate"));
+    
+    private final MemberSearchIndex searchIndex;
+    
+    private final SequenceAllocator memberNumbers;
+    
+    /**
+     * Maps membership numbers to member IDs when the cache is enabled. An
+     * entry is only a hint: the member it leads to is checked before use.
+     */
+    private Cache<Long, String> memberIds;
+    
     public MemberService(final JacksonDBCollection<MemberDO, String> members)
+    {
+        this(members, 1);
+    }
+    
+    /**
+     * @param members
+     *            - the members collection
+     * @param memberNumberBlockSize
+     *            - how many membership numbers to reserve at a time
+     */
+    public MemberService(final JacksonDBCollection<MemberDO, String> members, final int memberNumberBlockSize)
     {
         super(members);
+        this.searchIndex = new MemberSearchIndex(this::getAll);
+        this.memberNumbers = new SequenceAllocator(members.getDB().getCollection("counters"), "membershipNumber",
+                memberNumberBlockSize, this::getHighestMemberNumber);
+        addChangeListener(searchIndex);
+    }
+    
+    @Override
+    public List<MemberDO> bulkSave(final List<MemberDO> items, final int batchSize)
+    {
+        final List<MemberDO> failed = super.bulkSave(items, batchSize);
+        items.stream().filter(m -> !UtilityHelper.isNull(m.getMembershipNumber())).mapToLong(MemberDO::getMembershipNumber).max()
+                .ifPresent(memberNumbers::advanceTo);
+        return failed;
+    }
+    
+    @Override
+    public MemberDO create(final MemberDO item)
+    {
+        final MemberDO created;
+        try
+        {
+            created = super.create(item);
+        }
+        catch (final DuplicateKeyException dke)
+        {
+            throw memberNumberInUse(item, dke);
+        }
+        reserveMemberNumber(created);
+        return created;
+    }
+    
+    /**
+     * Delete the members holding each of the given membership numbers. The
+     * members are found with a single query and removed by ID in chunks, so
+     * the cost does not grow with one round trip per member. A number is
+     * not deleted if no member, or more than one member, holds it.
+     *
+     * @param memberNumbers
+     *            - the membership numbers to delete
+     * @param batchSize
+     *            - the maximum number of members removed per request
+     * @return the membership numbers that were deleted
+     */
+    public Set<Long> deleteByMemberNumbers(final Collection<Long> memberNumbers, final int batchSize)
+    {
+        final Set<Long> deleted = new HashSet<>();
+        if (memberNumbers.isEmpty())
+        {
+            return deleted;
+        }
+        
+        final Map<Long, List<String>> idsByNumber = new HashMap<>();
+        for (final MemberDO member : collection.find(DBQuery.in("membershipNumber", memberNumbers),
+                new BasicDBObject("membershipNumber", 1)))
+        {
+            idsByNumber.computeIfAbsent(member.getMembershipNumber(), n -> new ArrayList<>()).add(member.getId());
+        }
+        
+        final Map<String, Long> numbersById = new HashMap<>();
+        for (final Long memberNumber : memberNumbers)
+        {
+            final List<String> ids = idsByNumber.get(memberNumber);
+            if (UtilityHelper.isNull(ids))
+            {
+                logger().error("{} could not be deleted, as a record did not exist.", memberNumber);
+            }
+            else if (ids.size() > 1)
+            {
+                logger().error("{} was not deleted as there is more than one existing member with that number.", memberNumber);
+            }
+            else
+            {
+                numbersById.put(ids.get(0), memberNumber);
+            }
+        }
+        
+        final List<String> ids = new ArrayList<>(numbersById.keySet());
+        for (int start = 0; start < ids.size(); start += batchSize)
+        {
+            final List<String> chunk = ids.subList(start, Math.min(start + batchSize, ids.size()));
+            final Set<String> removed = new HashSet<>(chunk);
+            final int removedCount = collection.remove(DBQuery.in("_id", chunk)).getN();
+            if (removedCount < chunk.size())
+            {
+                // Find out which members are still there
+                for (final MemberDO remaining : collection.find(DBQuery.in("_id", chunk), new BasicDBObject("_id", 1)))
+                {
+                    logger().error("{} was not deleted due to an unknown error", numbersById.get(remaining.getId()));
+                    removed.remove(remaining.getId());
+                }
+            }
+            for (final String id : removed)
+            {
+                deleted.add(numbersById.get(id));
+                notifyDeleted(id);
+            }
+        }
+        return deleted;
+    }
+    
+    @Override
+    public void enableCache(final long maximumSize, final long expireAfterSeconds)
+    {
+        super.enableCache(maximumSize, expireAfterSeconds);
+        memberIds = CacheBuilder.newBuilder().maximumSize(maximumSize).expireAfterWrite(expireAfterSeconds, TimeUnit.SECONDS)
+                .recordStats().build();
     }
     
     public List<MemberDO> findByMemberNumber(final Long memberNumber)
@@ -41,11 +199,65 @@ public class MemberService extends GenericService<MemberDO>
         return members;
     }
     
+    /**
+     * Load every member in a single query, grouped by membership number.
+     * Members without a number are left out.
+     *
+     * @return a map of membership number to the members holding it
+     */
+    public Map<Long, List<MemberDO>> getAllByMemberNumber()
+    {
+        final Map<Long, List<MemberDO>> members = new HashMap<>();
+        for (final MemberDO member : collection.find(DBQuery.notEquals("membershipNumber", null)))
+        {
+            members.computeIfAbsent(member.getMembershipNumber(), n -> new ArrayList<>()).add(member);
+        }
+        return members;
+    }
+    
+    /**
+     * Find the members holding any of the given email addresses or
+     * membership numbers, reading only some of their fields.
+     *
+     * @param emails
+     *            - the email addresses to find
+     * @param memberNumbers
+     *            - the membership numbers to find
+     * @param projection
+     *            - what to return out of the retrieved members
+     * @return every matching member
+     */
+    public List<MemberDO> getByEmailOrMemberNumber(final Collection<String> emails, final Collection<Long> memberNumbers,
+            final DBObject projection)
+    {
+        return collection.find(DBQuery.or(DBQuery.in("email", emails), DBQuery.in("membershipNumber", memberNumbers)), projection)
+                .toArray();
+    }
+    
     public MemberDO getByMemberNumber(final Long memberNumber)
     {
+        if (isCacheEnabled() && !UtilityHelper.isNull(memberNumber))
+        {
+            final String id = memberIds.getIfPresent(memberNumber);
+            if (!UtilityHelper.isNull(id))
+            {
+                // The member may have been deleted or renumbered since
+                final MemberDO member = getCachedById(id);
+                if (!UtilityHelper.isNull(member) && memberNumber.equals(member.getMembershipNumber()))
+                {
+                    return member;
+                }
+                memberIds.invalidate(memberNumber);
+            }
+        }
+        
         final List<MemberDO> members = findByMemberNumber(memberNumber);
         if (members.size() == 1)
         {
+            if (isCacheEnabled())
+            {
+                memberIds.put(memberNumber, members.get(0).getId());
+            }
             return members.get(0);
         }
         else if (members.isEmpty())
@@ -64,12 +276,35 @@ public class MemberService extends GenericService<MemberDO>
         return query(DBQuery.in("status", (Object[]) status));
     }
     
+    public ResultPage<MemberDO> getPageByStatus(final String after, final Integer limit, final MemberStatus... status)
+    {
+        return getPage(DBQuery.in("status", (Object[]) status), after, limit);
+    }
+    
+    private long getHighestMemberNumber()
+    {
+        // Filtered to match the partial membership number index, so that the
+        // sort can be answered from it
+        final List<MemberDO> lastMember = collection.find(DBQuery.greaterThanEquals("membershipNumber", 0),
+                new BasicDBObject("membershipNumber", 1)).sort(DBSort.desc("membershipNumber")).limit(1).toArray();
+        return lastMember.isEmpty() ? 0 : lastMember.get(0).getMembershipNumber();
+    }
+    
+    @Override
+    public List<IndexDefinition> getIndexDefinitions()
+    {
+        return INDEXES;
+    }
+    
+    /**
+     * Allocate a new membership number. Each call returns a different number,
+     * even across several API instances.
+     *
+     * @return the allocated membership number
+     */
     public Long getNextMemberNumber()
     {
-        final MemberDO lastMember = getLastBy(DBSort.desc("membershipNumber"));
-        Long nextMembershipNumber = UtilityHelper.isNull(lastMember) ? 0 : lastMember.getMembershipNumber();
-        nextMembershipNumber++;
-        return nextMembershipNumber;
+        return memberNumbers.next();
     }
     
     @Override
@@ -78,4 +313,71 @@ public class MemberService extends GenericService<MemberDO>
         return LoggerFactory.getLogger(MemberService.class);
     }
     
+    private WebApplicationException memberNumberInUse(final MemberDO member, final DuplicateKeyException dke)
+    {
+        logger().warn("Could not save member {}: {}", member.getId(), dke.getMessage());
+        return new WebApplicationException("Membership number " + member.getMembershipNumber() + " is already in use",
+                HttpServletResponse.SC_CONFLICT);
+    }
+    
+    /**
+     * Find the membership number that is likely to be allocated next,
+     * without allocating it.
+     *
+     * @return the next membership number
+     */
+    public Long peekNextMemberNumber()
+    {
+        return memberNumbers.peek();
+    }
+    
+    @Override
+    public void registerCacheMetrics(final MetricRegistry registry)
+    {
+        super.registerCacheMetrics(registry);
+        if (isCacheEnabled())
+        {
+            ItemCache.registerMetrics(registry, MetricRegistry.name(MemberService.class, "memberNumberCache"), memberIds);
+        }
+    }
+    
+    /**
+     * Stop a membership number that was set by hand from being allocated.
+     */
+    private void reserveMemberNumber(final MemberDO member)
+    {
+        if (!UtilityHelper.isNull(member) && !UtilityHelper.isNull(member.getMembershipNumber()))
+        {
+            memberNumbers.advanceTo(member.getMembershipNumber());
+        }
+    }
+    
+    /**
+     * Find members by a partial first name, last name, full name or membership
+     * number, using the in-memory {@link MemberSearchIndex}.
+     *
+     * @param query
+     *            - the text to search for
+     * @return a list of matching members
+     */
+    public List<MemberDO> search(final String query)
+    {
+        return searchIndex.search(query);
+    }
+    
+    @Override
+    public MemberDO update(final MemberDO oldItem, final MemberDO newItem)
+    {
+        final MemberDO updated;
+        try
+        {
+            updated = super.update(oldItem, newItem);
+        }
+        catch (final DuplicateKeyException dke)
+        {
+            throw memberNumberInUse(newItem, dke);
+        }
+        reserveMemberNumber(updated);
+        return updated;
+    }
 }
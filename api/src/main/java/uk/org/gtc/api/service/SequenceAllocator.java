@@ -0,0 +1,146 @@
+package uk.org.gtc.api.service;
+
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+import uk.org.gtc.api.UtilityHelper;
+
+/**
+ * Hands out unique, increasing numbers from a counter document, so that
+ * several API instances can allocate numbers without racing each other.
+ * <p>
+ * Each allocation is a single atomic {@code findAndModify} with {@code $inc}.
+ * With a block size above one, each instance reserves that many numbers at a
+ * time and hands them out locally, at the cost of gaps when an instance stops
+ * with part of a block unused.
+ */
+public class SequenceAllocator
+{
+    private static final String VALUE = "value";
+    
+    private final DBCollection counters;
+    
+    private final String name;
+    
+    private final int blockSize;
+    
+    private final LongSupplier seed;
+    
+    private boolean seeded = false;
+    
+    private long next = 1;
+    
+    private long blockEnd = 0;
+    
+    /**
+     * The counter is never lower than this, so smaller values need no write.
+     */
+    private long counterFloor = 0;
+    
+    /**
+     * @param counters
+     *            - the collection holding the counter documents
+     * @param name
+     *            - the ID of this sequence's counter document
+     * @param blockSize
+     *            - how many numbers to reserve from the database at a time
+     * @param seed
+     *            - supplies the highest number already in use, which the
+     *            counter is moved up to before the first allocation
+     */
+    public SequenceAllocator(final DBCollection counters, final String name, final int blockSize, final LongSupplier seed)
+    {
+        this.counters = counters;
+        this.name = name;
+        this.blockSize = Math.max(1, blockSize);
+        this.seed = seed;
+    }
+    
+    /**
+     * Make sure a number that has been assigned some other way, such as by
+     * an import, is never handed out.
+     *
+     * @param value
+     *            - a number that is now in use
+     */
+    public synchronized void advanceTo(final long value)
+    {
+        ensureSeeded();
+        if (value > counterFloor)
+        {
+            counters.update(counterQuery(), new BasicDBObject("$max", new BasicDBObject(VALUE, value)), true, false);
+            counterFloor = value;
+        }
+        if (value >= next && value <= blockEnd)
+        {
+            next = value + 1;
+        }
+    }
+    
+    private DBObject counterQuery()
+    {
+        return new BasicDBObject("_id", name);
+    }
+    
+    private void ensureSeeded()
+    {
+        if (!seeded)
+        {
+            // Never move the counter backwards, in case another instance got
+            // here first
+            final long highest = seed.getAsLong();
+            counters.update(counterQuery(), new BasicDBObject("$max", new BasicDBObject(VALUE, highest)), true, false);
+            counterFloor = highest;
+            seeded = true;
+            logger().info("Sequence {} seeded from {}", name, highest);
+        }
+    }
+    
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(SequenceAllocator.class);
+    }
+    
+    /**
+     * Allocate the next number in the sequence. The number is never handed
+     * out again, whether or not the caller uses it.
+     *
+     * @return the allocated number
+     */
+    public synchronized long next()
+    {
+        ensureSeeded();
+        if (next > blockEnd)
+        {
+            final DBObject counter = counters.findAndModify(counterQuery(), null, null, false,
+                    new BasicDBObject("$inc", new BasicDBObject(VALUE, blockSize)), true, true);
+            blockEnd = ((Number) counter.get(VALUE)).longValue();
+            counterFloor = Math.max(counterFloor, blockEnd);
+            next = blockEnd - blockSize + 1;
+        }
+        return next++;
+    }
+    
+    /**
+     * Find the number that the next allocation is likely to return, without
+     * allocating it.
+     *
+     * @return the next number in the sequence
+     */
+    public synchronized long peek()
+    {
+        ensureSeeded();
+        if (next <= blockEnd)
+        {
+            return next;
+        }
+        final DBObject counter = counters.findOne(counterQuery());
+        return UtilityHelper.isNull(counter) ? 1 : ((Number) counter.get(VALUE)).longValue() + 1;
+    }
+}
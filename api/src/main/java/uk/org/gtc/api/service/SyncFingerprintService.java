@@ -0,0 +1,226 @@
+package uk.org.gtc.api.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mongojack.JacksonDBCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBObject;
+
+import uk.org.gtc.api.domain.SyncFingerprintDO;
+
+/**
+ * Stores, for each target system, a fingerprint of the fields of each item
+ * as they were when last synced to it. A sync job then only has to process
+ * the items whose fingerprint has changed.
+ */
+public class SyncFingerprintService extends GenericService<SyncFingerprintDO>
+{
+    /**
+     * Members synced to the Mailchimp list, keyed by member ID.
+     */
+    public static final String MAILCHIMP = "mailchimp";
+    
+    /**
+     * Members as linked to Auth0 users, keyed by member ID.
+     */
+    public static final String AUTH0_MEMBERS = "auth0Members";
+    
+    /**
+     * Auth0 users as last reconciled, keyed by Auth0 user ID.
+     */
+    public static final String AUTH0_USERS = "auth0Users";
+    
+    private static final List<IndexDefinition> INDEXES = Collections
+            .singletonList(new IndexDefinition("target_key", new BasicDBObject("target", 1).append("key", 1), true, null));
+    
+    public SyncFingerprintService(final JacksonDBCollection<SyncFingerprintDO, String> fingerprints)
+    {
+        super(fingerprints);
+    }
+    
+    /**
+     * Hash the synced fields of an item. Collections are hashed in sorted
+     * order, so that reordering them does not change the fingerprint.
+     *
+     * @param fields
+     *            - the synced fields, in a fixed order
+     * @return a compact hash of the fields
+     */
+    public static String fingerprint(final Object... fields)
+    {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (final Object field : fields)
+        {
+            if (field instanceof Collection)
+            {
+                final List<String> values = new ArrayList<>();
+                for (final Object value : (Collection<?>) field)
+                {
+                    values.add(String.valueOf(value));
+                }
+                Collections.sort(values);
+                hasher.putString(values.toString(), StandardCharsets.UTF_8);
+            }
+            else
+            {
+                hasher.putString(String.valueOf(field), StandardCharsets.UTF_8);
+            }
+            // Separates the fields, so that moving text between them changes
+            // the hash
+            hasher.putByte((byte) 0);
+        }
+        return BaseEncoding.base64Url().omitPadding().encode(hasher.hash().asBytes());
+    }
+    
+    /**
+     * @param target
+     *            - the system synced to
+     * @return the fingerprint of every item last synced to the target, by key
+     */
+    public Map<String, String> getFingerprints(final String target)
+    {
+        final Map<String, String> fingerprints = new HashMap<>();
+        read(new BasicDBObject("target", target), fingerprints);
+        return fingerprints;
+    }
+    
+    /**
+     * @param target
+     *            - the system synced to
+     * @param keys
+     *            - the items to read
+     * @return the fingerprint of each of the given items last synced to the
+     *         target, by key
+     */
+    public Map<String, String> getFingerprints(final String target, final Collection<String> keys)
+    {
+        final Map<String, String> fingerprints = new HashMap<>();
+        if (!keys.isEmpty())
+        {
+            read(new BasicDBObject("target", target).append("key", new BasicDBObject("$in", new ArrayList<>(keys))), fingerprints);
+        }
+        return fingerprints;
+    }
+    
+    @Override
+    public List<IndexDefinition> getIndexDefinitions()
+    {
+        return INDEXES;
+    }
+    
+    @Override
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(SyncFingerprintService.class);
+    }
+    
+    private void read(final DBObject query, final Map<String, String> fingerprints)
+    {
+        for (final DBObject document : getDbCollection().find(query,
+                new BasicDBObject("key", 1).append("fingerprint", 1).append("_id", 0)))
+        {
+            fingerprints.put((String) document.get("key"), (String) document.get("fingerprint"));
+        }
+    }
+    
+    /**
+     * Record that items have been synced to a target.
+     *
+     * @param target
+     *            - the system synced to
+     * @param fingerprints
+     *            - the fingerprint of each item as synced, by key
+     */
+    public void record(final String target, final Map<String, String> fingerprints)
+    {
+        if (fingerprints.isEmpty())
+        {
+            return;
+        }
+        final Date now = new Date();
+        final BulkWriteOperation bulk = getDbCollection().initializeUnorderedBulkOperation();
+        for (final Map.Entry<String, String> fingerprint : fingerprints.entrySet())
+        {
+            final BasicDBObject set = new BasicDBObject("fingerprint", fingerprint.getValue()).append("syncedDate", now);
+            bulk.find(new BasicDBObject("target", target).append("key", fingerprint.getKey())).upsert()
+                    .updateOne(new BasicDBObject("$set", set));
+        }
+        bulk.execute();
+    }
+    
+    /**
+     * Forget items, so that they are synced again on the next run.
+     *
+     * @param target
+     *            - the system synced to
+     * @param keys
+     *            - the keys of the items
+     */
+    public void remove(final String target, final Collection<String> keys)
+    {
+        if (!keys.isEmpty())
+        {
+            getDbCollection().remove(new BasicDBObject("target", target).append("key", new BasicDBObject("$in", new ArrayList<>(keys))));
+        }
+    }
+    
+    /**
+     * Bring the stored fingerprints for a target in line with a run, writing
+     * only those that changed.
+     *
+     * @param target
+     *            - the system synced to
+     * @param previous
+     *            - the fingerprints read at the start of the run
+     * @param current
+     *            - every item's fingerprint as synced by the run; keys not
+     *            present are forgotten
+     */
+    public void replace(final String target, final Map<String, String> previous, final Map<String, String> current)
+    {
+        update(target, previous, current);
+        final List<String> removed = new ArrayList<>(previous.keySet());
+        removed.removeAll(current.keySet());
+        remove(target, removed);
+        logger().debug("Removed {} {} fingerprints", removed.size(), target);
+    }
+    
+    /**
+     * Record the fingerprints from a run that changed, leaving any others
+     * stored as they are.
+     *
+     * @param target
+     *            - the system synced to
+     * @param previous
+     *            - the fingerprints read at the start of the run
+     * @param current
+     *            - the fingerprints of the items synced by the run
+     */
+    public void update(final String target, final Map<String, String> previous, final Map<String, String> current)
+    {
+        final Map<String, String> changed = new HashMap<>();
+        for (final Map.Entry<String, String> fingerprint : current.entrySet())
+        {
+            if (!fingerprint.getValue().equals(previous.get(fingerprint.getKey())))
+            {
+                changed.put(fingerprint.getKey(), fingerprint.getValue());
+            }
+        }
+        record(target, changed);
+        logger().debug("Recorded {} {} fingerprints", changed.size(), target);
+    }
+}
@@ -0,0 +1,124 @@
+package uk.org.gtc.api.service;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mongojack.DBQuery;
+import org.mongojack.DBSort;
+import org.mongojack.JacksonDBCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.MongoException;
+
+import uk.org.gtc.api.domain.BaseDomainObject;
+import uk.org.gtc.api.domain.TombstoneDO;
+
+/**
+ * Records deletions, which unlike creates and updates leave nothing behind
+ * for other API instances to find by {@code lastUpdatedDate}.
+ */
+public class TombstoneService extends GenericService<TombstoneDO>
+{
+    /**
+     * Listens to a service and records a tombstone for each item it deletes.
+     */
+    private class Recorder<T extends BaseDomainObject> implements ItemChangeListener<T>
+    {
+        private final String collectionName;
+        
+        Recorder(final String collectionName)
+        {
+            this.collectionName = collectionName;
+        }
+        
+        @Override
+        public void itemDeleted(final String id)
+        {
+            try
+            {
+                record(collectionName, id);
+            }
+            catch (final MongoException me)
+            {
+                // Other instances will still drop the item when it expires
+                logger().error("Could not record the deletion of {} from {}", id, collectionName, me);
+            }
+        }
+        
+        @Override
+        public void itemSaved(final T item)
+        {
+            // only deletions need a tombstone
+        }
+    }
+    
+    /**
+     * Long enough for every instance to have polled, even after a restart.
+     */
+    private static final long TOMBSTONE_SECONDS = TimeUnit.DAYS.toSeconds(1);
+    
+    private static final List<IndexDefinition> INDEXES = Arrays.asList(
+            new IndexDefinition("collectionName_deletedDate", "collectionName", "deletedDate"),
+            IndexDefinition.expiring("deletedDate_ttl", "deletedDate", TOMBSTONE_SECONDS));
+    
+    public TombstoneService(final JacksonDBCollection<TombstoneDO, String> tombstones)
+    {
+        super(tombstones);
+    }
+    
+    /**
+     * Find the tombstones recorded for a collection since the given time.
+     *
+     * @param collectionName
+     *            - the collection the items were deleted from
+     * @param since
+     *            - the earliest deletion to return
+     * @return the tombstones, oldest first
+     */
+    public List<TombstoneDO> findSince(final String collectionName, final Date since)
+    {
+        return collection.find(DBQuery.is("collectionName", collectionName).greaterThanEquals("deletedDate", since))
+                .sort(DBSort.asc("deletedDate")).toArray();
+    }
+    
+    @Override
+    public List<IndexDefinition> getIndexDefinitions()
+    {
+        return INDEXES;
+    }
+    
+    @Override
+    Logger logger()
+    {
+        return LoggerFactory.getLogger(TombstoneService.class);
+    }
+    
+    /**
+     * Record that an item was deleted.
+     *
+     * @param collectionName
+     *            - the collection the item was deleted from
+     * @param id
+     *            - the ID of the deleted item
+     */
+    public void record(final String collectionName, final String id)
+    {
+        collection.insert(new TombstoneDO(collectionName, id));
+    }
+    
+    /**
+     * Create a listener that records a tombstone for every item a service
+     * deletes.
+     *
+     * @param collectionName
+     *            - the collection the service writes to
+     * @return the listener to register with the service
+     */
+    public <T extends BaseDomainObject> ItemChangeListener<T> recorderFor(final String collectionName)
+    {
+        return new Recorder<>(collectionName);
+    }
+}
@@ -0,0 +1,138 @@
+package uk.org.gtc.api;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+import uk.org.gtc.api.domain.TombstoneDO;
+import uk.org.gtc.api.service.MemberService;
+import uk.org.gtc.api.service.TombstoneService;
+
+public class ChangeFeedPollerTest
+{
+    private final MemberService memberService = Mockito.mock(MemberService.class);
+    
+    private final TombstoneService tombstoneService = Mockito.mock(TombstoneService.class);
+    
+    private final DBCollection collection = Mockito.mock(DBCollection.class);
+    
+    private final DBCursor cursor = Mockito.mock(DBCursor.class);
+    
+    private final ChangeFeedPoller poller = new ChangeFeedPoller(Collections.singletonList(memberService), tombstoneService, 5, 10);
+    
+    private DBObject changed(final String id, final Date lastUpdatedDate)
+    {
+        return new BasicDBObject("_id", new ObjectId(id)).append("lastUpdatedDate", lastUpdatedDate);
+    }
+    
+    private Date queriedSince()
+    {
+        final ArgumentCaptor<DBObject> query = ArgumentCaptor.forClass(DBObject.class);
+        Mockito.verify(collection, Mockito.atLeastOnce()).find(query.capture());
+        return (Date) ((DBObject) query.getValue().get("lastUpdatedDate")).get("$gte");
+    }
+    
+    @Before
+    public void setUp()
+    {
+        Mockito.when(memberService.getDbCollection()).thenReturn(collection);
+        Mockito.when(collection.getName()).thenReturn("members");
+        Mockito.when(collection.find(Matchers.any(DBObject.class))).thenReturn(cursor);
+        Mockito.when(tombstoneService.findSince(Matchers.eq("members"), Matchers.any(Date.class))).thenReturn(Collections.emptyList());
+    }
+    
+    @Test
+    public void testChangesApplied()
+    {
+        final String updatedId = new ObjectId().toString();
+        final String deletedId = new ObjectId().toString();
+        final DBObject updated = changed(updatedId, new Date());
+        final List<DBObject> changes = Collections.singletonList(updated);
+        Mockito.when(cursor.iterator()).thenReturn(changes.iterator());
+        Mockito.when(tombstoneService.findSince(Matchers.eq("members"), Matchers.any(Date.class)))
+                .thenReturn(Collections.singletonList(new TombstoneDO("members", deletedId)));
+        
+        Assert.assertEquals(2, poller.poll(memberService));
+        
+        Mockito.verify(memberService).itemSavedElsewhere(updated);
+        Mockito.verify(memberService).itemDeletedElsewhere(deletedId);
+    }
+    
+    @Test
+    public void testChangeDeliveredOnce()
+    {
+        final String id = new ObjectId().toString();
+        final Date lastUpdated = new Date();
+        final DBObject first = changed(id, lastUpdated);
+        final DBObject again = changed(id, lastUpdated);
+        final DBObject newer = changed(id, new Date(lastUpdated.getTime() + 1));
+        // The change is at the watermark, so the next poll reads it again
+        Mockito.when(cursor.iterator()).thenReturn(Collections.singletonList(first).iterator(),
+                Collections.singletonList(again).iterator(), Arrays.asList(again, newer).iterator());
+        
+        Assert.assertEquals(1, poller.poll(memberService));
+        Assert.assertEquals(0, poller.poll(memberService));
+        Assert.assertEquals(1, poller.poll(memberService));
+        
+        Mockito.verify(memberService, Mockito.times(2)).itemSavedElsewhere(Matchers.any(DBObject.class));
+        Mockito.verify(memberService).itemSavedElsewhere(newer);
+    }
+    
+    @Test
+    public void testQuietPollsMoveOn() throws InterruptedException
+    {
+        Mockito.when(cursor.iterator()).thenReturn(Collections.<DBObject> emptyList().iterator());
+        poller.poll(memberService);
+        final long before = System.currentTimeMillis();
+        Thread.sleep(20);
+        poller.poll(memberService);
+        poller.poll(memberService);
+        
+        // Only the overlap behind the previous poll
+        Assert.assertTrue(queriedSince().getTime() >= before - 10000 + 20);
+    }
+    
+    @Test
+    public void testWatermarkAdvances() throws InterruptedException
+    {
+        Mockito.when(cursor.iterator()).thenReturn(Collections.<DBObject> emptyList().iterator());
+        poller.poll(memberService);
+        Thread.sleep(20);
+        
+        final Date lastUpdated = new Date(System.currentTimeMillis() - 10);
+        Mockito.when(cursor.iterator()).thenReturn(Arrays.asList(changed(new ObjectId().toString(), lastUpdated)).iterator(),
+                Collections.<DBObject> emptyList().iterator());
+        poller.poll(memberService);
+        poller.poll(memberService);
+        
+        // Moves on to the newest change seen, which is within the overlap
+        Assert.assertEquals(lastUpdated, queriedSince());
+    }
+    
+    @Test
+    public void testWatermarkNotAheadOfClock()
+    {
+        final Date future = new Date(System.currentTimeMillis() + 60000);
+        Mockito.when(cursor.iterator()).thenReturn(Arrays.asList(changed(new ObjectId().toString(), future)).iterator(),
+                Collections.<DBObject> emptyList().iterator());
+        
+        poller.poll(memberService);
+        poller.poll(memberService);
+        
+        Assert.assertTrue(queriedSince().before(new Date()));
+    }
+}
@@ -0,0 +1,160 @@
+package uk.org.gtc.api;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.org.gtc.api.exception.DependencyUnavailableException;
+
+public class DependencyGuardTest
+{
+    private final AtomicLong now = new AtomicLong(0);
+    
+    /**
+     * Opens after three failures for ten seconds. A missing file is the
+     * caller's fault, so it is not a failure.
+     */
+    private final DependencyGuard guard = new DependencyGuard("service", 1, 0, 3, 10, e -> !(e instanceof FileNotFoundException),
+            now::get);
+    
+    private void fail(final int times)
+    {
+        for (int i = 0; i < times; i++)
+        {
+            try
+            {
+                guard.call(() -> {
+                    throw new IOException("down");
+                });
+            }
+            catch (final IOException e)
+            {
+                // expected
+            }
+        }
+    }
+    
+    @Test
+    public void circuitOpensAfterFailuresInARow() throws Exception
+    {
+        fail(2);
+        Assert.assertEquals("up", guard.call(() -> "up"));
+        fail(2);
+        Assert.assertEquals(DependencyGuard.State.CLOSED, guard.getState());
+        
+        fail(1);
+        
+        Assert.assertEquals(DependencyGuard.State.OPEN, guard.getState());
+        try
+        {
+            guard.call(() -> "up");
+            Assert.fail("Expected the call to be turned away");
+        }
+        catch (final DependencyUnavailableException e)
+        {
+            Assert.assertEquals(503, e.getResponse().getStatus());
+        }
+    }
+    
+    @Test
+    public void callerErrorsDoNotOpenTheCircuit()
+    {
+        for (int i = 0; i < 5; i++)
+        {
+            try
+            {
+                guard.call(() -> {
+                    throw new FileNotFoundException("missing");
+                });
+            }
+            catch (final IOException e)
+            {
+                // expected
+            }
+        }
+        
+        Assert.assertEquals(DependencyGuard.State.CLOSED, guard.getState());
+    }
+    
+    @Test
+    public void trialCallClosesTheCircuit() throws Exception
+    {
+        fail(3);
+        now.set(TimeUnit.SECONDS.toMillis(10));
+        
+        Assert.assertEquals("up", guard.call(() -> "up"));
+        
+        Assert.assertEquals(DependencyGuard.State.CLOSED, guard.getState());
+    }
+    
+    @Test
+    public void failedTrialCallReopensTheCircuit()
+    {
+        fail(3);
+        now.set(TimeUnit.SECONDS.toMillis(10));
+        
+        fail(1);
+        
+        Assert.assertEquals(DependencyGuard.State.OPEN, guard.getState());
+        now.set(TimeUnit.SECONDS.toMillis(15));
+        Assert.assertEquals(DependencyGuard.State.OPEN, guard.getState());
+    }
+    
+    @Test
+    public void trialCallThrowingErrorAllowsAnotherTrial() throws Exception
+    {
+        fail(3);
+        now.set(TimeUnit.SECONDS.toMillis(10));
+        try
+        {
+            guard.call(() -> {
+                throw new AssertionError("broken");
+            });
+            Assert.fail("Expected the error to be thrown");
+        }
+        catch (final AssertionError e)
+        {
+            Assert.assertEquals("broken", e.getMessage());
+        }
+        
+        Assert.assertEquals("up", guard.call(() -> "up"));
+        
+        Assert.assertEquals(DependencyGuard.State.CLOSED, guard.getState());
+    }
+    
+    @Test(expected = DependencyUnavailableException.class)
+    public void callsBeyondTheLimitAreTurnedAway() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread busy = new Thread(() -> {
+            try
+            {
+                guard.call(() -> {
+                    started.countDown();
+                    return release.await(5, TimeUnit.SECONDS);
+                });
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        busy.start();
+        started.await(5, TimeUnit.SECONDS);
+        try
+        {
+            guard.call(() -> "up");
+        }
+        finally
+        {
+            release.countDown();
+            busy.join();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package uk.org.gtc.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import uk.org.gtc.api.domain.EmailDeliveryOutcome;
+import uk.org.gtc.api.domain.EmailMessageDO;
+import uk.org.gtc.api.domain.EmailTemplate;
+import uk.org.gtc.api.exception.DependencyUnavailableException;
+import uk.org.gtc.api.service.EmailOutboxService;
+
+public class EmailDispatcherTest
+{
+    private final EmailOutboxService outbox = Mockito.mock(EmailOutboxService.class);
+    
+    private final EmailService emailService = Mockito.mock(EmailService.class);
+    
+    private final List<List<EmailMessageDO>> delivered = new ArrayList<>();
+    
+    private final EmailDispatcher dispatcher = new EmailDispatcher(outbox, emailService, 1000, 3, 60, 10);
+    
+    private EmailMessageDO message(final String id, final EmailTemplate template, final int attempts)
+    {
+        final EmailMessageDO message = new EmailMessageDO(template, id + "@example.com", Collections.singletonMap("firstName", id));
+        message.setId(id);
+        message.setAttempts(attempts);
+        return message;
+    }
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        Mockito.when(emailService.deliver(Matchers.<List<EmailMessageDO>> any())).thenAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            final List<EmailMessageDO> messages = (List<EmailMessageDO>) invocation.getArguments()[0];
+            delivered.add(new ArrayList<>(messages));
+            return EmailDeliveryOutcome.SENT;
+        });
+    }
+    
+    @Test
+    public void testMessagesGroupedByTemplate()
+    {
+        final List<EmailMessageDO> messages = new ArrayList<>();
+        for (int i = 0; i < EmailDispatcher.MAX_PERSONALIZATIONS + 1; i++)
+        {
+            messages.add(message("linked" + i, EmailTemplate.MEMBER_ACCOUNT_LINKED, 0));
+        }
+        messages.add(message("welcome", EmailTemplate.MEMBER_MEMBER_WELCOME, 0));
+        
+        dispatcher.dispatch(messages);
+        
+        Assert.assertEquals(3, delivered.size());
+        Assert.assertEquals(EmailDispatcher.MAX_PERSONALIZATIONS, delivered.get(0).size());
+        Assert.assertEquals(1, delivered.get(1).size());
+        Assert.assertEquals(EmailTemplate.MEMBER_MEMBER_WELCOME, delivered.get(2).get(0).getTemplate());
+        Mockito.verify(outbox, Mockito.times(3)).sent(Matchers.anyCollectionOf(String.class));
+    }
+    
+    @Test
+    public void testMessagesWithDifferentContentSentSeparately()
+    {
+        final EmailMessageDO first = message("first", EmailTemplate.OFFICE_MEMBER_UPDATE, 0);
+        first.setContent("<p>first</p>");
+        final EmailMessageDO second = message("second", EmailTemplate.OFFICE_MEMBER_UPDATE, 0);
+        second.setContent("<p>second</p>");
+        
+        dispatcher.dispatch(Arrays.asList(first, second));
+        
+        Assert.assertEquals(2, delivered.size());
+    }
+    
+    @Test
+    public void testFailedSendRetriedWithBackoff() throws IOException
+    {
+        Mockito.doThrow(new IOException("SendGrid returned 503")).when(emailService).deliver(Matchers.<List<EmailMessageDO>> any());
+        final long before = System.currentTimeMillis();
+        
+        dispatcher.dispatch(Arrays.asList(message("retry", EmailTemplate.MEMBER_ACCOUNT_LINKED, 1),
+                message("give-up", EmailTemplate.MEMBER_ACCOUNT_LINKED, 2)));
+        
+        Mockito.verify(outbox).retry(Matchers.eq("retry"), Matchers.eq(2),
+                Matchers.argThat(date -> date.getTime() >= before + 120000 && date.getTime() <= before + 180000 + 1000),
+                Matchers.eq("SendGrid returned 503"));
+        Mockito.verify(outbox).fail("give-up", 3, "SendGrid returned 503");
+        Mockito.verify(outbox, Mockito.never()).sent(Matchers.anyCollectionOf(String.class));
+    }
+    
+    @Test
+    public void testUnavailableSendNotCountedAsAttempt() throws IOException
+    {
+        Mockito.doThrow(new DependencyUnavailableException("SendGrid is unavailable")).when(emailService)
+                .deliver(Matchers.<List<EmailMessageDO>> any());
+        
+        dispatcher.dispatch(Collections.singletonList(message("waiting", EmailTemplate.MEMBER_ACCOUNT_LINKED, 2)));
+        
+        Mockito.verify(outbox).retry(Matchers.eq("waiting"), Matchers.eq(2), Matchers.any(), Matchers.eq("SendGrid is unavailable"));
+        Mockito.verify(outbox, Mockito.never()).fail(Matchers.anyString(), Matchers.anyInt(), Matchers.anyString());
+    }
+    
+    @Test
+    public void testRefusedSendWaitsWithoutAttempt() throws IOException
+    {
+        Mockito.doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            final List<EmailMessageDO> messages = (List<EmailMessageDO>) invocation.getArguments()[0];
+            delivered.add(new ArrayList<>(messages));
+            return EmailDeliveryOutcome.REFUSED;
+        }).when(emailService).deliver(Matchers.<List<EmailMessageDO>> any());
+        final List<EmailMessageDO> messages = new ArrayList<>();
+        for (int i = 0; i < 16; i++)
+        {
+            messages.add(message("waiting" + i, EmailTemplate.MEMBER_ACCOUNT_LINKED, 2));
+        }
+        
+        dispatcher.dispatch(messages);
+        
+        // Not split, and the last attempt is not used up
+        Assert.assertEquals(1, delivered.size());
+        Mockito.verify(outbox, Mockito.times(16)).retry(Matchers.anyString(), Matchers.eq(2), Matchers.any(),
+                Matchers.eq("Refused by SendGrid"));
+        Mockito.verify(outbox, Mockito.never()).fail(Matchers.anyString(), Matchers.anyInt(), Matchers.anyString());
+    }
+    
+    @Test
+    public void testRejectedSendFailed() throws IOException
+    {
+        Mockito.doReturn(EmailDeliveryOutcome.REJECTED).when(emailService).deliver(Matchers.<List<EmailMessageDO>> any());
+        
+        dispatcher.dispatch(Collections.singletonList(message("rejected", EmailTemplate.MEMBER_ACCOUNT_LINKED, 0)));
+        
+        Mockito.verify(outbox).fail("rejected", 1, "Rejected by SendGrid");
+        Mockito.verify(outbox, Mockito.never()).retry(Matchers.anyString(), Matchers.anyInt(), Matchers.any(), Matchers.anyString());
+    }
+    
+    @Test
+    public void testRejectedGroupSplitToFindBadMessage() throws IOException
+    {
+        // SendGrid turns away any request that includes the bad address
+        Mockito.doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            final List<EmailMessageDO> messages = (List<EmailMessageDO>) invocation.getArguments()[0];
+            delivered.add(new ArrayList<>(messages));
+            return messages.stream().anyMatch(message -> message.getId().equals("bad")) ? EmailDeliveryOutcome.REJECTED
+                    : EmailDeliveryOutcome.SENT;
+        }).when(emailService).deliver(Matchers.<List<EmailMessageDO>> any());
+        final List<EmailMessageDO> messages = new ArrayList<>();
+        for (int i = 0; i < 16; i++)
+        {
+            messages.add(message(i == 11 ? "bad" : "good" + i, EmailTemplate.MEMBER_ACCOUNT_LINKED, 0));
+        }
+        
+        dispatcher.dispatch(messages);
+        
+        Mockito.verify(outbox).fail("bad", 1, "Rejected by SendGrid");
+        Mockito.verify(outbox, Mockito.times(1)).fail(Matchers.anyString(), Matchers.anyInt(), Matchers.anyString());
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Collection<String>> sent = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(outbox, Mockito.atLeastOnce()).sent(sent.capture());
+        final List<String> sentIds = sent.getAllValues().stream().flatMap(Collection::stream).collect(Collectors.toList());
+        Assert.assertEquals(15, sentIds.size());
+        Assert.assertFalse(sentIds.contains("bad"));
+        // Halved rather than sent one at a time
+        Assert.assertTrue(delivered.size() < messages.size());
+    }
+}
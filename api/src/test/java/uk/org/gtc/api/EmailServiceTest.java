@@ -0,0 +1,93 @@
+package uk.org.gtc.api;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+import com.sendgrid.SendGrid;
+
+import uk.org.gtc.api.domain.EmailDeliveryOutcome;
+import uk.org.gtc.api.domain.EmailMessageDO;
+import uk.org.gtc.api.domain.EmailTemplate;
+import uk.org.gtc.api.service.EmailOutboxService;
+import uk.org.gtc.api.service.MemberService;
+
+public class EmailServiceTest
+{
+    private final SendGrid sendgrid = Mockito.mock(SendGrid.class);
+    
+    /**
+     * Opens after a single failure.
+     */
+    private final DependencyGuard guard = new DependencyGuard("SendGrid", 1, 0, 1, 60, e -> true);
+    
+    private final List<EmailMessageDO> messages = Collections
+            .singletonList(new EmailMessageDO(EmailTemplate.MEMBER_ACCOUNT_LINKED, "a@example.com", Collections.emptyMap()));
+    
+    private EmailService emailService;
+    
+    private void respond(final int statusCode) throws IOException
+    {
+        Mockito.when(sendgrid.api(Matchers.any(Request.class))).thenReturn(new Response(statusCode, "{}", Collections.emptyMap()));
+    }
+    
+    @Before
+    public void setUp()
+    {
+        final GtcConfiguration configuration = new GtcConfiguration();
+        configuration.appMode = ApplicationMode.LIVE;
+        GtcConfiguration.setInstance(configuration);
+        emailService = new EmailService(sendgrid, guard, Mockito.mock(MemberService.class), Mockito.mock(EmailOutboxService.class));
+    }
+    
+    @Test
+    public void testAcceptedSent() throws IOException
+    {
+        respond(202);
+        
+        Assert.assertEquals(EmailDeliveryOutcome.SENT, emailService.deliver(messages));
+    }
+    
+    @Test
+    public void testBadRequestRejected() throws IOException
+    {
+        respond(400);
+        
+        Assert.assertEquals(EmailDeliveryOutcome.REJECTED, emailService.deliver(messages));
+        Assert.assertEquals(DependencyGuard.State.CLOSED, guard.getState());
+    }
+    
+    @Test
+    public void testForbiddenRefused() throws IOException
+    {
+        respond(403);
+        
+        Assert.assertEquals(EmailDeliveryOutcome.REFUSED, emailService.deliver(messages));
+    }
+    
+    @Test
+    public void testRateLimitingCountsAgainstSendGrid() throws IOException
+    {
+        respond(429);
+        
+        try
+        {
+            emailService.deliver(messages);
+            Assert.fail("Expected the messages to be sent again later");
+        }
+        catch (final IOException e)
+        {
+            Assert.assertTrue(e.getMessage().contains("rate limiting"));
+        }
+        
+        Assert.assertEquals(DependencyGuard.State.OPEN, guard.getState());
+    }
+}
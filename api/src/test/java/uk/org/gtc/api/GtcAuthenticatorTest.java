@@ -0,0 +1,77 @@
+package uk.org.gtc.api;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.slf4j.LoggerFactory;
+
+import com.auth0.Auth0User;
+import com.auth0.jwt.JWTSigner;
+
+import io.dropwizard.auth.AuthenticationException;
+
+public class GtcAuthenticatorTest
+{
+    @Rule
+    public final ExpectedException exception = ExpectedException.none();
+    
+    private final GtcConfiguration configuration = new GtcConfiguration();
+    
+    private GtcAuthenticator authenticator;
+    
+    @Before
+    public void setUp()
+    {
+        configuration.auth0OfficeApiKey = "secret";
+        configuration.auth0OfficeApiId = "gtc";
+        configuration.auth0UserFromToken = true;
+        authenticator = new GtcAuthenticator(LoggerFactory.getLogger(GtcAuthenticatorTest.class), configuration);
+    }
+    
+    private String sign(final String secret, final long exp)
+    {
+        final Map<String, Object> claims = new HashMap<>();
+        claims.put("aud", "gtc");
+        claims.put("sub", "auth0|1234");
+        claims.put("email", "member@example.com");
+        claims.put("exp", exp);
+        return new JWTSigner(secret).sign(claims);
+    }
+    
+    @Test
+    public void testFilterClaimsReused() throws Exception
+    {
+        final Map<String, Object> claims = new HashMap<>();
+        claims.put("sub", "auth0|5678");
+        claims.put("email", "member@example.com");
+        
+        // Not a valid token, so this only passes if verification is skipped
+        final Auth0User user = authenticator.authenticate(new JWTCredentials("verified-by-filter", claims)).get();
+        
+        Assert.assertEquals("auth0|5678", user.getUserId());
+    }
+    
+    @Test
+    public void testInvalidSignatureRejected() throws Exception
+    {
+        exception.expect(AuthenticationException.class);
+        authenticator.authenticate(new JWTCredentials(sign("other", System.currentTimeMillis() / 1000 + 60), null));
+    }
+    
+    @Test
+    public void testUserBuiltFromClaimsAndCached() throws Exception
+    {
+        final String token = sign("secret", System.currentTimeMillis() / 1000 + 60);
+        
+        final Auth0User user = authenticator.authenticate(new JWTCredentials(token, null)).get();
+        
+        Assert.assertEquals("member@example.com", user.getEmail());
+        Assert.assertEquals("auth0|1234", user.getUserId());
+        Assert.assertSame(user, authenticator.authenticate(new JWTCredentials(token, null)).get());
+    }
+}
@@ -0,0 +1,63 @@
+package uk.org.gtc.api;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.auth0.Auth0User;
+
+import us.monoid.json.JSONObject;
+
+public class GtcAuthoriserTest
+{
+    private final GtcAuthoriser authoriser = new GtcAuthoriser();
+    
+    private GtcUser user(final String appMetadata) throws Exception
+    {
+        final JSONObject json = new JSONObject();
+        json.put("user_id", "auth0|1234");
+        if (appMetadata != null)
+        {
+            json.put("app_metadata", new JSONObject(appMetadata));
+        }
+        return new GtcUser(json);
+    }
+    
+    @Test
+    public void testAdminHasEveryRole() throws Exception
+    {
+        final GtcUser admin = user("{\"roles\": [\"ADMIN\"]}");
+        
+        Assert.assertTrue(authoriser.authorize(admin, "MEMBERSHIP_MANAGE"));
+        Assert.assertTrue(authoriser.authorize(admin, "MEMBER"));
+    }
+    
+    @Test
+    public void testMalformedMetadataHasNoRoles() throws Exception
+    {
+        Assert.assertFalse(authoriser.authorize(user("{\"roles\": [\"ADMIN\"], \"role\": \"ADMIN\"}"), "ADMIN"));
+        Assert.assertFalse(authoriser.authorize(user("{\"roles\": [\"SUPERUSER\"]}"), "ADMIN"));
+    }
+    
+    @Test
+    public void testNoMetadataHasNoRoles() throws Exception
+    {
+        Assert.assertFalse(authoriser.authorize(user(null), "MEMBER"));
+    }
+    
+    @Test
+    public void testOtherPrincipalRejected()
+    {
+        Assert.assertFalse(authoriser.authorize(Mockito.mock(Auth0User.class), "MEMBER"));
+    }
+    
+    @Test
+    public void testRolesParsedOnce() throws Exception
+    {
+        final GtcUser member = user("{\"roles\": [\"MEMBER\"], \"membershipNumber\": 1000}");
+        
+        Assert.assertTrue(authoriser.authorize(member, "MEMBER"));
+        Assert.assertFalse(authoriser.authorize(member, "MEMBERSHIP_READ"));
+        Assert.assertEquals(1, member.getRoles().size());
+    }
+}
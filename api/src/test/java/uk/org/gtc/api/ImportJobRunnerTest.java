@@ -0,0 +1,103 @@
+package uk.org.gtc.api;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import uk.org.gtc.api.domain.CsvMember;
+import uk.org.gtc.api.domain.ImportDiff;
+import uk.org.gtc.api.domain.ImportJobDO;
+import uk.org.gtc.api.domain.MemberDO;
+import uk.org.gtc.api.service.ImportJobService;
+import uk.org.gtc.api.service.MemberService;
+
+public class ImportJobRunnerTest
+{
+    private final ImportJobService importJobService = Mockito.mock(ImportJobService.class);
+    
+    private final MemberService memberService = Mockito.mock(MemberService.class);
+    
+    private final EmailService emailService = Mockito.mock(EmailService.class);
+    
+    private final ImportJobRunner runner = new ImportJobRunner(importJobService, memberService, emailService, 500, 60);
+    
+    private final ImportJobDO job = new ImportJobDO(false, 1);
+    
+    private final List<CsvMember> csvMembers = Collections.singletonList(new CsvMember());
+    
+    @Before
+    public void setUp()
+    {
+        job.setId(new ObjectId().toString());
+        csvMembers.get(0).setMembershipNumber(1234L);
+        Mockito.when(memberService.getAllByMemberNumber()).thenReturn(new HashMap<>());
+        Mockito.when(memberService.bulkSave(Matchers.anyListOf(MemberDO.class), Matchers.anyInt())).thenReturn(Collections.emptyList());
+        Mockito.when(importJobService.progress(Matchers.eq(job.getId()), Matchers.anyString(), Matchers.anyInt(),
+                Matchers.any(ImportDiff.class), Matchers.any(Date.class))).thenReturn(true);
+        Mockito.when(importJobService.complete(Matchers.eq(job.getId()), Matchers.anyString(), Matchers.any(ImportDiff.class)))
+                .thenReturn(true);
+    }
+    
+    @Test
+    public void testFailedJob()
+    {
+        Mockito.when(memberService.getAllByMemberNumber()).thenThrow(new IllegalStateException("no database"));
+        
+        runner.run(job, csvMembers);
+        
+        Mockito.verify(importJobService).fail(Matchers.eq(job.getId()), Matchers.anyString(), Matchers.eq("no database"));
+        Mockito.verifyZeroInteractions(emailService);
+    }
+    
+    @Test
+    public void testLostJobStopped()
+    {
+        // Marked as failed by another instance after the first batch
+        Mockito.when(importJobService.progress(Matchers.eq(job.getId()), Matchers.anyString(), Matchers.eq(1),
+                Matchers.any(ImportDiff.class), Matchers.any(Date.class))).thenReturn(false);
+        
+        runner.run(job, csvMembers);
+        
+        Mockito.verify(importJobService, Mockito.never()).complete(Matchers.anyString(), Matchers.anyString(),
+                Matchers.any(ImportDiff.class));
+        Mockito.verify(importJobService, Mockito.never()).fail(Matchers.anyString(), Matchers.anyString(), Matchers.anyString());
+        Mockito.verifyZeroInteractions(emailService);
+    }
+    
+    @Test
+    public void testOwnJobsRenewed() throws Exception
+    {
+        Mockito.when(importJobService.create(Matchers.any(ImportJobDO.class))).thenAnswer(invocation -> invocation.getArguments()[0]);
+        final ImportJobDO submitted = runner.submit(csvMembers, false);
+        runner.stop();
+        
+        runner.maintainLeases();
+        
+        Assert.assertNotNull(submitted.getOwner());
+        Assert.assertTrue(submitted.getLeaseExpiresDate().after(new Date()));
+        Mockito.verify(importJobService).renewLeases(Matchers.eq(submitted.getOwner()), Matchers.any(Date.class));
+        Mockito.verify(importJobService).failAbandonedJobs();
+    }
+    
+    @Test
+    public void testSuccessfulJob()
+    {
+        runner.run(job, csvMembers);
+        
+        final ArgumentCaptor<ImportDiff> diffs = ArgumentCaptor.forClass(ImportDiff.class);
+        Mockito.verify(importJobService).progress(Matchers.eq(job.getId()), Matchers.anyString(), Matchers.eq(1),
+                Matchers.any(ImportDiff.class), Matchers.any(Date.class));
+        Mockito.verify(importJobService).complete(Matchers.eq(job.getId()), Matchers.anyString(), diffs.capture());
+        Assert.assertEquals(Collections.singleton(1234L), diffs.getValue().getCreatedSet());
+        Mockito.verify(emailService).sendImportNotificationEmail(diffs.getValue());
+    }
+}
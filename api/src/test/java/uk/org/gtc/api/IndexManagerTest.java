@@ -0,0 +1,120 @@
+package uk.org.gtc.api;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+import uk.org.gtc.api.service.IndexDefinition;
+import uk.org.gtc.api.service.MemberService;
+
+public class IndexManagerTest
+{
+    private final MemberService memberService = Mockito.mock(MemberService.class);
+    
+    private final DBCollection collection = Mockito.mock(DBCollection.class);
+    
+    private final IndexDefinition emailIndex = new IndexDefinition("email", "email");
+    
+    private final IndexDefinition nameIndex = new IndexDefinition("lastName_firstName", "lastName", "firstName");
+    
+    private DBObject indexInfo(final String name, final DBObject keys)
+    {
+        return new BasicDBObject("name", name).append("key", keys);
+    }
+    
+    @Before
+    public void setUp()
+    {
+        Mockito.when(memberService.getDbCollection()).thenReturn(collection);
+        Mockito.when(memberService.getIndexDefinitions()).thenReturn(Arrays.asList(emailIndex, nameIndex));
+        Mockito.when(collection.getName()).thenReturn("members");
+    }
+    
+    @Test
+    public void testExistingIndexMatchedByKeys()
+    {
+        // Same keys under another name, with directions returned as doubles
+        Mockito.when(collection.getIndexInfo()).thenReturn(Arrays.asList(indexInfo("_id_", new BasicDBObject("_id", 1)),
+                indexInfo("email_1", new BasicDBObject("email", 1.0)),
+                indexInfo("name", new BasicDBObject("lastName", 1.0).append("firstName", 1.0))));
+        
+        final List<IndexDefinition> missing = new IndexManager(Collections.singletonList(memberService), true).ensureIndexes(memberService);
+        
+        Assert.assertTrue(missing.isEmpty());
+        Mockito.verify(collection, Mockito.never()).createIndex(Matchers.<DBObject> any(), Matchers.<DBObject> any());
+    }
+    
+    @Test
+    public void testExistingIndexWithOtherOptionsReportedMissing()
+    {
+        final IndexDefinition uniqueIndex = new IndexDefinition("membershipNumber_unique", new BasicDBObject("membershipNumber", 1), true,
+                new BasicDBObject("membershipNumber", new BasicDBObject("$gte", 0)));
+        Mockito.when(memberService.getIndexDefinitions()).thenReturn(Collections.singletonList(uniqueIndex));
+        // A plain index over the same keys does not enforce uniqueness
+        Mockito.when(collection.getIndexInfo()).thenReturn(Arrays.asList(indexInfo("_id_", new BasicDBObject("_id", 1)),
+                indexInfo("membershipNumber_1", new BasicDBObject("membershipNumber", 1.0))));
+        
+        final List<IndexDefinition> missing = new IndexManager(Collections.singletonList(memberService), true).ensureIndexes(memberService);
+        
+        Assert.assertEquals(Collections.singletonList(uniqueIndex), missing);
+        Mockito.verify(collection, Mockito.never()).createIndex(Matchers.<DBObject> any(), Matchers.<DBObject> any());
+    }
+    
+    @Test
+    public void testExistingIndexWithSameOptionsMatched()
+    {
+        final IndexDefinition uniqueIndex = new IndexDefinition("membershipNumber_unique", new BasicDBObject("membershipNumber", 1), true,
+                new BasicDBObject("membershipNumber", new BasicDBObject("$gte", 0)));
+        
+        // Numbers read back from the server as doubles
+        Assert.assertTrue(uniqueIndex.hasOptions(new BasicDBObject("unique", true).append("partialFilterExpression",
+                new BasicDBObject("membershipNumber", new BasicDBObject("$gte", 0.0)))));
+        Assert.assertFalse(uniqueIndex.hasOptions(new BasicDBObject("unique", true)));
+        Assert.assertFalse(uniqueIndex.hasOptions(new BasicDBObject("partialFilterExpression",
+                new BasicDBObject("membershipNumber", new BasicDBObject("$gte", 0)))));
+        Assert.assertTrue(emailIndex.hasOptions(new BasicDBObject("name", "email_1").append("v", 2)));
+        Assert.assertFalse(emailIndex.hasOptions(new BasicDBObject("unique", true)));
+    }
+    
+    @Test
+    public void testFailedIndexReportedMissing()
+    {
+        Mockito.when(collection.getIndexInfo()).thenReturn(Collections.singletonList(indexInfo("_id_", new BasicDBObject("_id", 1))));
+        Mockito.doThrow(new MongoException("duplicate key")).when(collection).createIndex(emailIndex.getKeys(), emailIndex.getOptions());
+        
+        final List<IndexDefinition> missing = new IndexManager(Collections.singletonList(memberService), true).ensureIndexes(memberService);
+        
+        Assert.assertEquals(Collections.singletonList(emailIndex), missing);
+        Mockito.verify(collection).createIndex(nameIndex.getKeys(), nameIndex.getOptions());
+    }
+    
+    @Test
+    public void testKeyOrderMatters()
+    {
+        Assert.assertFalse(nameIndex.hasKeys(new BasicDBObject("firstName", 1).append("lastName", 1)));
+        Assert.assertFalse(nameIndex.hasKeys(new BasicDBObject("lastName", -1).append("firstName", 1)));
+    }
+    
+    @Test
+    public void testMissingIndexNotCreatedWhenDisabled()
+    {
+        Mockito.when(collection.getIndexInfo()).thenReturn(Collections.singletonList(indexInfo("_id_", new BasicDBObject("_id", 1))));
+        
+        final List<IndexDefinition> missing = new IndexManager(Collections.singletonList(memberService), false)
+                .ensureIndexes(memberService);
+        
+        Assert.assertEquals(Arrays.asList(emailIndex, nameIndex), missing);
+        Mockito.verify(collection, Mockito.never()).createIndex(Matchers.<DBObject> any(), Matchers.<DBObject> any());
+    }
+}
@@ -0,0 +1,77 @@
+package uk.org.gtc.api;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class IntegrationExecutorTest
+{
+    private final MetricRegistry metrics = new MetricRegistry();
+    
+    private final IntegrationExecutor executor = new IntegrationExecutor(1, 1, 30, metrics);
+    
+    @After
+    public void tearDown() throws Exception
+    {
+        executor.stop();
+    }
+    
+    @Test
+    public void responseIsResumedWithTheResult()
+    {
+        final AsyncResponse response = Mockito.mock(AsyncResponse.class);
+        
+        executor.resume(response, () -> "status");
+        
+        Mockito.verify(response, Mockito.timeout(1000)).resume("status");
+        Mockito.verify(response).setTimeout(30, TimeUnit.SECONDS);
+    }
+    
+    @Test
+    public void responseIsResumedWithTheFailure()
+    {
+        final AsyncResponse response = Mockito.mock(AsyncResponse.class);
+        final IOException failure = new IOException("reset");
+        
+        executor.resume(response, () -> {
+            throw failure;
+        });
+        
+        Mockito.verify(response, Mockito.timeout(1000)).resume(failure);
+    }
+    
+    @Test
+    public void requestsBeyondTheQueueAreTurnedAway() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.resume(Mockito.mock(AsyncResponse.class), () -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        started.await(5, TimeUnit.SECONDS);
+        executor.resume(Mockito.mock(AsyncResponse.class), () -> "queued");
+        
+        final AsyncResponse rejected = Mockito.mock(AsyncResponse.class);
+        executor.resume(rejected, () -> "rejected");
+        release.countDown();
+        
+        final ArgumentCaptor<Throwable> error = ArgumentCaptor.forClass(Throwable.class);
+        Mockito.verify(rejected).resume(error.capture());
+        Assert.assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                ((WebApplicationException) error.getValue()).getResponse().getStatus());
+        Assert.assertEquals(1, metrics.meter(MetricRegistry.name(IntegrationExecutor.class, "rejected")).getCount());
+    }
+}
@@ -0,0 +1,59 @@
+package uk.org.gtc.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MailchimpBatchResultsTest
+{
+    /**
+     * Build a gzipped tar of the given name and content pairs, as Mailchimp
+     * publishes batch responses.
+     */
+    static byte[] archive(final String... entries) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final GZIPOutputStream gzip = new GZIPOutputStream(bytes))
+        {
+            for (int i = 0; i < entries.length; i += 2)
+            {
+                final byte[] content = entries[i + 1].getBytes(StandardCharsets.UTF_8);
+                final byte[] header = new byte[512];
+                final byte[] name = entries[i].getBytes(StandardCharsets.US_ASCII);
+                System.arraycopy(name, 0, header, 0, name.length);
+                final byte[] size = String.format("%011o", content.length).getBytes(StandardCharsets.US_ASCII);
+                System.arraycopy(size, 0, header, 124, size.length);
+                header[156] = (byte) (entries[i].endsWith("/") ? '5' : '0');
+                gzip.write(header);
+                gzip.write(content);
+                gzip.write(new byte[(512 - content.length % 512) % 512]);
+            }
+            gzip.write(new byte[1024]);
+        }
+        return bytes.toByteArray();
+    }
+    
+    @Test
+    public void testResponsesReadFromEveryFile() throws IOException
+    {
+        final byte[] archive = archive("batch/", "", "batch/one.json",
+                "[{\"status_code\":200,\"operation_id\":\"a@example.com\",\"response\":\"{}\"}]", "batch/two.json",
+                "[{\"status_code\":400,\"operation_id\":\"b@example.com\",\"response\":\"{\\\"title\\\":\\\"Invalid Resource\\\"}\"},"
+                        + "{\"status_code\":503,\"operation_id\":\"c@example.com\",\"response\":\"\"}]");
+        
+        final Map<String, MailchimpBatchResults.Result> results = MailchimpBatchResults.read(new ByteArrayInputStream(archive),
+                ObjectMapperFactory.getInstance());
+        
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals(200, results.get("a@example.com").getStatusCode());
+        Assert.assertEquals(400, results.get("b@example.com").getStatusCode());
+        Assert.assertEquals("{\"title\":\"Invalid Resource\"}", results.get("b@example.com").getResponse());
+        Assert.assertEquals(503, results.get("c@example.com").getStatusCode());
+    }
+}
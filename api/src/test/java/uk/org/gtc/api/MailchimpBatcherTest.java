@@ -0,0 +1,153 @@
+package uk.org.gtc.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import com.ecwid.maleorang.MailchimpException;
+import com.ecwid.maleorang.MailchimpMethod;
+import com.ecwid.maleorang.method.v3_0.batches.BatchStatus;
+import com.ecwid.maleorang.method.v3_0.batches.StartBatchMethod;
+
+import uk.org.gtc.api.domain.MailchimpBatchDO;
+import uk.org.gtc.api.domain.MailchimpOperation;
+import uk.org.gtc.api.service.MailchimpBatchService;
+import uk.org.gtc.api.service.SyncFingerprintService;
+
+public class MailchimpBatcherTest
+{
+    private final MailchimpBatchService batchService = Mockito.mock(MailchimpBatchService.class);
+    
+    private final SyncFingerprintService fingerprintService = Mockito.mock(SyncFingerprintService.class);
+    
+    private final MailchimpExecutor mailchimp = Mockito.mock(MailchimpExecutor.class);
+    
+    private final List<StartBatchMethod> started = new ArrayList<>();
+    
+    private final MailchimpBatcher batcher = new MailchimpBatcher(batchService, fingerprintService, mailchimp, "list", 500, 3, 30);
+    
+    private List<MailchimpOperation> operations(final int count)
+    {
+        final List<MailchimpOperation> operations = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            operations.add(new MailchimpOperation("member" + i, "print" + i, i + "@example.com", Collections.singletonMap("MEMNUM", i)));
+        }
+        return operations;
+    }
+    
+    @Before
+    public void setUp() throws IOException, MailchimpException
+    {
+        Mockito.when(batchService.getPendingEmails()).thenReturn(Collections.emptySet());
+        Mockito.when(batchService.create(Matchers.any(MailchimpBatchDO.class))).thenAnswer(invocation -> invocation.getArguments()[0]);
+        Mockito.when(batchService.claim(Matchers.eq("id"), Matchers.anyLong())).thenReturn("claim");
+        Mockito.when(batchService.complete(Matchers.eq("id"), Matchers.eq("claim"), Matchers.anyListOf(MailchimpOperation.class),
+                Matchers.anyInt())).thenReturn(true);
+        Mockito.when(mailchimp.execute(Matchers.<MailchimpMethod<BatchStatus>> any())).thenAnswer(invocation -> {
+            started.add((StartBatchMethod) invocation.getArguments()[0]);
+            final BatchStatus status = new BatchStatus();
+            status.id = "batch" + started.size();
+            return status;
+        });
+    }
+    
+    @Test
+    public void testFailedOperationsRetried() throws IOException
+    {
+        final MailchimpBatchDO batch = new MailchimpBatchDO("batch0", operations(3));
+        batch.setId("id");
+        final File results = File.createTempFile("batch", ".tar.gz");
+        results.deleteOnExit();
+        Files.write(results.toPath(), MailchimpBatchResultsTest.archive("results.json",
+                "[{\"status_code\":200,\"operation_id\":\"0@example.com\",\"response\":\"{}\"},"
+                        + "{\"status_code\":400,\"operation_id\":\"1@example.com\",\"response\":\"Invalid\"},"
+                        + "{\"status_code\":503,\"operation_id\":\"2@example.com\",\"response\":\"Unavailable\"}]"));
+        final BatchStatus status = new BatchStatus();
+        status.status = "finished";
+        status.errored_operations = 2;
+        status.response_body_url = results.toURI().toString();
+        
+        batcher.finish(batch, status);
+        
+        Mockito.verify(batchService).complete("id", "claim", batch.getOperations(), 2);
+        // Only the member whose update was applied is synced
+        Mockito.verify(fingerprintService).record(SyncFingerprintService.MAILCHIMP, Collections.singletonMap("member0", "print0"));
+        Assert.assertEquals(Integer.valueOf(200), batch.getOperations().get(0).getStatusCode());
+        Assert.assertEquals("Invalid", batch.getOperations().get(1).getError());
+        
+        // Only the server error is worth trying again
+        Assert.assertEquals(1, started.size());
+        final ArgumentCaptor<MailchimpBatchDO> retry = ArgumentCaptor.forClass(MailchimpBatchDO.class);
+        Mockito.verify(batchService).create(retry.capture());
+        Assert.assertEquals("2@example.com", retry.getValue().getOperations().get(0).getEmail());
+        Assert.assertEquals(Integer.valueOf(2), retry.getValue().getOperations().get(0).getAttempt());
+    }
+    
+    @Test
+    public void testBatchClaimedElsewhereNotFinished() throws IOException
+    {
+        final MailchimpBatchDO batch = new MailchimpBatchDO("batch0", operations(1));
+        batch.setId("other");
+        final BatchStatus status = new BatchStatus();
+        status.status = "finished";
+        status.errored_operations = 1;
+        
+        batcher.finish(batch, status);
+        
+        Mockito.verify(batchService, Mockito.never()).complete(Matchers.anyString(), Matchers.anyString(),
+                Matchers.anyListOf(MailchimpOperation.class), Matchers.anyInt());
+        Mockito.verifyZeroInteractions(fingerprintService);
+        Assert.assertTrue(started.isEmpty());
+    }
+    
+    @Test
+    public void testLostClaimNotResubmitted() throws IOException
+    {
+        final MailchimpBatchDO batch = new MailchimpBatchDO("batch0", operations(1));
+        batch.setId("id");
+        Mockito.when(batchService.complete(Matchers.eq("id"), Matchers.eq("claim"), Matchers.anyListOf(MailchimpOperation.class),
+                Matchers.anyInt())).thenReturn(false);
+        final BatchStatus status = new BatchStatus();
+        status.status = "finished";
+        status.errored_operations = 1;
+        
+        batcher.finish(batch, status);
+        
+        Mockito.verifyZeroInteractions(fingerprintService);
+        Assert.assertTrue(started.isEmpty());
+    }
+    
+    @Test
+    public void testPendingMembersSkipped()
+    {
+        Mockito.when(batchService.getPendingEmails()).thenReturn(Collections.singleton("0@example.com"));
+        
+        final List<MailchimpBatchDO> batches = batcher.submit(operations(3));
+        
+        Assert.assertEquals(2, batches.get(0).getOperations().size());
+        Assert.assertEquals("1@example.com", started.get(0).operations.get(0).operation_id);
+    }
+    
+    @Test
+    public void testSplitIntoBatches()
+    {
+        final List<MailchimpBatchDO> batches = batcher.submit(operations(1200));
+        
+        Assert.assertEquals(3, batches.size());
+        Assert.assertEquals("batch1", batches.get(0).getBatchId());
+        Assert.assertEquals(500, started.get(1).operations.size());
+        Assert.assertEquals(200, batches.get(2).getOperations().size());
+        Assert.assertEquals("1000@example.com", started.get(2).operations.get(0).operation_id);
+    }
+}
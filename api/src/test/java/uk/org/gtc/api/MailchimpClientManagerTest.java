@@ -0,0 +1,66 @@
+package uk.org.gtc.api;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import com.codahale.metrics.MetricRegistry;
+import com.ecwid.maleorang.MailchimpException;
+import com.ecwid.maleorang.connector.Connector;
+import com.ecwid.maleorang.method.v3_0.lists.members.GetMemberMethod;
+import com.ecwid.maleorang.method.v3_0.lists.members.MemberInfo;
+
+public class MailchimpClientManagerTest
+{
+    private final Connector connector = Mockito.mock(Connector.class);
+    
+    private final MetricRegistry metrics = new MetricRegistry();
+    
+    private final DependencyGuard guard = new DependencyGuard("mailchimp", 1, 0, 5, 30, e -> true);
+    
+    private final MailchimpClientManager manager = new MailchimpClientManager("key-us1", connector, guard, metrics);
+    
+    @Test
+    public void executeReusesTheConnectorAndTimesEachMethod() throws Exception
+    {
+        Mockito.when(connector.call(Matchers.any(Connector.Request.class)))
+                .thenReturn(new Connector.Response(200, "OK", "{\"status\":\"subscribed\"}"));
+        
+        final MemberInfo first = manager.execute(new GetMemberMethod("list", "a@example.com"));
+        manager.execute(new GetMemberMethod("list", "b@example.com"));
+        
+        Assert.assertEquals("subscribed", first.status);
+        Mockito.verify(connector, Mockito.times(2)).call(Matchers.any(Connector.Request.class));
+        Assert.assertEquals(2, metrics.timer(MetricRegistry.name(MailchimpClientManager.class, "GetMemberMethod")).getCount());
+        Assert.assertEquals(0, metrics.meter(MetricRegistry.name(MailchimpClientManager.class, "errors")).getCount());
+    }
+    
+    @Test
+    public void failuresAreCounted() throws Exception
+    {
+        Mockito.when(connector.call(Matchers.any(Connector.Request.class))).thenThrow(new IOException("reset"));
+        
+        try
+        {
+            manager.execute(new GetMemberMethod("list", "a@example.com"));
+            Assert.fail("Expected the failure to be passed on");
+        }
+        catch (final IOException | MailchimpException e)
+        {
+            // expected
+        }
+        
+        Assert.assertEquals(1, metrics.meter(MetricRegistry.name(MailchimpClientManager.class, "errors")).getCount());
+    }
+    
+    @Test
+    public void stopClosesTheConnector() throws Exception
+    {
+        manager.stop();
+        
+        Mockito.verify(connector).close();
+    }
+}
@@ -0,0 +1,101 @@
+package uk.org.gtc.api.jobs;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.auth0.json.mgmt.users.User;
+
+import uk.org.gtc.api.ObjectMapperFactory;
+import uk.org.gtc.api.domain.MemberDO;
+
+public class Auth0ReconcilerTest
+{
+    private final Auth0Reconciler reconciler = new Auth0Reconciler();
+    
+    private MemberDO member(final Long membershipNumber, final String email)
+    {
+        final MemberDO member = new MemberDO();
+        member.setMembershipNumber(membershipNumber);
+        member.setEmail(email);
+        return member;
+    }
+    
+    private User user(final String id, final String email, final boolean verified, final Integer membershipNumber,
+            final String... roles)
+    {
+        final Map<String, Object> appMetadata = new HashMap<>();
+        if (membershipNumber != null)
+        {
+            appMetadata.put(Auth0Reconciler.MEMBERSHIP_NUMBER_KEY, membershipNumber);
+        }
+        appMetadata.put(Auth0Reconciler.ROLES_KEY, Arrays.asList(roles));
+        
+        final Map<String, Object> user = new HashMap<>();
+        user.put("user_id", id);
+        user.put("email", email);
+        user.put("email_verified", verified);
+        user.put("app_metadata", appMetadata);
+        return ObjectMapperFactory.getInstance().convertValue(user, User.class);
+    }
+    
+    @Test
+    public void testAlreadyLinkedUnchanged()
+    {
+        final List<Auth0UserUpdate> updates = reconciler.reconcile(Collections.singletonList(member(1000L, "a@example.com")),
+                Collections.singletonList(user("auth0|1", "a@example.com", true, 1000, "MEMBER")));
+        
+        Assert.assertTrue(updates.isEmpty());
+    }
+    
+    @Test
+    public void testDuplicateEmailNotLinked()
+    {
+        final List<Auth0UserUpdate> updates = reconciler.reconcile(Collections.singletonList(member(1000L, "a@example.com")),
+                Arrays.asList(user("auth0|1", "a@example.com", true, null), user("auth0|2", "a@example.com", true, null)));
+        
+        Assert.assertTrue(updates.isEmpty());
+    }
+    
+    @Test
+    public void testLaterMembersStillLinked()
+    {
+        // A member with no Auth0 user must not stop later members being linked
+        final List<Auth0UserUpdate> updates = reconciler.reconcile(
+                Arrays.asList(member(1000L, "nobody@example.com"), member(2000L, "b@example.com")),
+                Collections.singletonList(user("auth0|2", "b@example.com", true, null)));
+        
+        Assert.assertEquals(1, updates.size());
+        Assert.assertEquals(2000L, updates.get(0).getAppMetadata().get(Auth0Reconciler.MEMBERSHIP_NUMBER_KEY));
+        Assert.assertEquals(Collections.singletonList("MEMBER"), updates.get(0).getAppMetadata().get(Auth0Reconciler.ROLES_KEY));
+        Assert.assertEquals("b@example.com", updates.get(0).getLinkedMember().getEmail());
+    }
+    
+    @Test
+    public void testUnknownNumberUnlinked()
+    {
+        final List<Auth0UserUpdate> updates = reconciler.reconcile(Collections.singletonList(member(1000L, "a@example.com")),
+                Collections.singletonList(user("auth0|9", "old@example.com", true, 9999, "MEMBER", "ADMIN")));
+        
+        Assert.assertEquals(1, updates.size());
+        final Map<String, Object> appMetadata = updates.get(0).getAppMetadata();
+        Assert.assertTrue(appMetadata.containsKey(Auth0Reconciler.MEMBERSHIP_NUMBER_KEY));
+        Assert.assertNull(appMetadata.get(Auth0Reconciler.MEMBERSHIP_NUMBER_KEY));
+        Assert.assertEquals(Collections.singletonList("ADMIN"), appMetadata.get(Auth0Reconciler.ROLES_KEY));
+        Assert.assertNull(updates.get(0).getLinkedMember());
+    }
+    
+    @Test
+    public void testUnverifiedEmailNotLinked()
+    {
+        final List<Auth0UserUpdate> updates = reconciler.reconcile(Collections.singletonList(member(1000L, "a@example.com")),
+                Collections.singletonList(user("auth0|1", "a@example.com", false, null)));
+        
+        Assert.assertTrue(updates.isEmpty());
+    }
+}
@@ -0,0 +1,88 @@
+package uk.org.gtc.api.jobs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.auth0.exception.APIException;
+import com.auth0.exception.Auth0Exception;
+
+public class Auth0UpdateDispatcherTest
+{
+    private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+    
+    private int attempt(final Auth0UserUpdate update)
+    {
+        return attempts.computeIfAbsent(update.getUserId(), id -> new AtomicInteger()).incrementAndGet();
+    }
+    
+    private List<Auth0UserUpdate> updates(final int count)
+    {
+        final List<Auth0UserUpdate> updates = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            updates.add(new Auth0UserUpdate("auth0|" + i, i + "@example.com"));
+        }
+        return updates;
+    }
+    
+    @Test
+    public void testAllUpdatesSent()
+    {
+        final Auth0UpdateDispatcher.Summary summary = new Auth0UpdateDispatcher(this::attempt, 4, 0, new Auth0Backoff(1))
+                .dispatch(updates(20));
+        
+        Assert.assertEquals(20, summary.getSucceeded().size());
+        Assert.assertEquals(20, attempts.size());
+        Assert.assertTrue(summary.getFailedUserIds().isEmpty());
+    }
+    
+    @Test
+    public void testClientErrorNotRetried()
+    {
+        final Auth0UpdateDispatcher.Summary summary = new Auth0UpdateDispatcher(update -> {
+            if (attempt(update) > 0 && update.getUserId().equals("auth0|1"))
+            {
+                throw new APIException("Bad request", 400, null);
+            }
+        }, 4, 5, new Auth0Backoff(1)).dispatch(updates(3));
+        
+        Assert.assertEquals(2, summary.getSucceeded().size());
+        Assert.assertEquals(Collections.singletonList("auth0|1"), summary.getFailedUserIds());
+        Assert.assertEquals(1, attempts.get("auth0|1").get());
+        Assert.assertEquals(0, summary.getRetries());
+    }
+    
+    @Test
+    public void testFailuresRetriedIndependently()
+    {
+        final Auth0UpdateDispatcher.Summary summary = new Auth0UpdateDispatcher(update -> {
+            final int attempt = attempt(update);
+            if (update.getUserId().equals("auth0|1") && attempt <= 2)
+            {
+                throw new APIException("Too many requests", 429, null);
+            }
+            if (update.getUserId().equals("auth0|2"))
+            {
+                throw new APIException("Internal error", 500, null);
+            }
+            if (update.getUserId().equals("auth0|3") && attempt == 1)
+            {
+                throw new Auth0Exception("Connection reset");
+            }
+        }, 2, 3, new Auth0Backoff(1)).dispatch(updates(5));
+        
+        Assert.assertEquals(4, summary.getSucceeded().size());
+        Assert.assertEquals(Collections.singletonList("auth0|2"), summary.getFailedUserIds());
+        Assert.assertEquals(3, attempts.get("auth0|1").get());
+        Assert.assertEquals(4, attempts.get("auth0|2").get());
+        Assert.assertEquals(2, attempts.get("auth0|3").get());
+        Assert.assertEquals(6, summary.getRetries());
+    }
+}
@@ -0,0 +1,101 @@
+package uk.org.gtc.api.jobs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.auth0.exception.APIException;
+import com.auth0.exception.Auth0Exception;
+import com.auth0.json.mgmt.users.User;
+import com.auth0.json.mgmt.users.UsersPage;
+
+import uk.org.gtc.api.ObjectMapperFactory;
+
+public class Auth0UserPagerTest
+{
+    private static final int TOTAL = 230;
+    
+    private final Map<Integer, AtomicInteger> requests = new ConcurrentHashMap<>();
+    
+    private UsersPage page(final int page, final int pageSize, final Integer total)
+    {
+        final List<User> users = new ArrayList<>();
+        for (int i = page * pageSize; i < Math.min((page + 1) * pageSize, TOTAL); i++)
+        {
+            final Map<String, Object> user = new HashMap<>();
+            user.put("user_id", "auth0|" + i);
+            users.add(ObjectMapperFactory.getInstance().convertValue(user, User.class));
+        }
+        return new UsersPage(page * pageSize, users.size(), total, pageSize, users);
+    }
+    
+    private int requestsFor(final int page)
+    {
+        return requests.get(page).get();
+    }
+    
+    @Test
+    public void testAllPagesFetched() throws Auth0Exception
+    {
+        final List<User> users = new Auth0UserPager((page, pageSize) -> {
+            requests.computeIfAbsent(page, p -> new AtomicInteger()).incrementAndGet();
+            return page(page, pageSize, TOTAL);
+        }, 50, 3, 0, new Auth0Backoff(1)).fetchAll();
+        
+        Assert.assertEquals(TOTAL, users.size());
+        Assert.assertEquals("auth0|0", users.get(0).getId());
+        Assert.assertEquals("auth0|229", users.get(TOTAL - 1).getId());
+        Assert.assertEquals(5, requests.size());
+    }
+    
+    @Test
+    public void testErrorNotRetried()
+    {
+        try
+        {
+            new Auth0UserPager((page, pageSize) -> {
+                requests.computeIfAbsent(page, p -> new AtomicInteger()).incrementAndGet();
+                if (page == 2)
+                {
+                    throw new APIException("Internal error", 500, null);
+                }
+                return page(page, pageSize, TOTAL);
+            }, 50, 3, 5, new Auth0Backoff(1)).fetchAll();
+            Assert.fail("Expected the page error to be thrown");
+        }
+        catch (final Auth0Exception e)
+        {
+            Assert.assertEquals(500, ((APIException) e).getStatusCode());
+        }
+        Assert.assertEquals(1, requestsFor(2));
+    }
+    
+    @Test
+    public void testRateLimitedPageRetried() throws Auth0Exception
+    {
+        final List<User> users = new Auth0UserPager((page, pageSize) -> {
+            if (requests.computeIfAbsent(page, p -> new AtomicInteger()).incrementAndGet() <= 2 && page == 3)
+            {
+                throw new APIException("Too many requests", 429, null);
+            }
+            return page(page, pageSize, TOTAL);
+        }, 50, 3, 5, new Auth0Backoff(1)).fetchAll();
+        
+        Assert.assertEquals(TOTAL, users.size());
+        Assert.assertEquals(3, requestsFor(3));
+    }
+    
+    @Test
+    public void testWithoutTotalReadsUntilShortPage() throws Auth0Exception
+    {
+        final List<User> users = new Auth0UserPager((page, pageSize) -> page(page, pageSize, null), 50, 3, 0, new Auth0Backoff(1)).fetchAll();
+        
+        Assert.assertEquals(TOTAL, users.size());
+    }
+}
@@ -0,0 +1,193 @@
+package uk.org.gtc.api.jobs;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.quartz.JobExecutionException;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+import uk.org.gtc.api.GtcConfiguration;
+import uk.org.gtc.api.JobWatermarkServiceFactory;
+import uk.org.gtc.api.domain.JobWatermarkDO;
+import uk.org.gtc.api.domain.MemberDO;
+import uk.org.gtc.api.service.JobWatermarkService;
+import uk.org.gtc.api.service.MemberService;
+
+public class IncrementalJobTest
+{
+    private static final String JOB_NAME = "TestJob";
+    
+    private final JobWatermarkService watermarkService = Mockito.mock(JobWatermarkService.class);
+    
+    private final MemberService memberService = Mockito.mock(MemberService.class);
+    
+    private final GtcConfiguration configuration = new GtcConfiguration();
+    
+    private final TestJob job = new TestJob();
+    
+    private static class TestJob extends IncrementalJob
+    {
+        private MemberService memberService;
+        
+        private IncrementalJob.Run run;
+        
+        private boolean succeed = true;
+        
+        @Override
+        protected boolean sync(final GtcConfiguration configuration, final Run run)
+        {
+            this.run = run;
+            run.getMembers(memberService, new BasicDBObject("email", 1));
+            return succeed;
+        }
+    }
+    
+    private MemberDO member(final Date lastUpdatedDate)
+    {
+        final MemberDO member = new MemberDO();
+        member.setLastUpdatedDate(lastUpdatedDate);
+        return member;
+    }
+    
+    private JobWatermarkDO state(final Date watermark, final Date lastFullRunDate)
+    {
+        final JobWatermarkDO state = new JobWatermarkDO();
+        state.setWatermark(watermark);
+        state.setLastFullRunDate(lastFullRunDate);
+        return state;
+    }
+    
+    @Before
+    public void setUp()
+    {
+        configuration.jobFullSyncMinutes = 60;
+        configuration.jobWatermarkOverlapSeconds = 60;
+        GtcConfiguration.setInstance(configuration);
+        JobWatermarkServiceFactory.setInstance(watermarkService);
+        job.memberService = memberService;
+    }
+    
+    @After
+    public void tearDown()
+    {
+        JobWatermarkServiceFactory.setInstance(null);
+    }
+    
+    @Test
+    public void testFailedRunNotAdvanced() throws JobExecutionException
+    {
+        Mockito.when(watermarkService.getByJobName(JOB_NAME)).thenReturn(state(new Date(), new Date()));
+        job.succeed = false;
+        
+        job.doJob(null);
+        
+        Mockito.verify(watermarkService, Mockito.never()).advance(Matchers.anyString(), Matchers.any(Date.class), Matchers.any(Date.class));
+    }
+    
+    @Test
+    public void testFirstRunFull() throws JobExecutionException
+    {
+        final Date newest = new Date(5000);
+        Mockito.when(memberService.getAllProjected(Matchers.any(DBObject.class)))
+                .thenReturn(Arrays.asList(member(new Date(1000)), member(newest), member(null)));
+        
+        job.doJob(null);
+        
+        Assert.assertTrue(job.run.isFull());
+        final ArgumentCaptor<DBObject> projection = ArgumentCaptor.forClass(DBObject.class);
+        Mockito.verify(memberService).getAllProjected(projection.capture());
+        Assert.assertTrue(projection.getValue().containsField("lastUpdatedDate"));
+        // Moved on to the overlap before the run, as that is later than any
+        // member seen
+        final ArgumentCaptor<Date> watermark = ArgumentCaptor.forClass(Date.class);
+        Mockito.verify(watermarkService).advance(Matchers.eq(JOB_NAME), watermark.capture(), Matchers.any(Date.class));
+        Assert.assertTrue(watermark.getValue().getTime() <= System.currentTimeMillis() - 60000);
+        Assert.assertTrue(watermark.getValue().after(newest));
+    }
+    
+    @Test
+    public void testFullRunWhenDue() throws JobExecutionException
+    {
+        Mockito.when(watermarkService.getByJobName(JOB_NAME))
+                .thenReturn(state(new Date(), new Date(System.currentTimeMillis() - 61 * 60000)));
+        Mockito.when(memberService.getAllProjected(Matchers.any(DBObject.class))).thenReturn(Collections.emptyList());
+        
+        job.doJob(null);
+        
+        Assert.assertTrue(job.run.isFull());
+    }
+    
+    @Test
+    public void testIncrementalSinceWatermark() throws JobExecutionException
+    {
+        final Date watermark = new Date(System.currentTimeMillis() - 300000);
+        final Date lastFullRun = new Date(System.currentTimeMillis() - 600000);
+        final Date newest = new Date(System.currentTimeMillis() - 1000);
+        Mockito.when(watermarkService.getByJobName(JOB_NAME)).thenReturn(state(watermark, lastFullRun));
+        Mockito.when(memberService.getUpdatedSince(Matchers.any(Date.class), Matchers.any(DBObject.class)))
+                .thenReturn(Collections.singletonList(member(newest)));
+        
+        job.doJob(null);
+        
+        Assert.assertFalse(job.run.isFull());
+        // The overlap is already in the stored watermark
+        Assert.assertEquals(watermark, job.run.getSince());
+        Mockito.verify(watermarkService).advance(JOB_NAME, newest, lastFullRun);
+    }
+    
+    @Test
+    public void testMemberAtWatermarkNotReadAgain() throws JobExecutionException
+    {
+        final Date watermark = new Date(System.currentTimeMillis() - 300000);
+        final Date lastFullRun = new Date(System.currentTimeMillis() - 600000);
+        Mockito.when(watermarkService.getByJobName(JOB_NAME)).thenReturn(state(watermark, lastFullRun));
+        // Read again because the query includes the watermark itself
+        Mockito.when(memberService.getUpdatedSince(Matchers.any(Date.class), Matchers.any(DBObject.class)))
+                .thenReturn(Collections.singletonList(member(watermark)));
+        
+        final long before = System.currentTimeMillis();
+        job.doJob(null);
+        
+        final ArgumentCaptor<Date> advanced = ArgumentCaptor.forClass(Date.class);
+        Mockito.verify(watermarkService).advance(Matchers.eq(JOB_NAME), advanced.capture(), Matchers.eq(lastFullRun));
+        Assert.assertTrue(advanced.getValue().getTime() >= before - 60000);
+        Assert.assertTrue(advanced.getValue().getTime() <= System.currentTimeMillis() - 60000);
+    }
+    
+    @Test
+    public void testMemberAtRecentWatermarkNotWritten() throws JobExecutionException
+    {
+        final Date watermark = new Date(System.currentTimeMillis() - 1000);
+        Mockito.when(watermarkService.getByJobName(JOB_NAME)).thenReturn(state(watermark, new Date()));
+        Mockito.when(memberService.getUpdatedSince(Matchers.any(Date.class), Matchers.any(DBObject.class)))
+                .thenReturn(Collections.singletonList(member(watermark)));
+        
+        job.doJob(null);
+        
+        Mockito.verify(watermarkService, Mockito.never()).advance(Matchers.anyString(), Matchers.any(Date.class), Matchers.any(Date.class));
+    }
+    
+    @Test
+    public void testNothingChangedKeepsWatermark() throws JobExecutionException
+    {
+        final Date watermark = new Date(System.currentTimeMillis() - 300000);
+        final Date lastFullRun = new Date(System.currentTimeMillis() - 600000);
+        Mockito.when(watermarkService.getByJobName(JOB_NAME)).thenReturn(state(watermark, lastFullRun));
+        Mockito.when(memberService.getUpdatedSince(Matchers.any(Date.class), Matchers.any(DBObject.class)))
+                .thenReturn(Collections.emptyList());
+        
+        job.doJob(null);
+        
+        Mockito.verify(watermarkService, Mockito.never()).advance(Matchers.anyString(), Matchers.any(Date.class), Matchers.any(Date.class));
+    }
+}
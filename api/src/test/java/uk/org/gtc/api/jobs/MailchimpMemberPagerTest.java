@@ -0,0 +1,65 @@
+package uk.org.gtc.api.jobs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ecwid.maleorang.MailchimpException;
+import com.ecwid.maleorang.method.v3_0.lists.members.GetMembersMethod;
+import com.ecwid.maleorang.method.v3_0.lists.members.MemberInfo;
+
+public class MailchimpMemberPagerTest
+{
+    private final List<Integer> offsets = new ArrayList<>();
+    
+    private GetMembersMethod.Response page(final int offset, final int count, final int size, final Integer total)
+    {
+        offsets.add(offset);
+        final GetMembersMethod.Response response = new GetMembersMethod.Response();
+        response.members = new ArrayList<>();
+        for (int i = offset; i < Math.min(offset + count, size); i++)
+        {
+            final MemberInfo member = new MemberInfo();
+            member.email_address = i + "@example.com";
+            response.members.add(member);
+        }
+        response.total_items = total;
+        return response;
+    }
+    
+    @Test
+    public void testEveryPageRead() throws IOException, MailchimpException
+    {
+        final List<String> emails = new ArrayList<>();
+        final int read = new MailchimpMemberPager((offset, count) -> page(offset, count, 2500, 2500), 1000)
+                .forEach(member -> emails.add(member.email_address));
+        
+        Assert.assertEquals(2500, read);
+        Assert.assertEquals(2500, emails.size());
+        Assert.assertEquals("2499@example.com", emails.get(2499));
+        Assert.assertEquals(3, offsets.size());
+        Assert.assertEquals(Integer.valueOf(2000), offsets.get(2));
+    }
+    
+    @Test
+    public void testExactMultipleStopsAtTotal() throws IOException, MailchimpException
+    {
+        new MailchimpMemberPager((offset, count) -> page(offset, count, 2000, 2000), 1000).forEach(member -> {
+        });
+        
+        Assert.assertEquals(2, offsets.size());
+    }
+    
+    @Test
+    public void testShortPageStopsWithoutTotal() throws IOException, MailchimpException
+    {
+        final int read = new MailchimpMemberPager((offset, count) -> page(offset, count, 1500, null), 1000).forEach(member -> {
+        });
+        
+        Assert.assertEquals(1500, read);
+        Assert.assertEquals(2, offsets.size());
+    }
+}
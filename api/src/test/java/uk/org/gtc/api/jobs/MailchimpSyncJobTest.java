@@ -0,0 +1,127 @@
+package uk.org.gtc.api.jobs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import com.ecwid.maleorang.MailchimpException;
+import com.ecwid.maleorang.MailchimpMethod;
+import com.ecwid.maleorang.MailchimpObject;
+import com.ecwid.maleorang.method.v3_0.lists.members.GetMemberMethod;
+import com.ecwid.maleorang.method.v3_0.lists.members.GetMembersMethod;
+import com.ecwid.maleorang.method.v3_0.lists.members.MemberInfo;
+import com.mongodb.DBObject;
+
+import uk.org.gtc.api.GtcConfiguration;
+import uk.org.gtc.api.MailchimpClientManager;
+import uk.org.gtc.api.MailchimpClientManagerFactory;
+import uk.org.gtc.api.MemberServiceFactory;
+import uk.org.gtc.api.SyncFingerprintServiceFactory;
+import uk.org.gtc.api.domain.MemberDO;
+import uk.org.gtc.api.service.MemberService;
+import uk.org.gtc.api.service.SyncFingerprintService;
+
+public class MailchimpSyncJobTest
+{
+    private final MemberService memberService = Mockito.mock(MemberService.class);
+    
+    private final SyncFingerprintService fingerprintService = Mockito.mock(SyncFingerprintService.class);
+    
+    private final MailchimpClientManager mailchimp = Mockito.mock(MailchimpClientManager.class);
+    
+    private final GtcConfiguration configuration = new GtcConfiguration();
+    
+    private final IncrementalJob.Run incremental = new IncrementalJob.Run(new Date(0));
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private ArgumentCaptor<MailchimpMethod<?>> executed() throws IOException, MailchimpException
+    {
+        final ArgumentCaptor<MailchimpMethod<?>> methods = (ArgumentCaptor) ArgumentCaptor.forClass(MailchimpMethod.class);
+        Mockito.verify(mailchimp, Mockito.atLeastOnce()).execute(methods.capture());
+        return methods;
+    }
+    
+    @Before
+    public void setUp() throws IOException, MailchimpException
+    {
+        configuration.mailchimpListId = "list";
+        configuration.mailchimpPageSize = 500;
+        configuration.mailchimpLookupMax = 50;
+        MemberServiceFactory.setInstance(memberService);
+        SyncFingerprintServiceFactory.setInstance(fingerprintService);
+        MailchimpClientManagerFactory.setInstance(mailchimp);
+        
+        final MemberDO member = new MemberDO();
+        member.setId("m1");
+        member.setEmail("changed@example.com");
+        member.setLastName("Jones");
+        Mockito.when(memberService.getUpdatedSince(Matchers.any(Date.class), Matchers.any(DBObject.class)))
+                .thenReturn(Collections.singletonList(member));
+        Mockito.when(
+                fingerprintService.getFingerprints(Matchers.eq(SyncFingerprintService.MAILCHIMP), Matchers.anyCollectionOf(String.class)))
+                .thenReturn(Collections.emptyMap());
+        
+        final MemberInfo mailchimpMember = new MemberInfo();
+        mailchimpMember.email_address = "changed@example.com";
+        mailchimpMember.merge_fields = new MailchimpObject();
+        mailchimpMember.merge_fields.mapping.put("LNAME", "Smith");
+        final GetMembersMethod.Response page = new GetMembersMethod.Response();
+        page.members = new ArrayList<>(Collections.singletonList(mailchimpMember));
+        page.total_items = 1;
+        Mockito.when(mailchimp.execute(Matchers.any(GetMemberMethod.class))).thenReturn(mailchimpMember);
+        Mockito.when(mailchimp.execute(Matchers.any(GetMembersMethod.class))).thenReturn(page);
+    }
+    
+    @After
+    public void tearDown()
+    {
+        MemberServiceFactory.setInstance(null);
+        SyncFingerprintServiceFactory.setInstance(null);
+        MailchimpClientManagerFactory.setInstance(null);
+    }
+    
+    @Test
+    public void testFewChangesLookedUpByHash() throws IOException, MailchimpException
+    {
+        Assert.assertTrue(new MailchimpSyncJob().sync(configuration, incremental));
+        
+        final ArgumentCaptor<MailchimpMethod<?>> methods = executed();
+        Assert.assertEquals(1, methods.getAllValues().size());
+        Assert.assertTrue(methods.getValue() instanceof GetMemberMethod);
+        // Sent to Mailchimp, so only synced once Mailchimp has applied it
+        Mockito.verify(fingerprintService).update(SyncFingerprintService.MAILCHIMP, Collections.emptyMap(), Collections.emptyMap());
+    }
+    
+    @Test
+    public void testMemberNotOnListSynced() throws IOException, MailchimpException
+    {
+        final MailchimpException notFound = new MailchimpException(404, "Resource Not Found");
+        Mockito.doThrow(notFound).when(mailchimp).execute(Matchers.any(GetMemberMethod.class));
+        
+        Assert.assertTrue(new MailchimpSyncJob().sync(configuration, incremental));
+        
+        Mockito.verify(fingerprintService).update(Matchers.eq(SyncFingerprintService.MAILCHIMP), Matchers.eq(Collections.emptyMap()),
+                Matchers.argThat(fingerprints -> fingerprints.containsKey("m1")));
+    }
+    
+    @Test
+    public void testManyChangesReadWholeList() throws IOException, MailchimpException
+    {
+        configuration.mailchimpLookupMax = 0;
+        
+        Assert.assertTrue(new MailchimpSyncJob().sync(configuration, incremental));
+        
+        final ArgumentCaptor<MailchimpMethod<?>> methods = executed();
+        Assert.assertEquals(1, methods.getAllValues().size());
+        Assert.assertTrue(methods.getValue() instanceof GetMembersMethod);
+    }
+}
@@ -0,0 +1,138 @@
+package uk.org.gtc.api.resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mongojack.DBCursor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class CursorStreamingOutputTest
+{
+    /**
+     * Counts the flushes passed through to the response.
+     */
+    private static class FlushCountingOutputStream extends ByteArrayOutputStream
+    {
+        private int flushes = 0;
+        
+        @Override
+        public void flush() throws IOException
+        {
+            flushes++;
+            super.flush();
+        }
+    }
+    
+    private final ObjectMapper mapper = new ObjectMapper();
+    
+    private DBCursor<Map<String, Integer>> cursor(final int count)
+    {
+        final List<Map<String, Integer>> items = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            items.add(Collections.singletonMap("n", i));
+        }
+        final Iterator<Map<String, Integer>> iterator = items.iterator();
+        
+        @SuppressWarnings("unchecked")
+        final DBCursor<Map<String, Integer>> cursor = Mockito.mock(DBCursor.class);
+        Mockito.when(cursor.batchSize(Matchers.anyInt())).thenReturn(cursor);
+        Mockito.when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        Mockito.when(cursor.next()).thenAnswer(invocation -> iterator.next());
+        return cursor;
+    }
+    
+    private String write(final DBCursor<Map<String, Integer>> cursor, final boolean newlineDelimited) throws IOException
+    {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new CursorStreamingOutput<>(cursor, mapper, newlineDelimited).write(output);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    @Test
+    public void testCursorClosedOnFailure()
+    {
+        final DBCursor<Map<String, Integer>> cursor = cursor(2);
+        Mockito.when(cursor.next()).thenThrow(new IllegalStateException("cursor lost"));
+        
+        try
+        {
+            write(cursor, false);
+            Assert.fail("Expected the failure to be thrown");
+        }
+        catch (final IllegalStateException | IOException e)
+        {
+            Mockito.verify(cursor).close();
+        }
+    }
+    
+    @Test
+    public void testEmptyArray() throws IOException
+    {
+        final DBCursor<Map<String, Integer>> cursor = cursor(0);
+        
+        Assert.assertEquals("[]", write(cursor, false));
+        Mockito.verify(cursor).close();
+    }
+    
+    @Test
+    public void testEmptyNewlineDelimited() throws IOException
+    {
+        final DBCursor<Map<String, Integer>> cursor = cursor(0);
+        
+        Assert.assertEquals("\n", write(cursor, true));
+        Mockito.verify(cursor).close();
+    }
+    
+    @Test
+    public void testJsonArray() throws IOException
+    {
+        Assert.assertEquals("[{\"n\":0},{\"n\":1},{\"n\":2}]", write(cursor(3), false));
+    }
+    
+    @Test
+    public void testManyBatchesFlushedInBlocks() throws IOException
+    {
+        // More than one batch read from the database, and enough to flush
+        final DBCursor<Map<String, Integer>> cursor = cursor(1250);
+        final FlushCountingOutputStream output = new FlushCountingOutputStream();
+        
+        new CursorStreamingOutput<>(cursor, mapper, false).write(output);
+        
+        Mockito.verify(cursor).batchSize(500);
+        final List<?> items = mapper.readValue(output.toByteArray(), List.class);
+        Assert.assertEquals(1250, items.size());
+        Assert.assertEquals(Collections.singletonMap("n", 1249), items.get(1249));
+        // Once per hundred items, and once more as the output is closed
+        Assert.assertEquals(13, output.flushes);
+    }
+    
+    @Test
+    public void testManyBatchesNewlineDelimited() throws IOException
+    {
+        final String[] lines = write(cursor(1250), true).split("\n", -1);
+        
+        // One line per item, and the output ends with a newline
+        Assert.assertEquals(1251, lines.length);
+        Assert.assertEquals("{\"n\":0}", lines[0]);
+        Assert.assertEquals("{\"n\":1249}", lines[1249]);
+        Assert.assertEquals("", lines[1250]);
+    }
+    
+    @Test
+    public void testNewlineDelimited() throws IOException
+    {
+        Assert.assertEquals("{\"n\":0}\n{\"n\":1}\n", write(cursor(2), true));
+    }
+}
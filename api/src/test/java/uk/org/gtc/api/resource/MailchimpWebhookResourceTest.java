@@ -0,0 +1,95 @@
+package uk.org.gtc.api.resource;
+
+import java.util.Date;
+
+import javax.ws.rs.WebApplicationException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import uk.org.gtc.api.GtcConfiguration;
+import uk.org.gtc.api.domain.MailchimpInfo;
+import uk.org.gtc.api.domain.MailchimpStatus;
+import uk.org.gtc.api.service.MailchimpStatusCache;
+
+public class MailchimpWebhookResourceTest
+{
+    private final MailchimpStatusCache statusCache = Mockito.mock(MailchimpStatusCache.class);
+    
+    private final MailchimpWebhookResource resource;
+    
+    public MailchimpWebhookResourceTest()
+    {
+        final GtcConfiguration configuration = new GtcConfiguration();
+        configuration.mailchimpListId = "list";
+        configuration.mailchimpWebhookSecret = "secret";
+        resource = new MailchimpWebhookResource(configuration, statusCache);
+    }
+    
+    @Test
+    public void unsubscribeUpdatesTheCache()
+    {
+        resource.receive("secret", "unsubscribe", "2017-06-01 10:00:00", "list", "a@example.com", "manual", null, null);
+        
+        final ArgumentCaptor<MailchimpInfo> info = ArgumentCaptor.forClass(MailchimpInfo.class);
+        Mockito.verify(statusCache).put(Matchers.eq("a@example.com"), info.capture());
+        Assert.assertEquals(MailchimpStatus.UNSUBSCRIBED, info.getValue().getStatus());
+        Assert.assertEquals("manual", info.getValue().getUnsubscribeReason());
+        Assert.assertEquals(1496311200000L, info.getValue().getLastChanged().getTime());
+    }
+    
+    @Test
+    public void upemailMovesTheCachedStatus()
+    {
+        resource.receive("secret", "upemail", "2017-06-01 10:00:00", "list", null, null, "old@example.com", "new@example.com");
+        
+        Mockito.verify(statusCache).move(Matchers.eq("old@example.com"), Matchers.eq("new@example.com"), Matchers.any(Date.class));
+    }
+    
+    @Test
+    public void otherListsAreIgnored()
+    {
+        resource.receive("secret", "subscribe", "2017-06-01 10:00:00", "other", "a@example.com", null, null, null);
+        
+        Mockito.verifyZeroInteractions(statusCache);
+    }
+    
+    @Test
+    public void missingEmailIsBadRequest()
+    {
+        try
+        {
+            resource.receive("secret", "subscribe", "2017-06-01 10:00:00", "list", null, null, null, null);
+            Assert.fail("Expected a bad request");
+        }
+        catch (final WebApplicationException e)
+        {
+            Assert.assertEquals(400, e.getResponse().getStatus());
+        }
+        Mockito.verifyZeroInteractions(statusCache);
+    }
+    
+    @Test
+    public void upemailWithoutNewEmailIsBadRequest()
+    {
+        try
+        {
+            resource.receive("secret", "upemail", "2017-06-01 10:00:00", "list", null, null, "old@example.com", null);
+            Assert.fail("Expected a bad request");
+        }
+        catch (final WebApplicationException e)
+        {
+            Assert.assertEquals(400, e.getResponse().getStatus());
+        }
+        Mockito.verifyZeroInteractions(statusCache);
+    }
+    
+    @Test(expected = WebApplicationException.class)
+    public void wrongSecretIsRefused()
+    {
+        resource.receive("guess", "subscribe", "2017-06-01 10:00:00", "list", "a@example.com", null, null, null);
+    }
+}
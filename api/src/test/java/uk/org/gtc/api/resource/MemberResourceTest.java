@@ -1,9 +1,7 @@
 package uk.org.gtc.api.resource;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import javax.ws.rs.WebApplicationException;
 
@@ -16,10 +14,9 @@ import org.junit.rules.ExpectedException;
 import org.mockito.Mockito;
 
 import uk.org.gtc.api.MemberServiceFactory;
-import uk.org.gtc.api.domain.CsvMember;
-import uk.org.gtc.api.domain.ImportDiff;
 import uk.org.gtc.api.domain.MemberDO;
 import uk.org.gtc.api.domain.MemberStatus;
+import uk.org.gtc.api.domain.ResultPage;
 import uk.org.gtc.api.service.MemberService;
 
 /**
@@ -84,28 +81,6 @@ public class MemberResourceTest extends BaseTest
         lapsedMembers.add(lapsedMember);
     }
     
-    @Test
-    public void testErrorImportMemberDeleted()
-    {
-        final ImportDiff diffs = new ImportDiff();
-        final Set<Long> errorSet = new HashSet<>();
-        final Set<Long> existingSet = new HashSet<>();
-        final Set<Long> importedSet = new HashSet<>();
-        final Set<Long> deletedSet = new HashSet<>();
-        existingSet.add(9000L);
-        diffs.setImportedSet(importedSet);
-        diffs.setExistingSet(existingSet);
-        diffs.setErrorSet(errorSet);
-        diffs.setDeletedSet(deletedSet);
-        Mockito.when(memberService.findByMemberNumber(9000L)).thenReturn(lapsedMembers);
-        Mockito.when(memberService.delete(lapsedMember)).thenReturn(false);
-        
-        final ImportDiff newDiffs = memberResource.importDeleteMember(diffs);
-        
-        Assert.assertEquals(0, newDiffs.getDeletedSet().size());
-        Assert.assertEquals(1, newDiffs.getErrorSet().size());
-    }
-    
     @Test
     public void testGetCurrent() throws Exception
     {
@@ -117,82 +92,14 @@ public class MemberResourceTest extends BaseTest
     }
     
     @Test
-    public void testImportMemberAlreadyExists()
-    {
-        final ImportDiff diffs = new ImportDiff();
-        final Set<Long> errorSet = new HashSet<>();
-        final Set<Long> existingSet = new HashSet<>();
-        final Set<Long> importedSet = new HashSet<>();
-        final Set<Long> createdSet = new HashSet<>();
-        final Set<Long> updatedSet = new HashSet<>();
-        final Set<Long> deletedSet = new HashSet<>();
-        
-        diffs.setImportedSet(importedSet);
-        diffs.setExistingSet(existingSet);
-        diffs.setErrorSet(errorSet);
-        diffs.setDeletedSet(deletedSet);
-        diffs.setUpdatedSet(updatedSet);
-        diffs.setCreatedSet(createdSet);
-        
-        final CsvMember csvMember = new CsvMember();
-        csvMember.setMembershipNumber(1000L);
-        
-        Mockito.when(memberService.getByMemberNumber(1000L)).thenReturn(currentMember);
-        Mockito.when(memberService.update(currentMember, currentMember)).thenReturn(currentMember);
-        final ImportDiff newDiffs = memberResource.importCreateUpdateMember(csvMember, diffs);
-        Assert.assertEquals(0, newDiffs.getCreatedSet().size());
-        Assert.assertEquals(1, newDiffs.getUpdatedSet().size());
-        Assert.assertEquals(0, newDiffs.getErrorSet().size());
-    }
-    
-    @Test
-    public void testImportMemberDeleted()
+    public void testGetCurrentPage() throws Exception
     {
-        final ImportDiff diffs = new ImportDiff();
-        final Set<Long> errorSet = new HashSet<>();
-        final Set<Long> existingSet = new HashSet<>();
-        final Set<Long> importedSet = new HashSet<>();
-        final Set<Long> deletedSet = new HashSet<>();
-        existingSet.add(9000L);
-        diffs.setImportedSet(importedSet);
-        diffs.setExistingSet(existingSet);
-        diffs.setErrorSet(errorSet);
-        diffs.setDeletedSet(deletedSet);
-        
-        Mockito.when(memberService.findByMemberNumber(9000L)).thenReturn(lapsedMembers);
-        Mockito.when(memberService.delete(lapsedMember)).thenReturn(true);
-        final ImportDiff newDiffs = memberResource.importDeleteMember(diffs);
-        Assert.assertEquals(1, newDiffs.getDeletedSet().size());
-    }
-    
-    @Test
-    public void testImportMemberNonexistent()
-    {
-        final ImportDiff diffs = new ImportDiff();
-        final Set<Long> errorSet = new HashSet<>();
-        final Set<Long> existingSet = new HashSet<>();
-        final Set<Long> importedSet = new HashSet<>();
-        final Set<Long> createdSet = new HashSet<>();
-        final Set<Long> updatedSet = new HashSet<>();
-        final Set<Long> deletedSet = new HashSet<>();
-        
-        diffs.setImportedSet(importedSet);
-        diffs.setExistingSet(existingSet);
-        diffs.setErrorSet(errorSet);
-        diffs.setDeletedSet(deletedSet);
-        diffs.setUpdatedSet(updatedSet);
-        diffs.setCreatedSet(createdSet);
-        
-        final CsvMember csvMember = new CsvMember();
-        csvMember.setMembershipNumber(1234L);
-        final MemberDO newMember = new MemberDO();
-        newMember.setMembershipNumber(1234L);
+        final List<MemberDO> currentMembers = new ArrayList<>();
+        currentMembers.add(currentMember);
+        final ResultPage<MemberDO> page = new ResultPage<>(currentMembers, 10, null);
+        Mockito.when(memberService.getPageByStatus(id, 10, MemberStatus.CURRENT)).thenReturn(page);
         
-        Mockito.when(memberService.getByMemberNumber(1234L)).thenReturn(null);
-        Mockito.when(memberService.create(newMember)).thenReturn(newMember);
-        final ImportDiff newDiffs = memberResource.importCreateUpdateMember(csvMember, diffs);
-        Assert.assertEquals(1, newDiffs.getCreatedSet().size());
-        Assert.assertEquals(0, newDiffs.getErrorSet().size());
+        Assert.assertSame(page, memberResource.getByStatusPage(MemberStatus.CURRENT, id, 10));
     }
     
     @Test
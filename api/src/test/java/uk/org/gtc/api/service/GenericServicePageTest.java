@@ -0,0 +1,163 @@
+package uk.org.gtc.api.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.WebApplicationException;
+
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mongojack.DBCursor;
+import org.mongojack.DBQuery;
+import org.mongojack.JacksonDBCollection;
+
+import com.mongodb.DBObject;
+
+import uk.org.gtc.api.domain.BookDO;
+import uk.org.gtc.api.domain.ResultPage;
+
+public class GenericServicePageTest
+{
+    @SuppressWarnings("unchecked")
+    private final JacksonDBCollection<BookDO, String> books = Mockito.mock(JacksonDBCollection.class);
+    
+    /**
+     * The books in the collection, in ID order.
+     */
+    private final List<BookDO> stored = new ArrayList<>();
+    
+    /**
+     * The limit of each query.
+     */
+    private final List<Integer> limits = new ArrayList<>();
+    
+    private final BookService bookService = new BookService(books);
+    
+    private List<String> ids(final ResultPage<BookDO> page)
+    {
+        return page.getItems().stream().map(BookDO::getId).collect(Collectors.toList());
+    }
+    
+    @Before
+    public void setUp()
+    {
+        for (int i = 0; i < 1200; i++)
+        {
+            final BookDO book = new BookDO();
+            book.setId(new ObjectId().toString());
+            stored.add(book);
+        }
+        stored.sort((a, b) -> a.getId().compareTo(b.getId()));
+        
+        Mockito.when(books.find(Matchers.any(DBQuery.Query.class))).thenAnswer(invocation -> {
+            final String after = (String) Queries.condition((DBQuery.Query) invocation.getArguments()[0], "_id", "$gt");
+            final List<BookDO> matching = stored.stream().filter(b -> after == null || b.getId().compareTo(after) > 0)
+                    .collect(Collectors.toList());
+            
+            @SuppressWarnings("unchecked")
+            final DBCursor<BookDO> cursor = Mockito.mock(DBCursor.class);
+            Mockito.when(cursor.sort(Matchers.any(DBObject.class))).thenReturn(cursor);
+            Mockito.when(cursor.limit(Matchers.anyInt())).thenAnswer(limitInvocation -> {
+                final int limit = (Integer) limitInvocation.getArguments()[0];
+                limits.add(limit);
+                Mockito.when(cursor.toArray()).thenReturn(new ArrayList<>(matching.subList(0, Math.min(limit, matching.size()))));
+                return cursor;
+            });
+            return cursor;
+        });
+    }
+    
+    @Test
+    public void testDefaultLimit()
+    {
+        final ResultPage<BookDO> page = bookService.getPage(null, null, null);
+        
+        Assert.assertEquals(Integer.valueOf(GenericService.DEFAULT_PAGE_SIZE), page.getLimit());
+        Assert.assertEquals(GenericService.DEFAULT_PAGE_SIZE, page.getItems().size());
+        // One more than the page, to find out whether there is another
+        Assert.assertEquals(Integer.valueOf(GenericService.DEFAULT_PAGE_SIZE + 1), limits.get(0));
+    }
+    
+    @Test
+    public void testLastPageHasNoNext()
+    {
+        final String after = stored.get(stored.size() - 4).getId();
+        
+        final ResultPage<BookDO> page = bookService.getPage(null, after, 3);
+        
+        Assert.assertEquals(3, page.getItems().size());
+        Assert.assertNull(page.getNext());
+    }
+    
+    @Test
+    public void testLimitClamped()
+    {
+        Assert.assertEquals(Integer.valueOf(GenericService.MAX_PAGE_SIZE), bookService.getPage(null, null, 100000).getLimit());
+        Assert.assertEquals(Integer.valueOf(1), bookService.getPage(null, null, 0).getLimit());
+        Assert.assertEquals(Integer.valueOf(1), bookService.getPage(null, null, -5).getLimit());
+        Assert.assertEquals(GenericService.MAX_PAGE_SIZE, bookService.getPage(null, null, 100000).getItems().size());
+    }
+    
+    @Test
+    public void testMalformedAfterIsBadRequest()
+    {
+        try
+        {
+            bookService.getPage(null, "not-an-id", 10);
+            Assert.fail("Expected a bad request");
+        }
+        catch (final WebApplicationException wae)
+        {
+            Assert.assertEquals(400, wae.getResponse().getStatus());
+            Mockito.verify(books, Mockito.never()).find(Matchers.any(DBQuery.Query.class));
+        }
+    }
+    
+    @Test
+    public void testNextIsLastIdOfPage()
+    {
+        final ResultPage<BookDO> page = bookService.getPage(null, null, 10);
+        
+        Assert.assertEquals(10, page.getItems().size());
+        Assert.assertEquals(stored.get(9).getId(), page.getNext());
+        Assert.assertEquals(stored.get(10).getId(), ids(bookService.getPage(null, page.getNext(), 10)).get(0));
+    }
+    
+    @Test
+    public void testCallersQueryNotChanged()
+    {
+        final DBQuery.Query query = DBQuery.is("title", "Go");
+        final ResultPage<BookDO> first = bookService.getPage(query, null, 10);
+        
+        final ResultPage<BookDO> second = bookService.getPage(query, first.getNext(), 10);
+        final ResultPage<BookDO> third = bookService.getPage(query, second.getNext(), 10);
+        
+        Assert.assertNull(Queries.condition(query, "_id", "$gt"));
+        Assert.assertEquals("Go", Queries.condition(query, "title", null));
+        Assert.assertEquals(stored.get(20).getId(), ids(third).get(0));
+    }
+    
+    @Test
+    public void testPagesFollowOnWithoutGaps()
+    {
+        final List<String> seen = new ArrayList<>();
+        String next = null;
+        int pages = 0;
+        do
+        {
+            final ResultPage<BookDO> page = bookService.getPage(null, next, 500);
+            seen.addAll(ids(page));
+            next = page.getNext();
+            pages++;
+        }
+        while (next != null);
+        
+        Assert.assertEquals(3, pages);
+        Assert.assertEquals(stored.stream().map(BookDO::getId).collect(Collectors.toList()), seen);
+    }
+}
@@ -0,0 +1,104 @@
+package uk.org.gtc.api.service;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import com.ecwid.maleorang.MailchimpException;
+import com.ecwid.maleorang.MailchimpMethod;
+import com.ecwid.maleorang.method.v3_0.lists.members.MemberInfo;
+
+import uk.org.gtc.api.MailchimpExecutor;
+import uk.org.gtc.api.domain.MailchimpInfo;
+import uk.org.gtc.api.domain.MailchimpStatus;
+
+public class MailchimpStatusCacheTest
+{
+    private final MailchimpExecutor mailchimp = Mockito.mock(MailchimpExecutor.class);
+    
+    private final MailchimpStatusCache cache = new MailchimpStatusCache(mailchimp, "list", 100, 3600);
+    
+    private void givenStatus(final String status) throws IOException, MailchimpException
+    {
+        final MemberInfo member = new MemberInfo();
+        member.status = status;
+        Mockito.when(mailchimp.execute(Matchers.<MailchimpMethod<MemberInfo>> any())).thenReturn(member);
+    }
+    
+    @Test
+    public void statusIsReadOnceAndServedLocally() throws Exception
+    {
+        givenStatus("subscribed");
+        
+        Assert.assertEquals(MailchimpStatus.SUBSCRIBED, cache.get("a@example.com").getStatus());
+        Assert.assertEquals(MailchimpStatus.SUBSCRIBED, cache.get("A@Example.com").getStatus());
+        
+        Mockito.verify(mailchimp, Mockito.times(1)).execute(Matchers.<MailchimpMethod<MemberInfo>> any());
+    }
+    
+    @Test
+    public void addressNotOnTheListIsNotSubscribed() throws Exception
+    {
+        Mockito.when(mailchimp.execute(Matchers.<MailchimpMethod<MemberInfo>> any())).thenThrow(new MailchimpException(404, "Not Found"));
+        
+        Assert.assertEquals(MailchimpStatus.NOT_SUBSCRIBED, cache.get("a@example.com").getStatus());
+    }
+    
+    @Test(expected = MailchimpException.class)
+    public void otherFailuresArePassedOnAndNotCached() throws Exception
+    {
+        Mockito.when(mailchimp.execute(Matchers.<MailchimpMethod<MemberInfo>> any())).thenThrow(new MailchimpException(500, "Error"));
+        
+        cache.get("a@example.com");
+    }
+    
+    @Test
+    public void putReplacesTheCachedStatus() throws Exception
+    {
+        givenStatus("subscribed");
+        cache.get("a@example.com");
+        
+        cache.put("a@example.com", new MailchimpInfo(new Date(), "manual", MailchimpStatus.UNSUBSCRIBED));
+        
+        final MailchimpInfo info = cache.get("a@example.com");
+        Assert.assertEquals(MailchimpStatus.UNSUBSCRIBED, info.getStatus());
+        Assert.assertEquals("manual", info.getUnsubscribeReason());
+        Mockito.verify(mailchimp, Mockito.times(1)).execute(Matchers.<MailchimpMethod<MemberInfo>> any());
+    }
+    
+    @Test
+    public void moveCarriesTheStatusToTheNewAddress() throws Exception
+    {
+        final Date changed = new Date();
+        cache.put("old@example.com", new MailchimpInfo(null, null, MailchimpStatus.SUBSCRIBED));
+        
+        cache.move("old@example.com", "new@example.com", changed);
+        
+        final MailchimpInfo info = cache.get("new@example.com");
+        Assert.assertEquals(MailchimpStatus.SUBSCRIBED, info.getStatus());
+        Assert.assertEquals(changed, info.getLastChanged());
+        Mockito.verify(mailchimp, Mockito.never()).execute(Matchers.<MailchimpMethod<MemberInfo>> any());
+        
+        givenStatus("subscribed");
+        cache.get("old@example.com");
+        Mockito.verify(mailchimp, Mockito.times(1)).execute(Matchers.<MailchimpMethod<MemberInfo>> any());
+    }
+    
+    @Test
+    public void touchOnlyUpdatesHeldStatuses() throws Exception
+    {
+        final Date changed = new Date();
+        cache.put("a@example.com", new MailchimpInfo(null, null, MailchimpStatus.SUBSCRIBED));
+        
+        cache.touch("a@example.com", changed);
+        cache.touch("b@example.com", changed);
+        
+        Assert.assertEquals(changed, cache.get("a@example.com").getLastChanged());
+        givenStatus("pending");
+        Assert.assertEquals(MailchimpStatus.PENDING, cache.get("b@example.com").getStatus());
+    }
+}
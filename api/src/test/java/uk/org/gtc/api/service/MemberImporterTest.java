@@ -0,0 +1,212 @@
+package uk.org.gtc.api.service;
+
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import uk.org.gtc.api.domain.CsvMember;
+import uk.org.gtc.api.domain.ImportDiff;
+import uk.org.gtc.api.domain.MemberDO;
+import uk.org.gtc.api.domain.MemberStatus;
+
+public class MemberImporterTest
+{
+    private final MemberService memberService = Mockito.mock(MemberService.class);
+    
+    private final MemberImporter importer = new MemberImporter(memberService, 2);
+    
+    private final Map<Long, List<MemberDO>> existingMembers = new HashMap<>();
+    
+    private final ImportDiff diffs = new ImportDiff();
+    
+    @SuppressWarnings("unchecked")
+    private List<MemberDO> captureSaved()
+    {
+        final ArgumentCaptor<List> saved = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(memberService).bulkSave(saved.capture(), Matchers.eq(2));
+        return saved.getValue();
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private ArgumentCaptor<List<MemberDO>> listCaptor()
+    {
+        return (ArgumentCaptor) ArgumentCaptor.forClass(List.class);
+    }
+    
+    private CsvMember csvMember(final Long membershipNumber, final String lastName)
+    {
+        final CsvMember csvMember = new CsvMember();
+        csvMember.setMembershipNumber(membershipNumber);
+        csvMember.setLastName(lastName);
+        csvMember.setStatus(MemberStatus.CURRENT);
+        return csvMember;
+    }
+    
+    private MemberDO member(final Long membershipNumber, final String lastName)
+    {
+        final MemberDO member = new MemberDO();
+        member.setMembershipNumber(membershipNumber);
+        member.setLastName(lastName);
+        member.setStatus(MemberStatus.CURRENT);
+        return member;
+    }
+    
+    @Before
+    public void setUp()
+    {
+        diffs.setCreatedSet(new HashSet<>());
+        diffs.setUpdatedSet(new HashSet<>());
+        diffs.setDeletedSet(new HashSet<>());
+        diffs.setErrorSet(new HashSet<>());
+        diffs.setImportedSet(new HashSet<>());
+        diffs.setExistingSet(new HashSet<>());
+        Mockito.when(memberService.getAllByMemberNumber()).thenReturn(existingMembers);
+        Mockito.when(memberService.bulkSave(Matchers.anyListOf(MemberDO.class), Matchers.anyInt())).thenReturn(new ArrayList<>());
+    }
+    
+    @Test
+    public void testDeleteMissingMember()
+    {
+        diffs.getExistingSet().addAll(Arrays.asList(1000L, 9000L));
+        diffs.getImportedSet().add(1000L);
+        Mockito.when(memberService.deleteByMemberNumbers(Collections.singleton(9000L), 2)).thenReturn(Collections.singleton(9000L));
+        
+        importer.deleteMissingMembers(diffs);
+        
+        Assert.assertEquals(Collections.singleton(9000L), diffs.getDeletedSet());
+        Assert.assertTrue(diffs.getErrorSet().isEmpty());
+    }
+    
+    @Test
+    public void testDeleteMissingMemberError()
+    {
+        diffs.getExistingSet().addAll(Arrays.asList(8000L, 9000L));
+        Mockito.when(memberService.deleteByMemberNumbers(new HashSet<>(Arrays.asList(8000L, 9000L)), 2))
+                .thenReturn(Collections.singleton(9000L));
+        
+        importer.deleteMissingMembers(diffs);
+        
+        Assert.assertEquals(Collections.singleton(9000L), diffs.getDeletedSet());
+        Assert.assertEquals(Collections.singleton(8000L), diffs.getErrorSet());
+    }
+    
+    @Test
+    public void testDuplicateExistingNumberIsError()
+    {
+        existingMembers.put(1000L, Arrays.asList(member(1000L, "Smith"), member(1000L, "Jones")));
+        
+        importer.importMembers(Collections.singletonList(csvMember(1000L, "Brown")), diffs);
+        
+        Assert.assertEquals(Collections.singleton(1000L), diffs.getErrorSet());
+        Assert.assertTrue(diffs.getUpdatedSet().isEmpty());
+        Assert.assertTrue(captureSaved().isEmpty());
+    }
+    
+    @Test
+    public void testFailedWriteIsError()
+    {
+        Mockito.when(memberService.bulkSave(Matchers.anyListOf(MemberDO.class), Matchers.anyInt()))
+                .thenAnswer(invocation -> invocation.getArguments()[0]);
+        
+        importer.importMembers(Collections.singletonList(csvMember(1234L, "Smith")), diffs);
+        
+        Assert.assertTrue(diffs.getCreatedSet().isEmpty());
+        Assert.assertEquals(Collections.singleton(1234L), diffs.getErrorSet());
+    }
+    
+    @Test
+    public void testFailedUpdateRetriedByLaterRow()
+    {
+        existingMembers.put(1000L, Collections.singletonList(member(1000L, "Smith")));
+        Mockito.when(memberService.bulkSave(Matchers.anyListOf(MemberDO.class), Matchers.anyInt()))
+                .thenAnswer(invocation -> invocation.getArguments()[0]).thenReturn(new ArrayList<>());
+        
+        // The second batch repeats the row whose write failed in the first
+        importer.importMembers(Arrays.asList(csvMember(1000L, "Jones"), csvMember(2000L, "Brown"), csvMember(1000L, "Jones")), diffs);
+        
+        final ArgumentCaptor<List<MemberDO>> saved = listCaptor();
+        Mockito.verify(memberService, Mockito.times(2)).bulkSave(saved.capture(), Matchers.eq(2));
+        Assert.assertEquals(1, saved.getAllValues().get(1).size());
+        Assert.assertEquals("Jones", saved.getAllValues().get(1).get(0).getLastName());
+        Assert.assertTrue(diffs.getUpdatedSet().contains(1000L));
+    }
+    
+    @Test
+    public void testImportMemberAlreadyExists()
+    {
+        final MemberDO existing = member(1000L, "Smith");
+        existing.setId("5a1b2c3d4e5f6a7b8c9d0e1f");
+        existing.setCareerStartDate(Year.of(1998));
+        existingMembers.put(1000L, Collections.singletonList(existing));
+        
+        importer.importMembers(Collections.singletonList(csvMember(1000L, "Jones")), diffs);
+        
+        Assert.assertEquals(0, diffs.getCreatedSet().size());
+        Assert.assertEquals(1, diffs.getUpdatedSet().size());
+        Assert.assertEquals(0, diffs.getErrorSet().size());
+        Assert.assertEquals(Collections.singleton(1000L), diffs.getExistingSet());
+        final List<MemberDO> saved = captureSaved();
+        Assert.assertEquals(1, saved.size());
+        Assert.assertEquals(existing.getId(), saved.get(0).getId());
+        Assert.assertEquals(existing.getCareerStartDate(), saved.get(0).getCareerStartDate());
+        Assert.assertEquals("Jones", saved.get(0).getLastName());
+        Assert.assertEquals("Smith", existing.getLastName());
+    }
+    
+    @Test
+    public void testImportMemberNonexistent()
+    {
+        importer.importMembers(Collections.singletonList(csvMember(1234L, "Smith")), diffs);
+        
+        Assert.assertEquals(1, diffs.getCreatedSet().size());
+        Assert.assertEquals(0, diffs.getErrorSet().size());
+        final List<MemberDO> saved = captureSaved();
+        Assert.assertEquals(1, saved.size());
+        Assert.assertEquals(Long.valueOf(1234L), saved.get(0).getMembershipNumber());
+    }
+    
+    @Test
+    public void testRepeatedRowsWriteOnce()
+    {
+        importer.importMembers(Arrays.asList(csvMember(1234L, "Smith"), csvMember(1234L, "Jones")), diffs);
+        
+        final List<MemberDO> saved = captureSaved();
+        Assert.assertEquals(1, saved.size());
+        Assert.assertEquals("Jones", saved.get(0).getLastName());
+    }
+    
+    @Test
+    public void testRowsWrittenInBatches()
+    {
+        final List<Integer> progress = new ArrayList<>();
+        importer.importMembers(Arrays.asList(csvMember(1L, "A"), csvMember(2L, "B"), csvMember(3L, "C")), diffs, progress::add);
+        
+        Mockito.verify(memberService, Mockito.times(2)).bulkSave(Matchers.anyListOf(MemberDO.class), Matchers.eq(2));
+        Assert.assertEquals(Arrays.asList(2, 3), progress);
+        Assert.assertEquals(3, diffs.getCreatedSet().size());
+    }
+    
+    @Test
+    public void testUnchangedMemberNotWritten()
+    {
+        existingMembers.put(1000L, Collections.singletonList(member(1000L, "Smith")));
+        
+        importer.importMembers(Collections.singletonList(csvMember(1000L, "Smith")), diffs);
+        
+        Assert.assertTrue(diffs.getUpdatedSet().isEmpty());
+        Assert.assertEquals(Collections.singleton(1000L), diffs.getImportedSet());
+        Assert.assertTrue(captureSaved().isEmpty());
+    }
+}
@@ -0,0 +1,114 @@
+package uk.org.gtc.api.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.org.gtc.api.domain.MemberDO;
+
+/**
+ * Unit test for MemberSearchIndex.
+ */
+public class MemberSearchIndexTest
+{
+    private final List<MemberDO> members = new ArrayList<>();
+    private final MemberSearchIndex searchIndex = new MemberSearchIndex(() -> members);
+    
+    private int loads = 0;
+    
+    private final MemberSearchIndex countingIndex = new MemberSearchIndex(() -> {
+        loads++;
+        return members;
+    });
+    
+    private MemberDO member(final Long membershipNumber, final String firstName, final String lastName)
+    {
+        final MemberDO member = new MemberDO();
+        member.setId(new ObjectId().toString());
+        member.setMembershipNumber(membershipNumber);
+        member.setFirstName(firstName);
+        member.setLastName(lastName);
+        return member;
+    }
+    
+    @Before
+    public void setupMembers()
+    {
+        members.add(member(1001L, "John", "Smith"));
+        members.add(member(1002L, "Jane", "Smithson"));
+        members.add(member(2001L, "Bob", "Jones"));
+        members.add(member(null, "Alice", null));
+    }
+    
+    @Test
+    public void testBuildsOnce()
+    {
+        countingIndex.search("smith");
+        countingIndex.search("jones");
+        Assert.assertEquals(1, loads);
+    }
+    
+    @Test
+    public void testDeletedMemberRemoved()
+    {
+        searchIndex.search("bob");
+        searchIndex.itemDeleted(members.get(2).getId());
+        Assert.assertTrue(searchIndex.search("bob").isEmpty());
+    }
+    
+    @Test
+    public void testFullName()
+    {
+        final List<MemberDO> results = searchIndex.search("john smi");
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals(Long.valueOf(1001L), results.get(0).getMembershipNumber());
+    }
+    
+    @Test
+    public void testMembershipNumber()
+    {
+        final List<MemberDO> results = searchIndex.search("100");
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals(Long.valueOf(1001L), results.get(0).getMembershipNumber());
+        Assert.assertEquals(Long.valueOf(1002L), results.get(1).getMembershipNumber());
+    }
+    
+    @Test
+    public void testNoMatch()
+    {
+        Assert.assertTrue(searchIndex.search("xyz").isEmpty());
+        Assert.assertTrue(searchIndex.search("smithsonian").isEmpty());
+    }
+    
+    @Test
+    public void testPartialNameIgnoresCase()
+    {
+        Assert.assertEquals(2, searchIndex.search("SMITH").size());
+        Assert.assertEquals(1, searchIndex.search("Smiths").size());
+        Assert.assertEquals(1, searchIndex.search("ali").size());
+    }
+    
+    @Test
+    public void testSavedMemberReindexed()
+    {
+        searchIndex.search("bob");
+        final MemberDO renamed = member(2001L, "Robert", "Jones");
+        renamed.setId(members.get(2).getId());
+        searchIndex.itemSaved(renamed);
+        
+        Assert.assertTrue(searchIndex.search("bob").isEmpty());
+        Assert.assertEquals(1, searchIndex.search("robert").size());
+        Assert.assertEquals(1, searchIndex.search("jones").size());
+    }
+    
+    @Test
+    public void testShortQuery()
+    {
+        Assert.assertEquals(4, searchIndex.search("").size());
+        Assert.assertEquals(3, searchIndex.search("j").size());
+    }
+}
@@ -0,0 +1,146 @@
+package uk.org.gtc.api.service;
+
+import java.util.Collections;
+
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mongojack.DBCursor;
+import org.mongojack.DBQuery;
+import org.mongojack.JacksonDBCollection;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+import uk.org.gtc.api.domain.MemberDO;
+
+public class MemberServiceCacheTest
+{
+    @SuppressWarnings("unchecked")
+    private final JacksonDBCollection<MemberDO, String> members = Mockito.mock(JacksonDBCollection.class);
+    
+    private final DBCollection dbCollection = Mockito.mock(DBCollection.class);
+    
+    private final String id = new ObjectId().toString();
+    
+    private MemberService memberService;
+    
+    private DBObject document(final Long membershipNumber)
+    {
+        return new BasicDBObject("_id", new ObjectId(id)).append("membershipNumber", membershipNumber);
+    }
+    
+    @Before
+    public void setUp()
+    {
+        final DB db = Mockito.mock(DB.class);
+        Mockito.when(members.getDB()).thenReturn(db);
+        Mockito.when(members.getDbCollection()).thenReturn(dbCollection);
+        Mockito.when(members.convertFromDbObject(Matchers.any(DBObject.class))).thenAnswer(invocation -> {
+            final DBObject document = (DBObject) invocation.getArguments()[0];
+            final MemberDO member = new MemberDO();
+            member.setId(document.get("_id").toString());
+            member.setMembershipNumber((Long) document.get("membershipNumber"));
+            return member;
+        });
+        Mockito.when(dbCollection.findOne(Matchers.any(DBObject.class))).thenReturn(document(1234L));
+        
+        memberService = new MemberService(members);
+        memberService.enableCache(100, 60);
+    }
+    
+    @Test
+    public void testCachedByMemberNumber()
+    {
+        @SuppressWarnings("unchecked")
+        final DBCursor<MemberDO> cursor = Mockito.mock(DBCursor.class);
+        final MemberDO member = new MemberDO();
+        member.setId(id);
+        member.setMembershipNumber(1234L);
+        Mockito.when(cursor.toArray()).thenReturn(Collections.singletonList(member));
+        Mockito.when(members.find(Matchers.any(DBQuery.Query.class))).thenReturn(cursor);
+        
+        Assert.assertEquals(id, memberService.getByMemberNumber(1234L).getId());
+        Assert.assertEquals(id, memberService.getByMemberNumber(1234L).getId());
+        Assert.assertEquals(id, memberService.getByMemberNumber(1234L).getId());
+        
+        // One query by number, then one read by ID to fill the cache
+        Mockito.verify(members, Mockito.times(1)).find(Matchers.any(DBQuery.Query.class));
+        Mockito.verify(dbCollection, Mockito.times(1)).findOne(Matchers.any(DBObject.class));
+    }
+    
+    @Test
+    public void testChangesElsewhereReachSearch()
+    {
+        @SuppressWarnings("unchecked")
+        final DBCursor<MemberDO> cursor = Mockito.mock(DBCursor.class);
+        Mockito.when(cursor.toArray()).thenReturn(Collections.emptyList());
+        Mockito.when(members.find()).thenReturn(cursor);
+        Assert.assertTrue(memberService.search("1234").isEmpty());
+        
+        memberService.itemSavedElsewhere(document(1234L));
+        Assert.assertEquals(id, memberService.search("1234").get(0).getId());
+        
+        memberService.itemDeletedElsewhere(id);
+        Assert.assertTrue(memberService.search("1234").isEmpty());
+    }
+    
+    @Test
+    public void testCopiesReturned()
+    {
+        final MemberDO first = memberService.getById(id);
+        first.setMembershipNumber(9999L);
+        
+        Assert.assertEquals(Long.valueOf(1234L), memberService.getById(id).getMembershipNumber());
+        Mockito.verify(dbCollection, Mockito.times(1)).findOne(Matchers.any(DBObject.class));
+    }
+    
+    @Test
+    public void testRenumberedMemberNotReturned()
+    {
+        @SuppressWarnings("unchecked")
+        final DBCursor<MemberDO> cursor = Mockito.mock(DBCursor.class);
+        final MemberDO member = new MemberDO();
+        member.setId(id);
+        member.setMembershipNumber(1234L);
+        Mockito.when(cursor.toArray()).thenReturn(Collections.singletonList(member), Collections.emptyList());
+        Mockito.when(members.find(Matchers.any(DBQuery.Query.class))).thenReturn(cursor);
+        memberService.getByMemberNumber(1234L);
+        
+        // Renumbered on another instance, so the cached number now leads to
+        // a member that no longer holds it
+        Mockito.when(dbCollection.findOne(Matchers.any(DBObject.class))).thenReturn(document(5678L));
+        memberService.getCachedById(id);
+        
+        Assert.assertNull(memberService.getByMemberNumber(1234L));
+    }
+    
+    @Test
+    public void testSaveInvalidates()
+    {
+        memberService.getById(id);
+        final MemberDO saved = new MemberDO();
+        saved.setId(id);
+        memberService.notifySaved(saved);
+        memberService.getById(id);
+        
+        Mockito.verify(dbCollection, Mockito.times(2)).findOne(Matchers.any(DBObject.class));
+    }
+    
+    @Test
+    public void testStaleReadNotCached()
+    {
+        final ItemCache<MemberDO> cache = new ItemCache<>(100, 60);
+        final long generation = cache.getGeneration();
+        cache.invalidate(id);
+        
+        Assert.assertFalse(cache.put(id, document(1234L), generation));
+        Assert.assertNull(cache.get(id));
+        Assert.assertTrue(cache.put(id, document(1234L), cache.getGeneration()));
+    }
+}
@@ -0,0 +1,165 @@
+package uk.org.gtc.api.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mongojack.DBCursor;
+import org.mongojack.DBQuery;
+import org.mongojack.JacksonDBCollection;
+import org.mongojack.WriteResult;
+
+import com.mongodb.DB;
+import com.mongodb.DBObject;
+
+import uk.org.gtc.api.domain.MemberDO;
+
+public class MemberServiceDeleteTest
+{
+    @SuppressWarnings("unchecked")
+    private final JacksonDBCollection<MemberDO, String> members = Mockito.mock(JacksonDBCollection.class);
+    
+    @SuppressWarnings("unchecked")
+    private final ItemChangeListener<MemberDO> listener = Mockito.mock(ItemChangeListener.class);
+    
+    /**
+     * The members in the collection.
+     */
+    private final List<MemberDO> stored = new ArrayList<>();
+    
+    /**
+     * Members that fail to be removed.
+     */
+    private final Set<String> stuck = new HashSet<>();
+    
+    /**
+     * The size of each remove request.
+     */
+    private final List<Integer> removed = new ArrayList<>();
+    
+    private MemberService memberService;
+    
+    private DBCursor<MemberDO> cursor(final List<MemberDO> results)
+    {
+        @SuppressWarnings("unchecked")
+        final DBCursor<MemberDO> cursor = Mockito.mock(DBCursor.class);
+        Mockito.when(cursor.iterator()).thenReturn(results.iterator());
+        return cursor;
+    }
+    
+    private String idOf(final Long membershipNumber)
+    {
+        return stored.stream().filter(m -> membershipNumber.equals(m.getMembershipNumber())).findFirst().get().getId();
+    }
+    
+    private void member(final Long membershipNumber)
+    {
+        final MemberDO member = new MemberDO();
+        member.setId(new ObjectId().toString());
+        member.setMembershipNumber(membershipNumber);
+        stored.add(member);
+    }
+    
+    @Before
+    public void setUp()
+    {
+        Mockito.when(members.getDB()).thenReturn(Mockito.mock(DB.class));
+        Mockito.when(members.find(Matchers.any(DBQuery.Query.class), Matchers.any(DBObject.class))).thenAnswer(invocation -> {
+            final DBQuery.Query query = (DBQuery.Query) invocation.getArguments()[0];
+            final Collection<?> numbers = (Collection<?>) Queries.condition(query, "membershipNumber", "$in");
+            if (numbers != null)
+            {
+                return cursor(stored.stream().filter(m -> numbers.contains(m.getMembershipNumber())).collect(Collectors.toList()));
+            }
+            final Collection<?> ids = (Collection<?>) Queries.condition(query, "_id", "$in");
+            return cursor(stored.stream().filter(m -> ids.contains(m.getId())).collect(Collectors.toList()));
+        });
+        Mockito.when(members.remove(Matchers.any(DBQuery.Query.class))).thenAnswer(invocation -> {
+            final Collection<?> ids = (Collection<?>) Queries.condition((DBQuery.Query) invocation.getArguments()[0], "_id", "$in");
+            removed.add(ids.size());
+            final int before = stored.size();
+            stored.removeIf(m -> ids.contains(m.getId()) && !stuck.contains(m.getId()));
+            @SuppressWarnings("unchecked")
+            final WriteResult<MemberDO, String> result = Mockito.mock(WriteResult.class);
+            Mockito.when(result.getN()).thenReturn(before - stored.size());
+            return result;
+        });
+        
+        for (long number = 1; number <= 5; number++)
+        {
+            member(number);
+        }
+        memberService = new MemberService(members);
+        memberService.addChangeListener(listener);
+    }
+    
+    @Test
+    public void testEmptyNotQueried()
+    {
+        Assert.assertTrue(memberService.deleteByMemberNumbers(Collections.emptyList(), 2).isEmpty());
+        
+        Mockito.verifyZeroInteractions(listener);
+        Mockito.verify(members, Mockito.never()).remove(Matchers.any(DBQuery.Query.class));
+    }
+    
+    @Test
+    public void testMissingAndDuplicatedNumbersSkipped()
+    {
+        // Two members hold 6, and nobody holds 9
+        member(6L);
+        member(6L);
+        final String fiveId = idOf(5L);
+        
+        final Set<Long> deleted = memberService.deleteByMemberNumbers(Arrays.asList(5L, 5L, 6L, 9L), 2);
+        
+        Assert.assertEquals(Collections.singleton(5L), deleted);
+        Assert.assertEquals(Collections.singletonList(1), removed);
+        Assert.assertEquals(2, stored.stream().filter(m -> m.getMembershipNumber() == 6L).count());
+        Mockito.verify(listener).itemDeleted(fiveId);
+        Mockito.verifyNoMoreInteractions(listener);
+    }
+    
+    @Test
+    public void testRemovedInChunks()
+    {
+        final Set<String> ids = stored.stream().map(MemberDO::getId).collect(Collectors.toSet());
+        
+        final Set<Long> deleted = memberService.deleteByMemberNumbers(Arrays.asList(1L, 2L, 3L, 4L, 5L), 2);
+        
+        Assert.assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 3L, 4L, 5L)), deleted);
+        Assert.assertEquals(Arrays.asList(2, 2, 1), removed);
+        Assert.assertTrue(stored.isEmpty());
+        for (final String id : ids)
+        {
+            Mockito.verify(listener).itemDeleted(id);
+        }
+        // Every removal was counted, so nothing was looked up again
+        Mockito.verify(members, Mockito.times(1)).find(Matchers.any(DBQuery.Query.class), Matchers.any(DBObject.class));
+    }
+    
+    @Test
+    public void testStillPresentNotReported()
+    {
+        final String stuckId = idOf(3L);
+        stuck.add(stuckId);
+        
+        final Set<Long> deleted = memberService.deleteByMemberNumbers(Arrays.asList(1L, 2L, 3L, 4L, 5L), 5);
+        
+        Assert.assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 4L, 5L)), deleted);
+        // Looked up again to find which member was left behind
+        Mockito.verify(members, Mockito.times(2)).find(Matchers.any(DBQuery.Query.class), Matchers.any(DBObject.class));
+        Mockito.verify(listener, Mockito.times(4)).itemDeleted(Matchers.anyString());
+        Mockito.verify(listener, Mockito.never()).itemDeleted(stuckId);
+    }
+}
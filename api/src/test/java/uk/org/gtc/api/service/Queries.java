@@ -0,0 +1,85 @@
+package uk.org.gtc.api.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.mongojack.DBQuery;
+import org.mongojack.internal.query.CollectionQueryCondition;
+import org.mongojack.internal.query.CompoundQueryCondition;
+import org.mongojack.internal.query.QueryCondition;
+import org.mongojack.internal.query.SimpleQueryCondition;
+
+/**
+ * Reads the conditions back out of a query, for mocked collections to answer
+ * it. Conditions combined with {@code $and} are read as if they were one
+ * query.
+ */
+final class Queries
+{
+    private Queries()
+    {
+    }
+    
+    private static Object value(final QueryCondition condition)
+    {
+        if (condition instanceof CollectionQueryCondition)
+        {
+            final List<Object> values = new ArrayList<>();
+            for (final QueryCondition value : ((CollectionQueryCondition) condition).getValues())
+            {
+                values.add(value(value));
+            }
+            return values;
+        }
+        return ((SimpleQueryCondition) condition).getValue();
+    }
+    
+    /**
+     * @param query
+     *            - the query
+     * @param field
+     *            - the field the condition is on
+     * @param operator
+     *            - the operator, such as {@code $in}, or null for equality
+     * @return the value of the condition, a list for operators that take
+     *         several, or null if the query has no such condition
+     */
+    static Object condition(final DBQuery.Query query, final String field, final String operator)
+    {
+        for (final Map.Entry<String, QueryCondition> entry : query.conditions())
+        {
+            if (entry.getKey().equals("$and"))
+            {
+                for (final QueryCondition part : ((CollectionQueryCondition) entry.getValue()).getValues())
+                {
+                    final Object value = condition(((CompoundQueryCondition) part).getQuery(), field, operator);
+                    if (value != null)
+                    {
+                        return value;
+                    }
+                }
+                continue;
+            }
+            if (!entry.getKey().equals(field))
+            {
+                continue;
+            }
+            if (operator == null)
+            {
+                return value(entry.getValue());
+            }
+            if (entry.getValue() instanceof CompoundQueryCondition)
+            {
+                for (final Map.Entry<String, QueryCondition> inner : ((CompoundQueryCondition) entry.getValue()).getQuery().conditions())
+                {
+                    if (inner.getKey().equals(operator))
+                    {
+                        return value(inner.getValue());
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,75 @@
+package uk.org.gtc.api.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.stubbing.OngoingStubbing;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+public class SequenceAllocatorTest
+{
+    private final DBCollection counters = Mockito.mock(DBCollection.class);
+    
+    private void counterIncrementsTo(final long... values)
+    {
+        OngoingStubbing<DBObject> stubbing = Mockito.when(counters.findAndModify(Matchers.<DBObject> any(),
+                Matchers.<DBObject> any(), Matchers.<DBObject> any(), Matchers.anyBoolean(), Matchers.<DBObject> any(),
+                Matchers.anyBoolean(), Matchers.anyBoolean()));
+        for (final long value : values)
+        {
+            stubbing = stubbing.thenReturn(new BasicDBObject("value", value));
+        }
+    }
+    
+    private void verifyAllocations(final int times)
+    {
+        Mockito.verify(counters, Mockito.times(times)).findAndModify(Matchers.<DBObject> any(), Matchers.<DBObject> any(),
+                Matchers.<DBObject> any(), Matchers.anyBoolean(), Matchers.<DBObject> any(), Matchers.anyBoolean(),
+                Matchers.anyBoolean());
+    }
+    
+    @Test
+    public void testAdvanceSkipsLocalNumbers()
+    {
+        counterIncrementsTo(110L);
+        final SequenceAllocator allocator = new SequenceAllocator(counters, "test", 10, () -> 100L);
+        
+        Assert.assertEquals(101L, allocator.next());
+        allocator.advanceTo(105L);
+        
+        Assert.assertEquals(106L, allocator.next());
+    }
+    
+    @Test
+    public void testBlockAllocation()
+    {
+        counterIncrementsTo(10L, 20L);
+        final SequenceAllocator allocator = new SequenceAllocator(counters, "test", 10, () -> 0L);
+        
+        for (long expected = 1; expected <= 11; expected++)
+        {
+            Assert.assertEquals(expected, allocator.next());
+        }
+        verifyAllocations(2);
+    }
+    
+    @Test
+    public void testSeededOnce()
+    {
+        counterIncrementsTo(1001L, 1002L);
+        final SequenceAllocator allocator = new SequenceAllocator(counters, "test", 1, () -> 1000L);
+        
+        Assert.assertEquals(1001L, allocator.next());
+        Assert.assertEquals(1002L, allocator.next());
+        
+        // One $max to seed the counter; lower numbers need no further write
+        allocator.advanceTo(900L);
+        Mockito.verify(counters, Mockito.times(1)).update(Matchers.<DBObject> any(), Matchers.<DBObject> any(),
+                Matchers.anyBoolean(), Matchers.anyBoolean());
+        verifyAllocations(2);
+    }
+}
@@ -0,0 +1,66 @@
+package uk.org.gtc.api.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mongojack.JacksonDBCollection;
+
+import uk.org.gtc.api.domain.SyncFingerprintDO;
+
+public class SyncFingerprintServiceTest
+{
+    @Test
+    public void testCollectionOrderIgnored()
+    {
+        Assert.assertEquals(SyncFingerprintService.fingerprint("a@example.com", Arrays.asList("MEMBER", "ADMIN"), 1000L),
+                SyncFingerprintService.fingerprint("a@example.com", Arrays.asList("ADMIN", "MEMBER"), 1000L));
+    }
+    
+    @Test
+    public void testFieldBoundariesMatter()
+    {
+        Assert.assertNotEquals(SyncFingerprintService.fingerprint("ab", "c"), SyncFingerprintService.fingerprint("a", "bc"));
+        Assert.assertNotEquals(SyncFingerprintService.fingerprint("Jo", null), SyncFingerprintService.fingerprint("Jo", "Smith"));
+    }
+    
+    @Test
+    public void testOnlyChangesWritten()
+    {
+        @SuppressWarnings("unchecked")
+        final SyncFingerprintService service = Mockito.spy(new SyncFingerprintService(Mockito.mock(JacksonDBCollection.class)));
+        Mockito.doNothing().when(service).record(Matchers.anyString(), Matchers.<Map<String, String>> any());
+        Mockito.doNothing().when(service).remove(Matchers.anyString(), Matchers.anyCollectionOf(String.class));
+        final Map<String, String> previous = new HashMap<>();
+        previous.put("unchanged", "1");
+        previous.put("changed", "1");
+        previous.put("deleted", "1");
+        final Map<String, String> current = new HashMap<>();
+        current.put("unchanged", "1");
+        current.put("changed", "2");
+        current.put("added", "1");
+        
+        service.replace(SyncFingerprintService.MAILCHIMP, previous, current);
+        
+        final Map<String, String> written = new HashMap<>();
+        written.put("changed", "2");
+        written.put("added", "1");
+        Mockito.verify(service).record(SyncFingerprintService.MAILCHIMP, written);
+        Mockito.verify(service).remove(SyncFingerprintService.MAILCHIMP, Collections.singletonList("deleted"));
+    }
+    
+    @Test
+    public void testStable()
+    {
+        final String fingerprint = SyncFingerprintService.fingerprint("a@example.com", "Jo", "Smith", "FULL", 1000L);
+        
+        Assert.assertEquals(fingerprint, SyncFingerprintService.fingerprint("a@example.com", "Jo", "Smith", "FULL", 1000L));
+        Assert.assertNotEquals(fingerprint, SyncFingerprintService.fingerprint("a@example.com", "Jo", "Smith", "FULL", 1001L));
+        Assert.assertEquals(22, fingerprint.length());
+    }
+}